@@ -70,6 +70,23 @@ public class DL4JSystemProperties {
      */
     public static final String CRASH_DUMP_OUTPUT_DIRECTORY_PROPERTY = "org.deeplearning4j.crash.reporting.directory";
 
+    /**
+     * Applicability: deeplearning4j-nn - LSTM layer, CPU backend only<br>
+     * Description: If set to true, LSTM layers use a fused whole-sequence implementation (FusedLSTMHelper) instead of
+     * the built-in per-time-step implementation, for supported configurations (sigmoid gate activations, tanh
+     * activation function, no masking). Default: false
+     */
+    public static final String LSTM_FUSED_HELPER_PROPERTY = "org.deeplearning4j.nn.lstm.fusedhelper";
+
+    /**
+     * Applicability: deeplearning4j-nn - updaters (Adam, Nesterovs, RmsProp)<br>
+     * Description: If set to true, L1/L2 regularization, the updater and weight decay are applied to each updater block
+     * as a single native op (see FusedGradientUpdater), instead of separate ops for each step and each parameter. Blocks
+     * with other regularization types, or with different regularization for different parameters, always use the
+     * non-fused implementation. Default: true
+     */
+    public static final String UPDATER_FUSED_PROPERTY = "org.deeplearning4j.nn.updater.fused";
+
     /**
      * Applicability: deeplearning4j-ui_2.xx<br>
      * Description: The DL4J training UI (StatsListener + UIServer.getInstance().attach(ss)) will subsample the number
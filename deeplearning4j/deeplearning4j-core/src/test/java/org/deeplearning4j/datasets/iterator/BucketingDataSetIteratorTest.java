@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BucketingDataSetIteratorTest extends BaseDL4JTest {
+
+    private static final int[] LENGTHS = {3, 25, 4, 1, 22, 7, 30, 2, 9, 28, 5, 21, 12, 6, 24, 8, 3};
+
+    /**
+     * Source iterator with padded minibatches. Features: example ID + 1 and time step index (relative to the start
+     * of the sequence) at unmasked steps, zeros at padded steps
+     */
+    private static DataSetIterator source(int[] lengths, int sourceBatch, boolean alignEnd) {
+        List<DataSet> list = new ArrayList<>();
+        for (int s = 0; s < lengths.length; s += sourceBatch) {
+            int n = Math.min(sourceBatch, lengths.length - s);
+            int maxT = 0;
+            for (int i = 0; i < n; i++) {
+                maxT = Math.max(maxT, lengths[s + i]);
+            }
+
+            INDArray f = Nd4j.create(DataType.FLOAT, n, 2, maxT);
+            INDArray l = Nd4j.create(DataType.FLOAT, n, 3, maxT);
+            INDArray m = Nd4j.create(DataType.FLOAT, n, maxT);
+            for (int i = 0; i < n; i++) {
+                int len = lengths[s + i];
+                int start = alignEnd ? maxT - len : 0;
+                for (int t = start; t < start + len; t++) {
+                    f.putScalar(new int[]{i, 0, t}, s + i + 1);
+                    f.putScalar(new int[]{i, 1, t}, t - start);
+                    l.putScalar(new int[]{i, (s + i) % 3, t}, 1.0);
+                    m.putScalar(i, t, 1.0);
+                }
+            }
+            list.add(new DataSet(f, l, m, m.dup()));
+        }
+        return new ExistingDataSetIterator(list);
+    }
+
+    /**
+     * Checks the returned minibatches, and returns the example IDs in the order they were returned
+     */
+    private static List<Integer> check(BucketingDataSetIterator iter, int[] lengths, int batchSize) {
+        List<Integer> ids = new ArrayList<>();
+        while (iter.hasNext()) {
+            DataSet ds = iter.next();
+            INDArray f = ds.getFeatures();
+            INDArray m = ds.getFeaturesMaskArray();
+            assertTrue(ds.numExamples() <= batchSize);
+
+            int bucket = -1;
+            int maxLength = 0;
+            for (int i = 0; i < ds.numExamples(); i++) {
+                int len = m == null ? (int) f.size(2) : m.getRow(i).sumNumber().intValue();
+                int id = f.getInt(i, 0, 0) - 1;
+                assertEquals(lengths[id], len);
+                for (int t = 0; t < len; t++) {
+                    assertEquals(id + 1, f.getInt(i, 0, t));
+                    assertEquals(t, f.getInt(i, 1, t));
+                }
+
+                int b = iter.bucketFor(len);
+                if (bucket < 0)
+                    bucket = b;
+                assertEquals("All examples in a minibatch should be from the same bucket", bucket, b);
+                maxLength = Math.max(maxLength, len);
+                ids.add(id);
+            }
+            //Padded only to the longest sequence in this minibatch
+            assertEquals(maxLength, f.size(2));
+        }
+        return ids;
+    }
+
+    @Test
+    public void testBucketing() {
+        for (boolean alignEnd : new boolean[]{false, true}) {
+            BucketingDataSetIterator iter = new BucketingDataSetIterator.Builder(source(LENGTHS, 4, alignEnd), 3)
+                    .bucketBoundaries(5, 10, 20)
+                    .build();
+
+            List<Integer> ids = check(iter, LENGTHS, 3);
+            assertEquals(LENGTHS.length, ids.size());
+            assertEquals(LENGTHS.length, new HashSet<>(ids).size());
+        }
+    }
+
+    @Test
+    public void testBucketWidthAndSorting() {
+        BucketingDataSetIterator iter = new BucketingDataSetIterator.Builder(source(LENGTHS, 5, false), 2)
+                .bucketWidth(10)
+                .shardSize(8)
+                .sortWithinShards(true)
+                .build();
+
+        assertEquals(0, iter.bucketFor(1));
+        assertEquals(0, iter.bucketFor(10));
+        assertEquals(1, iter.bucketFor(11));
+        assertEquals(2, iter.bucketFor(30));
+
+        List<Integer> first = check(iter, LENGTHS, 2);
+        assertEquals(LENGTHS.length, new HashSet<>(first).size());
+
+        //Same order after reset
+        iter.reset();
+        List<Integer> second = check(iter, LENGTHS, 2);
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void testFitMultiLayerNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.FLOAT)
+                .updater(new Adam(1e-2))
+                .list()
+                .layer(new LSTM.Builder().nIn(2).nOut(4).activation(Activation.TANH).build())
+                .layer(new RnnOutputLayer.Builder().nIn(4).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        BucketingDataSetIterator iter = new BucketingDataSetIterator.Builder(source(LENGTHS, 4, true), 4)
+                .bucketBoundaries(5, 10, 20)
+                .build();
+        for (int i = 0; i < 3; i++) {
+            net.fit(iter);
+        }
+        assertFalse(Double.isNaN(net.score()));
+    }
+}
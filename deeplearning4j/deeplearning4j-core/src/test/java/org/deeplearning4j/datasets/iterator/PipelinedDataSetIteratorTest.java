@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator;
+import org.deeplearning4j.datasets.iterator.parallel.PipelinedDataSetIterator;
+import org.deeplearning4j.datasets.iterator.parallel.PipelinedDataSetIterator.Stage;
+import org.junit.Test;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class PipelinedDataSetIteratorTest extends BaseDL4JTest {
+
+    /**
+     * Source iterator with DataSets of size 1, with features values offset, offset+1, ..., offset+n-1
+     */
+    private static DataSetIterator source(int offset, int n) {
+        List<DataSet> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            list.add(new DataSet(Nd4j.scalar((float) (offset + i)).reshape(1, 1), Nd4j.scalar(1.0f).reshape(1, 1)));
+        }
+        return new ListDataSetIterator<>(list, 1);
+    }
+
+    private static List<DataSetIterator> sources(int... sizes) {
+        List<DataSetIterator> out = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            out.add(source(1000 * i, sizes[i]));
+        }
+        return out;
+    }
+
+    @Test(timeout = 60000L)
+    public void testUnordered() {
+        PipelinedDataSetIterator iter = new PipelinedDataSetIterator.Builder(sources(50, 37, 0, 13))
+                .preProcessWorkers(3).transferWorkers(2).queueSize(4).ordered(false).build();
+
+        for (int epoch = 0; epoch < 3; epoch++) {
+            Set<Integer> seen = new HashSet<>();
+            while (iter.hasNext()) {
+                seen.add(iter.next().getFeatures().getInt(0));
+            }
+            assertEquals(100, seen.size());
+            for (int i = 0; i < 50; i++)
+                assertTrue(seen.contains(i));
+            for (int i = 0; i < 37; i++)
+                assertTrue(seen.contains(1000 + i));
+            for (int i = 0; i < 13; i++)
+                assertTrue(seen.contains(3000 + i));
+            iter.reset();
+        }
+        iter.shutdown();
+    }
+
+    @Test(timeout = 60000L)
+    public void testOrdered() {
+        int[] sizes = {20, 5, 0, 11};
+        PipelinedDataSetIterator iter = new PipelinedDataSetIterator.Builder(sources(sizes))
+                .preProcessWorkers(4).transferWorkers(3).queueSize(2).ordered(true).build();
+
+        //Expected order: round robin over sources, skipping exhausted sources
+        List<Integer> expected = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            for (int s = 0; s < sizes.length; s++) {
+                if (round < sizes[s])
+                    expected.add(1000 * s + round);
+            }
+        }
+
+        for (int epoch = 0; epoch < 3; epoch++) {
+            List<Integer> actual = new ArrayList<>();
+            while (iter.hasNext()) {
+                actual.add(iter.next().getFeatures().getInt(0));
+            }
+            assertEquals(expected, actual);
+            assertEquals(0, iter.getReorderBufferSize());
+            iter.reset();
+        }
+        iter.shutdown();
+    }
+
+    @Test(timeout = 60000L)
+    public void testPreProcessor() {
+        DataSetPreProcessor addOne = new DataSetPreProcessor() {
+            @Override
+            public void preProcess(org.nd4j.linalg.dataset.api.DataSet ds) {
+                ds.getFeatures().addi(1);
+            }
+        };
+        DataSetPreProcessor timesTwo = new DataSetPreProcessor() {
+            @Override
+            public void preProcess(org.nd4j.linalg.dataset.api.DataSet ds) {
+                ds.getFeatures().muli(2);
+            }
+        };
+
+        PipelinedDataSetIterator iter = new PipelinedDataSetIterator.Builder(sources(10, 10))
+                .preProcessors(addOne, timesTwo).ordered(true).build();
+
+        int cnt = 0;
+        while (iter.hasNext()) {
+            int round = cnt / 2;
+            int offset = (cnt % 2) * 1000;
+            assertEquals(2 * (offset + round + 1), iter.next().getFeatures().getInt(0));
+            cnt++;
+        }
+        assertEquals(20, cnt);
+
+        iter.setPreProcessor(null);
+        iter.reset();
+        assertEquals(0, iter.next().getFeatures().getInt(0));
+        iter.shutdown();
+    }
+
+    @Test(timeout = 60000L)
+    public void testExceptionPropagation() {
+        DataSetPreProcessor failing = new DataSetPreProcessor() {
+            @Override
+            public void preProcess(org.nd4j.linalg.dataset.api.DataSet ds) {
+                if (ds.getFeatures().getInt(0) == 7)
+                    throw new IllegalStateException("Test exception");
+            }
+        };
+
+        PipelinedDataSetIterator iter = new PipelinedDataSetIterator.Builder(sources(20))
+                .preProcessors(failing).build();
+
+        try {
+            while (iter.hasNext()) {
+                iter.next();
+            }
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertEquals("Test exception", e.getMessage());
+        }
+        iter.shutdown();
+    }
+
+    @Test(timeout = 60000L)
+    public void testResetAfterFailure() {
+        final AtomicBoolean fail = new AtomicBoolean(true);
+        DataSetPreProcessor failing = new DataSetPreProcessor() {
+            @Override
+            public void preProcess(org.nd4j.linalg.dataset.api.DataSet ds) {
+                if (fail.get() && ds.getFeatures().getInt(0) == 7)
+                    throw new IllegalStateException("Test exception");
+            }
+        };
+
+        PipelinedDataSetIterator iter = new PipelinedDataSetIterator.Builder(sources(20))
+                .preProcessors(failing).build();
+
+        try {
+            while (iter.hasNext()) {
+                iter.next();
+            }
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertEquals("Test exception", e.getMessage());
+        }
+
+        //The failure of the previous epoch must not leak into the next one
+        fail.set(false);
+        iter.reset();
+        int cnt = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            cnt++;
+        }
+        assertEquals(20, cnt);
+        iter.shutdown();
+    }
+
+    @Test(timeout = 60000L)
+    public void testResetWithBlockedProducers() throws Exception {
+        PipelinedDataSetIterator iter = new PipelinedDataSetIterator.Builder(sources(100, 100))
+                .queueSize(2).build();
+
+        //Let all stages fill up, so that every worker is blocked on a full queue when reset() is called
+        iter.next();
+        Thread.sleep(300);
+        iter.reset();
+
+        int cnt = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            cnt++;
+        }
+        assertEquals(200, cnt);
+        iter.shutdown();
+    }
+
+    @Test(timeout = 60000L)
+    public void testResetWithHungReader() throws Exception {
+        final AtomicBoolean block = new AtomicBoolean(true);
+        final AtomicBoolean resetCalled = new AtomicBoolean(false);
+        List<DataSet> list = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            list.add(new DataSet(Nd4j.scalar((float) i).reshape(1, 1), Nd4j.scalar(1.0f).reshape(1, 1)));
+        }
+        DataSetIterator hung = new ListDataSetIterator<DataSet>(list, 1) {
+            @Override
+            public DataSet next() {
+                //Simulates non-interruptible I/O
+                while (block.get()) {
+                    Thread.yield();
+                }
+                return super.next();
+            }
+
+            @Override
+            public synchronized void reset() {
+                resetCalled.set(true);
+                super.reset();
+            }
+        };
+
+        PipelinedDataSetIterator iter = new PipelinedDataSetIterator.Builder(hung).build();
+        Thread.sleep(100);
+        resetCalled.set(false);
+
+        //The reader is still using the source: it must not be reset, and no second reader must be started
+        try {
+            iter.reset();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("did not terminate"));
+        }
+        assertFalse(resetCalled.get());
+
+        block.set(false);
+        iter.reset();
+        assertTrue(resetCalled.get());
+        int cnt = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            cnt++;
+        }
+        assertEquals(10, cnt);
+        iter.shutdown();
+    }
+
+    @Test(timeout = 60000L)
+    public void testQueueDepthBounded() throws Exception {
+        PipelinedDataSetIterator iter = new PipelinedDataSetIterator.Builder(sources(100, 100))
+                .queueSize(3).build();
+
+        //Nothing is consumed here, so all stages should fill up to their capacity
+        Thread.sleep(500);
+        assertEquals(3, iter.getQueueCapacity());
+        Map<Stage, Integer> depths = iter.getQueueDepths();
+        for (Stage s : Stage.values()) {
+            int d = depths.get(s);
+            assertTrue(s + ": " + d, d <= 3);
+        }
+        assertEquals(3, (int) depths.get(Stage.TRANSFER));
+
+        int cnt = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            cnt++;
+        }
+        assertEquals(200, cnt);
+        for (Stage s : Stage.values()) {
+            assertEquals(0, iter.getQueueDepth(s));
+        }
+        assertTrue(iter.getConsumerWaitTimeMs() >= 0);
+        iter.shutdown();
+    }
+}
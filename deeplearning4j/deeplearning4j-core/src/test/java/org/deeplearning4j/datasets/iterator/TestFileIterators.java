@@ -19,10 +19,13 @@ package org.deeplearning4j.datasets.iterator;
 import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.datasets.iterator.file.FileDataSetIterator;
 import org.deeplearning4j.datasets.iterator.file.FileMultiDataSetIterator;
+import org.deeplearning4j.datasets.iterator.file.MappedFileDataSetIterator;
+import org.deeplearning4j.datasets.iterator.file.MappedFileMultiDataSetIterator;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.MappedDataSetSerializer;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
@@ -267,4 +270,53 @@ public class TestFileIterators extends BaseDL4JTest {
         assertEquals(2, count); //2x15 = 30 examples
     }
 
+
+    @Test
+    public void testMappedFileIterators() throws Exception {
+        folder.create();
+        File src = folder.newFolder();
+        File dst = folder.newFolder();
+        File srcMds = folder.newFolder();
+        File dstMds = folder.newFolder();
+
+        Map<Double,DataSet> exp = new HashMap<>();
+        Map<Double,MultiDataSet> expMds = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            DataSet ds = new DataSet(Nd4j.linspace(10 * i + 1, 10 * i + 10, 10).reshape(10, 1),
+                    Nd4j.linspace(100 + 10 * i + 1, 100 + 10 * i + 10, 10).reshape(10, 1));
+            ds.save(new File(src, "d" + i + ".bin"));
+            exp.put(ds.getFeatures().getDouble(0), ds);
+
+            MultiDataSet mds = new org.nd4j.linalg.dataset.MultiDataSet(ds.getFeatures(), ds.getLabels());
+            mds.save(new File(srcMds, "d" + i + ".bin"));
+            expMds.put(ds.getFeatures().getDouble(0), mds);
+        }
+
+        assertEquals(3, MappedDataSetSerializer.convertDirectory(src, dst, false));
+        assertEquals(3, MappedDataSetSerializer.convertDirectory(srcMds, dstMds, true));
+
+        DataSetIterator iter = new MappedFileDataSetIterator(dst);
+        Map<Double,DataSet> act = new HashMap<>();
+        while (iter.hasNext()) {
+            DataSet d = iter.next();
+            act.put(d.getFeatures().getDouble(0), d);
+        }
+        assertEquals(exp, act);
+
+        MultiDataSetIterator iterMds = new MappedFileMultiDataSetIterator(dstMds);
+        Map<Double,MultiDataSet> actMds = new HashMap<>();
+        while (iterMds.hasNext()) {
+            MultiDataSet mds = iterMds.next();
+            actMds.put(mds.getFeatures(0).getDouble(0), mds);
+        }
+        assertEquals(expMds, actMds);
+
+        //Split and recombine
+        iter = new MappedFileDataSetIterator(dst, 15);
+        int count = 0;
+        while (iter.hasNext()) {
+            count += iter.next().numExamples();
+        }
+        assertEquals(30, count);
+    }
 }
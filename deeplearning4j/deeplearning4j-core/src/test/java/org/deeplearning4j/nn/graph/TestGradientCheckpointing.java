@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.graph;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.util.GradientCheckpointPlan;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestGradientCheckpointing extends BaseDL4JTest {
+
+    private static final int N_IN = 5;
+    private static final int N_OUT = 3;
+
+    /**
+     * ResNet style graph: dense layers with skip connections, some of which cross checkpoint boundaries
+     */
+    private static ComputationGraphConfiguration.GraphBuilder getGraph(WorkspaceMode wsm, double dropout) {
+        NeuralNetConfiguration.Builder b = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.DOUBLE)
+                .trainingWorkspaceMode(wsm)
+                .inferenceWorkspaceMode(wsm)
+                .updater(new Adam(1e-2))
+                .weightInit(WeightInit.XAVIER);
+        if (dropout > 0) {
+            b.dropOut(dropout);
+        }
+
+        return b.graphBuilder()
+                .addInputs("in")
+                .addLayer("d0", new DenseLayer.Builder().nIn(N_IN).nOut(8).activation(Activation.TANH).build(), "in")
+                .addLayer("d1", new DenseLayer.Builder().nIn(8).nOut(8).activation(Activation.TANH).build(), "d0")
+                .addLayer("d2", new DenseLayer.Builder().nIn(8).nOut(8).activation(Activation.TANH).build(), "d1")
+                .addVertex("add1", new ElementWiseVertex(ElementWiseVertex.Op.Add), "d0", "d2")
+                .addLayer("bn", new BatchNormalization.Builder().nOut(8).build(), "add1")
+                .addLayer("d3", new DenseLayer.Builder().nIn(8).nOut(8).activation(Activation.TANH).build(), "bn")
+                .addLayer("d4", new DenseLayer.Builder().nIn(8).nOut(8).activation(Activation.TANH).build(), "d3")
+                .addVertex("add2", new ElementWiseVertex(ElementWiseVertex.Op.Add), "add1", "d4")
+                .addLayer("d5", new DenseLayer.Builder().nIn(8).nOut(8).activation(Activation.TANH).build(), "add2")
+                .addLayer("out", new OutputLayer.Builder().nIn(8).nOut(N_OUT).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "d5")
+                .setOutputs("out");
+    }
+
+    private static DataSet getData(int minibatch) {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(DataType.DOUBLE, minibatch, N_IN);
+        INDArray l = Nd4j.zeros(DataType.DOUBLE, minibatch, N_OUT);
+        for (int i = 0; i < minibatch; i++) {
+            l.putScalar(i, i % N_OUT, 1.0);
+        }
+        return new DataSet(f, l);
+    }
+
+    @Test
+    public void testGradientsMatch() {
+        DataSet ds = getData(10);
+
+        for (WorkspaceMode wsm : WorkspaceMode.values()) {
+            ComputationGraph baseline = new ComputationGraph(getGraph(wsm, 0.0).build());
+            baseline.init();
+
+            ComputationGraphConfiguration[] confs = new ComputationGraphConfiguration[]{
+                    getGraph(wsm, 0.0).gradientCheckpoints("d1", "bn").build(),
+                    getGraph(wsm, 0.0).gradientCheckpoints("add2").build(),
+                    getGraph(wsm, 0.0).gradientCheckpointingAuto(true).build()
+            };
+
+            for (ComputationGraphConfiguration conf : confs) {
+                String msg = wsm + " - " + conf.getGradientCheckpoints() + " - auto=" + conf.isGradientCheckpointingAuto();
+                ComputationGraph net = new ComputationGraph(conf);
+                net.init(baseline.params().dup(), false);
+
+                baseline.setInput(0, ds.getFeatures());
+                baseline.setLabels(ds.getLabels());
+                baseline.computeGradientAndScore();
+
+                net.setInput(0, ds.getFeatures());
+                net.setLabels(ds.getLabels());
+                net.computeGradientAndScore();
+
+                assertEquals(msg, baseline.score(), net.score(), 1e-10);
+                assertEquals(msg, baseline.gradient().gradient(), net.gradient().gradient());
+
+                //Training should be unaffected also
+                ComputationGraph baseline2 = baseline.clone();
+                for (int i = 0; i < 3; i++) {
+                    baseline2.fit(ds);
+                    net.fit(ds);
+                }
+                assertEquals(msg, baseline2.params(), net.params());
+            }
+        }
+    }
+
+    @Test
+    public void testDropout() {
+        //Dropout masks must be the same when segments are recomputed during backprop - otherwise gradients would be
+        // inconsistent with the forward pass. Gradients should be deterministic given the RNG seed
+        DataSet ds = getData(10);
+        for (WorkspaceMode wsm : WorkspaceMode.values()) {
+            ComputationGraph net1 = new ComputationGraph(getGraph(wsm, 0.5).gradientCheckpoints("d1", "bn").build());
+            net1.init();
+            ComputationGraph net2 = net1.clone();
+
+            Nd4j.getRandom().setSeed(12345);
+            net1.setInput(0, ds.getFeatures());
+            net1.setLabels(ds.getLabels());
+            net1.computeGradientAndScore();
+
+            Nd4j.getRandom().setSeed(12345);
+            net2.setInput(0, ds.getFeatures());
+            net2.setLabels(ds.getLabels());
+            net2.computeGradientAndScore();
+
+            assertEquals(net1.score(), net2.score(), 1e-10);
+            assertEquals(net1.gradient().gradient(), net2.gradient().gradient());
+
+            for (int i = 0; i < 5; i++) {
+                net1.fit(ds);
+            }
+            assertFalse(net1.params().isNaN().any());
+        }
+    }
+
+    @Test
+    public void testRngStateRestored() {
+        //Segments are seeded for recomputation, but RNG sequence seen by everything else must not be affected:
+        //the only value taken from it is the seed for the segments
+        DataSet ds = getData(10);
+        ComputationGraph net = new ComputationGraph(getGraph(WorkspaceMode.ENABLED, 0.0).gradientCheckpoints("d1", "bn").build());
+        net.init();
+
+        Nd4j.getRandom().setSeed(12345);
+        net.setInput(0, ds.getFeatures());
+        net.setLabels(ds.getLabels());
+        net.computeGradientAndScore();
+        double afterCheckpointing = Nd4j.getRandom().nextDouble();
+
+        Nd4j.getRandom().setSeed(12345);
+        Nd4j.getRandom().nextLong();
+        double expected = Nd4j.getRandom().nextDouble();
+
+        assertEquals(expected, afterCheckpointing, 0.0);
+    }
+
+    @Test
+    public void testCheckpointPlan() {
+        ComputationGraph net = new ComputationGraph(getGraph(WorkspaceMode.ENABLED, 0.0).build());
+        net.init();
+        GraphVertex[] v = net.getVertices();
+        int[] topo = net.topologicalSortOrder();
+
+        GradientCheckpointPlan plan = GradientCheckpointPlan.build(v, topo, Arrays.asList("d1", "bn"));
+        assertEquals(2, plan.getNumSegments());
+
+        //d0 is used by add1 (segment 1): kept, and used when recomputing segment 1
+        int d0 = net.getVertex("d0").getVertexIndex();
+        assertEquals(0, plan.segmentOf(d0));
+        assertFalse(plan.isRecomputed(d0));
+        assertTrue(plan.isUsedForRecompute(d0));
+
+        //d2 is only used within segment 1: recomputed
+        int d2 = net.getVertex("d2").getVertexIndex();
+        assertEquals(1, plan.segmentOf(d2));
+        assertTrue(plan.isRecomputed(d2));
+
+        //add1 is used by add2 (not in any segment): kept, but not used for recomputation
+        int add1 = net.getVertex("add1").getVertexIndex();
+        assertFalse(plan.isRecomputed(add1));
+        assertFalse(plan.isUsedForRecompute(add1));
+
+        //Checkpoint itself is kept
+        int bn = net.getVertex("bn").getVertexIndex();
+        assertEquals(1, plan.segmentOf(bn));
+        assertFalse(plan.isRecomputed(bn));
+
+        assertEquals(-1, plan.segmentOf(net.getVertex("d5").getVertexIndex()));
+        assertEquals(-1, plan.segmentOf(net.getVertex("out").getVertexIndex()));
+
+        assertNull(GradientCheckpointPlan.build(v, topo, null));
+
+        //10 vertices before the output layer, 9 excluding the input -> every 3rd vertex
+        List<String> auto = GradientCheckpointPlan.selectCheckpoints(v, topo);
+        assertEquals(3, auto.size());
+    }
+
+    @Test
+    public void testInvalidCheckpoints() {
+        String[][] invalid = new String[][]{{"out"}, {"in"}, {"d1", "doesNotExist"}};
+        for (String[] cp : invalid) {
+            ComputationGraph net = new ComputationGraph(getGraph(WorkspaceMode.ENABLED, 0.0).gradientCheckpoints(cp).build());
+            try {
+                net.init();
+                fail("Expected exception for checkpoints " + Arrays.toString(cp));
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Invalid gradient checkpoint"));
+            }
+        }
+    }
+
+    @Test
+    public void testJsonRoundTrip() {
+        ComputationGraphConfiguration conf = getGraph(WorkspaceMode.ENABLED, 0.0).gradientCheckpoints("d1", "bn").build();
+        ComputationGraphConfiguration fromJson = ComputationGraphConfiguration.fromJson(conf.toJson());
+        assertEquals(conf, fromJson);
+        assertEquals(Arrays.asList("d1", "bn"), fromJson.getGradientCheckpoints());
+
+        conf = getGraph(WorkspaceMode.ENABLED, 0.0).gradientCheckpointingAuto(true).build();
+        fromJson = ComputationGraphConfiguration.fromJson(conf.toJson());
+        assertTrue(fromJson.isGradientCheckpointingAuto());
+        assertEquals(conf, fromJson.clone());
+    }
+}
@@ -38,6 +38,11 @@ import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.AdaGrad;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.IUpdater;
+import org.nd4j.linalg.learning.config.Nesterovs;
 import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 
@@ -46,8 +51,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
-import static org.junit.Assert.assertArrayEquals;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class EmbeddingLayerTest extends BaseDL4JTest {
 
@@ -356,6 +360,113 @@ public class EmbeddingLayerTest extends BaseDL4JTest {
         }
     }
 
+    @Test
+    public void testEmbeddingSparseGradients() {
+        //Sgd and AdaGrad updates are zero for rows that aren't used in the minibatch, so dense and sparse updates
+        // should give exactly the same parameters
+        int nClassesIn = 20;
+        int embeddingDim = 5;
+        int nOut = 3;
+        int batchSize = 4;
+        int inputLength = 3;
+
+        for (IUpdater u : new IUpdater[]{new Sgd(0.1), new AdaGrad(0.1)}) {
+            for (boolean sequence : new boolean[]{false, true}) {
+                MultiLayerNetwork dense = getSparseTestNet(sequence, false, u, nClassesIn, embeddingDim, nOut, inputLength);
+                MultiLayerNetwork sparse = getSparseTestNet(sequence, true, u, nClassesIn, embeddingDim, nOut, inputLength);
+                assertEquals(dense.params(), sparse.params());
+
+                Random r = new Random(12345);
+                for (int iter = 0; iter < 5; iter++) {
+                    INDArray in = sequence ? Nd4j.create(batchSize, inputLength) : Nd4j.create(batchSize, 1);
+                    INDArray labels = sequence ? Nd4j.create(batchSize, nOut, inputLength) : Nd4j.create(batchSize, nOut);
+                    for (int i = 0; i < batchSize; i++) {
+                        if (sequence) {
+                            for (int j = 0; j < inputLength; j++) {
+                                in.putScalar(i, j, r.nextInt(nClassesIn));
+                                labels.putScalar(new int[]{i, r.nextInt(nOut), j}, 1.0);
+                            }
+                        } else {
+                            in.putScalar(i, 0, r.nextInt(nClassesIn));
+                            labels.putScalar(i, r.nextInt(nOut), 1.0);
+                        }
+                    }
+
+                    dense.fit(in, labels);
+                    sparse.fit(in, labels);
+
+                    String msg = u.getClass().getSimpleName() + " - sequence=" + sequence + ", iter=" + iter;
+                    assertEquals(msg, dense.params(), sparse.params());
+                    assertEquals(msg, dense.getUpdater().getStateViewArray(), sparse.getUpdater().getStateViewArray());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmbeddingSparseGradientsLazyAdam() {
+        //With lazy (sparse) Adam, rows that are never used must never be modified
+        int nClassesIn = 20;
+        int embeddingDim = 5;
+        int nOut = 3;
+        int batchSize = 4;
+
+        MultiLayerNetwork net = getSparseTestNet(false, true, new Adam(0.01), nClassesIn, embeddingDim, nOut, 1);
+        INDArray initialW = net.getParam("0_W").dup();
+
+        Random r = new Random(12345);
+        for (int iter = 0; iter < 5; iter++) {
+            INDArray in = Nd4j.create(batchSize, 1);
+            INDArray labels = Nd4j.create(batchSize, nOut);
+            for (int i = 0; i < batchSize; i++) {
+                in.putScalar(i, 0, r.nextInt(nClassesIn / 2));
+                labels.putScalar(i, r.nextInt(nOut), 1.0);
+            }
+            net.fit(in, labels);
+        }
+
+        INDArray w = net.getParam("0_W");
+        assertNotEquals(initialW.get(NDArrayIndex.interval(0, nClassesIn / 2), NDArrayIndex.all()),
+                w.get(NDArrayIndex.interval(0, nClassesIn / 2), NDArrayIndex.all()));
+        assertEquals(initialW.get(NDArrayIndex.interval(nClassesIn / 2, nClassesIn), NDArrayIndex.all()),
+                w.get(NDArrayIndex.interval(nClassesIn / 2, nClassesIn), NDArrayIndex.all()));
+    }
+
+    @Test
+    public void testEmbeddingSparseGradientsUnsupportedUpdater() {
+        MultiLayerNetwork net = getSparseTestNet(false, true, new Nesterovs(0.1, 0.9), 10, 5, 3, 1);
+        try {
+            net.fit(Nd4j.create(new double[][]{{1}, {2}}), Nd4j.create(new double[][]{{1, 0, 0}, {0, 1, 0}}));
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("sparse gradients"));
+        }
+    }
+
+    private static MultiLayerNetwork getSparseTestNet(boolean sequence, boolean sparseGradients, IUpdater updater,
+                                                      int nIn, int embeddingDim, int nOut, int inputLength) {
+        NeuralNetConfiguration.ListBuilder b = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.DOUBLE)
+                .activation(Activation.TANH)
+                .updater(updater)
+                .list();
+        if (sequence) {
+            b.layer(new EmbeddingSequenceLayer.Builder().inputLength(inputLength).sparseGradients(sparseGradients)
+                    .nIn(nIn).nOut(embeddingDim).build())
+                    .layer(new RnnOutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(embeddingDim).nOut(nOut)
+                            .activation(Activation.SOFTMAX).build());
+        } else {
+            b.layer(new EmbeddingLayer.Builder().sparseGradients(sparseGradients).nIn(nIn).nOut(embeddingDim).build())
+                    .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(embeddingDim).nOut(nOut)
+                            .activation(Activation.SOFTMAX).build());
+        }
+
+        MultiLayerNetwork net = new MultiLayerNetwork(b.build());
+        net.init();
+        return net;
+    }
+
     @Test
     public void testEmbeddingLayerRNN() {
 
@@ -18,6 +18,8 @@ package org.deeplearning4j.nn.layers.recurrent;
 
 import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.TestUtils;
+import org.deeplearning4j.config.DL4JSystemProperties;
+import org.deeplearning4j.nn.conf.BackpropType;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.dropout.TestDropout;
@@ -36,6 +38,7 @@ import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.NoOp;
+import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.nd4j.linalg.primitives.Pair;
 
@@ -238,4 +241,78 @@ public class TestRnnLayers extends BaseDL4JTest {
 
 
     }
+
+    @Test
+    public void testFusedLSTMHelper() {
+        //Fused helper should give the same activations and gradients as the built-in implementation
+        int nIn = 4;
+        int layerSize = 5;
+        int nOut = 3;
+        int mb = 3;
+        int tsLength = 7;
+
+        for (boolean tbptt : new boolean[]{false, true}) {
+            MultiLayerNetwork net = getFusedTestNet(false, tbptt, nIn, layerSize, nOut);
+            MultiLayerNetwork netFused = getFusedTestNet(true, tbptt, nIn, layerSize, nOut);
+            assertTrue(((org.deeplearning4j.nn.layers.recurrent.LSTM) netFused.getLayer(0)).getHelper() instanceof FusedLSTMHelper);
+            assertEquals(null, ((org.deeplearning4j.nn.layers.recurrent.LSTM) net.getLayer(0)).getHelper());
+            netFused.setParams(net.params().dup());
+
+            INDArray in = Nd4j.rand(DataType.DOUBLE, mb, nIn, tsLength);
+            INDArray labels = TestUtils.randomOneHotTimeSeries(mb, nOut, tsLength);
+
+            assertEquals(net.output(in), netFused.output(in));
+
+            if (tbptt) {
+                net.fit(in, labels);
+                netFused.fit(in, labels);
+                assertEquals(net.params(), netFused.params());
+            } else {
+                net.setInput(in);
+                net.setLabels(labels);
+                netFused.setInput(in);
+                netFused.setLabels(labels);
+                net.computeGradientAndScore();
+                netFused.computeGradientAndScore();
+
+                assertEquals(net.score(), netFused.score(), 1e-10);
+                for (String s : net.gradient().gradientForVariable().keySet()) {
+                    INDArray exp = net.gradient().gradientForVariable().get(s);
+                    INDArray act = netFused.gradient().gradientForVariable().get(s);
+                    assertTrue(s, exp.equalsWithEps(act, 1e-8));
+                }
+
+                //Epsilons for the layer below
+                net.getLayer(0).setInput(in, LayerWorkspaceMgr.noWorkspaces());
+                netFused.getLayer(0).setInput(in, LayerWorkspaceMgr.noWorkspaces());
+                INDArray eps = Nd4j.rand(DataType.DOUBLE, mb, layerSize, tsLength);
+                INDArray expEps = net.getLayer(0).backpropGradient(eps, LayerWorkspaceMgr.noWorkspaces()).getSecond();
+                INDArray actEps = netFused.getLayer(0).backpropGradient(eps, LayerWorkspaceMgr.noWorkspaces()).getSecond();
+                assertTrue(expEps.equalsWithEps(actEps, 1e-8));
+            }
+        }
+    }
+
+    private static MultiLayerNetwork getFusedTestNet(boolean fused, boolean tbptt, int nIn, int layerSize, int nOut) {
+        NeuralNetConfiguration.ListBuilder lb = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .updater(new Sgd(0.1))
+                .seed(12345)
+                .list()
+                .layer(new LSTM.Builder().nIn(nIn).nOut(layerSize).activation(Activation.TANH).build())
+                .layer(new RnnOutputLayer.Builder().nIn(layerSize).nOut(nOut).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build());
+        if (tbptt)
+            lb.backpropType(BackpropType.TruncatedBPTT).tBPTTForwardLength(4).tBPTTBackwardLength(3);
+
+        if (fused)
+            System.setProperty(DL4JSystemProperties.LSTM_FUSED_HELPER_PROPERTY, "true");
+        try {
+            MultiLayerNetwork net = new MultiLayerNetwork(lb.build());
+            net.init();
+            return net;
+        } finally {
+            System.clearProperty(DL4JSystemProperties.LSTM_FUSED_HELPER_PROPERTY);
+        }
+    }
 }
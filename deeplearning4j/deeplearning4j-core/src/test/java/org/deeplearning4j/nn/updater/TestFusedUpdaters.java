@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.updater;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.config.DL4JSystemProperties;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.FusedGradientUpdater;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.IUpdater;
+import org.nd4j.linalg.learning.config.Nesterovs;
+import org.nd4j.linalg.learning.config.RmsProp;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.Assert.*;
+
+public class TestFusedUpdaters extends BaseDL4JTest {
+
+    @After
+    public void after() {
+        System.clearProperty(DL4JSystemProperties.UPDATER_FUSED_PROPERTY);
+    }
+
+    private static MultiLayerConfiguration getConf(IUpdater updater, double l1, double l2, double wd, int nIn, int layerSize, int nOut) {
+        NeuralNetConfiguration.Builder b = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.DOUBLE)
+                .updater(updater)
+                .weightInit(WeightInit.XAVIER);
+        //Same regularization for weights and biases: otherwise, blocks can't be fused
+        if (l1 > 0)
+            b.l1(l1).l1Bias(l1);
+        if (l2 > 0)
+            b.l2(l2).l2Bias(l2);
+        if (wd > 0)
+            b.weightDecay(wd).weightDecayBias(wd);
+
+        return b.list()
+                .layer(new DenseLayer.Builder().nIn(nIn).nOut(layerSize).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nIn(layerSize).nOut(layerSize).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(layerSize).nOut(nOut).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+    }
+
+    @Test
+    public void testFusedVsNonFused() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(DataType.DOUBLE, 16, 10).subi(0.5);
+        INDArray l = Nd4j.zeros(DataType.DOUBLE, 16, 3);
+        for (int i = 0; i < 16; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+
+        IUpdater[] updaters = {new Adam(1e-2), new Nesterovs(1e-2, 0.9), new RmsProp(1e-2)};
+        double[][] regularization = {{0, 0, 0}, {1e-3, 0, 0}, {0, 1e-2, 0}, {0, 0, 1e-2}, {1e-3, 1e-2, 1e-2}};
+
+        for (IUpdater u : updaters) {
+            for (double[] reg : regularization) {
+                String msg = u.getClass().getSimpleName() + " - l1=" + reg[0] + ", l2=" + reg[1] + ", wd=" + reg[2];
+
+                System.setProperty(DL4JSystemProperties.UPDATER_FUSED_PROPERTY, "false");
+                MultiLayerNetwork netNonFused = new MultiLayerNetwork(getConf(u.clone(), reg[0], reg[1], reg[2], 10, 16, 3));
+                netNonFused.init();
+                for (int i = 0; i < 10; i++) {
+                    netNonFused.fit(f, l);
+                }
+
+                System.setProperty(DL4JSystemProperties.UPDATER_FUSED_PROPERTY, "true");
+                MultiLayerNetwork netFused = new MultiLayerNetwork(getConf(u.clone(), reg[0], reg[1], reg[2], 10, 16, 3));
+                netFused.init();
+                for (int i = 0; i < 10; i++) {
+                    netFused.fit(f, l);
+                }
+
+                BaseMultiLayerUpdater updater = (BaseMultiLayerUpdater) netFused.getUpdater();
+                UpdaterBlock ub = (UpdaterBlock) updater.getUpdaterBlocks().get(0);
+                assertTrue(msg, ub.getGradientUpdater() instanceof FusedGradientUpdater);
+                assertNotNull(msg, ub.getParamView());
+                assertNotNull(msg, ub.fusedRegularization(0, 0));
+
+                assertTrue(msg, netNonFused.params().equalsWithEps(netFused.params(), 1e-8));
+                assertTrue(msg, netNonFused.getUpdater().getStateViewArray().equalsWithEps(
+                        netFused.getUpdater().getStateViewArray(), 1e-8));
+            }
+        }
+    }
+
+    @Test
+    public void testNonFusableRegularization() {
+        //Different regularization for weights and biases in the same block: should fall back to non-fused updates
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.DOUBLE)
+                .updater(new Adam(1e-2))
+                .l2(1e-2)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(16).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(16).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        BaseMultiLayerUpdater updater = (BaseMultiLayerUpdater) net.getUpdater();
+        UpdaterBlock ub = (UpdaterBlock) updater.getUpdaterBlocks().get(0);
+        assertNull(ub.fusedRegularization(0, 0));
+
+        INDArray f = Nd4j.rand(DataType.DOUBLE, 8, 10);
+        INDArray l = Nd4j.zeros(DataType.DOUBLE, 8, 3);
+        for (int i = 0; i < 8; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+        INDArray paramsBefore = net.params().dup();
+        net.fit(f, l);
+        assertNotEquals(paramsBefore, net.params());
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkFusedUpdaters() {
+        INDArray f = Nd4j.rand(DataType.FLOAT, 32, 512);
+        INDArray l = Nd4j.zeros(DataType.FLOAT, 32, 10);
+        for (int i = 0; i < 32; i++) {
+            l.putScalar(i, i % 10, 1.0);
+        }
+
+        for (String fused : new String[]{"false", "true"}) {
+            System.setProperty(DL4JSystemProperties.UPDATER_FUSED_PROPERTY, fused);
+            MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                    .seed(12345)
+                    .dataType(DataType.FLOAT)
+                    .updater(new Adam(1e-3))
+                    .l2(1e-4).l2Bias(1e-4)
+                    .weightDecay(1e-4).weightDecayBias(1e-4)
+                    .list()
+                    .layer(new DenseLayer.Builder().nIn(512).nOut(1024).activation(Activation.RELU).build())
+                    .layer(new DenseLayer.Builder().nIn(1024).nOut(1024).activation(Activation.RELU).build())
+                    .layer(new OutputLayer.Builder().nIn(1024).nOut(10).activation(Activation.SOFTMAX)
+                            .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                    .build();
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init();
+
+            for (int i = 0; i < 20; i++) {
+                net.fit(f, l);
+            }
+
+            int iter = 200;
+            long start = System.nanoTime();
+            for (int i = 0; i < iter; i++) {
+                net.fit(f, l);
+            }
+            long end = System.nanoTime();
+            System.out.println("Fused: " + fused + " - " + (end - start) / iter / 1000 + " us per iteration");
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.updater;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MixedPrecision;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.optimize.solvers.accumulation.EncodedGradientsAccumulator;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import static org.junit.Assert.*;
+
+public class TestMixedPrecision extends BaseDL4JTest {
+
+    private static MultiLayerConfiguration getConf(DataType dataType, MixedPrecision mixedPrecision, int nIn, int layerSize, int nOut) {
+        return new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(dataType)
+                .mixedPrecision(mixedPrecision)
+                .updater(new Adam(1e-2))
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(nIn).nOut(layerSize).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nIn(layerSize).nOut(layerSize).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(layerSize).nOut(nOut).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+    }
+
+    @Test
+    public void testMixedPrecisionMLN() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(DataType.FLOAT, 16, 10).subi(0.5);
+        INDArray l = Nd4j.zeros(DataType.FLOAT, 16, 3);
+        for (int i = 0; i < 16; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+
+        MultiLayerNetwork netFloat = new MultiLayerNetwork(getConf(DataType.FLOAT, null, 10, 32, 3));
+        netFloat.init();
+
+        MixedPrecision mp = MixedPrecision.builder().initialScale(1024).build();
+        MultiLayerNetwork netMixed = new MultiLayerNetwork(getConf(DataType.HALF, mp, 10, 32, 3));
+        netMixed.init();
+        netMixed.setParams(netFloat.params().castTo(DataType.HALF));
+
+        INDArray fHalf = f.castTo(DataType.HALF);
+        INDArray lHalf = l.castTo(DataType.HALF);
+        for (int i = 0; i < 20; i++) {
+            netFloat.fit(f, l);
+            netMixed.fit(fHalf, lHalf);
+        }
+
+        BaseMultiLayerUpdater u = (BaseMultiLayerUpdater) netMixed.getUpdater();
+        assertTrue(u.isMixedPrecision());
+        assertEquals(0, u.getSkippedIterations());
+        assertEquals(1024.0, netMixed.getLossScale(), 0.0);
+
+        //Network params/gradients are HALF, master params and updater state are FLOAT
+        assertEquals(DataType.HALF, netMixed.params().dataType());
+        assertEquals(DataType.HALF, netMixed.getFlattenedGradients().dataType());
+        assertEquals(DataType.FLOAT, u.getMasterParams().dataType());
+        assertEquals(DataType.FLOAT, u.getStateViewArray().dataType());
+        assertEquals(u.getMasterParams().castTo(DataType.HALF), netMixed.params());
+
+        //Master params should track all-FLOAT training closely
+        INDArray absDiff = Transforms.abs(u.getMasterParams().sub(netFloat.params()));
+        double maxAbs = Transforms.abs(netFloat.params()).maxNumber().doubleValue();
+        double maxRelError = absDiff.maxNumber().doubleValue() / maxAbs;
+        assertTrue("Max relative error: " + maxRelError, maxRelError < 0.05);
+
+        //Score should have decreased as for all-FLOAT training
+        double scoreFloat = netFloat.score(new DataSet(f, l));
+        double scoreMixed = netMixed.score(new DataSet(fHalf, lHalf));
+        assertEquals(scoreFloat, scoreMixed, 0.05);
+    }
+
+    @Test
+    public void testMixedPrecisionOverflowSkipsUpdate() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(DataType.HALF, 16, 10);
+        INDArray l = Nd4j.zeros(DataType.HALF, 16, 3);
+        for (int i = 0; i < 16; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+
+        //Loss scale far above max HALF value (65504): scaled gradients overflow
+        MixedPrecision mp = MixedPrecision.builder().initialScale(1e8).scaleRange(1.0, 1e8).build();
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(DataType.HALF, mp, 10, 32, 3));
+        net.init();
+
+        INDArray paramsBefore = net.params().dup();
+        net.fit(f, l);
+
+        BaseMultiLayerUpdater u = (BaseMultiLayerUpdater) net.getUpdater();
+        assertEquals(1, u.getSkippedIterations());
+        assertEquals(5e7, net.getLossScale(), 0.0);
+        assertEquals(paramsBefore, net.params());
+        assertEquals(paramsBefore.castTo(DataType.FLOAT), u.getMasterParams());
+
+        //Loss scale should keep decreasing until the gradients no longer overflow, then updates should be applied
+        for (int i = 0; i < 40; i++) {
+            net.fit(f, l);
+        }
+        assertTrue(net.getLossScale() < 65504);
+        assertTrue(u.getSkippedIterations() < 41);
+        assertNotEquals(paramsBefore, net.params());
+        assertFalse(net.params().isInfinite().any() || net.params().isNaN().any());
+    }
+
+    @Test
+    public void testLossScaleGrowth() {
+        INDArray f = Nd4j.rand(DataType.HALF, 8, 10);
+        INDArray l = Nd4j.zeros(DataType.HALF, 8, 3);
+        for (int i = 0; i < 8; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+
+        MixedPrecision mp = MixedPrecision.builder().initialScale(4).scaleWindow(5).build();
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(DataType.HALF, mp, 10, 16, 3));
+        net.init();
+
+        for (int i = 0; i < 10; i++) {
+            net.fit(f, l);
+        }
+        assertEquals(16.0, net.getLossScale(), 0.0);
+    }
+
+    @Test
+    public void testMixedPrecisionCG() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(DataType.HALF, 16, 10).subi(0.5);
+        INDArray l = Nd4j.zeros(DataType.HALF, 16, 3);
+        for (int i = 0; i < 16; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+
+        MixedPrecision mp = MixedPrecision.builder().initialScale(1024).build();
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.HALF)
+                .mixedPrecision(mp)
+                .updater(new Adam(1e-2))
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("0", new DenseLayer.Builder().nIn(10).nOut(32).activation(Activation.TANH).build(), "in")
+                .addLayer("out", new OutputLayer.Builder().nIn(32).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "0")
+                .setOutputs("out")
+                .build();
+
+        assertEquals(mp, conf.getMixedPrecision());
+        assertEquals(conf, ComputationGraphConfiguration.fromJson(conf.toJson()));
+
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+
+        double scoreBefore = cg.score(new DataSet(f, l));
+        for (int i = 0; i < 20; i++) {
+            cg.fit(new INDArray[]{f}, new INDArray[]{l});
+        }
+        double scoreAfter = cg.score(new DataSet(f, l));
+        assertTrue(scoreAfter < scoreBefore);
+
+        ComputationGraphUpdater u = cg.getUpdater();
+        assertTrue(u.isMixedPrecision());
+        assertEquals(DataType.FLOAT, u.getMasterParams().dataType());
+        assertEquals(u.getMasterParams().castTo(DataType.HALF), cg.params());
+
+        //Setting params externally should also update the master params
+        INDArray newParams = Nd4j.rand(DataType.HALF, cg.params().shape());
+        cg.setParams(newParams);
+        assertEquals(newParams.castTo(DataType.FLOAT), u.getMasterParams());
+    }
+
+    @Test(expected = DL4JInvalidConfigException.class)
+    public void testMixedPrecisionGradientsSharingMLN() {
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(DataType.HALF, MixedPrecision.builder().build(), 10, 32, 3));
+        net.init();
+
+        // updates are applied to master parameters, so there would be nothing to share
+        net.setGradientsAccumulator(new EncodedGradientsAccumulator(1, 1e-3));
+    }
+
+    @Test(expected = DL4JInvalidConfigException.class)
+    public void testMixedPrecisionGradientsSharingCG() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.HALF)
+                .mixedPrecision(MixedPrecision.builder().build())
+                .updater(new Adam(1e-2))
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("out", new OutputLayer.Builder().nIn(10).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "in")
+                .setOutputs("out")
+                .build();
+
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        net.setGradientsAccumulator(new EncodedGradientsAccumulator(1, 1e-3));
+    }
+
+    @Test
+    public void testMixedPrecisionJson() {
+        MixedPrecision mp = MixedPrecision.builder().initialScale(256).scaleWindow(100).scaleFactor(4).build();
+        MultiLayerConfiguration conf = getConf(DataType.HALF, mp, 10, 16, 3);
+        assertEquals(mp, conf.getMixedPrecision());
+
+        MultiLayerConfiguration fromJson = MultiLayerConfiguration.fromJson(conf.toJson());
+        assertEquals(conf, fromJson);
+        assertEquals(mp, fromJson.getMixedPrecision());
+        assertEquals(mp, conf.clone().getMixedPrecision());
+    }
+
+    @Test
+    @Ignore("Benchmark - run manually")
+    public void benchmarkMixedPrecisionVsFloat() {
+        int nIn = 784;
+        int layerSize = 2048;
+        int nOut = 10;
+        int warmup = 10;
+        int iterations = 50;
+
+        for (int minibatch : new int[]{128, 256}) {
+            INDArray f = Nd4j.rand(DataType.FLOAT, minibatch, nIn);
+            INDArray l = Nd4j.zeros(DataType.FLOAT, minibatch, nOut);
+            for (int i = 0; i < minibatch; i++) {
+                l.putScalar(i, i % nOut, 1.0);
+            }
+
+            MultiLayerNetwork netFloat = new MultiLayerNetwork(getConf(DataType.FLOAT, null, nIn, layerSize, nOut));
+            netFloat.init();
+            MultiLayerNetwork netMixed = new MultiLayerNetwork(getConf(DataType.HALF, MixedPrecision.builder().build(), nIn, layerSize, nOut));
+            netMixed.init();
+
+            long floatMs = time(netFloat, f, l, warmup, iterations);
+            long mixedMs = time(netMixed, f.castTo(DataType.HALF), l.castTo(DataType.HALF), warmup, iterations);
+
+            System.out.println("Minibatch " + minibatch + ": FLOAT " + (floatMs / (double) iterations)
+                    + " ms/iter, mixed precision (HALF/FLOAT) " + (mixedMs / (double) iterations) + " ms/iter");
+        }
+    }
+
+    private static long time(MultiLayerNetwork net, INDArray f, INDArray l, int warmup, int iterations) {
+        for (int i = 0; i < warmup; i++) {
+            net.fit(f, l);
+        }
+        Nd4j.getExecutioner().commit();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            net.fit(f, l);
+        }
+        Nd4j.getExecutioner().commit();
+        return System.currentTimeMillis() - start;
+    }
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimizer.listener;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.impl.IrisDataSetIterator;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.GradientNormalization;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.api.StepPhase;
+import org.deeplearning4j.optimize.listeners.StepTimeBreakdownListener;
+import org.deeplearning4j.optimize.listeners.StepTimeBreakdownListener.Histogram;
+import org.deeplearning4j.optimize.listeners.StepTimeBreakdownListener.IterationRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TestStepTimeBreakdownListener extends BaseDL4JTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void testMultiLayerNetwork() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .updater(new Adam(0.01))
+                .gradientNormalization(GradientNormalization.ClipElementWiseAbsoluteValue)
+                .gradientNormalizationThreshold(1.0)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).name("dense0").build())
+                .layer(new DenseLayer.Builder().nIn(5).nOut(5).activation(Activation.TANH).name("dense1").build())
+                .layer(new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).name("out").build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        StepTimeBreakdownListener l = new StepTimeBreakdownListener();
+        net.setListeners(l);
+
+        DataSetIterator iter = new IrisDataSetIterator(30, 150);
+        net.fit(iter);
+        net.fit(iter);
+
+        checkListener(l, 10, new String[]{"dense0", "dense1"}, new String[]{"dense0", "dense1", "out"});
+    }
+
+    @Test
+    public void testComputationGraph() throws Exception {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .updater(new Adam(0.01))
+                .gradientNormalization(GradientNormalization.RenormalizeL2PerLayer)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("dense0", new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build(), "in")
+                .addLayer("dense1", new DenseLayer.Builder().nIn(5).nOut(5).activation(Activation.TANH).build(), "dense0")
+                .addLayer("out", new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "dense1")
+                .setOutputs("out")
+                .build();
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        StepTimeBreakdownListener l = new StepTimeBreakdownListener();
+        net.setListeners(l);
+
+        DataSetIterator iter = new IrisDataSetIterator(30, 150);
+        net.fit(iter);
+        net.fit(iter);
+
+        checkListener(l, 10, new String[]{"dense0", "dense1"}, new String[]{"dense0", "dense1", "out"});
+    }
+
+    private void checkListener(StepTimeBreakdownListener l, int numIter, String[] fwdLayers, String[] bwdLayers) throws Exception {
+        for (StepPhase p : StepPhase.values()) {
+            Histogram h = l.getHistogram(p);
+            assertNotNull(p.toString(), h);
+            assertEquals(p.toString(), numIter, h.getCount());
+        }
+        for (StepPhase p : new StepPhase[]{StepPhase.FORWARD, StepPhase.BACKWARD, StepPhase.UPDATER, StepPhase.LISTENERS}) {
+            assertTrue(p.toString(), l.getHistogram(p).getTotalMs() > 0);
+        }
+        assertEquals(numIter, l.getHistograms().get(StepTimeBreakdownListener.TOTAL).getCount());
+
+        for (String s : fwdLayers) {
+            Histogram h = l.getHistogram(StepPhase.FORWARD, s);
+            assertNotNull(s, h);
+            assertEquals(s, numIter, h.getCount());
+        }
+        for (String s : bwdLayers) {
+            Histogram h = l.getHistogram(StepPhase.BACKWARD, s);
+            assertNotNull(s, h);
+            assertEquals(s, numIter, h.getCount());
+        }
+
+        //Phases plus OTHER should cover the whole iteration
+        List<IterationRecord> iters = l.getIterations();
+        assertEquals(numIter, iters.size());
+        for (IterationRecord r : iters) {
+            long sum = r.getOtherNanos();
+            for (StepPhase p : StepPhase.values()) {
+                assertTrue(r.getNanos(p) >= 0);
+                sum += r.getNanos(p);
+            }
+            assertTrue(sum >= r.getTotalNanos());
+        }
+
+        String summary = l.summary();
+        assertTrue(summary, summary.contains("FORWARD/dense0"));
+
+        File csv = tempDir.newFile("breakdown.csv");
+        l.exportCsv(csv);
+        List<String> lines = Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8);
+        assertEquals(numIter + 1, lines.size());
+        assertTrue(lines.get(0).startsWith("iteration,epoch,total_ms,data_wait_ms,forward_ms"));
+
+        File json = tempDir.newFile("breakdown.json");
+        l.exportJson(json);
+        Map<String, Object> m = new ObjectMapper().readValue(json, Map.class);
+        assertTrue(((Map) m.get("histograms")).containsKey("BACKWARD/dense1"));
+        assertEquals(numIter, ((List) m.get("iterations")).size());
+
+        l.reset();
+        assertNull(l.getHistogram(StepPhase.FORWARD));
+        assertTrue(l.getIterations().isEmpty());
+    }
+}
@@ -0,0 +1,382 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator;
+
+import lombok.NonNull;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.*;
+
+/**
+ * Sequence length bucketing iterator, for training RNNs on variable length sequences.<br>
+ * Iterators such as SequenceRecordReaderDataSetIterator pad each minibatch to the longest sequence in it: when sequence
+ * lengths are highly skewed, most of the computation is spent on padding. This iterator wraps such an iterator, splits
+ * its minibatches into individual examples, removes their padding, and groups them into buckets by (unpadded) sequence
+ * length. Minibatches are then created from examples of a single bucket only, and are padded (with masks) only to the
+ * longest sequence in that minibatch.<br>
+ * <br>
+ * Examples are processed in shards: up to {@link Builder#shardSize(int)} examples are read from the underlying iterator,
+ * assigned to buckets, and full minibatches are returned in bucket order. Remaining examples are kept in their buckets
+ * for the next shard, and returned as (possibly smaller) minibatches once the underlying iterator is exhausted.
+ * Optionally, examples can be sorted by length within each shard. Sorting is stable, so for a deterministic underlying
+ * iterator the output of this iterator is also deterministic.<br>
+ * <br>
+ * Sequence length is determined from the feature and label masks (both start and end padding is supported, i.e., both
+ * ALIGN_START and ALIGN_END alignment modes); sequences without masks are assumed to be unpadded. Non time series
+ * (rank 2) features are supported, but are not bucketed.<br>
+ * Note that returned minibatches are usually smaller than the underlying iterator's minibatches at the end of the epoch,
+ * and examples are reordered (but not shuffled) compared to the underlying iterator.
+ */
+public class BucketingDataSetIterator implements DataSetIterator {
+
+    protected final DataSetIterator underlying;
+    protected final int batchSize;
+    protected final int[] bucketBoundaries;
+    protected final int bucketWidth;
+    protected final int shardSize;
+    protected final boolean sortWithinShards;
+    protected DataSetPreProcessor preProcessor;
+
+    protected final TreeMap<Integer, List<Example>> buckets = new TreeMap<>();
+    protected final LinkedList<DataSet> ready = new LinkedList<>();
+
+    protected BucketingDataSetIterator(Builder builder) {
+        this.underlying = builder.underlying;
+        this.batchSize = builder.batchSize;
+        this.bucketBoundaries = builder.bucketBoundaries;
+        this.bucketWidth = builder.bucketWidth;
+        this.shardSize = builder.shardSize > 0 ? builder.shardSize : 10 * builder.batchSize;
+        this.sortWithinShards = builder.sortWithinShards;
+    }
+
+    /**
+     * @param length Sequence length
+     * @return Index of the bucket for sequences of the specified length
+     */
+    public int bucketFor(int length) {
+        if (bucketBoundaries != null) {
+            for (int i = 0; i < bucketBoundaries.length; i++) {
+                if (length <= bucketBoundaries[i])
+                    return i;
+            }
+            return bucketBoundaries.length;
+        }
+        return Math.max(0, length - 1) / bucketWidth;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (ready.isEmpty())
+            fillReady();
+        return !ready.isEmpty();
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+
+        DataSet ds = ready.removeFirst();
+        if (preProcessor != null)
+            preProcessor.preProcess(ds);
+        return ds;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    protected void fillReady() {
+        while (ready.isEmpty()) {
+            List<Example> shard = new ArrayList<>();
+            while (shard.size() < shardSize && underlying.hasNext()) {
+                DataSet next = underlying.next();
+                if (next == null || next.isEmpty())
+                    continue;
+
+                try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                    //Examples are kept across calls of the underlying iterator, so they must not be in its workspaces
+                    for (DataSet ex : next.asList())
+                        shard.add(trim(ex));
+                }
+            }
+            boolean exhausted = !underlying.hasNext();
+
+            if (sortWithinShards) {
+                Collections.sort(shard, new Comparator<Example>() {
+                    @Override
+                    public int compare(Example e1, Example e2) {
+                        return Integer.compare(e1.length, e2.length);
+                    }
+                });
+            }
+
+            for (Example e : shard) {
+                int b = bucketFor(e.length);
+                List<Example> l = buckets.get(b);
+                if (l == null) {
+                    l = new ArrayList<>();
+                    buckets.put(b, l);
+                }
+                l.add(e);
+            }
+
+            for (List<Example> l : buckets.values()) {
+                while (l.size() >= batchSize || (exhausted && !l.isEmpty())) {
+                    List<Example> batch = l.subList(0, Math.min(batchSize, l.size()));
+                    ready.add(merge(batch));
+                    batch.clear();
+                }
+            }
+
+            if (exhausted)
+                break;
+        }
+    }
+
+    protected DataSet merge(List<Example> examples) {
+        List<DataSet> l = new ArrayList<>(examples.size());
+        for (Example e : examples)
+            l.add(e.dataSet);
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            return DataSet.merge(l);
+        }
+    }
+
+    /**
+     * Remove the padding from a single example (as determined by the masks), and detach it from the underlying
+     * iterator's minibatch
+     */
+    protected Example trim(DataSet ex) {
+        INDArray f = ex.getFeatures();
+        INDArray l = ex.getLabels();
+        INDArray fm = ex.getFeaturesMaskArray();
+        INDArray lm = ex.getLabelsMaskArray();
+
+        boolean fSeq = f != null && f.rank() == 3;
+        boolean lSeq = l != null && l.rank() == 3;
+        if (!fSeq && !lSeq)
+            return new Example(new DataSet(dup(f), dup(l), dup(fm), dup(lm)), 1);
+
+        long tsLength = fSeq ? f.size(2) : l.size(2);
+        if (fSeq && lSeq && f.size(2) != l.size(2)) {
+            //Different feature and label lengths: can't trim both consistently, only bucket by feature length
+            int[] r = maskRange(fm, tsLength);
+            return new Example(new DataSet(dup(f), dup(l), dup(fm), dup(lm)), r[1] - r[0]);
+        }
+
+        int start = Integer.MAX_VALUE;
+        int end = 0;
+        if (fSeq) {
+            int[] r = maskRange(fm, tsLength);
+            start = Math.min(start, r[0]);
+            end = Math.max(end, r[1]);
+        }
+        if (lSeq) {
+            int[] r = maskRange(lm, tsLength);
+            start = Math.min(start, r[0]);
+            end = Math.max(end, r[1]);
+        }
+        if (end <= start) {
+            //Fully masked example - keep a single time step, so it can still be merged
+            start = 0;
+            end = 1;
+        }
+
+        if (start == 0 && end == tsLength)
+            return new Example(new DataSet(dup(f), dup(l), dup(fm), dup(lm)), end - start);
+
+        return new Example(new DataSet(
+                fSeq ? trimTimeSeries(f, start, end) : dup(f),
+                lSeq ? trimTimeSeries(l, start, end) : dup(l),
+                fSeq ? trimMask(fm, start, end) : dup(fm),
+                lSeq ? trimMask(lm, start, end) : dup(lm)), end - start);
+    }
+
+    /**
+     * @return First and last (exclusive) unmasked time step, or [0, tsLength] if mask is null
+     */
+    protected static int[] maskRange(INDArray mask, long tsLength) {
+        if (mask == null)
+            return new int[]{0, (int) tsLength};
+
+        double[] m = mask.toDoubleVector();
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < m.length; i++) {
+            if (m[i] != 0.0) {
+                if (first < 0)
+                    first = i;
+                last = i;
+            }
+        }
+        if (first < 0)
+            return new int[]{0, 0};
+        return new int[]{first, last + 1};
+    }
+
+    protected static INDArray trimTimeSeries(INDArray arr, int start, int end) {
+        return arr.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.interval(start, end)).dup();
+    }
+
+    protected static INDArray trimMask(INDArray mask, int start, int end) {
+        if (mask == null)
+            return null;
+        return mask.get(NDArrayIndex.all(), NDArrayIndex.interval(start, end)).dup();
+    }
+
+    protected static INDArray dup(INDArray arr) {
+        return arr == null ? null : arr.dup();
+    }
+
+    @Override
+    public int inputColumns() {
+        return underlying.inputColumns();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return underlying.totalOutcomes();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return underlying.resetSupported();
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        underlying.reset();
+        buckets.clear();
+        ready.clear();
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return underlying.getLabels();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    protected static class Example {
+        private final DataSet dataSet;
+        private final int length;
+
+        protected Example(DataSet dataSet, int length) {
+            this.dataSet = dataSet;
+            this.length = length;
+        }
+    }
+
+    public static class Builder {
+        private final DataSetIterator underlying;
+        private final int batchSize;
+        private int[] bucketBoundaries;
+        private int bucketWidth = 10;
+        private int shardSize = 0;
+        private boolean sortWithinShards = false;
+
+        /**
+         * @param underlying Iterator to wrap. Minibatch size of the underlying iterator doesn't need to match the
+         *                   minibatch size of this iterator
+         * @param batchSize  Minibatch size of the returned DataSets
+         */
+        public Builder(@NonNull DataSetIterator underlying, int batchSize) {
+            Preconditions.checkArgument(batchSize > 0, "Batch size must be positive, got %s", batchSize);
+            this.underlying = underlying;
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Upper bounds (inclusive) of the bucket sequence lengths, in ascending order. Sequences longer than the last
+         * boundary go to an additional, last bucket. If set, {@link #bucketWidth(int)} is ignored
+         */
+        public Builder bucketBoundaries(@NonNull int... bucketBoundaries) {
+            Preconditions.checkArgument(bucketBoundaries.length > 0, "At least one bucket boundary is required");
+            for (int i = 1; i < bucketBoundaries.length; i++) {
+                Preconditions.checkArgument(bucketBoundaries[i] > bucketBoundaries[i - 1],
+                        "Bucket boundaries must be in strictly ascending order, got %s", Arrays.toString(bucketBoundaries));
+            }
+            this.bucketBoundaries = bucketBoundaries;
+            return this;
+        }
+
+        /**
+         * Width of the buckets: sequences of length 1 to bucketWidth go to the first bucket, bucketWidth+1 to
+         * 2*bucketWidth to the second, and so on. Used only if {@link #bucketBoundaries(int...)} is not set. Default: 10
+         */
+        public Builder bucketWidth(int bucketWidth) {
+            Preconditions.checkArgument(bucketWidth > 0, "Bucket width must be positive, got %s", bucketWidth);
+            this.bucketWidth = bucketWidth;
+            return this;
+        }
+
+        /**
+         * Number of examples to read from the underlying iterator before returning minibatches. Larger shards give
+         * fuller buckets (fewer small minibatches) at the cost of memory. Default: 10 * batchSize
+         */
+        public Builder shardSize(int shardSize) {
+            Preconditions.checkArgument(shardSize > 0, "Shard size must be positive, got %s", shardSize);
+            this.shardSize = shardSize;
+            return this;
+        }
+
+        /**
+         * If true: examples are (stably) sorted by sequence length within each shard, before being assigned to buckets.
+         * Default: false
+         */
+        public Builder sortWithinShards(boolean sortWithinShards) {
+            this.sortWithinShards = sortWithinShards;
+            return this;
+        }
+
+        public BucketingDataSetIterator build() {
+            return new BucketingDataSetIterator(this);
+        }
+    }
+}
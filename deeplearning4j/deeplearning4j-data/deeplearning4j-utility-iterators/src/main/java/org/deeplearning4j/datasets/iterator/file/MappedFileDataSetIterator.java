@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator.file;
+
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.MappedDataSetSerializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Iterate over a directory (and optionally subdirectories) containing {@link DataSet} objects that have previously
+ * been saved with {@link MappedDataSetSerializer#write(DataSet, File)}.<br>
+ * Files are memory-mapped when loaded: the returned DataSets use the file contents directly, without deserialization
+ * or copying of the array data (see {@link MappedDataSetSerializer} for details). Note that if DataSets are split or
+ * combined to a different minibatch size, the merged DataSets are copies.<br>
+ * Existing DataSet files can be converted with {@link MappedDataSetSerializer#convertDirectory(File, File, boolean)}.<br>
+ * Supported features are the same as for {@link FileDataSetIterator}. By default, only files with the
+ * {@link MappedDataSetSerializer#FILE_EXTENSION} extension are used.
+ */
+public class MappedFileDataSetIterator extends FileDataSetIterator {
+
+    /**
+     * Create a MappedFileDataSetIterator with the following default settings:<br>
+     * - Recursive: files in subdirectories are included<br>
+     * - Randomization: order of examples is randomized with a random RNG seed<br>
+     * - Batch size: default (as in the stored DataSets - no splitting/combining)<br>
+     *
+     * @param rootDir Root directory containing the DataSet files
+     */
+    public MappedFileDataSetIterator(File rootDir) {
+        this(rootDir, -1);
+    }
+
+    /**
+     * Create a MappedFileDataSetIterator with the specified batch size, and the following default settings:<br>
+     * - Recursive: files in subdirectories are included<br>
+     * - Randomization: order of examples is randomized with a random RNG seed<br>
+     *
+     * @param rootDir   Root directory containing the DataSet files
+     * @param batchSize Batch size. If > 0, DataSets will be split/recombined as required. If <= 0, DataSets will
+     *                  simply be loaded and returned unmodified
+     */
+    public MappedFileDataSetIterator(File rootDir, int batchSize) {
+        this(new File[]{rootDir}, true, new Random(), batchSize, MappedDataSetSerializer.FILE_EXTENSION);
+    }
+
+    /**
+     * Create a MappedFileDataSetIterator with all settings specified
+     *
+     * @param rootDirs        Root directories containing the DataSet files. DataSets from all of these directories will
+     *                        be included in the iterator output
+     * @param recursive       If true: include files in subdirectories
+     * @param rng             May be null. If non-null, use this to randomize order
+     * @param batchSize       Batch size. If > 0, DataSets will be split/recombined as required. If <= 0, DataSets will
+     *                        simply be loaded and returned unmodified
+     * @param validExtensions May be null. If non-null, only files with one of the specified extensions will be used
+     */
+    public MappedFileDataSetIterator(File[] rootDirs, boolean recursive, Random rng, int batchSize, String... validExtensions) {
+        super(rootDirs, recursive, rng, batchSize, validExtensions);
+    }
+
+    @Override
+    protected DataSet load(File f) {
+        try {
+            return MappedDataSetSerializer.readDataSet(f);
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading DataSet from file: " + f, e);
+        }
+    }
+}
@@ -0,0 +1,632 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator.parallel;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.callbacks.DataSetCallback;
+import org.nd4j.linalg.dataset.callbacks.DefaultCallback;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-stage prefetching iterator: unlike {@link org.nd4j.linalg.dataset.AsyncDataSetIterator}, which uses a single
+ * background thread, each stage of this pipeline has its own pool of worker threads:<br>
+ * - {@link Stage#READ}: one worker per source iterator. Sources are shards of the input (for example, one
+ * RecordReaderDataSetIterator per subset of the input files), so reading and conversion to DataSet happen in parallel
+ * across shards. Each source is only ever used by a single thread.<br>
+ * - {@link Stage#PREPROCESS}: applies the DataSetPreProcessors (normalizers etc), in parallel. Preprocessors must be
+ * thread safe - this is the case for normalizers and image preprocessors, once fitted<br>
+ * - {@link Stage#TRANSFER}: applies the {@link DataSetCallback} - by default, {@link DefaultCallback}, which
+ * relocates the arrays to the target device<br>
+ * <br>
+ * All queues between stages are bounded by the queue size. If ordered mode is enabled, DataSets are returned in
+ * deterministic order: round-robin over the sources, in the order produced by each source (sources that have no more
+ * data are skipped). In this mode, the number of DataSets in flight is also bounded, so a single slow DataSet can't
+ * cause unbounded buffering of the DataSets after it. In unordered mode, DataSets are returned as soon as they are
+ * ready.<br>
+ * Queue depths and consumer wait time are exposed for monitoring: see {@link #getQueueDepth(Stage)} and
+ * {@link #getConsumerWaitTimeMs()}. A consistently full {@link Stage#TRANSFER} queue means the consumer (i.e., training)
+ * is the bottleneck; consistently empty queues mean the pipeline is.<br>
+ * <br>
+ * On {@link #reset()}, all workers are interrupted and must terminate before the sources are reset: if a worker is
+ * still running after the join timeout (for example, a source blocked in non-interruptible I/O), reset() fails with
+ * an exception instead of sharing the sources between two generations of workers. reset() can be retried later.<br>
+ * <br>
+ * PLEASE NOTE: workspaces aren't used, since DataSets are passed between threads
+ */
+@Slf4j
+public class PipelinedDataSetIterator implements DataSetIterator {
+
+    /**
+     * Pipeline stages. Queue depth for each stage is the number of DataSets that have been processed by that stage,
+     * and are waiting for the next stage (or for the consumer, in the case of TRANSFER)
+     */
+    public enum Stage {
+        READ, PREPROCESS, TRANSFER
+    }
+
+    protected final List<DataSetIterator> sources;
+    protected volatile List<DataSetPreProcessor> preProcessors;
+    protected final int preProcessWorkers;
+    protected final DataSetCallback callback;
+    protected final int transferWorkers;
+    protected final boolean ordered;
+    protected final int queueSize;
+    protected final int deviceId;
+
+    protected BlockingQueue<Item> readQueue;
+    protected BlockingQueue<Item> preProcessQueue;
+    protected BlockingQueue<Item> outputQueue;
+    protected List<Thread> workers = new ArrayList<>();
+    //Replaced on every start(): workers hold on to the flag of their own generation only
+    protected volatile AtomicBoolean shouldWork = new AtomicBoolean(true);
+    protected volatile RuntimeException throwable = null;
+    protected long joinTimeoutMs = 5000;
+
+    //Progress state, guarded by lock
+    protected final Object lock = new Object();
+    protected long[] producedPerSource;
+    protected boolean[] sourceFinished;
+    protected int finishedSources;
+    protected long produced;
+    protected long emitted;
+    protected long expected;
+    protected Map<Long, DataSet> pending = new HashMap<>();
+
+    protected DataSet nextElement = null;
+    protected AtomicLong consumerWaitNanos = new AtomicLong(0);
+
+    protected PipelinedDataSetIterator(Builder builder) {
+        this.sources = builder.sources;
+        this.preProcessors = builder.preProcessors;
+        this.preProcessWorkers = builder.preProcessWorkers;
+        this.callback = builder.callback;
+        this.transferWorkers = builder.transferWorkers;
+        this.ordered = builder.ordered;
+        this.queueSize = builder.queueSize;
+        this.deviceId = builder.deviceId != null ? builder.deviceId : Nd4j.getAffinityManager().getDeviceForCurrentThread();
+
+        for (DataSetIterator iter : sources) {
+            if (iter.resetSupported() && !iter.hasNext())
+                iter.reset();
+        }
+
+        start();
+    }
+
+    protected void start() {
+        Preconditions.checkState(workers.isEmpty(), "Cannot start pipeline: workers of the previous run are still alive");
+        readQueue = new LinkedBlockingQueue<>(queueSize);
+        preProcessQueue = new LinkedBlockingQueue<>(queueSize);
+        outputQueue = new LinkedBlockingQueue<>(queueSize);
+
+        synchronized (lock) {
+            producedPerSource = new long[sources.size()];
+            sourceFinished = new boolean[sources.size()];
+            finishedSources = 0;
+            produced = 0;
+            emitted = 0;
+            expected = 0;
+            pending.clear();
+            shouldWork = new AtomicBoolean(true);
+        }
+        nextElement = null;
+
+        workers = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            workers.add(new ReaderThread(i));
+        }
+        for (int i = 0; i < preProcessWorkers; i++) {
+            workers.add(new StageThread(Stage.PREPROCESS, i, readQueue, preProcessQueue));
+        }
+        for (int i = 0; i < transferWorkers; i++) {
+            workers.add(new StageThread(Stage.TRANSFER, i, preProcessQueue, outputQueue));
+        }
+        for (Thread t : workers) {
+            t.start();
+        }
+    }
+
+    /**
+     * Interrupt all workers and wait for them to terminate
+     *
+     * @return Names of the workers still alive after the join timeout. These are kept, so that the next call to
+     * stop() waits for them again
+     */
+    protected List<String> stop() {
+        shouldWork.set(false);
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        for (Thread t : workers) {
+            t.interrupt();
+        }
+        long deadline = System.currentTimeMillis() + joinTimeoutMs;
+        for (Thread t : workers) {
+            //Keep draining while joining, so that no worker stays blocked on put() into a full queue
+            while (t.isAlive() && System.currentTimeMillis() < deadline) {
+                drainQueues();
+                try {
+                    t.join(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        List<String> alive = new ArrayList<>();
+        Iterator<Thread> iter = workers.iterator();
+        while (iter.hasNext()) {
+            Thread t = iter.next();
+            if (t.isAlive()) {
+                alive.add(t.getName());
+            } else {
+                iter.remove();
+            }
+        }
+        drainQueues();
+        return alive;
+    }
+
+    protected void drainQueues() {
+        readQueue.clear();
+        preProcessQueue.clear();
+        outputQueue.clear();
+    }
+
+    /**
+     * This method will terminate all worker threads.
+     *
+     * PLEASE NOTE: After shutdown() call, this instance can't be used anymore
+     */
+    public void shutdown() {
+        List<String> alive = stop();
+        if (!alive.isEmpty())
+            log.warn("Pipeline threads {} did not terminate within {} ms", alive, joinTimeoutMs);
+    }
+
+    /**
+     * @return Current number of DataSets waiting after the specified stage
+     */
+    public int getQueueDepth(@NonNull Stage stage) {
+        switch (stage) {
+            case READ:
+                return readQueue.size();
+            case PREPROCESS:
+                return preProcessQueue.size();
+            case TRANSFER:
+                return outputQueue.size();
+            default:
+                throw new IllegalArgumentException("Unknown stage: " + stage);
+        }
+    }
+
+    /**
+     * @return Current queue depth for all stages
+     */
+    public Map<Stage, Integer> getQueueDepths() {
+        Map<Stage, Integer> out = new EnumMap<>(Stage.class);
+        for (Stage s : Stage.values()) {
+            out.put(s, getQueueDepth(s));
+        }
+        return out;
+    }
+
+    /**
+     * @return Capacity of each of the queues between stages
+     */
+    public int getQueueCapacity() {
+        return queueSize;
+    }
+
+    /**
+     * @return Number of DataSets received out of order, waiting to be returned (ordered mode only)
+     */
+    public int getReorderBufferSize() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return Total time the consumer has spent waiting for the next DataSet in hasNext(), in milliseconds
+     */
+    public long getConsumerWaitTimeMs() {
+        return consumerWaitNanos.get() / 1000000L;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (throwable != null)
+            throw throwable;
+
+        if (nextElement != null)
+            return true;
+
+        long start = System.nanoTime();
+        try {
+            while (true) {
+                if (throwable != null)
+                    throw throwable;
+
+                synchronized (lock) {
+                    if (ordered) {
+                        skipFinishedSources();
+                        DataSet ds = pending.remove(expected);
+                        if (ds != null) {
+                            expected++;
+                            emitted++;
+                            lock.notifyAll();
+                            nextElement = ds;
+                            return true;
+                        }
+                    }
+                    if (finishedSources == sources.size() && emitted == produced)
+                        return false;
+                }
+
+                Item item = outputQueue.poll(10, TimeUnit.MILLISECONDS);
+                if (item == null)
+                    continue;
+
+                synchronized (lock) {
+                    if (ordered) {
+                        pending.put(item.seq, item.dataSet);
+                    } else {
+                        emitted++;
+                        nextElement = item.dataSet;
+                        return true;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            consumerWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Ordered mode: move past the sequence numbers of sources that have no more data. Must hold lock
+     */
+    protected void skipFinishedSources() {
+        int n = sources.size();
+        while (!(finishedSources == n && emitted == produced)) {
+            int s = (int) (expected % n);
+            long round = expected / n;
+            if (sourceFinished[s] && round >= producedPerSource[s]) {
+                expected++;
+                lock.notifyAll();
+            } else {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+
+        DataSet ds = nextElement;
+        nextElement = null;
+        return ds;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reset() {
+        //Sources are not thread safe: they can't be reset while a worker of the previous run may still be using them
+        List<String> alive = stop();
+        if (!alive.isEmpty())
+            throw new IllegalStateException("Cannot reset: pipeline threads " + alive + " did not terminate within "
+                    + joinTimeoutMs + " ms after being interrupted");
+        throwable = null;
+        for (DataSetIterator iter : sources) {
+            iter.reset();
+        }
+        if (callback != null)
+            callback.reset();
+        start();
+    }
+
+    @Override
+    public int inputColumns() {
+        return sources.get(0).inputColumns();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return sources.get(0).totalOutcomes();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        for (DataSetIterator iter : sources) {
+            if (!iter.resetSupported())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public int batch() {
+        return sources.get(0).batch();
+    }
+
+    /**
+     * Set the preprocessor to be applied by the {@link Stage#PREPROCESS} stage, replacing any existing preprocessors.
+     * DataSets already past the preprocessing stage are not affected
+     */
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessors = preProcessor == null ? Collections.<DataSetPreProcessor>emptyList() : Collections.singletonList(preProcessor);
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        List<DataSetPreProcessor> l = preProcessors;
+        return l.isEmpty() ? null : l.get(0);
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return sources.get(0).getLabels();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    protected void onError(Throwable t, AtomicBoolean running) {
+        synchronized (lock) {
+            //Failures of workers from a stopped generation are not reported to the current consumer
+            if (running == shouldWork && throwable == null)
+                throwable = t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+            running.set(false);
+            lock.notifyAll();
+        }
+    }
+
+    protected static class Item {
+        private final long seq;
+        private final DataSet dataSet;
+
+        protected Item(long seq, DataSet dataSet) {
+            this.seq = seq;
+            this.dataSet = dataSet;
+        }
+    }
+
+    protected class ReaderThread extends Thread {
+        private final int source;
+        private final AtomicBoolean running;
+        private final BlockingQueue<Item> out;
+
+        protected ReaderThread(int source) {
+            this.source = source;
+            this.running = shouldWork;
+            this.out = readQueue;
+            this.setDaemon(true);
+            this.setName("PDSI reader thread " + source);
+        }
+
+        @Override
+        public void run() {
+            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+            DataSetIterator iterator = sources.get(source);
+            int n = sources.size();
+            long round = 0;
+            try {
+                while (running.get() && iterator.hasNext()) {
+                    long seq = round * n + source;
+                    if (ordered) {
+                        //Bound the number of DataSets in flight, relative to the next DataSet to be returned
+                        synchronized (lock) {
+                            while (running.get() && seq >= expected + 3L * queueSize)
+                                lock.wait();
+                        }
+                        if (!running.get())
+                            break;
+                    }
+
+                    DataSet ds = iterator.next();
+                    Nd4j.getExecutioner().commit();
+                    synchronized (lock) {
+                        if (running != shouldWork)
+                            break;
+                        produced++;
+                        producedPerSource[source]++;
+                    }
+                    out.put(new Item(seq, ds));
+                    round++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                log.error("Exception in pipeline reader thread", t);
+                onError(t, running);
+            } finally {
+                synchronized (lock) {
+                    //A reader that outlived stop() must not touch the progress state of the next generation
+                    if (running == shouldWork) {
+                        sourceFinished[source] = true;
+                        finishedSources++;
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    protected class StageThread extends Thread {
+        private final Stage stage;
+        private final BlockingQueue<Item> in;
+        private final BlockingQueue<Item> out;
+        private final AtomicBoolean running;
+
+        protected StageThread(Stage stage, int idx, BlockingQueue<Item> in, BlockingQueue<Item> out) {
+            this.stage = stage;
+            this.running = shouldWork;
+            this.in = in;
+            this.out = out;
+            this.setDaemon(true);
+            this.setName("PDSI " + stage.name().toLowerCase() + " thread " + idx);
+        }
+
+        @Override
+        public void run() {
+            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+            try {
+                while (running.get()) {
+                    Item item = in.take();
+                    if (stage == Stage.PREPROCESS) {
+                        for (DataSetPreProcessor p : preProcessors) {
+                            p.preProcess(item.dataSet);
+                        }
+                    } else if (callback != null) {
+                        callback.call(item.dataSet);
+                    }
+                    Nd4j.getExecutioner().commit();
+                    out.put(item);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                log.error("Exception in pipeline {} thread", stage, t);
+                onError(t, running);
+            }
+        }
+    }
+
+    public static class Builder {
+        private final List<DataSetIterator> sources = new ArrayList<>();
+        private List<DataSetPreProcessor> preProcessors = new ArrayList<>();
+        private int preProcessWorkers = 2;
+        private DataSetCallback callback = new DefaultCallback();
+        private int transferWorkers = 1;
+        private boolean ordered = false;
+        private int queueSize = 8;
+        private Integer deviceId;
+
+        /**
+         * @param sources Source iterators: one reader thread is used per source. Usually, each source should cover a
+         *                disjoint subset of the data
+         */
+        public Builder(@NonNull DataSetIterator... sources) {
+            this(Arrays.asList(sources));
+        }
+
+        /**
+         * @param sources Source iterators: one reader thread is used per source. Usually, each source should cover a
+         *                disjoint subset of the data
+         */
+        public Builder(@NonNull List<DataSetIterator> sources) {
+            Preconditions.checkArgument(!sources.isEmpty(), "At least one source iterator is required");
+            this.sources.addAll(sources);
+        }
+
+        /**
+         * Preprocessors to apply in the {@link Stage#PREPROCESS} stage, in order. Preprocessors set on the source
+         * iterators are applied by the reader threads instead
+         */
+        public Builder preProcessors(@NonNull DataSetPreProcessor... preProcessors) {
+            this.preProcessors = new ArrayList<>(Arrays.asList(preProcessors));
+            return this;
+        }
+
+        /**
+         * Number of threads for the {@link Stage#PREPROCESS} stage. Default: 2
+         */
+        public Builder preProcessWorkers(int preProcessWorkers) {
+            Preconditions.checkArgument(preProcessWorkers > 0, "Number of preprocessing workers must be positive, got %s", preProcessWorkers);
+            this.preProcessWorkers = preProcessWorkers;
+            return this;
+        }
+
+        /**
+         * Callback to apply in the {@link Stage#TRANSFER} stage. Default: {@link DefaultCallback}, which relocates the
+         * DataSet to the device. May be null
+         */
+        public Builder callback(DataSetCallback callback) {
+            this.callback = callback;
+            return this;
+        }
+
+        /**
+         * Number of threads for the {@link Stage#TRANSFER} stage. Default: 1
+         */
+        public Builder transferWorkers(int transferWorkers) {
+            Preconditions.checkArgument(transferWorkers > 0, "Number of transfer workers must be positive, got %s", transferWorkers);
+            this.transferWorkers = transferWorkers;
+            return this;
+        }
+
+        /**
+         * If true: DataSets are returned in deterministic order (round-robin over the sources). If false: DataSets are
+         * returned as soon as they are ready. Default: false
+         */
+        public Builder ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * Capacity of each of the queues between stages. Default: 8
+         */
+        public Builder queueSize(int queueSize) {
+            Preconditions.checkArgument(queueSize > 0, "Queue size must be positive, got %s", queueSize);
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * Device to use for all worker threads. Default: device of the thread creating the iterator
+         */
+        public Builder deviceId(int deviceId) {
+            this.deviceId = deviceId;
+            return this;
+        }
+
+        public PipelinedDataSetIterator build() {
+            return new PipelinedDataSetIterator(this);
+        }
+    }
+}
@@ -88,6 +88,21 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     @Setter
     protected DataType dataType = DataType.FLOAT;   //Default to float for 1.0.0-beta3 and earlier nets
 
+    @Getter
+    @Setter
+    protected MixedPrecision mixedPrecision;        //Null: mixed precision training disabled
+
+    /**
+     * Names of the gradient checkpoint vertices, if any: see {@link GraphBuilder#gradientCheckpoints(String...)}
+     */
+    @Getter
+    @Setter
+    protected List<String> gradientCheckpoints;
+
+    @Getter
+    @Setter
+    protected boolean gradientCheckpointingAuto = false;
+
     protected boolean validateOutputLayerConfig = true;     //Default for 1.0.0-beta3 and earlier nets
 
     /**
@@ -343,6 +358,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.defaultConfiguration.cacheMode = this.cacheMode;
         conf.validateOutputLayerConfig = this.validateOutputLayerConfig;
         conf.dataType = this.dataType;
+        conf.mixedPrecision = this.mixedPrecision;
+        conf.gradientCheckpoints = (this.gradientCheckpoints == null ? null : new ArrayList<>(this.gradientCheckpoints));
+        conf.gradientCheckpointingAuto = this.gradientCheckpointingAuto;
 
         return conf;
     }
@@ -689,6 +707,8 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         protected boolean allowNoOutput = false;
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
+        protected List<String> gradientCheckpoints;
+        protected boolean gradientCheckpointingAuto = false;
 
         protected String lastAdded = null;
 
@@ -1099,6 +1119,40 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable gradient checkpointing (activation recomputation) for training, with the specified vertices as
+         * checkpoints.<br>
+         * By default, the activations of all layers and vertices are kept in memory from the forward pass until the end
+         * of backprop. With gradient checkpointing, only the activations of the checkpoint vertices (and any other
+         * activations used across checkpoints, such as skip connections) are kept: the activations between each pair of
+         * checkpoints are released after the forward pass, and are recomputed - one segment at a time - during backprop.
+         * This reduces activation memory at the cost of one additional forward pass through each segment.<br>
+         * Checkpoint vertices must not be network inputs, and must precede all output vertices in the topological order.
+         * Gradient checkpointing is not used for truncated backpropagation through time.
+         *
+         * @param vertexNames Names of the checkpoint vertices
+         * @see #gradientCheckpointingAuto(boolean)
+         */
+        public GraphBuilder gradientCheckpoints(String... vertexNames) {
+            this.gradientCheckpoints = (vertexNames == null || vertexNames.length == 0 ? null : Arrays.asList(vertexNames));
+            return this;
+        }
+
+        /**
+         * Enable gradient checkpointing (activation recomputation) for training, with the checkpoints selected
+         * automatically: approximately every sqrt(N)th vertex in the topological order, where N is the number of
+         * vertices (excluding inputs) before the first output vertex. This reduces the activation memory to roughly
+         * O(sqrt(N)) for deep sequential networks, excluding skip connections.<br>
+         * Checkpoints specified via {@link #gradientCheckpoints(String...)} take precedence over automatic selection.
+         * Disabled by default.
+         *
+         * @param auto If true: select the gradient checkpoints automatically
+         */
+        public GraphBuilder gradientCheckpointingAuto(boolean auto) {
+            this.gradientCheckpointingAuto = auto;
+            return this;
+        }
+
         /**
          * For the (perhaps partially constructed) network configuration, return a map of activation sizes for each
          * layer and vertex in the graph.<br>
@@ -1157,6 +1211,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.cacheMode = globalConfiguration.cacheMode;
             conf.validateOutputLayerConfig = validateOutputConfig;
             conf.dataType = globalConfiguration.dataType;
+            conf.mixedPrecision = globalConfiguration.mixedPrecision;
+            conf.gradientCheckpoints = gradientCheckpoints;
+            conf.gradientCheckpointingAuto = gradientCheckpointingAuto;
 
             conf.defaultConfiguration = globalConfiguration.build();
 
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.conf;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+
+import java.io.Serializable;
+
+/**
+ * Configuration for mixed precision training of MultiLayerNetwork and ComputationGraph.<br>
+ * In mixed precision mode, forward and backward passes are done in the (reduced precision) network datatype - usually
+ * {@link DataType#HALF} - while the updater keeps a master copy of the parameters, the
+ * gradients and the updater state in the master datatype ({@link DataType#FLOAT} by default). Updates are applied to
+ * the master parameters, which are then cast to the network datatype once per iteration.<br>
+ * <br>
+ * Dynamic loss scaling is used to avoid underflow of small gradients in reduced precision: the gradient of the loss is
+ * multiplied by the current loss scale before backprop, and gradients are divided by the loss scale again before the
+ * updater is applied. If any gradient overflows (NaN or infinite values), the parameter update for that iteration is
+ * skipped and the loss scale is divided by {@link #getScaleFactor()}. After {@link #getScaleWindow()} iterations without
+ * overflow, the loss scale is multiplied by {@link #getScaleFactor()}.<br>
+ * <br>
+ * Note that in mixed precision mode, the network gradients (as returned by {@code Model.gradient()}) are scaled by the
+ * current loss scale.
+ */
+@Data
+@NoArgsConstructor
+public class MixedPrecision implements Serializable {
+
+    private DataType masterDataType = DataType.FLOAT;
+    private double initialScale = 65536.0;
+    private double scaleFactor = 2.0;
+    private int scaleWindow = 2000;
+    private double minScale = 1.0;
+    private double maxScale = 16777216.0;
+    private boolean dynamicScaling = true;
+
+    private MixedPrecision(Builder builder) {
+        this.masterDataType = builder.masterDataType;
+        this.initialScale = builder.initialScale;
+        this.scaleFactor = builder.scaleFactor;
+        this.scaleWindow = builder.scaleWindow;
+        this.minScale = builder.minScale;
+        this.maxScale = builder.maxScale;
+        this.dynamicScaling = builder.dynamicScaling;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private DataType masterDataType = DataType.FLOAT;
+        private double initialScale = 65536.0;
+        private double scaleFactor = 2.0;
+        private int scaleWindow = 2000;
+        private double minScale = 1.0;
+        private double maxScale = 16777216.0;
+        private boolean dynamicScaling = true;
+
+        /**
+         * Datatype for the master parameters, gradients and updater state. Default: {@link DataType#FLOAT}
+         */
+        public Builder masterDataType(DataType masterDataType) {
+            this.masterDataType = masterDataType;
+            return this;
+        }
+
+        /**
+         * Loss scale used for the first iteration. Default: 65536 (2^16)
+         */
+        public Builder initialScale(double initialScale) {
+            this.initialScale = initialScale;
+            return this;
+        }
+
+        /**
+         * Factor by which the loss scale is decreased on overflow, and increased after {@link #scaleWindow(int)}
+         * iterations without overflow. Default: 2
+         */
+        public Builder scaleFactor(double scaleFactor) {
+            this.scaleFactor = scaleFactor;
+            return this;
+        }
+
+        /**
+         * Number of consecutive iterations without overflow, after which the loss scale is increased. Default: 2000
+         */
+        public Builder scaleWindow(int scaleWindow) {
+            this.scaleWindow = scaleWindow;
+            return this;
+        }
+
+        /**
+         * Minimum and maximum values for the loss scale. Default: 1 and 2^24
+         */
+        public Builder scaleRange(double minScale, double maxScale) {
+            this.minScale = minScale;
+            this.maxScale = maxScale;
+            return this;
+        }
+
+        /**
+         * If false: a fixed loss scale (the initial scale) is used. Iterations with overflow are still skipped.
+         * Default: true
+         */
+        public Builder dynamicScaling(boolean dynamicScaling) {
+            this.dynamicScaling = dynamicScaling;
+            return this;
+        }
+
+        public MixedPrecision build() {
+            Preconditions.checkState(masterDataType == DataType.FLOAT || masterDataType == DataType.DOUBLE,
+                    "Master datatype must be FLOAT or DOUBLE, got %s", masterDataType);
+            Preconditions.checkState(initialScale > 0 && minScale > 0 && minScale <= maxScale,
+                    "Invalid loss scale configuration: initial scale %s, range [%s, %s]", initialScale, minScale, maxScale);
+            Preconditions.checkState(scaleFactor > 1.0, "Loss scale factor must be > 1, got %s", scaleFactor);
+            Preconditions.checkState(scaleWindow > 0, "Loss scale window must be > 0, got %s", scaleWindow);
+            return new MixedPrecision(this);
+        }
+    }
+}
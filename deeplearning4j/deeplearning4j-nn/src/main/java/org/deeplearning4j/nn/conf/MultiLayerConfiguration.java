@@ -83,6 +83,10 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     @Setter
     protected DataType dataType = DataType.FLOAT;   //Default to float for deserialization of beta3 and earlier nets
 
+    @Getter
+    @Setter
+    protected MixedPrecision mixedPrecision;        //Null: mixed precision training disabled
+
     //Counter for the number of parameter updates so far
     // This is important for learning rate schedules, for example, and is stored here to ensure it is persisted
     // for Spark and model serialization
@@ -397,6 +401,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             clone.cacheMode = this.cacheMode;
             clone.validateOutputLayerConfig = this.validateOutputLayerConfig;
             clone.dataType = this.dataType;
+            clone.mixedPrecision = this.mixedPrecision;
 
             return clone;
 
@@ -483,6 +488,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
         protected DataType dataType;
+        protected MixedPrecision mixedPrecision;
 
         /**
          * Specify the processors.
@@ -633,6 +639,15 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Mixed precision training configuration. Default: null (mixed precision disabled). See {@link MixedPrecision}
+         * @param mixedPrecision Mixed precision configuration
+         */
+        public Builder mixedPrecision(MixedPrecision mixedPrecision){
+            this.mixedPrecision = mixedPrecision;
+            return this;
+        }
+
 
         public MultiLayerConfiguration build() {
             //Validate BackpropType setting
@@ -719,6 +734,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
             conf.cacheMode = cacheMode;
             conf.dataType = dataType;
+            conf.mixedPrecision = mixedPrecision;
 
             Nd4j.getRandom().setSeed(conf.getConf(0).getSeed());
 
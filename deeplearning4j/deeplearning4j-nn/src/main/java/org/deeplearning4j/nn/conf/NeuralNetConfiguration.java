@@ -255,6 +255,7 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
                             .trainingWorkspaceMode(wsmTrain).cacheMode(globalConfig.cacheMode)
                             .inferenceWorkspaceMode(wsmTest).confs(list).validateOutputLayerConfig(validateOutputConfig)
                             .dataType(globalConfig.dataType)
+                            .mixedPrecision(globalConfig.mixedPrecision)
                             .build();
         }
 
@@ -409,6 +410,7 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
         protected boolean setIWM = false;
         protected CacheMode cacheMode = CacheMode.NONE;
         protected DataType dataType = DataType.FLOAT;
+        protected MixedPrecision mixedPrecision;
 
         protected ConvolutionMode convolutionMode = ConvolutionMode.Truncate;
         protected ConvolutionLayer.AlgoMode cudnnAlgoMode = ConvolutionLayer.AlgoMode.PREFER_FASTEST;
@@ -1077,6 +1079,19 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable mixed precision training: forward and backward passes are done in the network datatype (usually
+         * {@link DataType#HALF}, see {@link #dataType(DataType)}), while the updater keeps master parameters and updater
+         * state in FLOAT precision, and uses dynamic loss scaling. See {@link MixedPrecision} for details.<br>
+         * Default: null (mixed precision disabled)
+         *
+         * @param mixedPrecision Mixed precision configuration. May be null
+         */
+        public Builder mixedPrecision(MixedPrecision mixedPrecision){
+            this.mixedPrecision = mixedPrecision;
+            return this;
+        }
+
         /**
          * Return a configuration based on this builder
          *
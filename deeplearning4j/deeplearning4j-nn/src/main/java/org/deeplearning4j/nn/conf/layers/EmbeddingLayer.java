@@ -55,10 +55,12 @@ import java.util.Map;
 public class EmbeddingLayer extends FeedForwardLayer {
 
     private boolean hasBias = true; //Default for pre-0.9.2 implementations
+    private boolean sparseGradients = false;
 
     private EmbeddingLayer(Builder builder) {
         super(builder);
         this.hasBias = builder.hasBias;
+        this.sparseGradients = builder.sparseGradients;
         initializeConstraints(builder);
     }
 
@@ -115,6 +117,14 @@ public class EmbeddingLayer extends FeedForwardLayer {
          */
         private boolean hasBias = false;
 
+        /**
+         * If true: weight gradients are row-sparse - only the rows for the indices in the current minibatch are
+         * zeroed, computed and updated, instead of the full [vocabSize, vectorSize] gradient. Updater state for the
+         * other rows isn't changed (lazy updates), and regularization is also applied only to these rows.<br>
+         * Supported updaters: Sgd, Adam, AdaGrad, RmsProp and NoOp. Default: false
+         */
+        private boolean sparseGradients = false;
+
         /**
          * If true: include bias parameters in the layer. False (default): no bias.
          *
@@ -125,6 +135,20 @@ public class EmbeddingLayer extends FeedForwardLayer {
             return this;
         }
 
+        /**
+         * If true: weight gradients are row-sparse - only the rows for the indices in the current minibatch are
+         * zeroed, computed and updated, instead of the full [vocabSize, vectorSize] gradient. Updater state for the
+         * other rows isn't changed (lazy updates), and regularization is also applied only to these rows.<br>
+         * Useful for large vocabularies, where each minibatch only uses a small fraction of the rows.<br>
+         * Supported updaters: Sgd, Adam, AdaGrad, RmsProp and NoOp. Default: false
+         *
+         * @param sparseGradients If true: use sparse weight gradients
+         */
+        public Builder sparseGradients(boolean sparseGradients) {
+            this.sparseGradients = sparseGradients;
+            return this;
+        }
+
         @Override
         public Builder weightInit(IWeightInit weightInit) {
             if(weightInit instanceof WeightInitEmbedding){
@@ -57,12 +57,14 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
     private int inputLength = 1; // By default only use one index to embed
     private boolean hasBias = false;
     private boolean inferInputLength = false; // use input length as provided by input data
+    private boolean sparseGradients = false;
 
     private EmbeddingSequenceLayer(Builder builder) {
         super(builder);
         this.hasBias = builder.hasBias;
         this.inputLength = builder.inputLength;
         this.inferInputLength = builder.inferInputLength;
+        this.sparseGradients = builder.sparseGradients;
         initializeConstraints(builder);
     }
 
@@ -161,6 +163,14 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
          */
         private boolean inferInputLength = true;
 
+        /**
+         * If true: weight gradients are row-sparse - only the rows for the indices in the current minibatch are
+         * zeroed, computed and updated, instead of the full [vocabSize, vectorSize] gradient. Updater state for the
+         * other rows isn't changed (lazy updates), and regularization is also applied only to these rows.<br>
+         * Supported updaters: Sgd, Adam, AdaGrad, RmsProp and NoOp. Default: false
+         */
+        private boolean sparseGradients = false;
+
         /**
          * If true: include bias parameters in the layer. False (default): no bias.
          *
@@ -194,6 +204,20 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
             return this;
         }
 
+        /**
+         * If true: weight gradients are row-sparse - only the rows for the indices in the current minibatch are
+         * zeroed, computed and updated, instead of the full [vocabSize, vectorSize] gradient. Updater state for the
+         * other rows isn't changed (lazy updates), and regularization is also applied only to these rows.<br>
+         * Useful for large vocabularies, where each minibatch only uses a small fraction of the rows.<br>
+         * Supported updaters: Sgd, Adam, AdaGrad, RmsProp and NoOp. Default: false
+         *
+         * @param sparseGradients If true: use sparse weight gradients
+         */
+        public Builder sparseGradients(boolean sparseGradients) {
+            this.setSparseGradients(sparseGradients);
+            return this;
+        }
+
         @Override
         public Builder weightInit(IWeightInit weightInit) {
             this.setWeightInitFn(weightInit);
@@ -21,6 +21,7 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +37,7 @@ public class DefaultGradient implements Gradient {
     public static final char DEFAULT_FLATTENING_ORDER = 'f';
     private Map<String, INDArray> gradients = new LinkedHashMap<>();
     private Map<String, Character> flatteningOrders;
+    private Map<String, INDArray> sparseRows;
     @Setter
     private INDArray flattenedGradient;
 
@@ -113,6 +115,8 @@ public class DefaultGradient implements Gradient {
     @Override
     public void clear() {
         gradients.clear();
+        if (sparseRows != null)
+            sparseRows.clear();
     }
 
     @Override
@@ -148,6 +152,31 @@ public class DefaultGradient implements Gradient {
         return flatteningOrders.get(variable);
     }
 
+    @Override
+    public void setSparseRowsFor(String variable, INDArray rows) {
+        if (rows == null) {
+            if (sparseRows != null)
+                sparseRows.remove(variable);
+            return;
+        }
+        if (sparseRows == null)
+            sparseRows = new LinkedHashMap<>();
+        sparseRows.put(variable, rows);
+    }
+
+    @Override
+    public INDArray getSparseRowsFor(String variable) {
+        if (sparseRows == null)
+            return null;
+        return sparseRows.get(variable);
+    }
+
+    @Override
+    public Map<String, INDArray> sparseRowsForVariable() {
+        if (sparseRows == null)
+            return Collections.emptyMap();
+        return sparseRows;
+    }
 
     @Override
     public String toString() {
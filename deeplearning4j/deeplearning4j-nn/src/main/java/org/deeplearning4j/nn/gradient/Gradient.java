@@ -90,4 +90,25 @@ public interface Gradient extends Serializable {
      */
     Character flatteningOrderForVariable(String variable);
 
+    /**
+     * Mark the gradient for the given variable as row-sparse: only the specified rows of the (2d) gradient array may
+     * be non-zero. Updaters can use this to update only these rows - see {@link org.nd4j.linalg.learning.SparseGradientUpdater}
+     *
+     * @param variable Variable to set the gradient rows for
+     * @param rows     Indices of the rows that may be non-zero (integer vector, without duplicates), or null for
+     *                 dense gradients
+     */
+    void setSparseRowsFor(String variable, INDArray rows);
+
+    /**
+     * @param variable Variable to get the gradient rows for
+     * @return Indices of the rows of the gradient that may be non-zero, or null if the gradient is dense
+     */
+    INDArray getSparseRowsFor(String variable);
+
+    /**
+     * @return Sparse gradient rows look up table, for variables with row-sparse gradients only
+     */
+    Map<String, INDArray> sparseRowsForVariable();
+
 }
@@ -28,6 +28,7 @@ import org.nd4j.adapters.OutputAdapter;
 import org.nd4j.linalg.dataset.AsyncMultiDataSetIterator;
 import org.deeplearning4j.datasets.iterator.impl.MultiDataSetIteratorAdapter;
 import org.deeplearning4j.exception.DL4JException;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.nn.api.*;
 import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.api.layers.IOutputLayer;
@@ -39,6 +40,7 @@ import org.deeplearning4j.nn.conf.layers.recurrent.Bidirectional;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.util.ComputationGraphUtil;
+import org.deeplearning4j.nn.graph.util.GradientCheckpointPlan;
 import org.deeplearning4j.nn.graph.util.GraphIndices;
 import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.deeplearning4j.nn.graph.vertex.VertexIndices;
@@ -54,12 +56,16 @@ import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.deeplearning4j.optimize.Solver;
 import org.deeplearning4j.optimize.api.ConvexOptimizer;
+import org.deeplearning4j.optimize.api.StepPhase;
+import org.deeplearning4j.optimize.api.StepTimingListener;
 import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.optimize.solvers.BaseOptimizer;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.util.CrashReportingUtil;
 import org.deeplearning4j.util.ModelSerializer;
 import org.deeplearning4j.util.NetworkUtils;
 import org.deeplearning4j.util.OutputLayerUtil;
+import org.deeplearning4j.util.StepTimingUtil;
 import org.nd4j.base.Preconditions;
 import org.nd4j.evaluation.IEvaluation;
 import org.nd4j.evaluation.classification.Evaluation;
@@ -146,6 +152,12 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      */
     protected static final String WS_OUTPUT_MEM = "WS_OUTPUT_MEM";
 
+    /**
+     * Workspace for the activations of a single gradient checkpointing segment - opened once per segment during the
+     * forward pass, and again when the segment is recomputed during backprop
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT = "WS_CHECKPOINT_SEGMENT";
+
     protected final WorkspaceConfiguration WS_LAYER_WORKING_MEM_CONFIG;
 
     protected static final WorkspaceConfiguration WS_ALL_LAYERS_ACT_CONFIG = WorkspaceConfiguration.builder()
@@ -210,6 +222,11 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
     private transient int[] outputLayerIdxs;
 
+    //Gradient checkpointing: null if not used. Kept activations (by vertex index) and RNG seed for the current iteration
+    private transient GradientCheckpointPlan checkpointPlan;
+    private transient INDArray[] checkpointActivations;
+    private transient long checkpointSeed;
+
     private NeuralNetConfiguration defaultConfiguration;
     private Collection<TrainingListener> trainingListeners = new ArrayList<>();
 
@@ -424,10 +441,15 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      * <p>
      * PLEASE NOTE: Do not use this method unless you understand how to use GradientsAccumulator & updates sharing.
      * PLEASE NOTE: Do not use this method on standalone model
+     * PLEASE NOTE: Gradients sharing is not supported in mixed precision mode
      *
      * @param accumulator
      */
     public void setGradientsAccumulator(GradientsAccumulator accumulator) {
+        if (accumulator != null && configuration.getMixedPrecision() != null)
+            throw new DL4JInvalidConfigException("Gradients sharing is not supported in mixed precision mode: updates" +
+                    " are applied to the master parameters directly, and wouldn't be shared with other workers");
+
         if (!initCalled)
             init();
 
@@ -743,6 +765,23 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             }
         }
 
+        //Gradient checkpointing: work out which activations are kept and which are recomputed during backprop
+        List<String> checkpoints = configuration.getGradientCheckpoints();
+        if ((checkpoints == null || checkpoints.isEmpty()) && configuration.isGradientCheckpointingAuto()) {
+            checkpoints = GradientCheckpointPlan.selectCheckpoints(vertices, topologicalOrder);
+        }
+        checkpointPlan = GradientCheckpointPlan.build(vertices, topologicalOrder, checkpoints);
+        if (checkpointPlan != null) {
+            //Activations used to recompute a segment must not be modified in-place during the forward pass
+            for (Layer l : layers) {
+                String layerName = l.conf().getLayer().getLayerName();
+                String in = configuration.getVertexInputs().get(layerName).get(0);
+                if (checkpointPlan.isUsedForRecompute(indices.getNameToIdx().get(in))) {
+                    l.allowInputModification(false);
+                }
+            }
+        }
+
         synchronizeIterEpochCounts();
         initCalled = true;
     }
@@ -1074,14 +1113,18 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         } else
             multiDataSetIterator = multi;
 
+        StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
         long time1 = System.currentTimeMillis();
+        long timingStart = StepTimingUtil.start(timing);
         while(multiDataSetIterator.hasNext()){
             MultiDataSet mds = multiDataSetIterator.next();
             long time2 = System.currentTimeMillis();
             lastEtlTime.set((time2 - time1));
+            StepTimingUtil.end(timing, this, StepPhase.DATA_WAIT, null, timingStart);
 
             fit(mds.getFeatures(),mds.getLabels(), mds.getFeaturesMaskArrays(), mds.getLabelsMaskArrays());
             time1 = System.currentTimeMillis();
+            timingStart = StepTimingUtil.start(timing);
         }
 
         if (destructable)
@@ -1369,15 +1412,26 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         synchronizeIterEpochCounts();
 
         //Calculate activations (which are stored in each layer, and used in backprop)
+        checkpointActivations = null;
         try(MemoryWorkspace wsAllActivations = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
-            Map<String, INDArray> activations = ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(),
-                    fwdType, tbptt, inputs, inputMaskArrays, labelMaskArrays, false);
+            Map<String, INDArray> activations;
+            if (checkpointPlan != null && !tbptt) {
+                //Gradient checkpointing: only the checkpoint activations are kept, the rest are recomputed in backprop
+                activations = ffToLayerActivationsCheckpointed(getOutputLayerIndices(), inputs, inputMaskArrays,
+                        labelMaskArrays);
+            } else {
+                activations = ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(),
+                        fwdType, tbptt, inputs, inputMaskArrays, labelMaskArrays, false);
+            }
             if (!trainingListeners.isEmpty()) {
+                StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
+                long timingStart = StepTimingUtil.start(timing);
                 try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                     for (TrainingListener tl : trainingListeners) {
                         tl.onForwardPass(this, activations);
                     }
                 }
+                StepTimingUtil.end(timing, this, StepPhase.LISTENERS, null, timingStart);
             }
             calcBackpropGradients(false,false);
 
@@ -1414,17 +1468,21 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
             //Listeners
             if (!trainingListeners.isEmpty()) {
+                StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
+                long timingStart = StepTimingUtil.start(timing);
                 try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                     for (TrainingListener tl : trainingListeners) {
                         tl.onBackwardPass(this);
                     }
                 }
+                StepTimingUtil.end(timing, this, StepPhase.LISTENERS, null, timingStart);
             }
         }
 
         for(GraphVertex gv : vertices){
             gv.clear();
         }
+        checkpointActivations = null;
     }
 
 
@@ -2102,6 +2160,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         workspaceMgr.setHelperWorkspacePointers(helperWorkspaces);
 
         boolean traceLog = log.isTraceEnabled();
+        StepTimingListener[] timing = train ? StepTimingUtil.getTimingListeners(trainingListeners) : null;
 
         Map<String, INDArray> activations = new HashMap<>();
         //Do forward pass according to the topological ordering of the network
@@ -2124,6 +2183,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 continue;
             }
 
+            long timingStart = StepTimingUtil.start(timing);
             try(MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)){
                 VertexIndices[] inputsTo = current.getOutputVertices();
 
@@ -2177,6 +2237,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     current.clear();
                 }
             }
+            if (timing != null && !current.isInputVertex()) {
+                StepTimingUtil.end(timing, this, StepPhase.FORWARD, vName, timingStart);
+            }
 
             if(traceLog){
                 log.trace("Completed forward pass: {} (\"{}\") - {}", i, vName, current.getClass().getSimpleName());
@@ -2185,6 +2248,210 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         return activations;
     }
 
+    /**
+     * Feed-forward through the network for training with gradient checkpointing. Activations of vertices that are
+     * recomputed during backprop (see {@link GradientCheckpointPlan}) are released at the end of each segment; all
+     * other activations are kept, in workspace WS_ALL_LAYERS_ACT if workspaces are used (detached otherwise).<br>
+     * Note: if using workspaces for training, requires that WS_ALL_LAYERS_ACT is open externally.
+     *
+     * @param excludeIdxs Layers (vertices) to exclude from forward pass - usually output layers. May be null.
+     * @param input       Input feature arrays
+     * @param fMask       Feature mask arrays. May be null.
+     * @param lMask       Label mask array. May be null.
+     * @return Map of the kept activations (including the input)
+     */
+    protected synchronized Map<String,INDArray> ffToLayerActivationsCheckpointed(int[] excludeIdxs, INDArray[] input,
+                                                                                INDArray[] fMask, INDArray[] lMask) {
+        setInputs(input);
+        setLayerMaskArrays(fMask, lMask);
+
+        LayerWorkspaceMgr keptMgr = checkpointWorkspaceMgr(WS_ALL_LAYERS_ACT);
+        LayerWorkspaceMgr segmentMgr = checkpointWorkspaceMgr(WS_CHECKPOINT_SEGMENT);
+        if(configuration.getTrainingWorkspaceMode() != WorkspaceMode.NONE) {
+            WorkspaceUtils.assertOpenAndActive(WS_ALL_LAYERS_ACT, "ffToLayerActivationsCheckpointed method requires workspace WS_ALL_LAYERS_ACT to be open");
+        }
+
+        checkpointActivations = new INDArray[vertices.length];
+        checkpointSeed = Nd4j.getRandom().nextLong();
+
+        Map<String, INDArray> activations = new HashMap<>();
+        int currentSegment = -1;
+        MemoryWorkspace wsSegment = null;
+        long[] rngState = null;
+        try {
+            for (int i = 0; i < topologicalOrder.length; i++) {
+                GraphVertex current = vertices[topologicalOrder[i]];
+                int vIdx = current.getVertexIndex();
+
+                int seg = checkpointPlan.segmentAtPosition(i);
+                if (seg != currentSegment) {
+                    if (wsSegment != null) {
+                        wsSegment.close();
+                        wsSegment = null;
+                    }
+                    if (currentSegment >= 0) {
+                        releaseCheckpointSegment(currentSegment);
+                        restoreRngState(rngState);
+                        rngState = null;
+                    }
+                    currentSegment = seg;
+                    if (seg >= 0) {
+                        wsSegment = segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                        rngState = seedCheckpointSegment(seg);
+                    }
+                }
+
+                if (excludeIdxs != null && ArrayUtils.contains(excludeIdxs, vIdx)) {
+                    continue;
+                }
+
+                boolean recomputed = checkpointPlan.isRecomputed(vIdx);
+                INDArray out = checkpointVertexForward(current, recomputed ? segmentMgr : keptMgr, keptMgr, segmentMgr, -1);
+                if (!recomputed) {
+                    activations.put(current.getVertexName(), out);
+                    checkpointActivations[vIdx] = out;
+                }
+            }
+        } finally {
+            if (wsSegment != null) {
+                wsSegment.close();
+            }
+            restoreRngState(rngState);
+        }
+        return activations;
+    }
+
+    /**
+     * Seed the RNG for the specified gradient checkpointing segment, so that dropout etc is identical when the segment
+     * is recomputed during backprop
+     *
+     * @return RNG state before seeding, to be restored via {@link #restoreRngState(long[])} once the segment is done
+     */
+    private long[] seedCheckpointSegment(int segment) {
+        org.nd4j.linalg.api.rng.Random rng = Nd4j.getRandom();
+        long[] state = new long[]{rng.rootState(), rng.nodeState()};
+        rng.setSeed(checkpointSeed + segment);
+        return state;
+    }
+
+    private static void restoreRngState(long[] state) {
+        if (state != null) {
+            Nd4j.getRandom().setStates(state[0], state[1]);
+        }
+    }
+
+    /**
+     * Recompute the activations of the specified gradient checkpointing segment, from the kept activations.
+     * Requires that the segment workspace is open, if workspaces are used
+     */
+    protected void recomputeCheckpointSegment(int segment, LayerWorkspaceMgr keptMgr, LayerWorkspaceMgr segmentMgr) {
+        if (inputMaskArrays != null || labelMaskArrays != null) {
+            //Mask arrays were removed from the layers when the segment was released
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                setLayerMaskArrays(inputMaskArrays, labelMaskArrays);
+            }
+        }
+        int start = checkpointPlan.getSegmentStart()[segment];
+        int end = checkpointPlan.getSegmentEnd()[segment];
+        for (int i = start; i <= end; i++) {
+            GraphVertex current = vertices[topologicalOrder[i]];
+            VertexIndices[] inputsFrom = current.getInputVertices();
+            if (inputsFrom != null) {
+                //Inputs from outside of this segment: use the kept activations
+                for (int j = 0; j < inputsFrom.length; j++) {
+                    int from = inputsFrom[j].getVertexIndex();
+                    if (checkpointPlan.segmentOf(from) != segment) {
+                        current.setInput(j, checkpointActivations[from], segmentMgr);
+                    }
+                }
+            }
+        }
+
+        long[] rngState = seedCheckpointSegment(segment);
+        try {
+            for (int i = start; i <= end; i++) {
+                checkpointVertexForward(vertices[topologicalOrder[i]], segmentMgr, keptMgr, segmentMgr, segment);
+            }
+        } finally {
+            restoreRngState(rngState);
+        }
+    }
+
+    /**
+     * Forward pass for a single vertex with gradient checkpointing: output activations are placed in the workspace of
+     * outMgr, and are set as inputs for the vertices it feeds into (only those in the specified segment, if
+     * onlySegment >= 0)
+     */
+    private INDArray checkpointVertexForward(GraphVertex current, LayerWorkspaceMgr outMgr, LayerWorkspaceMgr keptMgr,
+                                            LayerWorkspaceMgr segmentMgr, int onlySegment) {
+        INDArray out;
+        try (MemoryWorkspace wsFFWorking = outMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+            if (current.isInputVertex()) {
+                out = inputs[current.getVertexIndex()];
+            } else {
+                StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
+                long timingStart = StepTimingUtil.start(timing);
+                out = current.doForward(true, outMgr);
+                out = outMgr.leverageTo(ArrayType.ACTIVATIONS, out);
+                StepTimingUtil.end(timing, this, StepPhase.FORWARD, current.getVertexName(), timingStart);
+                validateArrayWorkspaces(outMgr, out, ArrayType.ACTIVATIONS, current.getVertexName(), false,
+                        "Feed forward (gradient checkpointing)");
+            }
+
+            VertexIndices[] inputsTo = current.getOutputVertices();
+            if (inputsTo != null) {
+                for (VertexIndices v : inputsTo) {
+                    int consumerSegment = checkpointPlan.segmentOf(v.getVertexIndex());
+                    if (onlySegment >= 0 && consumerSegment != onlySegment) {
+                        continue;
+                    }
+                    vertices[v.getVertexIndex()].setInput(v.getVertexEdgeNumber(), out,
+                            consumerSegment >= 0 ? segmentMgr : keptMgr);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Release the layer inputs and other state for all vertices in the specified gradient checkpointing segment
+     */
+    private void releaseCheckpointSegment(int segment) {
+        int start = checkpointPlan.getSegmentStart()[segment];
+        int end = checkpointPlan.getSegmentEnd()[segment];
+        for (int i = start; i <= end; i++) {
+            vertices[topologicalOrder[i]].clear();
+        }
+    }
+
+    /**
+     * Workspace manager for gradient checkpointing: activations (and layer inputs) in the specified workspace
+     */
+    private LayerWorkspaceMgr checkpointWorkspaceMgr(String activationsWorkspace) {
+        LayerWorkspaceMgr mgr;
+        if (configuration.getTrainingWorkspaceMode() == WorkspaceMode.NONE) {
+            mgr = LayerWorkspaceMgr.noWorkspaces();
+        } else {
+            mgr = LayerWorkspaceMgr.builder()
+                    .with(ArrayType.ACTIVATIONS, activationsWorkspace, WS_ALL_LAYERS_ACT_CONFIG)
+                    .with(ArrayType.INPUT, activationsWorkspace, WS_ALL_LAYERS_ACT_CONFIG)
+                    .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .build();
+
+            if (inputs != null && inputs[0] != null && inputs[0].isAttached()) {
+                //Don't leverage out of async DataMultiSetIterator workspaces
+                mgr.setNoLeverageOverride(inputs[0].data().getParentWorkspace().getId());
+            }
+
+            if (configuration.getCacheMode() != CacheMode.NONE) {
+                mgr.setWorkspace(ArrayType.FF_CACHE, activationsWorkspace, WS_ALL_LAYERS_ACT_CONFIG);
+            }
+        }
+        mgr.setHelperWorkspacePointers(helperWorkspaces);
+        return mgr;
+    }
+
 
     /**
      * Provide the output of the specified layers, detached from any workspace. This is most commonly used at inference/test
@@ -2595,15 +2862,29 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         //Do backprop, in reverse topological order
         LinkedList<Triple<String, INDArray, Character>> gradients = new LinkedList<>();
+        Map<String, INDArray> sparseRows = new HashMap<>();
         boolean[] setVertexEpsilon = new boolean[topologicalOrder.length]; //If true: already set epsilon for this vertex; later epsilons should be *added* to the existing one, not set
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
 
+        //Mixed precision: output layer gradients are scaled, to avoid underflow of small gradients in reduced precision
+        double lossScale = getLossScale();
+
+        //Gradient checkpointing: each segment is recomputed from the kept activations once backprop reaches it
+        boolean checkpointing = checkpointPlan != null && checkpointActivations != null && !truncatedBPTT
+                && (externalEpsilons == null || externalEpsilons.length == 0);
+        LayerWorkspaceMgr recomputeKeptMgr = checkpointing ? checkpointWorkspaceMgr(WS_ALL_LAYERS_ACT) : null;
+        LayerWorkspaceMgr recomputeSegmentMgr = checkpointing ? checkpointWorkspaceMgr(WS_CHECKPOINT_SEGMENT) : null;
+        int currentSegment = -1;
+        MemoryWorkspace wsSegment = null;
+
         boolean traceLog = log.isTraceEnabled();
+        StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
 
         Throwable t = null;
         try {
             for (int i = topologicalOrder.length - 1; i >= 0; i--) {
                 boolean hitFrozen = false;
+                boolean isOutputLayer = false;
                 GraphVertex current = vertices[topologicalOrder[i]];
                 int vIdx = current.getVertexIndex();
                 String vertexName = current.getVertexName();
@@ -2612,6 +2893,26 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     log.trace("About backprop: {} (\"{}\") - {}", i, vertexName, current.getClass().getSimpleName());
                 }
 
+                if (checkpointing) {
+                    int seg = checkpointPlan.segmentAtPosition(i);
+                    if (seg != currentSegment) {
+                        if (wsSegment != null) {
+                            wsSegment.close();
+                            wsSegment = null;
+                        }
+                        if (currentSegment >= 0) {
+                            releaseCheckpointSegment(currentSegment);
+                        }
+                        currentSegment = seg;
+                        if (seg >= 0) {
+                            wsSegment = recomputeSegmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                            //Not nested with the activation gradient workspaces - see below
+                            wsSegment.setPreviousWorkspace(initialWorkspace);
+                            recomputeCheckpointSegment(seg, recomputeKeptMgr, recomputeSegmentMgr);
+                        }
+                    }
+                }
+
                 //FIXME: make the frozen vertex feature extraction more flexible
                 if (current.hasLayer() && current.getLayer() instanceof FrozenLayer || current instanceof FrozenVertex) {
                     hitFrozen = true;
@@ -2674,6 +2975,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
                         INDArray currLabels = labels[thisOutputNumber];
                         outputLayer.setLabels(currLabels);
+                        isOutputLayer = true;
                     } else {
                         if ((externalEpsilons == null || externalEpsilons.length == 0)
                                 && labels[thisOutputNumber] != null) {
@@ -2707,12 +3009,24 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     closeAtEndIteraton[closeableAt].add(wsActivationGrads);
                 }
 
+                long timingStart = StepTimingUtil.start(timing);
                 Pair<Gradient, INDArray[]> pair;
                 INDArray[] epsilons;
                 try (MemoryWorkspace wsWorkingMem = workspaceMgr.notifyScopeEntered(ArrayType.BP_WORKING_MEM)) {
                     pair = current.doBackward(truncatedBPTT, workspaceMgr);
                     epsilons = pair.getSecond();
 
+                    if (isOutputLayer && lossScale != 1.0) {
+                        if (pair.getFirst() != null) {
+                            for (INDArray g : pair.getFirst().gradientForVariable().values())
+                                g.muli(lossScale);
+                        }
+                        for (INDArray epsilon : epsilons) {
+                            if (epsilon != null)
+                                epsilon.muli(lossScale);
+                        }
+                    }
+
                     //Validate workspace location for the activation gradients:
                     //validateArrayWorkspaces(LayerWorkspaceMgr mgr, INDArray array, ArrayType arrayType, String vertexName, boolean isInputVertex, String op){
                     for (INDArray epsilon : epsilons) {
@@ -2754,6 +3068,15 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     }
                     for (Triple<String, INDArray, Character> triple : tempList)
                         gradients.addFirst(triple);
+                    for (Map.Entry<String, INDArray> entry : g.sparseRowsForVariable().entrySet())
+                        sparseRows.put(current.getVertexName() + "_" + entry.getKey(), entry.getValue());
+
+                    //Gradients for this vertex are final: allows optimizer to share them while backprop goes on
+                    if (solver != null && solver.getOptimizer() instanceof BaseOptimizer)
+                        ((BaseOptimizer) solver.getOptimizer()).layerGradientsDone(current, g);
+                }
+                if (timing != null) {
+                    StepTimingUtil.end(timing, this, StepPhase.BACKWARD, current.getVertexName(), timingStart);
                 }
 
                 //Close any activation gradient workspaces that we no longer require
@@ -2775,6 +3098,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         } catch (Throwable t2){
             t = t2;
         } finally {
+            if(wsSegment != null){
+                wsSegment.close();
+            }
             //Close all open workspaces... usually this list will be empty, but not if an exception is thrown
             for(MemoryWorkspace ws : openActivationsWorkspaces.keySet()){
                 try{
@@ -2802,6 +3128,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         for (Triple<String, INDArray, Character> tr : gradients) {
             gradient.setGradientFor(tr.getFirst(), tr.getSecond(), tr.getThird());
         }
+        for (Map.Entry<String, INDArray> entry : sparseRows.entrySet()) {
+            gradient.setSparseRowsFor(entry.getKey(), entry.getValue());
+        }
 
         this.gradient = gradient;
 
@@ -2938,6 +3267,21 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         return null;
     }
 
+    /**
+     * Get the current loss scale for mixed precision training: the gradients of the loss are multiplied by this value
+     * during backprop (when fitting with labels), to avoid underflow. See {@link org.deeplearning4j.nn.conf.MixedPrecision}
+     *
+     * @return Current loss scale, or 1.0 if mixed precision training is not enabled
+     */
+    public double getLossScale() {
+        if (configuration.getMixedPrecision() == null)
+            return 1.0;
+        ComputationGraphUpdater u = getUpdater(false);
+        if (u != null && u.isMixedPrecision())
+            return u.getLossScale();
+        return configuration.getMixedPrecision().getInitialScale();
+    }
+
     /**
      * Set the computationGraphUpdater for the network
      */
@@ -3265,6 +3609,11 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         if (this.flattenedParams != null && this.flattenedParams.length() == params.length()) {
             this.flattenedParams.assign(params);
+            ComputationGraphUpdater u = getUpdater(false);
+            if (u != null) {
+                //Mixed precision: master parameters need to be updated also
+                u.resetMasterParams();
+            }
             return;
         }
 
@@ -3429,8 +3778,16 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
     @Override
     public void applyConstraints(int iteration, int epoch) {
+        boolean anyConstraints = false;
         for(Layer l : layers){
             l.applyConstraints(iteration, epoch);
+            anyConstraints |= l.conf().getLayer().getConstraints() != null;
+        }
+
+        ComputationGraphUpdater u = getUpdater(false);
+        if(anyConstraints && u != null){
+            //Mixed precision: constraints modify the network parameters, hence the master parameters need to be updated
+            u.resetMasterParams();
         }
     }
 
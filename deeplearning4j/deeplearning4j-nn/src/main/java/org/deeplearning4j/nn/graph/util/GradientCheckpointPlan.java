@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.graph.util;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.graph.vertex.VertexIndices;
+
+import java.util.*;
+
+/**
+ * Gradient checkpointing plan for a ComputationGraph: the segments of the topological order whose activations are
+ * released after the forward pass, and recomputed segment by segment during backprop.<br>
+ * Each checkpoint vertex ends a segment: segment k spans the topological positions after checkpoint k-1, up to and
+ * including checkpoint k. Vertices after the last checkpoint (including all output layers) are not part of any segment,
+ * and are never recomputed.<br>
+ * Only the activations of vertices that are used outside of their own segment (checkpoint vertices, and the sources of
+ * any skip connections that cross segment boundaries) are kept for the whole backward pass.
+ */
+@Getter
+public class GradientCheckpointPlan {
+    private final int numSegments;
+    /**
+     * First and last (inclusive) position in the topological order, for each segment
+     */
+    private final int[] segmentStart;
+    private final int[] segmentEnd;
+    /**
+     * Segment for each vertex (by vertex index), -1 for vertices that aren't in any segment
+     */
+    private final int[] segmentByVertex;
+    /**
+     * True for vertices (by vertex index) whose activations are released after the forward pass, and recomputed
+     */
+    private final boolean[] recomputed;
+    /**
+     * True for vertices (by vertex index) whose activations are used as inputs when recomputing a segment. These
+     * activations must not be modified in-place by any layer
+     */
+    private final boolean[] usedForRecompute;
+
+    private GradientCheckpointPlan(int numSegments, int[] segmentStart, int[] segmentEnd, int[] segmentByVertex,
+                                   boolean[] recomputed, boolean[] usedForRecompute) {
+        this.numSegments = numSegments;
+        this.segmentStart = segmentStart;
+        this.segmentEnd = segmentEnd;
+        this.segmentByVertex = segmentByVertex;
+        this.recomputed = recomputed;
+        this.usedForRecompute = usedForRecompute;
+    }
+
+    /**
+     * @return Segment of the specified vertex, or -1 if the vertex isn't in any segment
+     */
+    public int segmentOf(int vertexIdx) {
+        return segmentByVertex[vertexIdx];
+    }
+
+    /**
+     * @return Segment at the specified position in the topological order, or -1 if not in any segment
+     */
+    public int segmentAtPosition(int topoPosition) {
+        //Segments are contiguous and in order
+        for (int i = 0; i < numSegments; i++) {
+            if (topoPosition >= segmentStart[i] && topoPosition <= segmentEnd[i])
+                return i;
+        }
+        return -1;
+    }
+
+    public boolean isRecomputed(int vertexIdx) {
+        return recomputed[vertexIdx];
+    }
+
+    public boolean isUsedForRecompute(int vertexIdx) {
+        return usedForRecompute[vertexIdx];
+    }
+
+    /**
+     * Build the gradient checkpointing plan
+     *
+     * @param vertices         Graph vertices, by vertex index
+     * @param topologicalOrder Topological order of the vertices
+     * @param checkpoints      Names of the checkpoint vertices. Must not be network inputs, and must precede all output
+     *                         vertices in the topological order
+     * @return The plan, or null if no checkpoints are specified
+     */
+    public static GradientCheckpointPlan build(@NonNull GraphVertex[] vertices, @NonNull int[] topologicalOrder,
+                                               Collection<String> checkpoints) {
+        if (checkpoints == null || checkpoints.isEmpty())
+            return null;
+
+        int[] positionOf = new int[vertices.length];
+        for (int i = 0; i < topologicalOrder.length; i++) {
+            positionOf[topologicalOrder[i]] = i;
+        }
+        Map<String, Integer> nameToIdx = new HashMap<>();
+        for (GraphVertex gv : vertices) {
+            nameToIdx.put(gv.getVertexName(), gv.getVertexIndex());
+        }
+        int firstOutputPos = firstOutputPosition(vertices, topologicalOrder);
+
+        SortedSet<Integer> cpPositions = new TreeSet<>();
+        for (String s : checkpoints) {
+            Integer idx = nameToIdx.get(s);
+            if (idx == null)
+                throw new IllegalStateException("Invalid gradient checkpoint: no vertex with name \"" + s + "\" exists");
+            if (vertices[idx].isInputVertex())
+                throw new IllegalStateException("Invalid gradient checkpoint: vertex \"" + s + "\" is a network input");
+            if (positionOf[idx] >= firstOutputPos)
+                throw new IllegalStateException("Invalid gradient checkpoint: vertex \"" + s + "\" is at position "
+                        + positionOf[idx] + " in the topological order, but gradient checkpoints must precede all output"
+                        + " vertices (first output vertex is at position " + firstOutputPos + ")");
+            cpPositions.add(positionOf[idx]);
+        }
+
+        int numSegments = cpPositions.size();
+        int[] segmentStart = new int[numSegments];
+        int[] segmentEnd = new int[numSegments];
+        int[] segmentByVertex = new int[vertices.length];
+        Arrays.fill(segmentByVertex, -1);
+        int k = 0;
+        int start = 0;
+        for (int end : cpPositions) {
+            segmentStart[k] = start;
+            segmentEnd[k] = end;
+            for (int p = start; p <= end; p++) {
+                segmentByVertex[topologicalOrder[p]] = k;
+            }
+            start = end + 1;
+            k++;
+        }
+
+        boolean[] recomputed = new boolean[vertices.length];
+        boolean[] usedForRecompute = new boolean[vertices.length];
+        for (GraphVertex gv : vertices) {
+            int idx = gv.getVertexIndex();
+            int seg = segmentByVertex[idx];
+            boolean usedOutsideSegment = false;
+            VertexIndices[] outputsTo = gv.getOutputVertices();
+            if (outputsTo != null) {
+                for (VertexIndices v : outputsTo) {
+                    int outSeg = segmentByVertex[v.getVertexIndex()];
+                    if (outSeg != seg) {
+                        usedOutsideSegment = true;
+                        if (outSeg >= 0)
+                            usedForRecompute[idx] = true;
+                    }
+                }
+            }
+            recomputed[idx] = seg >= 0 && !gv.isInputVertex() && !usedOutsideSegment;
+        }
+
+        return new GradientCheckpointPlan(numSegments, segmentStart, segmentEnd, segmentByVertex, recomputed, usedForRecompute);
+    }
+
+    /**
+     * Select gradient checkpoints automatically: roughly every sqrt(N)th vertex in the topological order (where N is the
+     * number of vertices before the first output vertex), bounding the number of activations kept in memory during
+     * backprop to O(sqrt(N)), excluding activations used by skip connections that cross segment boundaries.
+     *
+     * @param vertices         Graph vertices, by vertex index
+     * @param topologicalOrder Topological order of the vertices
+     * @return Names of the checkpoint vertices. Empty if the graph is too small to benefit from checkpointing
+     */
+    public static List<String> selectCheckpoints(@NonNull GraphVertex[] vertices, @NonNull int[] topologicalOrder) {
+        int firstOutputPos = firstOutputPosition(vertices, topologicalOrder);
+        List<String> candidates = new ArrayList<>();
+        for (int i = 0; i < firstOutputPos; i++) {
+            GraphVertex gv = vertices[topologicalOrder[i]];
+            if (!gv.isInputVertex())
+                candidates.add(gv.getVertexName());
+        }
+
+        List<String> out = new ArrayList<>();
+        int n = candidates.size();
+        if (n < 4)
+            return out;
+
+        int step = (int) Math.ceil(Math.sqrt(n));
+        for (int i = step - 1; i < n; i += step) {
+            out.add(candidates.get(i));
+        }
+        return out;
+    }
+
+    private static int firstOutputPosition(GraphVertex[] vertices, int[] topologicalOrder) {
+        for (int i = 0; i < topologicalOrder.length; i++) {
+            if (vertices[topologicalOrder[i]].isOutputVertex())
+                return i;
+        }
+        return topologicalOrder.length;
+    }
+}
@@ -47,6 +47,8 @@ import org.deeplearning4j.nn.workspace.ArrayType;
 public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.EmbeddingLayer> {
     private static final int[] DIM_1 = new int[]{1};
 
+    private final SparseGradientRows sparseRows = new SparseGradientRows();
+
     public EmbeddingLayer(NeuralNetConfiguration conf, DataType dataType) {
         super(conf, dataType);
     }
@@ -63,19 +65,29 @@ public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.
         }
 
         INDArray weightGradients = gradientViews.get(DefaultParamInitializer.WEIGHT_KEY);
-        weightGradients.assign(0);
 
         long[] indexes = new long[(int) input.length()];
         for (int i = 0; i < indexes.length; i++) {
             indexes[i] = input.getInt(i, 0);
         }
 
+        INDArray rows = null;
+        if (layerConf().isSparseGradients()) {
+            //Only the rows used in the last minibatch can be non-zero
+            sparseRows.zeroGradient(weightGradients);
+            rows = sparseRows.setRows(indexes);
+        } else {
+            weightGradients.assign(0);
+        }
+
         INDArray indices = Nd4j.createFromArray(indexes);
         Nd4j.scatterUpdate(org.nd4j.linalg.api.ops.impl.scatter.ScatterUpdate.UpdateOp.ADD, weightGradients, indices, delta, DIM_1);
 
 
         Gradient ret = new DefaultGradient();
         ret.gradientForVariable().put(DefaultParamInitializer.WEIGHT_KEY, weightGradients);
+        if (rows != null)
+            ret.setSparseRowsFor(DefaultParamInitializer.WEIGHT_KEY, rows);
 
         if(hasBias()) {
             INDArray biasGradientsView = gradientViews.get(DefaultParamInitializer.BIAS_KEY);
@@ -135,6 +147,12 @@ public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.
         return ret;
     }
 
+    @Override
+    public void setBackpropGradientsViewArray(INDArray gradients) {
+        super.setBackpropGradientsViewArray(gradients);
+        sparseRows.reset();
+    }
+
     @Override
     public boolean hasBias() {
         return layerConf().hasBias();
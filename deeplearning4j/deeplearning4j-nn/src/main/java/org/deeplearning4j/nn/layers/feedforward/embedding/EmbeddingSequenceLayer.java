@@ -57,6 +57,7 @@ public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf
     }
 
     private int[] indexes;
+    private final SparseGradientRows sparseRows = new SparseGradientRows();
 
     @Override
     public Pair<Gradient, INDArray> backpropGradient(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
@@ -80,7 +81,14 @@ public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf
         delta = delta.reshape('c',inputLength * numSamples, nOut);
 
         INDArray weightGradients = gradientViews.get(DefaultParamInitializer.WEIGHT_KEY);
-        weightGradients.assign(0);
+        INDArray rows = null;
+        if (layerConf().isSparseGradients()) {
+            //Only the rows used in the last minibatch can be non-zero
+            sparseRows.zeroGradient(weightGradients);
+            rows = sparseRows.setRows(indexes);
+        } else {
+            weightGradients.assign(0);
+        }
 
         if (!hasDefaultStridesForShape(input))
             input = workspaceMgr.dup(ArrayType.ACTIVATIONS, input, 'f');
@@ -90,6 +98,8 @@ public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf
 
         Gradient ret = new DefaultGradient();
         ret.gradientForVariable().put(DefaultParamInitializer.WEIGHT_KEY, weightGradients);
+        if (rows != null)
+            ret.setSparseRowsFor(DefaultParamInitializer.WEIGHT_KEY, rows);
 
         if (hasBias()) {
             INDArray biasGradientsView = gradientViews.get(DefaultParamInitializer.BIAS_KEY);
@@ -183,6 +193,12 @@ public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf
         return ret;
     }
 
+    @Override
+    public void setBackpropGradientsViewArray(INDArray gradients) {
+        super.setBackpropGradientsViewArray(gradients);
+        sparseRows.reset();
+    }
+
     @Override
     public boolean hasBias() {
         return layerConf().hasBias();
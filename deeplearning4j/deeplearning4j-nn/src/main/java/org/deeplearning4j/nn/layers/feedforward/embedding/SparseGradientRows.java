@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.feedforward.embedding;
+
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.scatter.ScatterUpdate;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the rows of the embedding weight gradients used in the last minibatch, for layers with sparse gradients
+ * enabled.<br>
+ * Only these rows can be non-zero after backprop (and after a sparse update), so only they need to be zeroed before
+ * the next minibatch, instead of the full [vocabSize, vectorSize] gradient.<br>
+ * Anything else writing to the gradient view must zero the full weight gradient afterwards - i.e., gradients sharing
+ * decodes updates of other workers into it, see StochasticGradientDescent.
+ */
+class SparseGradientRows {
+    private static final int[] DIM_1 = new int[]{1};
+
+    private INDArray gradientView;
+    private INDArray rows;
+
+    /**
+     * Zero the rows of the weight gradient array that were used in the last minibatch, or the full array if they are
+     * not known (first iteration, or gradient view array has changed)
+     */
+    void zeroGradient(INDArray weightGradients) {
+        if (rows == null || gradientView != weightGradients) {
+            weightGradients.assign(0);
+        } else {
+            INDArray zeros = Nd4j.zeros(weightGradients.dataType(), rows.length(), weightGradients.size(1));
+            Nd4j.scatterUpdate(ScatterUpdate.UpdateOp.ASSIGN, weightGradients, rows, zeros, DIM_1);
+        }
+        gradientView = weightGradients;
+    }
+
+    /**
+     * Set the rows used in the current minibatch
+     *
+     * @param indexes Embedding indices for the current minibatch (may contain duplicates)
+     * @return Distinct rows, as an integer vector. Detached (not in any workspace)
+     */
+    INDArray setRows(long[] indexes) {
+        long[] sorted = Arrays.copyOf(indexes, indexes.length);
+        Arrays.sort(sorted);
+        int[] distinct = new int[sorted.length];
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1])
+                distinct[n++] = (int) sorted[i];
+        }
+
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            rows = Nd4j.createFromArray(Arrays.copyOf(distinct, n));
+        }
+        return rows;
+    }
+
+    INDArray setRows(int[] indexes) {
+        long[] l = new long[indexes.length];
+        for (int i = 0; i < l.length; i++)
+            l[i] = indexes[i];
+        return setRows(l);
+    }
+
+    /**
+     * Forget the tracked rows: the full gradient array will be zeroed next time
+     */
+    void reset() {
+        rows = null;
+        gradientView = null;
+    }
+}
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.recurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.gradient.DefaultGradient;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.ActivationSigmoid;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.transforms.same.TimesOneMinus;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.nd4j.linalg.indexing.NDArrayIndex.all;
+import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
+
+/**
+ * Whole-sequence LSTM helper for CPU: avoids the per-time-step Java loop of {@link LSTMHelpers}.<br>
+ * <br>
+ * Forward pass: executed as a single native "lstmBlock" op call for all time steps. All gate activations and cell
+ * states are returned for the whole sequence, and are kept for backprop.<br>
+ * Backward pass: only the recurrent part (one GEMM with the recurrent weights and a few element-wise ops) is done per
+ * time step. Input weight, recurrent weight and bias gradients, and the epsilons for the layer below, are computed for
+ * all time steps at once - one GEMM each, instead of one per time step.<br>
+ * <br>
+ * Supported configurations: LSTM (no peephole connections) with sigmoid gate activations and tanh activation function,
+ * no mask arrays, forward direction. For anything else, the built-in implementation is used.<br>
+ * Enabled via the {@link org.deeplearning4j.config.DL4JSystemProperties#LSTM_FUSED_HELPER_PROPERTY} system property
+ */
+@Slf4j
+public class FusedLSTMHelper implements LSTMHelper {
+    /**
+     * Native lstmBlock gate order is [input gate, block input, forget gate, output gate]; DL4J column order is
+     * [block input, forget gate, output gate, input modulation gate]. Native gate k is DL4J column block NATIVE_GATES[k]
+     */
+    private static final int[] NATIVE_GATES = {3, 0, 1, 2};
+
+    @Override
+    public boolean checkSupported(IActivation gateActivationFn, IActivation activationFn, boolean hasPeepholeConnections) {
+        return gateActivationFn instanceof ActivationSigmoid && activationFn instanceof ActivationTanH && !hasPeepholeConnections;
+    }
+
+    @Override
+    public FwdPassReturn activate(Layer layer, NeuralNetConfiguration conf, IActivation gateActivationFn, INDArray input,
+                                  INDArray recurrentWeights, INDArray inputWeights, INDArray biases, boolean training,
+                                  INDArray prevOutputActivations, INDArray prevMemCellState, boolean forBackprop, boolean forwards,
+                                  String inputWeightKey, INDArray maskArray, boolean hasPeepholeConnections, LayerWorkspaceMgr workspaceMgr) {
+        if (hasPeepholeConnections || maskArray != null || !forwards || input.rank() != 3)
+            return null;    //Not supported: use built-in implementation
+
+        DataType dt = inputWeights.dataType();
+        long miniBatchSize = input.size(0);
+        long nIn = inputWeights.size(0);
+        long nOut = recurrentWeights.size(0);
+        long timeSeriesLength = input.size(2);
+
+        //Concatenated [input; recurrent] weights and biases, in native gate order
+        INDArray w = Nd4j.createUninitialized(dt, new long[]{nIn + nOut, 4 * nOut}, 'f');
+        toNativeGateOrder(inputWeights, w.get(interval(0, nIn), all()), nOut);
+        toNativeGateOrder(recurrentWeights.get(all(), interval(0, 4 * nOut)), w.get(interval(nIn, nIn + nOut), all()), nOut);
+        INDArray b = Nd4j.createUninitialized(dt, new long[]{1, 4 * nOut}, 'c');
+        toNativeGateOrder(biases.reshape(1, 4 * nOut), b, nOut);
+        INDArray noPeephole = Nd4j.zeros(dt, nOut);
+
+        //All outputs: [mb, nOut, T] in f order, so that each time step is contiguous (as per the built-in implementation)
+        long[] outShape = {miniBatchSize, nOut, timeSeriesLength};
+        ArrayType stateType = forBackprop ? ArrayType.BP_WORKING_MEM : ArrayType.FF_WORKING_MEM;
+        INDArray i = workspaceMgr.createUninitialized(stateType, dt, outShape, 'f');
+        INDArray c = workspaceMgr.createUninitialized(stateType, dt, outShape, 'f');
+        INDArray f = workspaceMgr.createUninitialized(stateType, dt, outShape, 'f');
+        INDArray o = workspaceMgr.createUninitialized(stateType, dt, outShape, 'f');
+        INDArray z = workspaceMgr.createUninitialized(stateType, dt, outShape, 'f');
+        INDArray h = workspaceMgr.createUninitialized(stateType, dt, outShape, 'f');
+        INDArray y = workspaceMgr.createUninitialized(ArrayType.ACTIVATIONS, dt, outShape, 'f');
+
+        DynamicCustomOp op = DynamicCustomOp.builder("lstmBlock")
+                .addInputs(Nd4j.scalar(timeSeriesLength), input, prevMemCellState, prevOutputActivations, w,
+                        noPeephole, noPeephole, noPeephole, b.reshape(4 * nOut))
+                .addOutputs(i, c, f, o, z, h, y)
+                .addIntegerArguments(
+                        0,      //No peephole connections
+                        1)      //Data format: 1 = NST = [mb, size, seqLength]
+                .addFloatingPointArguments(
+                        0.0,    //Forget bias
+                        0.0)    //Cell clipping: disabled
+                .build();
+        Nd4j.exec(op);
+
+        FusedFwdPassReturn ret = new FusedFwdPassReturn();
+        ret.fwdPassOutput = y;
+        ret.inputModGate = i;
+        ret.cellState = c;
+        ret.forgetGate = f;
+        ret.outputGate = o;
+        ret.blockInput = z;
+        ret.cellActivations = h;
+        ret.lastAct = y.tensorAlongDimension((int) timeSeriesLength - 1, 1, 0);
+        ret.lastMemCell = c.tensorAlongDimension((int) timeSeriesLength - 1, 1, 0);
+        ret.prevAct = prevOutputActivations;
+        ret.prevMemCell = prevMemCellState;
+        return ret;
+    }
+
+    @Override
+    public Pair<Gradient, INDArray> backpropGradient(NeuralNetConfiguration conf, IActivation gateActivationFn, INDArray input,
+                                                     INDArray recurrentWeights, INDArray inputWeights, INDArray epsilon, boolean truncatedBPTT,
+                                                     int tbpttBackwardLength, FwdPassReturn fwdPass, boolean forwards, String inputWeightKey,
+                                                     String recurrentWeightKey, String biasWeightKey, Map<String, INDArray> gradientViews,
+                                                     INDArray maskArray, boolean hasPeepholeConnections, LayerWorkspaceMgr workspaceMgr) {
+        if (!(fwdPass instanceof FusedFwdPassReturn) || maskArray != null || !forwards || hasPeepholeConnections)
+            return null;    //Forward pass was done by the built-in implementation
+        FusedFwdPassReturn fwd = (FusedFwdPassReturn) fwdPass;
+
+        DataType dt = inputWeights.dataType();
+        int miniBatchSize = (int) input.size(0);
+        long nIn = inputWeights.size(0);
+        long nOut = recurrentWeights.size(0);
+        int timeSeriesLength = (int) input.size(2);
+        if (epsilon.rank() < 3)
+            epsilon = epsilon.reshape(epsilon.ordering(), epsilon.size(0), epsilon.size(1), 1);
+
+        int endIdx = 0;
+        if (truncatedBPTT)
+            endIdx = Math.max(0, timeSeriesLength - tbpttBackwardLength);
+        int bpLength = timeSeriesLength - endIdx;
+
+        INDArray wIFOG = recurrentWeights.get(all(), interval(0, 4 * nOut));
+
+        //Deltas (dL/dz) for all gates and all backpropagated time steps: [T, mb, 4*nOut] in c order, so that each time
+        // step is contiguous, and the whole array can be used as a [T*mb, 4*nOut] matrix without a copy
+        INDArray deltas = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[]{bpLength, miniBatchSize, 4 * nOut}, 'c');
+        INDArray nablaOut = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[]{miniBatchSize, nOut}, 'f');
+        INDArray nablaCellState = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[]{miniBatchSize, nOut}, 'f');
+        INDArray nablaCellStateNext = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[]{miniBatchSize, nOut}, 'f');
+        INDArray temp = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[]{miniBatchSize, nOut}, 'f');
+
+        for (int t = timeSeriesLength - 1; t >= endIdx; t--) {
+            boolean last = t == timeSeriesLength - 1;
+            INDArray delta = deltas.slice(t - endIdx);
+            INDArray deltaa = delta.get(all(), interval(0, nOut));
+            INDArray deltaf = delta.get(all(), interval(nOut, 2 * nOut));
+            INDArray deltao = delta.get(all(), interval(2 * nOut, 3 * nOut));
+            INDArray deltag = delta.get(all(), interval(3 * nOut, 4 * nOut));
+
+            INDArray ao = fwd.outputGate.tensorAlongDimension(t, 1, 0);
+            INDArray af = fwd.forgetGate.tensorAlongDimension(t, 1, 0);
+            INDArray ag = fwd.inputModGate.tensorAlongDimension(t, 1, 0);
+            INDArray ai = fwd.blockInput.tensorAlongDimension(t, 1, 0);
+            INDArray sigmahOfS = fwd.cellActivations.tensorAlongDimension(t, 1, 0);
+            INDArray prevMemCellState = t == 0 ? fwd.prevMemCell : fwd.cellState.tensorAlongDimension(t - 1, 1, 0);
+
+            //LSTM unit output errors: epsilon, plus errors from the next time step via the recurrent weights
+            nablaOut.assign(epsilon.tensorAlongDimension(t, 1, 0));
+            if (!last)
+                Nd4j.gemm(deltas.slice(t + 1 - endIdx), wIFOG, nablaOut, false, true, 1.0, 1.0);
+
+            //Output gate delta: nablaOut * tanh(c) * sigmoid'(zo)
+            Nd4j.getExecutioner().exec(new TimesOneMinus(ao, deltao));
+            deltao.muli(sigmahOfS).muli(nablaOut);
+
+            //Memory cell error: nablaOut * o * tanh'(c), plus next forget gate * next memory cell error
+            nablaCellState.assign(sigmahOfS).muli(sigmahOfS).rsubi(1.0).muli(ao).muli(nablaOut);
+            if (!last) {
+                temp.assign(fwd.forgetGate.tensorAlongDimension(t + 1, 1, 0)).muli(nablaCellStateNext);
+                nablaCellState.addi(temp);
+            }
+
+            //Forget gate, input modulation gate and network input deltas
+            Nd4j.getExecutioner().exec(new TimesOneMinus(af, deltaf));
+            deltaf.muli(prevMemCellState).muli(nablaCellState);
+            Nd4j.getExecutioner().exec(new TimesOneMinus(ag, deltag));
+            deltag.muli(ai).muli(nablaCellState);
+            deltaa.assign(ai).muli(ai).rsubi(1.0).muli(ag).muli(nablaCellState);
+
+            INDArray swap = nablaCellStateNext;
+            nablaCellStateNext = nablaCellState;
+            nablaCellState = swap;
+        }
+
+        //Everything below is done once for all time steps: rows of the [T*mb, x] matrices are (time, example) pairs
+        INDArray deltas2d = deltas.reshape('c', (long) bpLength * miniBatchSize, 4 * nOut);
+
+        INDArray inputTimeMajor = input.get(all(), all(), interval(endIdx, timeSeriesLength)).permute(2, 0, 1).dup('c');
+        INDArray input2d = inputTimeMajor.reshape('c', (long) bpLength * miniBatchSize, nIn);
+
+        INDArray prevActTimeMajor = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[]{bpLength, miniBatchSize, nOut}, 'c');
+        prevActTimeMajor.slice(0).assign(endIdx == 0 ? fwd.prevAct : fwd.fwdPassOutput.tensorAlongDimension(endIdx - 1, 1, 0));
+        if (bpLength > 1) {
+            prevActTimeMajor.get(interval(1, bpLength), all(), all())
+                    .assign(fwd.fwdPassOutput.get(all(), all(), interval(endIdx, timeSeriesLength - 1)).permute(2, 0, 1));
+        }
+        INDArray prevAct2d = prevActTimeMajor.reshape('c', (long) bpLength * miniBatchSize, nOut);
+
+        INDArray iwGradientsOut = gradientViews.get(inputWeightKey);
+        INDArray rwGradientsOut = gradientViews.get(recurrentWeightKey);
+        INDArray bGradientsOut = gradientViews.get(biasWeightKey);
+        Nd4j.gemm(input2d, deltas2d, iwGradientsOut, true, false, 1.0, 0.0);
+        Nd4j.gemm(prevAct2d, deltas2d, rwGradientsOut, true, false, 1.0, 0.0);
+        bGradientsOut.assign(deltas2d.sum(true, 0));
+
+        //Epsilons for all time steps: [nIn, T*mb] in f order is the same buffer as [nIn, mb, T] in f order
+        INDArray epsilonNext = workspaceMgr.create(ArrayType.ACTIVATION_GRAD, dt, new long[]{miniBatchSize, nIn, timeSeriesLength}, 'f');
+        INDArray epsilon2d = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[]{nIn, (long) bpLength * miniBatchSize}, 'f');
+        Nd4j.gemm(inputWeights, deltas2d, epsilon2d, false, true, 1.0, 0.0);
+        epsilonNext.get(all(), all(), interval(endIdx, timeSeriesLength))
+                .assign(epsilon2d.reshape('f', nIn, miniBatchSize, bpLength).permute(1, 0, 2));
+
+        Gradient retGradient = new DefaultGradient();
+        retGradient.gradientForVariable().put(inputWeightKey, iwGradientsOut);
+        retGradient.gradientForVariable().put(recurrentWeightKey, rwGradientsOut);
+        retGradient.gradientForVariable().put(biasWeightKey, bGradientsOut);
+
+        return new Pair<>(retGradient, epsilonNext);
+    }
+
+    @Override
+    public Map<String, Long> helperMemoryUse() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Copy the [x, 4*nOut] DL4J weights (column blocks in DL4J gate order) to the native gate order
+     */
+    protected static void toNativeGateOrder(INDArray dl4j, INDArray out, long nOut) {
+        for (int k = 0; k < NATIVE_GATES.length; k++) {
+            int gate = NATIVE_GATES[k];
+            out.get(all(), interval(k * nOut, (k + 1) * nOut)).assign(dl4j.get(all(), interval(gate * nOut, (gate + 1) * nOut)));
+        }
+    }
+
+    /**
+     * Forward pass arrays for the whole sequence, all with shape [mb, nOut, T]. Per time step arrays in
+     * {@link FwdPassReturn} are not set
+     */
+    protected static class FusedFwdPassReturn extends FwdPassReturn {
+        protected INDArray inputModGate;
+        protected INDArray cellState;
+        protected INDArray forgetGate;
+        protected INDArray outputGate;
+        protected INDArray blockInput;
+        protected INDArray cellActivations;
+    }
+}
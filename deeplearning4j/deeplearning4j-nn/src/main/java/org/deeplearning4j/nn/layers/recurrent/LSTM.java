@@ -17,6 +17,7 @@
 package org.deeplearning4j.nn.layers.recurrent;
 
 import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.config.DL4JSystemProperties;
 import org.deeplearning4j.nn.api.MaskState;
 import org.deeplearning4j.nn.conf.CacheMode;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
@@ -75,6 +76,13 @@ public class LSTM extends BaseRecurrentLayer<org.deeplearning4j.nn.conf.layers.L
                 }
             }
         }
+        else if ("CPU".equalsIgnoreCase(backend) && Boolean.parseBoolean(System.getProperty(DL4JSystemProperties.LSTM_FUSED_HELPER_PROPERTY))) {
+            helper = new FusedLSTMHelper();
+            log.debug("FusedLSTMHelper successfully initialized");
+            if (!helper.checkSupported(layerConf().getGateActivationFn(), layerConf().getActivationFn(), false)) {
+                helper = null;
+            }
+        }
         /*
         //Disabled pending: https://github.com/eclipse/deeplearning4j/issues/8331
         else if ("CPU".equalsIgnoreCase(backend) && BaseMKLDNNHelper.mklDnnEnabled()){
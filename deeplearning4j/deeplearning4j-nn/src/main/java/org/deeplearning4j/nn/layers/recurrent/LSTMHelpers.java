@@ -533,7 +533,11 @@ public class LSTMHelpers {
                     throw e;
                 }
 
-                if(isHelperAllowFallback){
+                if(isHelperAllowFallback && fwdPass.fwdPassOutputAsArrays == null){
+                    //Forward pass was done by the helper, without the per time step arrays the built-in implementation requires
+                    throw new RuntimeException("Error during LSTM helper backprop - can't fall back on built-in implementation" +
+                            " for forward pass done by helper", e);
+                } else if(isHelperAllowFallback){
                     layer.helperCountFail++;
                     log.warn("MKL/CuDNN execution failed - falling back on built-in implementation",e);
                 } else {
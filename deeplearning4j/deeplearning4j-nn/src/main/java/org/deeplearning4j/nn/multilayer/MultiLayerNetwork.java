@@ -30,6 +30,7 @@ import org.nd4j.linalg.dataset.AsyncDataSetIterator;;
 import org.deeplearning4j.datasets.iterator.MultiDataSetWrapperIterator;
 import org.deeplearning4j.eval.RegressionEvaluation;
 import org.deeplearning4j.exception.DL4JException;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
 import org.deeplearning4j.nn.api.*;
 import org.deeplearning4j.nn.api.Updater;
@@ -47,17 +48,22 @@ import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.layers.LayerHelper;
 import org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
 import org.deeplearning4j.nn.updater.UpdaterCreator;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.deeplearning4j.optimize.Solver;
 import org.deeplearning4j.optimize.api.ConvexOptimizer;
+import org.deeplearning4j.optimize.api.StepPhase;
+import org.deeplearning4j.optimize.api.StepTimingListener;
 import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.optimize.solvers.BaseOptimizer;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.util.CrashReportingUtil;
 import org.deeplearning4j.util.ModelSerializer;
 import org.deeplearning4j.util.NetworkUtils;
 import org.deeplearning4j.util.OutputLayerUtil;
+import org.deeplearning4j.util.StepTimingUtil;
 import org.nd4j.base.Preconditions;
 import org.nd4j.evaluation.IEvaluation;
 import org.nd4j.evaluation.classification.Evaluation;
@@ -757,11 +763,16 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      * This method allows you to specificy GradientsAccumulator instance to be used with this model<br>
      * <br>
      * PLEASE NOTE: Do not use this method unless you understand how to use GradientsAccumulator & updates sharing.<br>
-     * PLEASE NOTE: Do not use this method on standalone model
+     * PLEASE NOTE: Do not use this method on standalone model<br>
+     * PLEASE NOTE: Gradients sharing is not supported in mixed precision mode
      *
      * @param accumulator    Gradient accumulator to use for the network
      */
     public void setGradientsAccumulator(GradientsAccumulator accumulator) {
+        if (accumulator != null && layerWiseConfigurations.getMixedPrecision() != null)
+            throw new DL4JInvalidConfigException("Gradients sharing is not supported in mixed precision mode: updates" +
+                    " are applied to the master parameters directly, and wouldn't be shared with other workers");
+
         if (!isInitCalled())
             init();
 
@@ -1115,8 +1126,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         out.add(workspaceMgr.leverageTo(ArrayType.INPUT, input));    //Probably unnecessary usually
 
         boolean traceLog = log.isTraceEnabled();
+        StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
 
         for( int i=0; i<=layerIndex; i++ ){
+            long timingStart = StepTimingUtil.start(timing);
             try(MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)){
                 if (getLayerWiseConfigurations().getInputPreProcess(i) != null) {
                     input = getLayerWiseConfigurations().getInputPreProcess(i).preProcess(input, getInputMiniBatchSize(), workspaceMgr);
@@ -1160,6 +1173,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     log.trace("Completed forward pass: {} - {}", i, layers[i].getClass().getSimpleName());
                 }
             }
+            if (timing != null) {
+                StepTimingUtil.end(timing, this, StepPhase.FORWARD, layers[i].conf().getLayer().getLayerName(), timingStart);
+            }
         }
 
         return out;
@@ -1522,6 +1538,11 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         if (flattenedParams != null && params.length() == flattenedParams.length()) {
             if (params != flattenedParams) {
                 flattenedParams.assign(params);
+                Updater u = getUpdater(false);
+                if (u instanceof BaseMultiLayerUpdater) {
+                    //Mixed precision: master parameters need to be updated also
+                    ((BaseMultiLayerUpdater) u).resetMasterParams();
+                }
             }
         } else {
             if (flattenedParams == null)
@@ -1676,13 +1697,16 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         if (!iter.hasNext() && iter.resetSupported()) {
             iter.reset();
         }
+        StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
         long time1 = System.currentTimeMillis();
+        long timingStart = StepTimingUtil.start(timing);
         while (iter.hasNext()) {
 
             DataSet next = iter.next();
             long time2 = System.currentTimeMillis();
 
             lastEtlTime.set((time2 - time1));
+            StepTimingUtil.end(timing, this, StepPhase.DATA_WAIT, null, timingStart);
 
             if (next.getFeatures() == null || next.getLabels() == null)
                 break;
@@ -1717,6 +1741,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 clearLayerMaskArrays();
 
             time1 = System.currentTimeMillis();
+            timingStart = StepTimingUtil.start(timing);
             synchronizeIterEpochCounts();
         }
 
@@ -1894,6 +1919,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         //Store gradients is a list; used to ensure iteration order in DefaultGradient linked hash map. i.e., layer 0 first instead of output layer
         LinkedList<Triple<String, INDArray, Character>> gradientList = new LinkedList<>();
 
+        //Mixed precision: output layer gradients are scaled, to avoid underflow of small gradients in reduced precision
+        double lossScale = (withOutputLayer ? getLossScale() : 1.0);
+
 
         Pair<Gradient, INDArray> currPair = null;
         MemoryWorkspace wsActGradCloseNext = null;
@@ -1901,6 +1929,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
 
         boolean traceLog = log.isTraceEnabled();
+        StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
 
         Throwable t = null;
         try {
@@ -1908,6 +1937,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 if (layers[i] instanceof FrozenLayer) {
                     break;
                 }
+                long timingStart = StepTimingUtil.start(timing);
 
                 if (traceLog) {
                     log.trace("About to backprop: {} - {}", i, layers[i].getClass().getSimpleName());
@@ -1952,6 +1982,13 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         }
                     }
 
+                    if (lossScale != 1.0 && i == layers.length - 1) {
+                        for (INDArray g : currPair.getFirst().gradientForVariable().values())
+                            g.muli(lossScale);
+                        if (currPair.getSecond() != null)
+                            currPair.getSecond().muli(lossScale);
+                    }
+
                     if (currPair.getSecond() != null) {
                         //Edge case: may be null for Embedding layer, for example
                         validateArrayWorkspaces(workspaceMgr, currPair.getSecond(), ArrayType.ACTIVATION_GRAD, i,
@@ -1964,6 +2001,12 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         gradientList.addLast(new Triple<>(multiGradientKey, entry.getValue(),
                                 currPair.getFirst().flatteningOrderForVariable(origName)));
                     }
+                    for (Map.Entry<String, INDArray> entry : currPair.getFirst().sparseRowsForVariable().entrySet()) {
+                        gradient.setSparseRowsFor(String.valueOf(i) + "_" + entry.getKey(), entry.getValue());
+                    }
+                    //Gradients for this layer are final: allows optimizer to share them while backprop goes on
+                    if (solver != null && solver.getOptimizer() instanceof BaseOptimizer)
+                        ((BaseOptimizer) solver.getOptimizer()).layerGradientsDone(layers[i], currPair.getFirst());
                     if (getLayerWiseConfigurations().getInputPreProcess(i) != null) {
                         currPair = new Pair<>(currPair.getFirst(),
                                 this.layerWiseConfigurations.getInputPreProcess(i)
@@ -1988,6 +2031,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     wsActGradCloseNext = wsActGradTemp;
                     wsActGradTemp = null;
                 }
+                if (timing != null) {
+                    StepTimingUtil.end(timing, this, StepPhase.BACKWARD, layers[i].conf().getLayer().getLayerName(), timingStart);
+                }
 
                 if (traceLog) {
                     log.trace("Completed backprop: {} - {}", i, layers[i].getClass().getSimpleName());
@@ -2749,10 +2795,13 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             // need the input to the output layer to be set (such that backprop can be done)
             List<INDArray> activations = ffToLayerActivationsInWs(layers.length - 2, fwdType, tbptt, input, mask, null);
             if (!trainingListeners.isEmpty()) {
+                StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
+                long timingStart = StepTimingUtil.start(timing);
                 //TODO: We possibly do want output layer activations in some cases here...
                 for (TrainingListener tl : trainingListeners) {
                     tl.onForwardPass(this, activations);
                 }
+                StepTimingUtil.end(timing, this, StepPhase.LISTENERS, null, timingStart);
             }
             INDArray inputToOutputLayer = activations.get(activations.size() - 1);
             if (layerWiseConfigurations.getInputPreProcess(layers.length - 1) != null) {
@@ -2773,11 +2822,14 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
             //Listeners
             if (!trainingListeners.isEmpty()) {
+                StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
+                long timingStart = StepTimingUtil.start(timing);
                 try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                     for (TrainingListener tl : trainingListeners) {
                         tl.onBackwardPass(this);
                     }
                 }
+                StepTimingUtil.end(timing, this, StepPhase.LISTENERS, null, timingStart);
             }
         }
 
@@ -2799,8 +2851,16 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
     @Override
     public void applyConstraints(int iteration, int epoch) {
+        boolean anyConstraints = false;
         for(Layer l : layers){
             l.applyConstraints(iteration, epoch);
+            anyConstraints |= l.conf().getLayer().getConstraints() != null;
+        }
+
+        Updater u = getUpdater(false);
+        if(anyConstraints && u instanceof BaseMultiLayerUpdater){
+            //Mixed precision: constraints modify the network parameters, hence the master parameters need to be updated
+            ((BaseMultiLayerUpdater) u).resetMasterParams();
         }
     }
 
@@ -3243,6 +3303,21 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         return null;
     }
 
+    /**
+     * Get the current loss scale for mixed precision training: the gradients of the loss are multiplied by this value
+     * during backprop (when fitting with labels), to avoid underflow. See {@link org.deeplearning4j.nn.conf.MixedPrecision}
+     *
+     * @return Current loss scale, or 1.0 if mixed precision training is not enabled
+     */
+    public double getLossScale() {
+        if (layerWiseConfigurations.getMixedPrecision() == null)
+            return 1.0;
+        Updater u = getUpdater(false);
+        if (u instanceof BaseMultiLayerUpdater && ((BaseMultiLayerUpdater) u).isMixedPrecision())
+            return ((BaseMultiLayerUpdater) u).getLossScale();
+        return layerWiseConfigurations.getMixedPrecision().getInitialScale();
+    }
+
     /** Set the updater for the MultiLayerNetwork */
     public void setUpdater(Updater updater) {
         if (solver == null) {
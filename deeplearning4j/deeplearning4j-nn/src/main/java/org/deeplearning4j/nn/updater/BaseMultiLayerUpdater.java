@@ -21,6 +21,7 @@ import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.conf.GradientNormalization;
+import org.deeplearning4j.nn.conf.MixedPrecision;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.nd4j.base.Preconditions;
@@ -35,6 +36,10 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.optimize.api.StepPhase;
+import org.deeplearning4j.optimize.api.StepTimingListener;
+import org.deeplearning4j.util.StepTimingUtil;
+import org.nd4j.linalg.learning.SparseGradientUpdater;
 import org.nd4j.linalg.learning.config.IUpdater;
 
 import java.util.*;
@@ -48,6 +53,11 @@ import java.util.*;
  *     however)<br>
  * are combined into a single {@link org.nd4j.linalg.learning.GradientUpdater} operation, instead of having a set of
  * smaller operations. A smaller number of larger operations improves performance, especially for GPUs.
+ * <p>
+ * In mixed precision mode (see {@link MixedPrecision}), the updater blocks operate on master copies of the parameters
+ * and gradients (and the updater state) in the master datatype, instead of the network's parameter/gradient views.
+ * The network gradients are unscaled (loss scaling) and cast into the master gradients at the start of each update,
+ * and the updated master parameters are cast back into the network parameters at the end of the update.
  *
  * @author Alex Black
  */
@@ -61,6 +71,23 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
     protected boolean initializedMinibatchDivision;
     protected List<INDArray> gradientsForMinibatchDivision;
 
+    //Mixed precision only: master params/gradients, per-layer master gradients, and dynamic loss scaling state
+    protected MixedPrecision mixedPrecision;
+    protected INDArray masterParams;
+    protected INDArray masterGradients;
+    protected Map<Trainable, Gradient> masterLayerGradients;
+    protected Map<Trainable, INDArray> masterLayerGradientViews;
+    protected double lossScale = 1.0;
+    protected int lossScaleGoodIterations;
+    protected long skippedIterations;
+
+    //Partial (per-layer) updates during backprop: layers already processed, number of updater blocks (from the end)
+    // already applied, and for the next block, index of the first parameter already applied (-1 if none), for the
+    // current iteration
+    protected Set<Trainable> partialLayersDone;
+    protected int partialBlocksDone;
+    protected int partialBlockFrom = -1;
+
     public BaseMultiLayerUpdater(T network) {
         this(network, null);
     }
@@ -86,10 +113,26 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
 
         INDArray paramsView = network.params();
         INDArray gradientView = getFlattenedGradientsView();
+        mixedPrecision = getModelMixedPrecision();
+        if (mixedPrecision != null && paramsView != null && paramsView.length() > 0) {
+            //Mixed precision: updater blocks operate on (detached) master copies of the parameters and gradients
+            masterParams = Nd4j.createUninitializedDetached(mixedPrecision.getMasterDataType(), paramsView.shape());
+            masterParams.assign(paramsView);
+            masterGradients = Nd4j.createUninitializedDetached(mixedPrecision.getMasterDataType(), paramsView.shape());
+            masterGradients.assign(0);
+            masterLayerGradients = new IdentityHashMap<>();
+            masterLayerGradientViews = new IdentityHashMap<>();
+            lossScale = mixedPrecision.getInitialScale();
+            paramsView = masterParams;
+            gradientView = masterGradients;
+        } else {
+            mixedPrecision = null;
+        }
         int paramsViewSoFar = 0;
         int currentUpdaterOffset = 0;
         for (int i = 0; i < layers.length; i++) {
             Map<String, INDArray> layerParamTable = layers[i].paramTable(false);
+            int layerParamsStart = paramsViewSoFar;
             if (layerParamTable != null) {
                 List<String> variables = new ArrayList<>(layerParamTable.keySet()); //Is from a set, but iteration order should be fixed per layer as it's a from a LinkedHashSet
                 for (int j = 0; j < variables.size(); j++) {
@@ -106,11 +149,21 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                                         paramsViewSoFar + paramSizeThisVariable));
                         gradientViewSubset = gradientView.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex
                                         .interval(paramsViewSoFar, paramsViewSoFar + paramSizeThisVariable));
+                        if (mixedPrecision != null) {
+                            Gradient g = masterLayerGradients.get(layers[i]);
+                            if (g == null) {
+                                g = new DefaultGradient();
+                                masterLayerGradients.put(layers[i], g);
+                            }
+                            g.setGradientFor(var, gradientViewSubset);
+                        }
                     }
 
                     //First: decide whether to add to the existing updater block, or create a new one
+                    //Parameters with row-sparse gradients always get their own block
                     if (currentBlock == null || !UpdaterUtils.updaterConfigurationsEquals(lastLayer, lastVariable,
-                                    layers[i], var)) {
+                                    layers[i], var) || UpdaterUtils.isSparseGradientParam(lastLayer, lastVariable)
+                                    || UpdaterUtils.isSparseGradientParam(layers[i], var)) {
 
                         if (paramsViewSoFar + paramSizeThisVariable > Integer.MAX_VALUE || paramsViewSoFar + paramSizeThisVariable > Integer.MAX_VALUE)
                             throw new ND4JArraySizeException();
@@ -144,16 +197,24 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                     currentUpdaterOffset += updaterStateSizeThisVariable;
                 }
             }
+            if (mixedPrecision != null && paramsViewSoFar > layerParamsStart) {
+                masterLayerGradientViews.put(layers[i], gradientView.get(NDArrayIndex.interval(0, 0, true),
+                        NDArrayIndex.interval(layerParamsStart, paramsViewSoFar)));
+            }
         }
 
         //Initialize the updater state, if required
         boolean updaterRequiresInit = false;
         if (updaterState != null) {
             updaterStateViewArray = updaterState;
+            if (mixedPrecision != null && updaterState.dataType() != paramsView.dataType()) {
+                //Mixed precision: updater state is always in the master datatype
+                updaterStateViewArray = updaterState.castTo(paramsView.dataType());
+            }
             updaterRequiresInit = false;
         } else if (updaterStateSize > 0) {
             //May be 0 if all SGD or NONE updaters, for example
-            updaterStateViewArray = Nd4j.createUninitialized(network.params().dataType(), new long[] {1, updaterStateSize}, Nd4j.order());
+            updaterStateViewArray = Nd4j.createUninitialized(paramsView.dataType(), new long[] {1, updaterStateSize}, Nd4j.order());
             updaterRequiresInit = true;
         }
 
@@ -177,9 +238,20 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                 INDArray gradientViewSubset = gradientView.get(NDArrayIndex.interval(0, 0, true),
                                 NDArrayIndex.interval(paramsViewSoFar, paramsViewSoFar + gradSize));
                 ub.setGradientView(gradientViewSubset);
+                if (paramsView != null) {
+                    ub.setParamView(paramsView.get(NDArrayIndex.interval(0, 0, true),
+                                    NDArrayIndex.interval(paramsViewSoFar, paramsViewSoFar + gradSize)));
+                }
             }
 
             ub.init();
+            if (ub.isSparseGradientBlock() && !(ub.getGradientUpdater() instanceof SparseGradientUpdater)) {
+                UpdaterBlock.ParamState ps = ub.getLayersAndVariablesInBlock().get(0);
+                throw new IllegalStateException("Sparse gradients are enabled for layer \"" + ps.getLayer().getConfig().getLayerName()
+                        + "\", but updater " + ub.getGradientUpdater().getClass().getSimpleName() + " does not support" +
+                        " sparse gradients. Use an updater implementing SparseGradientUpdater (Sgd, Adam, AdaGrad, RmsProp," +
+                        " NoOp) or disable sparse gradients for this layer");
+            }
 
             updaterViewSoFar += viewStateSize;
             paramsViewSoFar += gradSize;
@@ -208,6 +280,32 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      */
     protected abstract boolean isMiniBatch();
 
+    /**
+     * @return The mixed precision configuration for the model, or null if mixed precision training is not enabled
+     */
+    protected MixedPrecision getModelMixedPrecision() {
+        return null;
+    }
+
+    /**
+     * @return True if this updater is in mixed precision mode, i.e., it operates on master copies of the parameters
+     * and gradients
+     */
+    public boolean isMixedPrecision() {
+        return mixedPrecision != null;
+    }
+
+    /**
+     * Mixed precision mode only: set the master parameters from the current network parameters. Must be called
+     * whenever the network parameters are modified other than by this updater, otherwise these modifications will be
+     * overwritten by the next update. No-op if not in mixed precision mode
+     */
+    public synchronized void resetMasterParams() {
+        if (masterParams != null) {
+            masterParams.assign(getParams());
+        }
+    }
+
     /**
      * Set the view array. Note that this does an assign operation - the provided array is not stored internally.
      *
@@ -259,6 +357,9 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      * 1. Pre-apply: gradient clipping, etc on a per-layer basis
      * 2. Execute the updater (Adam, Nesterov momentum, etc) - in blocks of layers at a time
      * 3. Divide by minibatch size
+     * In mixed precision mode, the network gradients are first unscaled and cast to the master gradients (and the update
+     * is skipped entirely on overflow), and the master parameters are updated and cast back to the network parameters
+     * at the end. The network gradients are zeroed in this case, as the update has already been applied.
      *
      * @param gradient  Gradient to updater
      * @param iteration The current iteration (i.e., number of parameter updates so far)
@@ -270,12 +371,32 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         //In a MultiLayerNetwork, the INDArray returned by .gradient() is always the standard full view array
         // hence should be the same object under normal circumstances
         boolean isExternal = gradient.gradient() != getFlattenedGradientsView();
+        boolean isPartial = partialLayersDone != null && !partialLayersDone.isEmpty();
+        if (isPartial && isExternal) {
+            resetPartialUpdate();
+            throw new IllegalStateException("Updates using external gradients are not supported after partial updates");
+        }
+
+        StepTimingListener[] timing = StepTimingUtil.getTimingListeners(network);
+        long timingStart = StepTimingUtil.start(timing);
+
+        if (mixedPrecision != null) {
+            if (isExternal) {
+                throw new IllegalStateException("Updates using external gradients are not supported in mixed precision mode");
+            }
+            if (!unscaleGradients()) {
+                //Gradient overflow: skip this update
+                return;
+            }
+        }
 
         //Split up the gradients on a per-layer basis, for pre-apply
         Map<String, Gradient> layerGradients = new HashMap<>();
 
         Trainable[] layers = getOrderedLayers();
-        if (layers.length == 1 && isSingleLayerUpdater()) {
+        if (mixedPrecision != null) {
+            //Pre-apply is done on the master gradients instead - see below
+        } else if (layers.length == 1 && isSingleLayerUpdater()) {
             layerGradients.put(layers[0].getConfig().getLayerName(), gradient);
         } else {
             for (Map.Entry<String, INDArray> gradientPair : gradient.gradientForVariable().entrySet()) {
@@ -298,38 +419,239 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         }
 
         if(isMiniBatch()){
-            divideByMinibatch(isExternal, gradient, batchSize);
+            if (isPartial) {
+                //Layers processed during backprop were already divided
+                for (UpdaterBlock ub : updaterBlocks) {
+                    for (UpdaterBlock.ParamState ps : ub.getLayersAndVariablesInBlock()) {
+                        if (!partialLayersDone.contains(ps.getLayer()))
+                            divideByMinibatch(ps, batchSize);
+                    }
+                }
+            } else {
+                divideByMinibatch(isExternal, gradient, batchSize);
+            }
         }
+        StepTimingUtil.end(timing, network, StepPhase.UPDATER, null, timingStart);
 
         //PRE apply (gradient clipping, etc): done on a per-layer basis
-        for (Map.Entry<String, Gradient> entry : layerGradients.entrySet()) {
-            String layerName = entry.getKey();
-            Trainable layer = layersByName.get(layerName);
+        timingStart = StepTimingUtil.start(timing);
+        if (mixedPrecision != null) {
+            for (Map.Entry<Trainable, Gradient> entry : masterLayerGradients.entrySet()) {
+                preApply(entry.getKey(), entry.getValue(), masterLayerGradientViews.get(entry.getKey()), iteration);
+            }
+        } else {
+            for (Map.Entry<String, Gradient> entry : layerGradients.entrySet()) {
+                String layerName = entry.getKey();
+                Trainable layer = layersByName.get(layerName);
+                if (isPartial && partialLayersDone.contains(layer))
+                    continue;
 
-            preApply(layer, layerGradients.get(layerName), iteration);
+                preApply(layer, layerGradients.get(layerName), iteration);
+            }
         }
+        StepTimingUtil.end(timing, network, StepPhase.GRADIENT_NORMALIZATION, null, timingStart);
+        timingStart = StepTimingUtil.start(timing);
 
         //Apply the updaters in blocks. This also applies LR and momentum schedules, L1 and L2
         if(getClass() != LayerUpdater.class){
             //OK for LayerUpdater as this is part of layerwise pretraining
             workspaceMgr.assertNotOpen(ArrayType.UPDATER_WORKING_MEM, "Updater working memory");
         }
-        for (UpdaterBlock ub : updaterBlocks) {
+        //Last partialBlocksDone blocks were already applied during backprop, and the end of the block before them too
+        int numBlocks = updaterBlocks.size() - (isPartial ? partialBlocksDone : 0);
+        for (int i = 0; i < numBlocks; i++) {
+            UpdaterBlock ub = updaterBlocks.get(i);
             if (ub.skipDueToPretrainConfig(this instanceof LayerUpdater)) {
                 //Should skip some updater blocks sometimes
                 //For example, VAE decoder params while doing supervised backprop
                 continue;
             }
             try(MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.UPDATER_WORKING_MEM)){
-                if (isExternal) {
+                if (isPartial && i == numBlocks - 1 && partialBlockFrom >= 0) {
+                    ub.updateRange(iteration, epoch, 0, partialBlockFrom);
+                } else if (isExternal) {
                     //RL4J etc type case: calculate gradients in 1 net, update them in another
                     ub.updateExternalGradient(iteration, epoch, gradient.gradient(), getParams());
                 } else {
                     //Standard case
-                    ub.update(iteration, epoch);
+                    INDArray sparseRows = sparseRowsFor(ub, gradient);
+                    if (sparseRows != null) {
+                        ub.updateSparse(iteration, epoch, sparseRows);
+                    } else {
+                        ub.update(iteration, epoch);
+                    }
                 }
             }
         }
+
+        if (mixedPrecision != null) {
+            applyMasterUpdate();
+        }
+        if (isPartial) {
+            resetPartialUpdate();
+        }
+        StepTimingUtil.end(timing, network, StepPhase.UPDATER, null, timingStart);
+    }
+
+    /**
+     * Partial update, used to overlap gradient sharing with backprop: called once backprop is done for the specified
+     * layer, during backprop. Minibatch division and pre-apply are done for this layer, and the updater is applied to
+     * all parameters (starting from the end of the flattened gradients view) whose layers are all done: whole updater
+     * blocks, and the done layers at the end of the next block (see {@link UpdaterBlock#updateRange(int, int, int, int)}).
+     * So updates are released layer by layer even if all layers share a single updater block. Remaining layers and
+     * blocks are handled by the subsequent {@link #update(Gradient, int, int, int, LayerWorkspaceMgr)} call.
+     *
+     * @param layer         Layer that backprop is done for
+     * @param layerGradient Gradient for the layer
+     * @param iteration     The current iteration (i.e., number of parameter updates so far)
+     * @param batchSize     The current minibatch size (number of examples)
+     * @return Offset in the flattened gradients view, from which (till the end) updates are final - or -1 if no
+     * updater blocks were applied, or partial updates aren't supported for this network
+     */
+    public synchronized long updateFinishedLayer(Trainable layer, Gradient layerGradient, int iteration, int epoch, int batchSize) {
+        if (!canUpdatePartially())
+            return -1;
+
+        if (partialLayersDone == null)
+            partialLayersDone = Collections.newSetFromMap(new IdentityHashMap<Trainable, Boolean>());
+        if (!partialLayersDone.add(layer))
+            return -1;
+
+        long readyFrom = -1;
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            if (isMiniBatch()) {
+                for (UpdaterBlock ub : updaterBlocks) {
+                    for (UpdaterBlock.ParamState ps : ub.getLayersAndVariablesInBlock()) {
+                        if (ps.getLayer() == layer)
+                            divideByMinibatch(ps, batchSize);
+                    }
+                }
+            }
+
+            preApply(layer, layerGradient, iteration);
+
+            for (int i = updaterBlocks.size() - 1 - partialBlocksDone; i >= 0; i--) {
+                UpdaterBlock ub = updaterBlocks.get(i);
+                List<UpdaterBlock.ParamState> states = ub.getLayersAndVariablesInBlock();
+                int end = partialBlockFrom >= 0 ? partialBlockFrom : states.size();
+                int start = end;
+                while (start > 0 && partialLayersDone.contains(states.get(start - 1).getLayer()))
+                    start--;
+
+                boolean wholeBlock = start == 0 && end == states.size();
+                if (start < end && (wholeBlock || ub.isRangeUpdateSupported())) {
+                    if (!ub.skipDueToPretrainConfig(false))
+                        ub.updateRange(iteration, epoch, start, end);
+                    readyFrom = states.get(start).getParamOffsetStart();
+                    partialBlockFrom = start;
+                }
+
+                if (partialBlockFrom != 0)
+                    return readyFrom;
+
+                partialBlocksDone++;
+                partialBlockFrom = -1;
+            }
+        }
+        return readyFrom;
+    }
+
+    /**
+     * Reset the state of partial updates - see {@link #updateFinishedLayer(Trainable, Gradient, int, int, int)}
+     */
+    public synchronized void resetPartialUpdate() {
+        if (partialLayersDone != null)
+            partialLayersDone.clear();
+        partialBlocksDone = 0;
+        partialBlockFrom = -1;
+    }
+
+    /**
+     * @return True if partial updates can be used: not supported for row-sparse gradients and layerwise pretraining.
+     * Mixed precision is excluded too, though networks reject gradients sharing in this mode anyway
+     */
+    protected boolean canUpdatePartially() {
+        if (mixedPrecision != null || this instanceof LayerUpdater || isSingleLayerUpdater())
+            return false;
+
+        for (UpdaterBlock ub : updaterBlocks) {
+            if (ub.isSparseGradientBlock())
+                return false;
+        }
+        return true;
+    }
+
+    protected void divideByMinibatch(UpdaterBlock.ParamState ps, int batchSize) {
+        if (ps.getGradView() != null && ps.getLayer().updaterDivideByMinibatch(ps.getParamName()))
+            ps.getGradView().divi(batchSize);
+    }
+
+    /**
+     * Mixed precision mode: cast the network gradients to the master gradients and divide by the current loss scale.
+     * If the gradients have overflowed (NaN or infinite values), the network gradients are zeroed, the loss scale is
+     * decreased, and false is returned.
+     *
+     * @return True if the update should be applied, false if it should be skipped due to gradient overflow
+     */
+    protected boolean unscaleGradients() {
+        INDArray networkGradients = getFlattenedGradientsView();
+        masterGradients.assign(networkGradients);
+        if (lossScale != 1.0) {
+            masterGradients.divi(lossScale);
+        }
+
+        //NaN and infinite values propagate through the sum, hence a single reduction is enough to detect overflow
+        double sum = masterGradients.sumNumber().doubleValue();
+        if (Double.isNaN(sum) || Double.isInfinite(sum)) {
+            networkGradients.assign(0);
+            skippedIterations++;
+            updateLossScale(true);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Mixed precision mode: apply the update to the master parameters, and cast them back to the network parameters.
+     * The network gradients are zeroed, so a subsequent step function (params -= gradient) is a no-op.
+     */
+    protected void applyMasterUpdate() {
+        masterParams.subi(masterGradients);
+        getParams().assign(masterParams);
+        getFlattenedGradientsView().assign(0);
+        updateLossScale(false);
+    }
+
+    protected void updateLossScale(boolean overflow) {
+        if (!mixedPrecision.isDynamicScaling())
+            return;
+
+        if (overflow) {
+            lossScale = Math.max(mixedPrecision.getMinScale(), lossScale / mixedPrecision.getScaleFactor());
+            lossScaleGoodIterations = 0;
+        } else if (++lossScaleGoodIterations >= mixedPrecision.getScaleWindow()) {
+            lossScale = Math.min(mixedPrecision.getMaxScale(), lossScale * mixedPrecision.getScaleFactor());
+            lossScaleGoodIterations = 0;
+        }
+    }
+
+    /**
+     * @return Rows of the row-sparse gradient for the specified updater block, or null if the gradient for the block
+     * isn't row-sparse
+     */
+    protected INDArray sparseRowsFor(UpdaterBlock ub, Gradient gradient) {
+        if (!ub.isSparseGradientBlock() || gradient.sparseRowsForVariable().isEmpty())
+            return null;
+
+        UpdaterBlock.ParamState ps = ub.getLayersAndVariablesInBlock().get(0);
+        if (isSingleLayerUpdater())
+            return gradient.getSparseRowsFor(ps.getParamName());
+
+        for (Map.Entry<String, Trainable> e : layersByName.entrySet()) {
+            if (e.getValue() == ps.getLayer())
+                return gradient.getSparseRowsFor(e.getKey() + "_" + ps.getParamName());
+        }
+        return null;
     }
 
     protected void divideByMinibatch(boolean isExternal, Gradient gradient, int batchSize){
@@ -338,7 +660,7 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         // shouldn't be modified
 
         if(!initializedMinibatchDivision){
-            gradientsForMinibatchDivision = getMinibatchDivisionSubsets(getFlattenedGradientsView());
+            gradientsForMinibatchDivision = getMinibatchDivisionSubsets(mixedPrecision != null ? masterGradients : getFlattenedGradientsView());
             initializedMinibatchDivision = true;
         }
 
@@ -398,6 +720,18 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      * @param iteration The current iteration (i.e., number of parameter updates so far)
      */
     public void preApply(Trainable layer, Gradient gradient, int iteration) {
+        preApply(layer, gradient, layer.getGradientsViewArray(), iteration);
+    }
+
+    /**
+     * Pre-apply: Apply gradient normalization/clipping
+     *
+     * @param layer              Layer to apply gradient normalization/clipping for
+     * @param gradient           Gradient to update
+     * @param layerGradientView  Gradient view array for all parameters of the layer
+     * @param iteration          The current iteration (i.e., number of parameter updates so far)
+     */
+    protected void preApply(Trainable layer, Gradient gradient, INDArray layerGradientView, int iteration) {
 
         if (layer.getConfig() == null || layer.numParams() == 0) {
             //Layer does not have parameters -> no gradient
@@ -409,7 +743,6 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             return; //no op
 
         final double threshold = layer.getConfig().getGradientNormalizationThreshold();
-        INDArray layerGradientView = layer.getGradientsViewArray();
 
         switch (normalization) {
             case RenormalizeL2PerLayer:
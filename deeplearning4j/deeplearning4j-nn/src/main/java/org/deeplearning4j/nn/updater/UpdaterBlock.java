@@ -20,18 +20,29 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.val;
 import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.config.DL4JSystemProperties;
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.BaseLayer;
 import org.deeplearning4j.nn.layers.FrozenLayer;
+import org.nd4j.base.Preconditions;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.FusedGradientUpdater;
 import org.nd4j.linalg.learning.GradientUpdater;
+import org.nd4j.linalg.learning.SparseGradientUpdater;
+import org.nd4j.linalg.learning.SparseUpdaterUtils;
+import org.nd4j.linalg.learning.config.IUpdater;
+import org.nd4j.linalg.learning.regularization.L1Regularization;
+import org.nd4j.linalg.learning.regularization.L2Regularization;
 import org.nd4j.linalg.learning.regularization.Regularization;
+import org.nd4j.linalg.learning.regularization.WeightDecay;
 import org.nd4j.linalg.ops.transforms.Transforms;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -50,6 +61,7 @@ public class UpdaterBlock {
 
     private INDArray updaterView;
     private INDArray gradientView;
+    private INDArray paramView;
     private boolean updaterViewRequiresInitialization;
 
     private GradientUpdater gradientUpdater;
@@ -124,6 +136,121 @@ public class UpdaterBlock {
         update(iteration, epoch, false, gradientView, null);
     }
 
+    /**
+     * @return True if this block consists of a single parameter with row-sparse gradients - see
+     * {@link UpdaterUtils#isSparseGradientParam(Trainable, String)}
+     */
+    public boolean isSparseGradientBlock() {
+        if (layersAndVariablesInBlock.size() != 1)
+            return false;
+        ParamState ps = layersAndVariablesInBlock.get(0);
+        return UpdaterUtils.isSparseGradientParam(ps.getLayer(), ps.getParamName());
+    }
+
+    /**
+     * Update the gradient for this block, when the gradient is row-sparse: only the specified rows of the gradient
+     * (and of the updater state) are modified. Regularization is also only applied to these rows.
+     *
+     * @param iteration The current iteration (i.e., total number of parameter updates so far)
+     * @param rows      Rows of the gradient that may be non-zero, without duplicates
+     */
+    public void updateSparse(int iteration, int epoch, INDArray rows) {
+        if (gradientUpdater == null) {
+            init();
+        }
+        Preconditions.checkState(isSparseGradientBlock() && gradientUpdater instanceof SparseGradientUpdater,
+                "Sparse updates are only supported for blocks with a single parameter with sparse gradients, using a SparseGradientUpdater");
+
+        ParamState ps = layersAndVariablesInBlock.get(0);
+        INDArray layerParam = ps.getLayer().paramTable(false).get(ps.getParamName());
+        //Use the block's parameter view, not the layer's parameter: these differ in mixed precision mode
+        INDArray param = Shape.newShapeNoCopy(ps.getParamView(), layerParam.shape(), layerParam.ordering() == 'f');
+        INDArray grad = Shape.newShapeNoCopy(gradientView, layerParam.shape(), layerParam.ordering() == 'f');
+        Preconditions.checkState(param != null && grad != null, "Could not reshape parameter/gradient view to parameter shape %ndShape", layerParam);
+
+        boolean hasLR = gradientUpdater.getConfig().hasLearningRate();
+        double lr = (hasLR ? gradientUpdater.getConfig().getLearningRate(iteration, epoch) : 1.0);
+
+        applySparseRegularization(Regularization.ApplyStep.BEFORE_UPDATER, ps, param, grad, rows, iteration, epoch, lr);
+        ((SparseGradientUpdater) gradientUpdater).applySparseUpdater(grad, rows, iteration, epoch);
+        applySparseRegularization(Regularization.ApplyStep.POST_UPDATER, ps, param, grad, rows, iteration, epoch, lr);
+    }
+
+    /**
+     * @return True if {@link #updateRange(int, int, int, int)} can be used for this block: the updater state must be
+     * elementwise, i.e., a fixed number of state arrays with one value per parameter each, stored one after another in
+     * the updater view. This is the case for all built-in updaters (package of {@link IUpdater}), but can't be assumed
+     * for custom ones
+     */
+    public boolean isRangeUpdateSupported() {
+        IUpdater u = getGradientUpdater().getConfig();
+        int blockLength = paramOffsetEnd - paramOffsetStart;
+        return u.getClass().getPackage().equals(IUpdater.class.getPackage()) && !isSparseGradientBlock()
+                && (blockLength == 0 || u.stateSize(blockLength) % blockLength == 0);
+    }
+
+    /**
+     * Update the gradient for a contiguous subset of the parameters in this block - for example, all parameters of
+     * one layer, as soon as backprop is done for it. Updater state for the subset is copied into a temporary array,
+     * updated and copied back, so applying this to all parameters of the block (in any split) gives the same result
+     * as {@link #update(int, int)}. See {@link #isRangeUpdateSupported()}
+     *
+     * @param iteration The current iteration (i.e., total number of parameter updates so far)
+     * @param from      Index of the first parameter in {@link #getLayersAndVariablesInBlock()} to update, inclusive
+     * @param to        Index of the last parameter to update, exclusive
+     */
+    public void updateRange(int iteration, int epoch, int from, int to) {
+        if (from == 0 && to == layersAndVariablesInBlock.size()) {
+            update(iteration, epoch);
+            return;
+        }
+        if (gradientUpdater == null) {
+            init();
+        }
+        Preconditions.checkState(isRangeUpdateSupported(), "Updates of a subset of the parameters are not supported for updater %s",
+                gradientUpdater.getConfig().getClass().getSimpleName());
+
+        List<ParamState> states = layersAndVariablesInBlock.subList(from, to);
+        int start = states.get(0).getParamOffsetStart() - paramOffsetStart;
+        int end = states.get(states.size() - 1).getParamOffsetEnd() - paramOffsetStart;
+        if (start == end || states.get(0).getLayer().numParams() == 0)
+            return;
+
+        INDArray rangeGrad = gradientView.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex.interval(start, end));
+        INDArray rangeParams = paramView == null ? null : paramView.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex.interval(start, end));
+
+        //Gather the updater state for the range: one section per state array, each of the block length
+        int blockLength = paramOffsetEnd - paramOffsetStart;
+        int rangeLength = end - start;
+        int numStates = updaterView == null ? 0 : (int) (updaterView.length() / blockLength);
+        INDArray rangeState = null;
+        if (numStates > 0) {
+            rangeState = Nd4j.createUninitialized(updaterView.dataType(), new long[]{1, (long) numStates * rangeLength}, 'c');
+            for (int k = 0; k < numStates; k++) {
+                rangeState.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex.interval(k * rangeLength, (k + 1) * rangeLength))
+                        .assign(updaterView.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex.interval(k * blockLength + start, k * blockLength + end)));
+            }
+        }
+        GradientUpdater rangeUpdater = gradientUpdater.getConfig().instantiate(rangeState, false);
+
+        double[] reg = null;
+        if (rangeParams != null && rangeUpdater instanceof FusedGradientUpdater && useFusedUpdater()) {
+            reg = fusedRegularization(states, iteration, epoch);
+        }
+        if (reg != null) {
+            ((FusedGradientUpdater) rangeUpdater).applyFusedUpdater(rangeGrad, rangeParams, reg[0], reg[1], reg[2], iteration, epoch);
+        } else {
+            applyRegularization(Regularization.ApplyStep.BEFORE_UPDATER, states, iteration, epoch);
+            rangeUpdater.applyUpdater(rangeGrad, iteration, epoch);
+            applyRegularization(Regularization.ApplyStep.POST_UPDATER, states, iteration, epoch);
+        }
+
+        for (int k = 0; k < numStates; k++) {
+            updaterView.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex.interval(k * blockLength + start, k * blockLength + end))
+                    .assign(rangeState.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex.interval(k * rangeLength, (k + 1) * rangeLength)));
+        }
+    }
+
     public void updateExternalGradient(int iteration, int epoch, INDArray fullNetworkGradientView,
                     INDArray fullNetworkParamsArray) {
         //Extract the relevant subset from the external network
@@ -156,6 +283,15 @@ public class UpdaterBlock {
             return;
         }
 
+        //Regularization and updater as a single op, if possible
+        if (!externalGradient && paramView != null && gradientUpdater instanceof FusedGradientUpdater && useFusedUpdater()) {
+            double[] reg = fusedRegularization(iteration, epoch);
+            if (reg != null) {
+                ((FusedGradientUpdater) gradientUpdater).applyFusedUpdater(blockGradViewArray, paramView, reg[0], reg[1], reg[2], iteration, epoch);
+                return;
+            }
+        }
+
         //Pre-updater regularization: l1 and l2
         applyRegularizationAllVariables(Regularization.ApplyStep.BEFORE_UPDATER, iteration, epoch, externalGradient, fullNetworkGradientView, fullNetworkParamsArray);
 
@@ -166,6 +302,53 @@ public class UpdaterBlock {
         applyRegularizationAllVariables(Regularization.ApplyStep.POST_UPDATER, iteration, epoch, externalGradient, fullNetworkGradientView, fullNetworkParamsArray);
     }
 
+    protected static boolean useFusedUpdater() {
+        return !"false".equalsIgnoreCase(System.getProperty(DL4JSystemProperties.UPDATER_FUSED_PROPERTY));
+    }
+
+    /**
+     * Get the regularization coefficients for the fused updater: L1, L2 and weight decay (multiplied by the learning
+     * rate if applicable). Fused updates are only possible if all variables in the block have the same coefficients,
+     * and only L1, L2 and weight decay regularization is used
+     *
+     * @return Coefficients {l1, l2, weightDecay}, or null if the regularization for this block can't be fused
+     */
+    protected double[] fusedRegularization(int iteration, int epoch) {
+        return fusedRegularization(layersAndVariablesInBlock, iteration, epoch);
+    }
+
+    protected double[] fusedRegularization(List<ParamState> states, int iteration, int epoch) {
+        boolean hasLR = gradientUpdater.getConfig().hasLearningRate();
+        double lr = (hasLR ? gradientUpdater.getConfig().getLearningRate(iteration, epoch) : 1.0);
+
+        double[] out = null;
+        for (ParamState p : states) {
+            double[] coeffs = new double[3];
+            List<Regularization> l = p.getLayer().getConfig().getRegularizationByParam(p.getParamName());
+            if (l != null) {
+                for (Regularization r : l) {
+                    if (r instanceof L1Regularization) {
+                        coeffs[0] += ((L1Regularization) r).getL1().valueAt(iteration, epoch);
+                    } else if (r instanceof L2Regularization) {
+                        coeffs[1] += ((L2Regularization) r).getL2().valueAt(iteration, epoch);
+                    } else if (r instanceof WeightDecay) {
+                        WeightDecay wd = (WeightDecay) r;
+                        coeffs[2] += wd.getCoeff().valueAt(iteration, epoch) * (wd.isApplyLR() ? lr : 1.0);
+                    } else {
+                        return null;
+                    }
+                }
+            }
+
+            if (out == null) {
+                out = coeffs;
+            } else if (!Arrays.equals(out, coeffs)) {
+                return null;
+            }
+        }
+        return out;
+    }
+
     protected void applyRegularizationAllVariables(Regularization.ApplyStep applyStep, int iteration, int epoch, boolean externalGradient, INDArray fullNetworkGradientView,
                                                    INDArray fullNetworkParamsArray) {
         for (ParamState p : layersAndVariablesInBlock) {
@@ -188,6 +371,42 @@ public class UpdaterBlock {
         }
     }
 
+    /**
+     * Apply regularization to the specified parameters of this block (standard case, not external gradients)
+     */
+    protected void applyRegularization(Regularization.ApplyStep applyStep, List<ParamState> states, int iteration, int epoch) {
+        boolean hasLR = gradientUpdater.getConfig().hasLearningRate();
+        double lr = (hasLR ? gradientUpdater.getConfig().getLearningRate(iteration, epoch) : 1.0);
+        for (ParamState p : states) {
+            applyRegularization(applyStep, p.getLayer(), p.getParamName(), p.getGradView(), p.getParamView(), iteration, epoch, lr);
+        }
+    }
+
+    /**
+     * Apply regularization to the specified rows only of the parameter and gradient
+     */
+    protected void applySparseRegularization(Regularization.ApplyStep step, ParamState ps, INDArray param, INDArray grad,
+                                             INDArray rows, int iter, int epoch, double lr) {
+        List<Regularization> l = ps.getLayer().getConfig().getRegularizationByParam(ps.getParamName());
+        if (l == null || l.isEmpty())
+            return;
+
+        INDArray paramRows = null;
+        INDArray gradRows = null;
+        for (Regularization r : l) {
+            if (r.applyStep() == step) {
+                if (gradRows == null) {
+                    paramRows = SparseUpdaterUtils.getRows(param, rows);
+                    gradRows = SparseUpdaterUtils.getRows(grad, rows);
+                }
+                r.apply(paramRows, gradRows, lr, iter, epoch);
+            }
+        }
+
+        if (gradRows != null)
+            SparseUpdaterUtils.putRows(grad, rows, gradRows);
+    }
+
     /**
      * Apply L1 and L2 regularization, if necessary. Note that L1/L2 may differ for different layers in the same block
      *
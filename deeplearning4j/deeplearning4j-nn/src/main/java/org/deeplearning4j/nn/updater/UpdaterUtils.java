@@ -18,6 +18,9 @@ package org.deeplearning4j.nn.updater;
 
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.TrainingConfig;
+import org.deeplearning4j.nn.conf.layers.EmbeddingLayer;
+import org.deeplearning4j.nn.conf.layers.EmbeddingSequenceLayer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
 import org.nd4j.linalg.learning.config.IUpdater;
 
 /**
@@ -53,4 +56,21 @@ public class UpdaterUtils {
 
         return true;
     }
+
+    /**
+     * Is the gradient for the specified parameter row-sparse? This is the case for embedding layer weights, when
+     * sparse gradients are enabled. Parameters with row-sparse gradients are never combined with other parameters
+     * into one updater block
+     */
+    public static boolean isSparseGradientParam(Trainable layer, String param) {
+        if (layer == null || !DefaultParamInitializer.WEIGHT_KEY.equals(param))
+            return false;
+
+        TrainingConfig c = layer.getConfig();
+        if (c instanceof EmbeddingLayer)
+            return ((EmbeddingLayer) c).isSparseGradients();
+        if (c instanceof EmbeddingSequenceLayer)
+            return ((EmbeddingSequenceLayer) c).isSparseGradients();
+        return false;
+    }
 }
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.api;
+
+/**
+ * Parts of a training iteration, as reported to {@link StepTimingListener} instances.<br>
+ * DATA_WAIT: time spent waiting for the next DataSet/MultiDataSet from the iterator<br>
+ * FORWARD: forward pass, per layer/vertex. Note that the output layer forward pass is done as part of its backward
+ * pass, and that for gradient checkpointing, recomputing activations during backprop is reported as FORWARD<br>
+ * BACKWARD: backward pass, per layer/vertex<br>
+ * GRADIENT_NORMALIZATION: gradient normalization/clipping, for all layers<br>
+ * UPDATER: updater (Adam, etc) and applying the update to the parameters<br>
+ * LISTENERS: time spent in training listeners
+ */
+public enum StepPhase {
+    DATA_WAIT, FORWARD, BACKWARD, GRADIENT_NORMALIZATION, UPDATER, LISTENERS
+}
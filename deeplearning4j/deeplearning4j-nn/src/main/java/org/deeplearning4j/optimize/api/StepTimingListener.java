@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.api;
+
+import org.deeplearning4j.nn.api.Model;
+
+/**
+ * A training listener that is also notified of the time taken by each part of each training iteration - see
+ * {@link StepPhase}.<br>
+ * MultiLayerNetwork and ComputationGraph only measure these times when at least one StepTimingListener is set on the
+ * model, hence there is no overhead when no such listener is used. Note that when timing is enabled, the model waits
+ * for any asynchronous op execution (CUDA) to complete at the start and end of each timed section, which may reduce
+ * performance slightly.
+ */
+public interface StepTimingListener extends TrainingListener {
+
+    /**
+     * Called during training, once the specified part of the iteration has completed
+     *
+     * @param model Model being trained
+     * @param phase Part of the training iteration
+     * @param name  Layer or vertex name for {@link StepPhase#FORWARD} and {@link StepPhase#BACKWARD}, null otherwise
+     * @param nanos Duration, in nanoseconds
+     */
+    void onStepTime(Model model, StepPhase phase, String name, long nanos);
+
+}
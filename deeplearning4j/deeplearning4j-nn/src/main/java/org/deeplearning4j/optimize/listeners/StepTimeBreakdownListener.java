@@ -0,0 +1,412 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.listeners;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.optimize.api.BaseTrainingListener;
+import org.deeplearning4j.optimize.api.StepPhase;
+import org.deeplearning4j.optimize.api.StepTimingListener;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.memory.abstracts.Nd4jWorkspace;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+import org.nd4j.shade.jackson.databind.SerializationFeature;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * StepTimeBreakdownListener: splits the time of each training iteration into its parts - data wait, forward and
+ * backward pass (per layer/vertex), gradient normalization, updater and listeners - so that it's possible to tell
+ * whether training is input, compute or updater bound. Workspace memory allocated (i.e., workspace growth) and
+ * spilled (allocations outside of the workspace) per iteration are also recorded.<br>
+ * Results are aggregated into histograms - one per phase (total time per iteration) and one per layer/vertex for the
+ * forward and backward pass - and the per-iteration breakdown is kept for the last maxIterations iterations.
+ * Use {@link #summary()} for a table, or {@link #exportCsv(File)} and {@link #exportJson(File)} to export.<br>
+ * <br>
+ * Usage:
+ * <pre>{@code
+ * StepTimeBreakdownListener l = new StepTimeBreakdownListener();
+ * net.setListeners(l);
+ * net.fit(iter);
+ * System.out.println(l.summary());
+ * }</pre>
+ * Notes:<br>
+ * - Iteration time is measured between consecutive iterationDone calls; anything not covered by one of the phases
+ * (for example, score calculation) is reported as "OTHER".<br>
+ * - Listener time (including this listener) in the iterationDone calls is reported as part of the next iteration.<br>
+ * - Timing is only done when a {@link StepTimingListener} is set on the model. When enabled, the model waits for
+ * asynchronous op execution (CUDA) to complete at the start and end of each timed section, so overall training
+ * performance may be slightly lower than without this listener.<br>
+ * - The listener is intended for a single model trained in one thread.
+ */
+@Slf4j
+public class StepTimeBreakdownListener extends BaseTrainingListener implements StepTimingListener {
+    public static final int DEFAULT_MAX_ITERATIONS = 100000;
+    public static final String TOTAL = "TOTAL";
+    public static final String OTHER = "OTHER";
+
+    private final int logFrequency;
+    private final int maxIterations;
+
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private final LinkedList<IterationRecord> iterations = new LinkedList<>();
+    private long[] current = new long[StepPhase.values().length];
+    private long lastIterationEnd = -1;
+    private long lastWorkspaceSize = -1;
+    private long lastWorkspaceSpilled = -1;
+
+    public StepTimeBreakdownListener() {
+        this(0, DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * @param logFrequency  Frequency (in iterations) to log the summary table. 0 to disable logging
+     * @param maxIterations Maximum number of per-iteration records to keep, for CSV/JSON export. Histograms include all
+     *                      iterations
+     */
+    public StepTimeBreakdownListener(int logFrequency, int maxIterations) {
+        this.logFrequency = logFrequency;
+        this.maxIterations = maxIterations;
+    }
+
+    @Override
+    public synchronized void onStepTime(Model model, StepPhase phase, String name, long nanos) {
+        if (lastIterationEnd < 0)
+            lastIterationEnd = System.nanoTime() - nanos;
+
+        current[phase.ordinal()] += nanos;
+        if (name != null)
+            histogram(phase.name() + "/" + name).add(nanos);
+    }
+
+    @Override
+    public synchronized void onEpochStart(Model model) {
+        //Time between epochs (evaluation etc) isn't part of any iteration
+        lastIterationEnd = System.nanoTime();
+        current = new long[StepPhase.values().length];
+    }
+
+    @Override
+    public synchronized void iterationDone(Model model, int iteration, int epoch) {
+        long now = System.nanoTime();
+        long total = lastIterationEnd < 0 ? 0 : now - lastIterationEnd;
+
+        long other = total;
+        for (StepPhase p : StepPhase.values()) {
+            histogram(p.name()).add(current[p.ordinal()]);
+            other -= current[p.ordinal()];
+        }
+        other = Math.max(0, other);
+        histogram(TOTAL).add(total);
+        histogram(OTHER).add(other);
+
+        //Workspaces: growth (reallocation) and spilled/pinned allocations since last iteration
+        long wsSize = 0;
+        long wsSpilled = 0;
+        for (MemoryWorkspace ws : Nd4j.getWorkspaceManager().getAllWorkspacesForCurrentThread()) {
+            wsSize += ws.getCurrentSize();
+            if (ws instanceof Nd4jWorkspace) {
+                wsSpilled += ((Nd4jWorkspace) ws).getSpilledSize() + ((Nd4jWorkspace) ws).getPinnedSize();
+            }
+        }
+        long wsAllocated = lastWorkspaceSize < 0 ? wsSize : Math.max(0, wsSize - lastWorkspaceSize);
+        long wsSpilledDelta = lastWorkspaceSpilled < 0 ? wsSpilled : Math.max(0, wsSpilled - lastWorkspaceSpilled);
+        lastWorkspaceSize = wsSize;
+        lastWorkspaceSpilled = wsSpilled;
+
+        iterations.add(new IterationRecord(iteration, epoch, total, current, other, wsAllocated, wsSpilledDelta));
+        while (iterations.size() > maxIterations) {
+            iterations.removeFirst();
+        }
+
+        current = new long[StepPhase.values().length];
+        if (logFrequency > 0 && iteration % logFrequency == 0) {
+            log.info("Training step time breakdown, iteration {}:\n{}", iteration, summary());
+        }
+        lastIterationEnd = System.nanoTime();
+    }
+
+    protected Histogram histogram(String label) {
+        Histogram h = histograms.get(label);
+        if (h == null) {
+            h = new Histogram();
+            histograms.put(label, h);
+        }
+        return h;
+    }
+
+    /**
+     * @return Histogram for the specified phase (total time per iteration), or null if no data has been recorded
+     */
+    public synchronized Histogram getHistogram(@NonNull StepPhase phase) {
+        return histograms.get(phase.name());
+    }
+
+    /**
+     * @return Histogram for the specified layer/vertex, for {@link StepPhase#FORWARD} or {@link StepPhase#BACKWARD}.
+     * Null if no data has been recorded
+     */
+    public synchronized Histogram getHistogram(@NonNull StepPhase phase, @NonNull String layerName) {
+        return histograms.get(phase.name() + "/" + layerName);
+    }
+
+    /**
+     * @return All histograms, by label: phase name (or {@link #TOTAL}/{@link #OTHER}) for per-iteration totals, and
+     * "PHASE/layerName" for per layer/vertex times
+     */
+    public synchronized Map<String, Histogram> getHistograms() {
+        return new LinkedHashMap<>(histograms);
+    }
+
+    /**
+     * @return Per-iteration breakdown for the most recent iterations (at most maxIterations)
+     */
+    public synchronized List<IterationRecord> getIterations() {
+        return new ArrayList<>(iterations);
+    }
+
+    /**
+     * Clear all recorded data - for example, to exclude warmup iterations
+     */
+    public synchronized void reset() {
+        histograms.clear();
+        iterations.clear();
+        current = new long[StepPhase.values().length];
+        lastIterationEnd = -1;
+    }
+
+    /**
+     * @return Summary table: one row per phase (time per iteration), then one row per layer/vertex for the forward and
+     * backward pass. All times in milliseconds
+     */
+    public synchronized String summary() {
+        Histogram total = histograms.get(TOTAL);
+        double totalMs = total == null ? 0 : total.getTotalMs();
+
+        int labelWidth = 24;
+        for (String s : histograms.keySet()) {
+            labelWidth = Math.max(labelWidth, s.length() + 2);
+        }
+        String format = "%-" + labelWidth + "s%10s%12s%12s%12s%12s%12s%14s%10s\n";
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(format, "Phase", "Count", "Mean", "p50", "p90", "p99", "Max", "Total", "% Total"));
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            Histogram h = e.getValue();
+            String pc = totalMs > 0 && !TOTAL.equals(e.getKey()) ? String.format("%.2f", 100.0 * h.getTotalMs() / totalMs) : "";
+            sb.append(String.format(format, e.getKey(), h.getCount(), ms(h.getMeanMs()), ms(h.percentileMs(0.5)),
+                    ms(h.percentileMs(0.9)), ms(h.percentileMs(0.99)), ms(h.getMaxMs()), ms(h.getTotalMs()), pc));
+        }
+        return sb.toString();
+    }
+
+    private static String ms(double ms) {
+        return String.format("%.3f", ms);
+    }
+
+    /**
+     * Export the per-iteration breakdown as CSV: one row per iteration, times in milliseconds
+     */
+    public synchronized void exportCsv(@NonNull File file) throws IOException {
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(file))) {
+            w.write("iteration,epoch,total_ms");
+            for (StepPhase p : StepPhase.values()) {
+                w.write("," + p.name().toLowerCase() + "_ms");
+            }
+            w.write(",other_ms,workspace_allocated_bytes,workspace_spilled_bytes");
+            w.newLine();
+
+            for (IterationRecord r : iterations) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(r.getIteration()).append(",").append(r.getEpoch()).append(",").append(r.getTotalNanos() / 1e6);
+                for (StepPhase p : StepPhase.values()) {
+                    sb.append(",").append(r.getNanos(p) / 1e6);
+                }
+                sb.append(",").append(r.getOtherNanos() / 1e6).append(",").append(r.getWorkspaceAllocatedBytes())
+                        .append(",").append(r.getWorkspaceSpilledBytes());
+                w.write(sb.toString());
+                w.newLine();
+            }
+        }
+    }
+
+    /**
+     * Export the histograms and the per-iteration breakdown as JSON
+     */
+    public synchronized void exportJson(@NonNull File file) throws IOException {
+        Map<String, Object> hist = new LinkedHashMap<>();
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            hist.put(e.getKey(), e.getValue().toMap());
+        }
+
+        List<Map<String, Object>> iters = new ArrayList<>(iterations.size());
+        for (IterationRecord r : iterations) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("iteration", r.getIteration());
+            m.put("epoch", r.getEpoch());
+            m.put("totalMs", r.getTotalNanos() / 1e6);
+            for (StepPhase p : StepPhase.values()) {
+                m.put(p.name(), r.getNanos(p) / 1e6);
+            }
+            m.put(OTHER, r.getOtherNanos() / 1e6);
+            m.put("workspaceAllocatedBytes", r.getWorkspaceAllocatedBytes());
+            m.put("workspaceSpilledBytes", r.getWorkspaceSpilledBytes());
+            iters.add(m);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("histograms", hist);
+        out.put("iterations", iters);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, out);
+    }
+
+    /**
+     * Time breakdown for a single iteration
+     */
+    @Getter
+    public static class IterationRecord {
+        private final int iteration;
+        private final int epoch;
+        private final long totalNanos;
+        private final long[] phaseNanos;
+        private final long otherNanos;
+        private final long workspaceAllocatedBytes;
+        private final long workspaceSpilledBytes;
+
+        public IterationRecord(int iteration, int epoch, long totalNanos, long[] phaseNanos, long otherNanos,
+                               long workspaceAllocatedBytes, long workspaceSpilledBytes) {
+            this.iteration = iteration;
+            this.epoch = epoch;
+            this.totalNanos = totalNanos;
+            this.phaseNanos = phaseNanos;
+            this.otherNanos = otherNanos;
+            this.workspaceAllocatedBytes = workspaceAllocatedBytes;
+            this.workspaceSpilledBytes = workspaceSpilledBytes;
+        }
+
+        public long getNanos(StepPhase phase) {
+            return phaseNanos[phase.ordinal()];
+        }
+    }
+
+    /**
+     * Histogram of durations, with exponential (power of 2 microseconds) buckets. Percentiles are estimated as the
+     * upper bound of the bucket containing the percentile, capped by the maximum value
+     */
+    public static class Histogram {
+        public static final int NUM_BUCKETS = 40;
+
+        @Getter
+        private long count;
+        private long sumNanos;
+        private long minNanos = Long.MAX_VALUE;
+        private long maxNanos;
+        private final long[] buckets = new long[NUM_BUCKETS];
+
+        protected void add(long nanos) {
+            count++;
+            sumNanos += nanos;
+            minNanos = Math.min(minNanos, nanos);
+            maxNanos = Math.max(maxNanos, nanos);
+            buckets[bucket(nanos)]++;
+        }
+
+        protected static int bucket(long nanos) {
+            long us = nanos / 1000;
+            int b = us <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(us);
+            return Math.min(b, NUM_BUCKETS - 1);
+        }
+
+        /**
+         * @return Upper bound of the specified bucket, in milliseconds
+         */
+        public static double bucketUpperBoundMs(int bucket) {
+            return (1L << bucket) / 1000.0;
+        }
+
+        public double getTotalMs() {
+            return sumNanos / 1e6;
+        }
+
+        public double getMeanMs() {
+            return count == 0 ? 0 : sumNanos / 1e6 / count;
+        }
+
+        public double getMinMs() {
+            return count == 0 ? 0 : minNanos / 1e6;
+        }
+
+        public double getMaxMs() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * @return Bucket counts - bucket i contains durations in range [2^(i-1), 2^i) microseconds
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        /**
+         * @param p Percentile, in range 0 to 1
+         * @return Estimated percentile, in milliseconds
+         */
+        public double percentileMs(double p) {
+            if (count == 0)
+                return 0;
+            long target = (long) Math.ceil(p * count);
+            long sum = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                sum += buckets[i];
+                if (sum >= target)
+                    return Math.min(bucketUpperBoundMs(i), getMaxMs());
+            }
+            return getMaxMs();
+        }
+
+        protected Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("count", count);
+            m.put("totalMs", getTotalMs());
+            m.put("meanMs", getMeanMs());
+            m.put("minMs", getMinMs());
+            m.put("maxMs", getMaxMs());
+            m.put("p50Ms", percentileMs(0.5));
+            m.put("p90Ms", percentileMs(0.9));
+            m.put("p99Ms", percentileMs(0.99));
+            int last = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] > 0)
+                    last = i;
+            }
+            double[] bounds = new double[last + 1];
+            for (int i = 0; i <= last; i++) {
+                bounds[i] = bucketUpperBoundMs(i);
+            }
+            m.put("bucketUpperBoundsMs", bounds);
+            m.put("bucketCounts", Arrays.copyOf(buckets, last + 1));
+            return m;
+        }
+    }
+}
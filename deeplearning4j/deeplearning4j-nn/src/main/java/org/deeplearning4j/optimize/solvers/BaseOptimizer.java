@@ -20,6 +20,7 @@ import lombok.Getter;
 import org.deeplearning4j.exception.InvalidStepException;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
@@ -27,15 +28,20 @@ import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
 import org.deeplearning4j.nn.updater.UpdaterCreator;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.deeplearning4j.optimize.api.ConvexOptimizer;
 import org.deeplearning4j.optimize.api.StepFunction;
+import org.deeplearning4j.optimize.api.StepPhase;
+import org.deeplearning4j.optimize.api.StepTimingListener;
 import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.optimize.solvers.accumulation.EncodedGradientsAccumulator;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.optimize.stepfunctions.NegativeDefaultStepFunction;
 import org.deeplearning4j.optimize.stepfunctions.NegativeGradientStepFunction;
+import org.deeplearning4j.util.StepTimingUtil;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
@@ -76,6 +82,8 @@ public abstract class BaseOptimizer implements ConvexOptimizer {
 
 
     protected GradientsAccumulator accumulator;
+    //True during backprop, if updates are shared in buckets while backprop is still running
+    protected boolean bucketedBackprop;
 
 
     /**
@@ -167,14 +175,30 @@ public abstract class BaseOptimizer implements ConvexOptimizer {
     @Override
     public Pair<Gradient, Double> gradientAndScore(LayerWorkspaceMgr workspaceMgr) {
         oldScore = score;
-        model.computeGradientAndScore(workspaceMgr);
+
+        bucketedBackprop = this instanceof StochasticGradientDescent && accumulator instanceof EncodedGradientsAccumulator
+                && ((EncodedGradientsAccumulator) accumulator).isBucketed()
+                && (model instanceof MultiLayerNetwork || model instanceof ComputationGraph);
+        if (bucketedBackprop) {
+            BaseMultiLayerUpdater<?> u = bucketedUpdater();
+            if (u != null)
+                u.resetPartialUpdate();
+        }
+        try {
+            model.computeGradientAndScore(workspaceMgr);
+        } finally {
+            bucketedBackprop = false;
+        }
 
         if (trainingListeners != null && !trainingListeners.isEmpty()) {
+            StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
+            long timingStart = StepTimingUtil.start(timing);
             try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                 for (TrainingListener l : trainingListeners) {
                     l.onGradientCalculation(model);
                 }
             }
+            StepTimingUtil.end(timing, model, StepPhase.LISTENERS, null, timingStart);
         }
 
         Pair<Gradient, Double> pair = model.gradientAndScore();
@@ -284,6 +308,50 @@ public abstract class BaseOptimizer implements ConvexOptimizer {
     }
 
 
+    /**
+     * Called by the model during backprop, once gradients for the specified layer are calculated. If bucketed
+     * gradients sharing is used (see {@link EncodedGradientsAccumulator#isBucketed()}), the updater is applied for
+     * all updater blocks that are complete, and the corresponding updates are passed to the accumulator, so they are
+     * shared while backprop is still running. No-op otherwise.<br>
+     * PLEASE NOTE: in this case, {@link TrainingListener#onGradientCalculation(Model)} will see updater-applied values
+     * for those parts of the gradients view array
+     *
+     * @param layer         Layer that backprop is done for
+     * @param layerGradient Gradient for the layer
+     */
+    public void layerGradientsDone(Trainable layer, Gradient layerGradient) {
+        if (!bucketedBackprop)
+            return;
+
+        BaseMultiLayerUpdater<?> u = bucketedUpdater();
+        if (u == null)
+            return;
+
+        int iteration = getIterationCount(model);
+        int epoch = getEpochCount(model);
+        long readyFrom = u.updateFinishedLayer(layer, layerGradient, iteration, epoch, model.batchSize());
+        if (readyFrom >= 0)
+            ((EncodedGradientsAccumulator) accumulator).storePartialUpdate(model.getGradientsViewArray(), readyFrom, iteration, epoch);
+    }
+
+    protected BaseMultiLayerUpdater<?> bucketedUpdater() {
+        if (model instanceof ComputationGraph) {
+            if (computationGraphUpdater == null) {
+                try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                    computationGraphUpdater = new ComputationGraphUpdater((ComputationGraph) model);
+                }
+            }
+            return computationGraphUpdater;
+        }
+
+        if (updater == null) {
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                updater = UpdaterCreator.getUpdater(model);
+            }
+        }
+        return updater instanceof BaseMultiLayerUpdater ? (BaseMultiLayerUpdater<?>) updater : null;
+    }
+
     @Override
     public void updateGradientAccordingToParams(Gradient gradient, Model model, int batchSize, LayerWorkspaceMgr workspaceMgr) {
         if (model instanceof ComputationGraph) {
@@ -24,7 +24,10 @@ import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.deeplearning4j.optimize.api.StepFunction;
+import org.deeplearning4j.optimize.api.StepPhase;
+import org.deeplearning4j.optimize.api.StepTimingListener;
 import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.util.StepTimingUtil;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
@@ -66,6 +69,9 @@ public class StochasticGradientDescent extends BaseOptimizer {
 
         INDArray params = model.params();
 
+        StepTimingListener[] timing = StepTimingUtil.getTimingListeners(trainingListeners);
+        long timingStart = StepTimingUtil.start(timing);
+
         // if optimizer has GradientsAccumulator defined - go for it
         if (accumulator != null) {
             // we're propagating current update
@@ -87,6 +93,9 @@ public class StochasticGradientDescent extends BaseOptimizer {
             //stepFunction.step(params, pendingUpdate);
             accumulator.applyUpdate(stepFunction, params, gradient.gradient(), true);
 
+            // gradient view now holds updates decoded from all workers, not just rows touched by this worker
+            resetSparseGradients(gradient);
+
             // if there's no update available - just go on then
         } else {
             // if accumulator isn't used - we just to for direct updates application
@@ -97,19 +106,35 @@ public class StochasticGradientDescent extends BaseOptimizer {
         //However: for pretrain layers, params are NOT a view. Thus a setParams call is necessary
         //But setParams should be a no-op for MLN and CG
         model.setParams(params);
+        StepTimingUtil.end(timing, model, StepPhase.UPDATER, null, timingStart);
 
         int iterationCount = BaseOptimizer.getIterationCount(model);
         int epochCount = BaseOptimizer.getEpochCount(model);
+        timingStart = StepTimingUtil.start(timing);
         try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
             for (TrainingListener listener : trainingListeners)
                 listener.iterationDone(model, iterationCount, epochCount);
         }
+        StepTimingUtil.end(timing, model, StepPhase.LISTENERS, null, timingStart);
 
         BaseOptimizer.incrementIterationCount(model, 1);
         applyConstraints(model);
         return true;
     }
 
+    /**
+     * Layers with sparse gradients zero only the rows they used in the last minibatch before the next backprop.
+     * GradientsAccumulator decodes updates of all workers into the gradient view, so any row can be non-zero after
+     * that, and such gradients are zeroed in full here.
+     */
+    protected static void resetSparseGradients(Gradient gradient) {
+        for (String variable : gradient.sparseRowsForVariable().keySet()) {
+            INDArray view = gradient.getGradientFor(variable);
+            if (view != null)
+                view.assign(0);
+        }
+    }
+
     @Override
     public void preProcessLine() {}
 
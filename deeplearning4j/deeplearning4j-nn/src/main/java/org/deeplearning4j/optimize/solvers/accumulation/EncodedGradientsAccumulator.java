@@ -23,6 +23,7 @@ import lombok.val;
 import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.optimize.api.StepFunction;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.residual.ResidualClippingPostProcessor;
@@ -34,17 +35,16 @@ import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.memory.enums.*;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.compression.ThresholdCompression;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.util.AtomicThrowable;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -94,6 +94,12 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
 
     protected AtomicBoolean externalUpdatesAvailable = new AtomicBoolean(false);
 
+    // bucketed sharing: max number of elements in a single bucket, 0 if bucketed sharing is disabled
+    @Getter
+    protected final long bucketSize;
+    protected ThreadLocal<BucketState> bucketState = new ThreadLocal<>();
+    protected final List<ExecutorService> bucketExecutors = new CopyOnWriteArrayList<>();
+
     protected WorkspaceConfiguration appliedConfiguration = WorkspaceConfiguration.builder().minSize(5 * 1024 * 1024L)
                     .overallocationLimit(0.3).policyMirroring(MirroringPolicy.FULL).policySpill(SpillPolicy.REALLOCATE)
                     .policyLearning(LearningPolicy.FIRST_LOOP).policyReset(ResetPolicy.BLOCK_LEFT).build();
@@ -108,6 +114,19 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
 
     protected EncodedGradientsAccumulator(int parties, @NonNull MessageHandler handler, long initialMemory,
                     int queueSize, Double boundary, boolean encodingDebugMode) {
+        this(parties, handler, initialMemory, queueSize, boundary, encodingDebugMode, 0);
+    }
+
+    protected EncodedGradientsAccumulator(int parties, @NonNull MessageHandler handler, long initialMemory,
+                    int queueSize, Double boundary, boolean encodingDebugMode, long bucketSize) {
+        if (bucketSize > 0 && !(handler instanceof EncodingHandler))
+            throw new DL4JInvalidConfigException("Bucketed gradients sharing requires EncodingHandler, but ["
+                            + handler.getClass().getSimpleName() + "] was provided");
+
+        if (bucketSize > 0 && ((EncodingHandler) handler).getCodec() != null)
+            throw new DL4JInvalidConfigException("Bucketed gradients sharing can't be used with GradientCodec");
+
+        this.bucketSize = bucketSize;
         this.parties = parties;
         this.handler = handler;
         this.initialMemory = initialMemory;
@@ -136,7 +155,9 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         int curDev = Nd4j.getAffinityManager().getDeviceForCurrentThread();
 
         for (int i = 0; i < parties; i++) {
-            messages.add(new LinkedBlockingQueue<INDArray>(queueSize));
+            // with bucketed sharing each worker sends multiple messages per iteration. Number of messages in the queue
+            // is still limited, since all workers are synchronized after each iteration
+            messages.add(bucketSize > 0 ? new LinkedBlockingQueue<INDArray>() : new LinkedBlockingQueue<INDArray>(queueSize));
 
             // we don't want device index to step out of boundaries here
             int cDevice = numDevices > 1 ? i % numDevices : 0;
@@ -295,13 +316,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             while (!messages.get(index.get()).isEmpty()) {
                 INDArray compressed = messages.get(index.get()).poll();
 
-                int encoding = compressed.data().getInt(3);
-                if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
-                    Nd4j.getExecutioner().thresholdDecode(compressed, updates);
-                else if (encoding == ThresholdCompression.BITMAP_ENCODING)
-                    Nd4j.getExecutioner().bitmapDecode(compressed, updates);
-                else
-                    throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
+                EncodingHandler.decode(compressed, updates, getCodec());
 
                 cnt++;
             }
@@ -360,13 +375,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             while (!messages.get(index.get()).isEmpty()) {
                 INDArray compressed = messages.get(index.get()).poll();
 
-                int encoding = compressed.data().getInt(3);
-                if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
-                    Nd4j.getExecutioner().thresholdDecode(compressed, updates);
-                else if (encoding == ThresholdCompression.BITMAP_ENCODING)
-                    Nd4j.getExecutioner().bitmapDecode(compressed, updates);
-                else
-                    throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
+                EncodingHandler.decode(compressed, updates, getCodec());
 
                 cnt++;
             }
@@ -440,15 +449,22 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
     @Override
     public void storeUpdate(INDArray array, int iterationNumber, int epochNumber) {
         try {
-            if (accumulator.get() == null) {
-                // we don't want accumulator to be attached to workspaces
-                try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
-                    accumulator.set(Nd4j.create(array.shape(), array.ordering()));
+            if (isBucketed()) {
+                // everything that wasn't sent during backprop is sent now, and we wait till all buckets are sent
+                BucketState state = getBucketState(array, iterationNumber, epochNumber);
+                submitBuckets(state, array, 0);
+                state.finishRound();
+            } else {
+                if (accumulator.get() == null) {
+                    // we don't want accumulator to be attached to workspaces
+                    try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                        accumulator.set(Nd4j.create(array.shape(), array.ordering()));
+                    }
                 }
-            }
 
-            // accumulate gradients updates in residental array
-            accumulator.get().addi(array);
+                // accumulate gradients updates in residental array
+                accumulator.get().addi(array);
+            }
 
             if (isDebug)
                 log.info("thread {} locking at Register", Thread.currentThread().getId());
@@ -465,7 +481,8 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
                 log.info("thread {} unlocking at Register", Thread.currentThread().getId());
 
             // propagate changes & modify accumulator
-            handler.broadcastUpdates(accumulator.get(), iterationNumber, epochNumber);
+            if (!isBucketed())
+                handler.broadcastUpdates(accumulator.get(), iterationNumber, epochNumber);
 
             // we're blocking here, untill all done broadcasting updates
             synchronize(currentConsumers.get());
@@ -475,6 +492,85 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         }
     }
 
+    /**
+     * This method returns codec used to encode updates, if any
+     *
+     * @return
+     */
+    protected GradientCodec getCodec() {
+        return handler instanceof EncodingHandler ? ((EncodingHandler) handler).getCodec() : null;
+    }
+
+    /**
+     * This method returns true if bucketed gradients sharing is enabled
+     *
+     * @return
+     */
+    public boolean isBucketed() {
+        return bucketSize > 0;
+    }
+
+    /**
+     * Bucketed sharing: this method is called during backprop, once updates are final for the tail of the flattened
+     * updates array (i.e., backprop and updater are done for the corresponding layers). All buckets within that range
+     * are accumulated into their residuals, encoded and sent from a separate thread, while backprop goes on.
+     * Remaining buckets are sent in {@link #storeUpdate(INDArray, int, int)}
+     *
+     * @param array     flattened updates array
+     * @param readyFrom updates starting from this offset till the end of the array are final
+     */
+    public void storePartialUpdate(INDArray array, long readyFrom, int iterationNumber, int epochNumber) {
+        try {
+            BucketState state = getBucketState(array, iterationNumber, epochNumber);
+            submitBuckets(state, array, readyFrom);
+        } catch (Exception e) {
+            throwable.setIfFirst(e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected BucketState getBucketState(INDArray array, int iterationNumber, int epochNumber) throws Exception {
+        BucketState state = bucketState.get();
+        if (state == null) {
+            state = new BucketState(array, bucketSize);
+            bucketExecutors.add(state.executor);
+            bucketState.set(state);
+        }
+
+        // previous round wasn't finished, i.e. backprop has failed. buckets sent so far are kept
+        if (state.roundActive && (state.iteration != iterationNumber || state.epoch != epochNumber))
+            state.finishRound();
+
+        if (!state.roundActive)
+            state.startRound(iterationNumber, epochNumber);
+
+        return state;
+    }
+
+    protected void submitBuckets(BucketState state, INDArray array, long readyFrom) {
+        // buckets are sent from the end of the array, in the same order as backprop goes
+        final INDArray flat = array.reshape(array.length());
+        final long totalLength = array.length();
+        final int iteration = state.iteration;
+        final int epoch = state.epoch;
+        while (state.submittedFrom > 0 && state.offsets[state.submittedFrom - 1] >= readyFrom) {
+            final int b = --state.submittedFrom;
+            final long offset = state.offsets[b];
+            final INDArray residual = state.residuals[b];
+            final INDArray source = flat.get(NDArrayIndex.interval(offset, state.offsets[b + 1]));
+            final boolean first = !state.anySubmitted;
+            state.anySubmitted = true;
+
+            state.pending.add(state.executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    residual.addi(source);
+                    return ((EncodingHandler) handler).broadcastBucket(residual, offset, totalLength, first, iteration, epoch);
+                }
+            }));
+        }
+    }
+
     /**
      * This method accepts updates suitable for StepFunction and puts them to the queue, which is used in backpropagation loop
      * <p>
@@ -539,6 +635,81 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         for (int i = 0; i < parties; i++) {
             messages.get(i).clear();
         }
+
+        // and bucket residuals, along with their threads
+        for (ExecutorService executor : bucketExecutors)
+            executor.shutdownNow();
+        bucketExecutors.clear();
+        bucketState = new ThreadLocal<>();
+    }
+
+    /**
+     * Bucketed sharing state of a single worker: residuals for all buckets, and the thread that encodes and sends them
+     */
+    protected static class BucketState {
+        protected final long[] offsets;
+        protected final INDArray[] residuals;
+        protected final ExecutorService executor;
+        protected final List<Future<Boolean>> pending = new ArrayList<>();
+
+        protected int iteration;
+        protected int epoch;
+        protected boolean roundActive;
+        protected boolean anySubmitted;
+        protected int submittedFrom;
+
+        protected BucketState(INDArray array, long bucketSize) {
+            long length = array.length();
+            int numBuckets = (int) ((length + bucketSize - 1) / bucketSize);
+
+            offsets = new long[numBuckets + 1];
+            residuals = new INDArray[numBuckets];
+
+            // residuals are separate arrays, since encoding works with the whole buffer. and we don't want them in workspaces
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (int b = 0; b < numBuckets; b++) {
+                    offsets[b] = b * bucketSize;
+                    offsets[b + 1] = Math.min(length, (b + 1) * bucketSize);
+                    residuals[b] = Nd4j.create(array.dataType(), offsets[b + 1] - offsets[b]);
+                }
+            }
+
+            // encoding thread should use the same device as the worker
+            final int deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable r) {
+                    Thread t = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+                            r.run();
+                        }
+                    });
+                    t.setName("BucketedSharing thread " + t.getId());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        protected void startRound(int iteration, int epoch) {
+            this.iteration = iteration;
+            this.epoch = epoch;
+            this.submittedFrom = residuals.length;
+            this.anySubmitted = false;
+            this.roundActive = true;
+        }
+
+        protected void finishRound() throws Exception {
+            roundActive = false;
+            try {
+                for (Future<Boolean> f : pending)
+                    f.get();
+            } finally {
+                pending.clear();
+            }
+        }
     }
 
     @Override
@@ -555,6 +726,8 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         protected MessageHandler handler;
         protected Double boundary = null;
         protected boolean encodingDebugMode;
+        protected long bucketSize = 0;
+        protected GradientCodec codec;
 
         /**
          * This
@@ -635,13 +808,48 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             return this;
         }
 
+        /**
+         * This method allows to specify codec used to encode updates, instead of default threshold/bitmap encoding.
+         * Ignored if MessageHandler is specified.
+         *
+         * Default value: null (threshold/bitmap encoding)
+         * @param codec
+         * @return
+         */
+        public Builder codec(GradientCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * This method enables bucketed gradients sharing: flattened updates are split into buckets of the given size,
+         * and each bucket is encoded and sent from a separate thread as soon as backprop (and updater) is done for
+         * the layers it covers, so communication overlaps with the rest of backprop. The updater is applied layer by
+         * layer (not per updater block), so this works even if all layers share the same updater configuration.
+         *
+         * PLEASE NOTE: buckets are always threshold encoded, and it requires EncodingHandler. Row-sparse gradients and
+         * custom updaters with non-elementwise state fall back to sharing after backprop, and mixed precision training
+         * can't be used with gradients sharing at all
+         *
+         * Default value: 0 (disabled)
+         * @param bucketSize number of elements per bucket
+         * @return
+         */
+        public Builder bucketSize(long bucketSize) {
+            if (bucketSize < 0)
+                throw new DL4JInvalidConfigException("Bucket size can't be negative");
+
+            this.bucketSize = bucketSize;
+            return this;
+        }
+
         public EncodedGradientsAccumulator build() {
             if (handler == null) {
                 Preconditions.checkNotNull(thresholdAlgorithm, "Both threshold algorithm and handler are null - one or the other must be set");
-                handler = new EncodingHandler(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode);
+                handler = new EncodingHandler(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode, codec);
             }
 
-            EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator(parties, handler, initialMemory, queueSize, boundary, encodingDebugMode);
+            EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator(parties, handler, initialMemory, queueSize, boundary, encodingDebugMode, bucketSize);
 
             return accumulator;
         }
@@ -17,14 +17,19 @@
 package org.deeplearning4j.optimize.solvers.accumulation;
 
 import org.nd4j.shade.guava.util.concurrent.AtomicDouble;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithmReducer;
 import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.compression.NDArrayCompressor;
+import org.nd4j.linalg.compression.ThresholdCompression;
+import org.nd4j.linalg.compression.UpdateCodecs;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.ops.transforms.Transforms;
@@ -44,6 +49,8 @@ import java.util.concurrent.atomic.AtomicLong;
  *
  * This handler is used as basement for distributed handler though.
  *
+ * Optionally, {@link GradientCodec} can be used instead of default threshold/bitmap encoding.
+ *
  * PLEASE NOTE: This handler does NOT provide any network connectivity. *
  * @author raver119@gmail.com
  */
@@ -53,6 +60,8 @@ public class EncodingHandler implements MessageHandler {
     protected transient GradientsAccumulator accumulator;
     protected ThresholdAlgorithm initialThresholdAlgorithm;
     protected ResidualPostProcessor initialResidualPostProcessor;
+    @Getter
+    protected GradientCodec codec;
 
     protected Double boundary;
     protected boolean encodingDebugMode;
@@ -69,11 +78,26 @@ public class EncodingHandler implements MessageHandler {
     protected ThreadLocal<AtomicDouble> currentThreshold = new ThreadLocal<>();
     protected ThreadLocal<AtomicBoolean> bitmapMode = new ThreadLocal<>();
     protected ThreadLocal<AtomicBoolean> lastIterWasDense = new ThreadLocal<>();    //Same as bitmapMode but lagging by 1 iter
+    protected ThreadLocal<long[]> bucketStats = new ThreadLocal<>();    //Bucketed sharing: encoded values and total length so far, in current iteration
 
     protected final AtomicLong lastThresholdLogTime = new AtomicLong();
 
     public EncodingHandler(final ThresholdAlgorithm thresholdAlgorithm, final ResidualPostProcessor residualPostProcessor,
                            Double boundary, boolean encodingDebugMode){
+        this(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode, null);
+    }
+
+    /**
+     * @param codec Codec to use for encoding updates instead of default threshold/bitmap encoding. May be null.
+     *              Residual post processor must be null for codecs that don't use the threshold
+     */
+    public EncodingHandler(final ThresholdAlgorithm thresholdAlgorithm, final ResidualPostProcessor residualPostProcessor,
+                           Double boundary, boolean encodingDebugMode, GradientCodec codec){
+        if (codec != null && !codec.usesThreshold() && residualPostProcessor != null)
+            throw new DL4JInvalidConfigException("Residual post processor " + residualPostProcessor + " is based on the encoding threshold, "
+                    + "but codec " + codec + " doesn't use the threshold. Residual post processor must be null for this codec");
+
+        this.codec = codec;
         this.initialThresholdAlgorithm = thresholdAlgorithm;
         this.initialResidualPostProcessor = residualPostProcessor;
         this.boundary = boundary;
@@ -89,7 +113,7 @@ public class EncodingHandler implements MessageHandler {
             throw new ND4JIllegalStateException("Can't find Threshold compressor implementation!");
     }
 
-    public INDArray encodeUpdates(int iteration, int epoch, INDArray updates) {
+    protected void initThresholdAlgorithm() {
         if(thresholdAlgorithm.get() == null){
             synchronized (this){
                 //Synchronized in case threshold algorithm has INDArrays and we're running on GPU - don't want race condition for shifting devices
@@ -101,6 +125,10 @@ public class EncodingHandler implements MessageHandler {
                 }
             }
         }
+    }
+
+    public INDArray encodeUpdates(int iteration, int epoch, INDArray updates) {
+        initThresholdAlgorithm();
 
         Double lastThr = null;
         Boolean lastWasDense = null;
@@ -137,6 +165,9 @@ public class EncodingHandler implements MessageHandler {
         if (boundary != null && atomicBoundary.get() < 0)
             atomicBoundary.compareAndSet(-1, (int) (updates.length() * boundary));
 
+        if (codec != null)
+            return encodeWithCodec(iteration, epoch, updates, currThreshold);
+
         INDArray encoded;
 
         if (!bitmapMode.get().get()) {
@@ -212,6 +243,125 @@ public class EncodingHandler implements MessageHandler {
         return encoded;
     }
 
+    protected INDArray encodeWithCodec(int iteration, int epoch, INDArray updates, double currThreshold) {
+        INDArray encoded = codec.encode(updates, currThreshold, boundary == null ? null : atomicBoundary.get());
+
+        double sparsityRatio = encoded == null ? 0.0 : encoded.data().getInt(0) / (double) updates.length();
+        if (lastSparsityRatio.get() == null)
+            lastSparsityRatio.set(new AtomicDouble(sparsityRatio));
+        else
+            lastSparsityRatio.get().set(sparsityRatio);
+        lastIterWasDense.get().set(false);
+
+        if (encoded != null)
+            applyPostProcessor(iteration, epoch, currThreshold, updates);
+        logThresholdIfReq(false, iteration, epoch);
+        return encoded;
+    }
+
+    /**
+     * Bucketed sharing: encode single bucket of the updates. Threshold is calculated once per iteration (on the first
+     * bucket), using sparsity of all buckets of the previous iteration.<br>
+     * Buckets are always threshold encoded: number of encoded values is limited to 1/16 of the bucket length (i.e., size
+     * of bitmap encoding), and values above the limit are kept in the residual for the next iteration.
+     *
+     * @param bucket      Updates + residual for the bucket. Must be a separate array, not a view
+     * @param firstBucket True for the first bucket of the iteration
+     * @return Encoded bucket, or null if there's nothing to share
+     */
+    public INDArray encodeBucket(int iteration, int epoch, INDArray bucket, boolean firstBucket) {
+        initThresholdAlgorithm();
+
+        if (firstBucket || currentThreshold.get() == null) {
+            Double lastThr = null;
+            Double lastSparsity = null;
+            if (lastThreshold.get() != null) {
+                lastThr = lastThreshold.get().get();
+                lastSparsity = lastSparsityRatio.get() == null ? null : lastSparsityRatio.get().get();
+            }
+
+            double currThreshold = thresholdAlgorithm.get().calculateThreshold(iteration, epoch, lastThr,
+                    lastThr == null ? null : false, lastSparsity, bucket);
+            if (currentThreshold.get() == null) {
+                currentThreshold.set(new AtomicDouble(currThreshold));
+                lastThreshold.set(new AtomicDouble(currThreshold));
+                iterations.set(new AtomicLong(0));
+            }
+
+            currentThreshold.get().set(currThreshold);
+            lastThreshold.get().set(currThreshold);
+            iterations.get().incrementAndGet();
+            bucketStats.set(new long[2]);
+        }
+
+        residualDebugOutputIfRequired(bucket);
+
+        double currThreshold = currentThreshold.get().get();
+        int limit = (int) Math.max(16, bucket.length() / 16);
+        if (boundary != null)
+            limit = (int) Math.max(1, Math.min(limit, bucket.length() * boundary));
+
+        INDArray encoded = Nd4j.getExecutioner().thresholdEncode(bucket, currThreshold, limit);
+
+        //Sparsity ratio is tracked over all buckets of the iteration
+        long[] stats = bucketStats.get();
+        stats[0] += encoded == null ? 0 : encoded.data().getInt(0);
+        stats[1] += bucket.length();
+        if (lastSparsityRatio.get() == null)
+            lastSparsityRatio.set(new AtomicDouble(stats[0] / (double) stats[1]));
+        else
+            lastSparsityRatio.get().set(stats[0] / (double) stats[1]);
+
+        applyPostProcessor(iteration, epoch, currThreshold, bucket);
+        logThresholdIfReq(false, iteration, epoch);
+        return encoded;
+    }
+
+    /**
+     * Bucketed sharing: converts threshold encoded bucket into message for the whole updates array, so it can be
+     * decoded (and transferred) the same way as any other update. Modifies the encoded array in place.
+     *
+     * @param encoded     Threshold encoded bucket
+     * @param offset      Offset of the bucket in the updates array
+     * @param totalLength Length of the updates array
+     * @return Encoded message
+     */
+    public static INDArray rebaseBucket(INDArray encoded, long offset, long totalLength) {
+        DataBuffer buffer = encoded.data();
+        if (buffer.getInt(3) != ThresholdCompression.FLEXIBLE_ENCODING)
+            throw new ND4JIllegalStateException("Only threshold encoded buckets can be rebased");
+
+        int length = buffer.getInt(0);
+        buffer.put(1, (int) totalLength);
+        if (offset > 0) {
+            //Encoded values are 1-based indices, with sign of the update
+            for (int e = 4; e < length + 4; e++) {
+                int v = buffer.getInt(e);
+                buffer.put(e, v > 0 ? (int) (v + offset) : (int) (v - offset));
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Bucketed sharing: encode and send single bucket of the updates.
+     *
+     * @param residual    Updates + residual for the bucket. Must be a separate array, not a view
+     * @param offset      Offset of the bucket in the updates array
+     * @param totalLength Length of the updates array
+     * @param firstBucket True for the first bucket of the iteration
+     * @return True if anything was sent
+     */
+    public boolean broadcastBucket(INDArray residual, long offset, long totalLength, boolean firstBucket,
+                                   int iterationNumber, int epochNumber) {
+        INDArray message = encodeBucket(iterationNumber, epochNumber, residual, firstBucket);
+        if (message == null)
+            return false;
+
+        sendMessage(rebaseBucket(message, offset, totalLength), iterationNumber, epochNumber);
+        return true;
+    }
+
     public void applyPostProcessor(int iteration, int epoch, Double lastThreshold, INDArray residuals){
         if(initialResidualPostProcessor == null) {
             return; //No op
@@ -227,6 +377,31 @@ public class EncodingHandler implements MessageHandler {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * This method decodes encoded updates (threshold, bitmap or any of UpdateCodecs encodings), and adds them to the
+     * target array. Messages the given codec can decode go through it, so codec metrics account for all decoded updates
+     *
+     * @param encoded Encoded updates
+     * @param target  Array to add decoded updates to
+     * @param codec   Codec used to encode updates. May be null
+     * @return target
+     */
+    public static INDArray decode(@NonNull INDArray encoded, @NonNull INDArray target, GradientCodec codec) {
+        int encoding = encoded.data().getInt(3);
+        if (codec != null && codec.canDecode(encoding))
+            codec.decode(encoded, target);
+        else if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
+            Nd4j.getExecutioner().thresholdDecode(encoded, target);
+        else if (encoding == ThresholdCompression.BITMAP_ENCODING)
+            Nd4j.getExecutioner().bitmapDecode(encoded, target);
+        else if (UpdateCodecs.isSupported(encoding))
+            UpdateCodecs.decode(encoded, target);
+        else
+            throw new ND4JIllegalStateException("Unknown encoding mode: [" + encoding + "]");
+
+        return target;
+    }
+
     /**
      * This method does loops encoded data back to updates queue
      * @param message
@@ -20,12 +20,11 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import lombok.var;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.nd4j.base.Preconditions;
 import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.compression.ThresholdCompression;
-import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.AtomicBoolean;
 
@@ -70,11 +69,22 @@ public class IndexedTail {
     protected AtomicBoolean collapsedMode = new AtomicBoolean(false);
     protected AtomicLong collapsedIndex = new AtomicLong(-1);
 
+    // codec used to encode updates, if any. it's used for decoding too, to keep its metrics complete
+    protected final GradientCodec codec;
+
     public IndexedTail(int expectedConsumers) {
         this(expectedConsumers, false, null);
     }
 
     public IndexedTail(int expectedConsumers, boolean allowCollapse, long[] shape) {
+        this(expectedConsumers, allowCollapse, shape, null);
+    }
+
+    /**
+     * @param codec Codec used to encode updates. May be null
+     */
+    public IndexedTail(int expectedConsumers, boolean allowCollapse, long[] shape, GradientCodec codec) {
+        this.codec = codec;
         this.expectedConsumers = expectedConsumers;
         this.allowCollapse = allowCollapse;
 
@@ -334,13 +344,7 @@ public class IndexedTail {
         INDArray result = target;
 
         if (encoded.isCompressed() || encoded.data().dataType() == DataType.INT) {
-            int encoding = encoded.data().getInt(3);
-            if (encoding == ThresholdCompression.FLEXIBLE_ENCODING) {
-                Nd4j.getExecutioner().thresholdDecode(encoded, result);
-            } else if (encoding == ThresholdCompression.BITMAP_ENCODING) {
-                Nd4j.getExecutioner().bitmapDecode(encoded, result);
-            } else
-                throw new ND4JIllegalStateException("Unknown encoding mode: [" + encoding + "]");
+            EncodingHandler.decode(encoded, result, codec);
         } else {
             result.addi(encoded);
         }
@@ -21,11 +21,10 @@ import EDU.oswego.cs.dl.util.concurrent.ReaderPreferenceReadWriteLock;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.compression.ThresholdCompression;
-import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.AtomicBoolean;
 
@@ -52,12 +51,23 @@ public class SmartFancyBlockingQueue extends FancyBlockingQueue<INDArray> {
     protected final long[] paramsShape;
     protected final char paramsOrder;
 
+    // codec used to encode updates, if any. it's used for decoding too, to keep its metrics complete
+    protected final GradientCodec codec;
+
     public SmartFancyBlockingQueue(int decompressionThreshold, @NonNull INDArray paramsMatrix) {
         this(decompressionThreshold, new LinkedBlockingQueue<INDArray>(1024), paramsMatrix);
     }
 
     public SmartFancyBlockingQueue(int decompressionThreshold, BlockingQueue<INDArray> queue, @NonNull INDArray paramsMatrix) {
+        this(decompressionThreshold, queue, paramsMatrix, null);
+    }
+
+    /**
+     * @param codec Codec used to encode updates. May be null
+     */
+    public SmartFancyBlockingQueue(int decompressionThreshold, BlockingQueue<INDArray> queue, @NonNull INDArray paramsMatrix, GradientCodec codec) {
         super(queue);
+        this.codec = codec;
         this.decompressionThreshold = decompressionThreshold;
 
         this.paramsShape = paramsMatrix.shape();
@@ -68,13 +78,7 @@ public class SmartFancyBlockingQueue extends FancyBlockingQueue<INDArray> {
         INDArray result = target == null ? Nd4j.create(paramsShape, paramsOrder) : target;
 
         if (encoded.isCompressed() || encoded.data().dataType() == DataType.INT) {
-            int encoding = encoded.data().getInt(3);
-            if (encoding == ThresholdCompression.FLEXIBLE_ENCODING) {
-                Nd4j.getExecutioner().thresholdDecode(encoded, result);
-            } else if (encoding == ThresholdCompression.BITMAP_ENCODING) {
-                Nd4j.getExecutioner().bitmapDecode(encoded, result);
-            } else
-                throw new ND4JIllegalStateException("Unknown encoding mode: [" + encoding + "]");
+            EncodingHandler.decode(encoded, result, codec);
         } else {
             result.addi(encoded);
         }
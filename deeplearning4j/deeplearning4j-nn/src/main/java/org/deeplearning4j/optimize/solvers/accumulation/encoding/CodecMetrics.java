@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of {@link GradientCodec} metrics: bytes on wire, and encode/decode throughput
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CodecMetrics implements Serializable {
+    /**
+     * Number of encoded messages
+     */
+    private long messages;
+    /**
+     * Total length of the encoded arrays (i.e., number of dense elements)
+     */
+    private long elements;
+    /**
+     * Number of values in the encoded messages: number of indices for sparse encodings, equal to elements for dense ones
+     */
+    private long encodedValues;
+    /**
+     * Total size of the encoded messages, in bytes
+     */
+    private long bytesOnWire;
+    private long encodeTimeNanos;
+    /**
+     * Total length of the decoded arrays
+     */
+    private long decodedElements;
+    private long decodeTimeNanos;
+
+    /**
+     * @return Average number of bytes per encoded value
+     */
+    public double getBytesPerValue() {
+        return encodedValues == 0 ? 0.0 : bytesOnWire / (double) encodedValues;
+    }
+
+    /**
+     * @return Ratio of dense size (4 bytes per element) to bytes on wire
+     */
+    public double getCompressionRatio() {
+        return bytesOnWire == 0 ? 0.0 : 4.0 * elements / bytesOnWire;
+    }
+
+    /**
+     * @return Encoding throughput, in elements per second
+     */
+    public double getEncodeThroughput() {
+        return encodeTimeNanos == 0 ? 0.0 : elements * 1e9 / encodeTimeNanos;
+    }
+
+    /**
+     * @return Decoding throughput, in elements per second
+     */
+    public double getDecodeThroughput() {
+        return decodeTimeNanos == 0 ? 0.0 : decodedElements * 1e9 / decodeTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CodecMetrics(messages=%d, bytesOnWire=%d, bytesPerValue=%.2f, compressionRatio=%.1f, " +
+                        "encodeThroughput=%.3e/s, decodeThroughput=%.3e/s)", messages, bytesOnWire, getBytesPerValue(),
+                getCompressionRatio(), getEncodeThroughput(), getDecodeThroughput());
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Serializable;
+
+/**
+ * GradientCodec is responsible for encoding updates for distributed training, as an alternative to the default
+ * threshold/bitmap encoding of {@link org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler}.<br>
+ * Codecs implement error feedback: whatever wasn't communicated is left in the residual array, for the next iteration.<br>
+ * Implementations must be thread safe, as a single instance is shared by all workers.
+ *
+ * See {@link org.deeplearning4j.optimize.solvers.accumulation.encoding.codec} for the available implementations
+ */
+public interface GradientCodec extends Serializable {
+
+    /**
+     * Encode the updates. Encoded part of the updates is subtracted from the array, leaving the residual
+     *
+     * @param updatesPlusResidual The array (updates plus residual) to encode. Modified in place
+     * @param threshold           Current encoding threshold, as calculated by the
+     *                            {@link ThresholdAlgorithm}. May be ignored by codecs that don't use thresholds
+     * @param boundary            Max number of values to encode, or null if not limited. May be ignored by dense codecs
+     * @return Encoded updates, or null if there's nothing to communicate
+     */
+    INDArray encode(INDArray updatesPlusResidual, double threshold, Integer boundary);
+
+    /**
+     * Decode the updates, and add them to the target array
+     *
+     * @param encoded Encoded updates
+     * @param target  Array to add decoded updates to. Must have the same length as original array
+     */
+    void decode(INDArray encoded, INDArray target);
+
+    /**
+     * @param encoding Encoding type, as stored in the header of the encoded array
+     * @return True if messages with the given encoding are produced (and can be decoded) by this codec
+     */
+    boolean canDecode(int encoding);
+
+    /**
+     * @return True if this codec uses the encoding threshold. If false, the threshold passed to
+     * {@link #encode(INDArray, double, Integer)} is ignored, and residual post processors (which are based on the
+     * threshold) can't be used with this codec
+     */
+    boolean usesThreshold();
+
+    /**
+     * @return Bytes-on-wire and throughput metrics for this codec, since creation or last {@link #resetMetrics()}
+     */
+    CodecMetrics getMetrics();
+
+    /**
+     * Reset the metrics of this codec
+     */
+    void resetMetrics();
+}
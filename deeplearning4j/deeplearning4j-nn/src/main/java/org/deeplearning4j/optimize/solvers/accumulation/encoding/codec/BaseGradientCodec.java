@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.codec;
+
+import lombok.NonNull;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CodecMetrics;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.UpdateCodecs;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for {@link GradientCodec} implementations: collects metrics around {@link #doEncode(INDArray, double, Integer)}
+ * and {@link #doDecode(INDArray, INDArray)}
+ */
+public abstract class BaseGradientCodec implements GradientCodec {
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong elements = new AtomicLong();
+    private final AtomicLong encodedValues = new AtomicLong();
+    private final AtomicLong bytesOnWire = new AtomicLong();
+    private final AtomicLong encodeTimeNanos = new AtomicLong();
+    private final AtomicLong decodedElements = new AtomicLong();
+    private final AtomicLong decodeTimeNanos = new AtomicLong();
+
+    protected abstract INDArray doEncode(INDArray updatesPlusResidual, double threshold, Integer boundary);
+
+    protected void doDecode(INDArray encoded, INDArray target) {
+        UpdateCodecs.decode(encoded, target);
+    }
+
+    @Override
+    public INDArray encode(@NonNull INDArray updatesPlusResidual, double threshold, Integer boundary) {
+        long start = System.nanoTime();
+        INDArray encoded = doEncode(updatesPlusResidual, threshold, boundary);
+        Nd4j.getExecutioner().commit();
+        encodeTimeNanos.addAndGet(System.nanoTime() - start);
+
+        elements.addAndGet(updatesPlusResidual.length());
+        if (encoded != null) {
+            messages.incrementAndGet();
+            encodedValues.addAndGet(encoded.data().getInt(0));
+            bytesOnWire.addAndGet(UpdateCodecs.bytesOnWire(encoded));
+        }
+        return encoded;
+    }
+
+    @Override
+    public void decode(@NonNull INDArray encoded, @NonNull INDArray target) {
+        long start = System.nanoTime();
+        doDecode(encoded, target);
+        Nd4j.getExecutioner().commit();
+        decodeTimeNanos.addAndGet(System.nanoTime() - start);
+        decodedElements.addAndGet(target.length());
+    }
+
+    @Override
+    public boolean canDecode(int encoding) {
+        return UpdateCodecs.isSupported(encoding);
+    }
+
+    @Override
+    public CodecMetrics getMetrics() {
+        return new CodecMetrics(messages.get(), elements.get(), encodedValues.get(), bytesOnWire.get(),
+                encodeTimeNanos.get(), decodedElements.get(), decodeTimeNanos.get());
+    }
+
+    @Override
+    public void resetMetrics() {
+        messages.set(0);
+        elements.set(0);
+        encodedValues.set(0);
+        bytesOnWire.set(0);
+        encodeTimeNanos.set(0);
+        decodedElements.set(0);
+        decodeTimeNanos.set(0);
+    }
+}
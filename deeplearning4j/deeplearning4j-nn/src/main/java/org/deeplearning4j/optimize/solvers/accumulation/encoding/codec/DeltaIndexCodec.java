@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.codec;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.UpdateCodecs;
+
+/**
+ * Threshold encoding with delta-coded index stream: same semantics as threshold encoding (sign of each value above
+ * the threshold is communicated, and the threshold is subtracted from the residual), but instead of 4 bytes per index,
+ * differences between consecutive indices are stored as variable length integers, with the sign in the lowest bit.<br>
+ * For typical sparsity ratios (1e-3 and above) this needs 1-2 bytes per index.
+ */
+public class DeltaIndexCodec extends BaseGradientCodec {
+
+    @Override
+    protected INDArray doEncode(INDArray updatesPlusResidual, double threshold, Integer boundary) {
+        return UpdateCodecs.encodeDelta(updatesPlusResidual, threshold, boundary);
+    }
+
+    @Override
+    public boolean usesThreshold() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "DeltaIndexCodec()";
+    }
+}
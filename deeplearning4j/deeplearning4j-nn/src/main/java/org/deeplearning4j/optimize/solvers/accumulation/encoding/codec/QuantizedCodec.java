@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.codec;
+
+import lombok.Getter;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.UpdateCodecs;
+
+/**
+ * Dense quantized encoding with error feedback: all values are communicated, with reduced precision. Quantization
+ * error is kept in the residual.<br>
+ * - 1 bit: sign of each value. Positive values are decoded as the mean of positive values, negative values as the mean
+ * of negative values (as in 1-bit SGD). 1/32 of dense size<br>
+ * - 8 bit: each value is scaled by max absolute value and rounded to signed byte. 1/4 of dense size<br>
+ * The encoding threshold is not used by this codec, hence residual post processors (such as
+ * {@link org.deeplearning4j.optimize.solvers.accumulation.encoding.residual.ResidualClippingPostProcessor}), which are
+ * based on the threshold, can't be used with it.
+ */
+@Getter
+public class QuantizedCodec extends BaseGradientCodec {
+    private final int bits;
+
+    /**
+     * @param bits Number of bits per value: 1 or 8
+     */
+    public QuantizedCodec(int bits) {
+        Preconditions.checkArgument(bits == 1 || bits == 8, "Only 1 and 8 bit quantization is supported, got %s", bits);
+        this.bits = bits;
+    }
+
+    @Override
+    protected INDArray doEncode(INDArray updatesPlusResidual, double threshold, Integer boundary) {
+        return bits == 1 ? UpdateCodecs.encodeOneBit(updatesPlusResidual) : UpdateCodecs.encodeInt8(updatesPlusResidual);
+    }
+
+    @Override
+    public boolean usesThreshold() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "QuantizedCodec(bits=" + bits + ")";
+    }
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.codec;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.ThresholdCompression;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Native threshold encoding, same as the default sparse encoding of
+ * {@link org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler} (but without switching to bitmap encoding
+ * for dense updates). 4 bytes per index. Mostly useful as a baseline for the other codecs
+ */
+public class ThresholdCodec extends BaseGradientCodec {
+
+    @Override
+    protected INDArray doEncode(INDArray updatesPlusResidual, double threshold, Integer boundary) {
+        return Nd4j.getExecutioner().thresholdEncode(updatesPlusResidual, threshold, boundary);
+    }
+
+    @Override
+    protected void doDecode(INDArray encoded, INDArray target) {
+        if (encoded.data().getInt(3) == ThresholdCompression.BITMAP_ENCODING)
+            Nd4j.getExecutioner().bitmapDecode(encoded, target);
+        else
+            Nd4j.getExecutioner().thresholdDecode(encoded, target);
+    }
+
+    @Override
+    public boolean canDecode(int encoding) {
+        return encoding == ThresholdCompression.FLEXIBLE_ENCODING || encoding == ThresholdCompression.BITMAP_ENCODING;
+    }
+
+    @Override
+    public boolean usesThreshold() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ThresholdCodec()";
+    }
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.codec;
+
+import lombok.Getter;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.UpdateCodecs;
+
+/**
+ * Exact top-k encoding with error feedback: k values with the largest magnitude are communicated with their exact
+ * values, and set to 0 in the residual. All other values are kept in the residual.<br>
+ * k is specified as a fraction of the updates length (density). Indices are delta-coded, so each value takes 4 bytes
+ * plus 1-2 bytes for the index.<br>
+ * The encoding threshold is not used by this codec, hence residual post processors (such as
+ * {@link org.deeplearning4j.optimize.solvers.accumulation.encoding.residual.ResidualClippingPostProcessor}), which are
+ * based on the threshold, can't be used with it.
+ */
+@Getter
+public class TopKCodec extends BaseGradientCodec {
+    private final double density;
+
+    /**
+     * @param density Fraction of values to communicate in each message. Must be in range (0, 1]
+     */
+    public TopKCodec(double density) {
+        Preconditions.checkArgument(density > 0.0 && density <= 1.0, "Density must be in range (0, 1], got %s", density);
+        this.density = density;
+    }
+
+    @Override
+    protected INDArray doEncode(INDArray updatesPlusResidual, double threshold, Integer boundary) {
+        long k = Math.max(1, (long) Math.ceil(updatesPlusResidual.length() * density));
+        if (boundary != null)
+            k = Math.min(k, boundary);
+        return UpdateCodecs.encodeTopK(updatesPlusResidual, (int) k);
+    }
+
+    @Override
+    public boolean usesThreshold() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "TopKCodec(density=" + density + ")";
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.util;
+
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.api.StepPhase;
+import org.deeplearning4j.optimize.api.StepTimingListener;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Utilities for measuring the parts of a training iteration, for {@link StepTimingListener}s.<br>
+ * Usage pattern: {@code StepTimingListener[] timing = getTimingListeners(...)} once per method, then
+ * {@code long start = start(timing)} and {@code end(timing, model, phase, name, start)} around the timed section.
+ * All methods are no-ops when timing listeners is null - i.e., when no StepTimingListener is set on the model.
+ */
+public class StepTimingUtil {
+
+    private StepTimingUtil() {
+    }
+
+    /**
+     * @return The StepTimingListener instances in the collection, or null if there are none (timing is disabled)
+     */
+    public static StepTimingListener[] getTimingListeners(Collection<TrainingListener> listeners) {
+        if (listeners == null || listeners.isEmpty())
+            return null;
+
+        List<StepTimingListener> out = null;
+        for (TrainingListener l : listeners) {
+            if (l instanceof StepTimingListener) {
+                if (out == null)
+                    out = new ArrayList<>(1);
+                out.add((StepTimingListener) l);
+            }
+        }
+        return out == null ? null : out.toArray(new StepTimingListener[out.size()]);
+    }
+
+    /**
+     * @return The StepTimingListener instances set on the model (MultiLayerNetwork or ComputationGraph), or null if
+     * there are none
+     */
+    public static StepTimingListener[] getTimingListeners(Model model) {
+        if (model instanceof MultiLayerNetwork) {
+            return getTimingListeners(((MultiLayerNetwork) model).getListeners());
+        } else if (model instanceof ComputationGraph) {
+            return getTimingListeners(((ComputationGraph) model).getListeners());
+        }
+        return null;
+    }
+
+    /**
+     * Start timing a section
+     *
+     * @param listeners Timing listeners, may be null
+     * @return Start time, in nanoseconds
+     */
+    public static long start(StepTimingListener[] listeners) {
+        if (listeners == null)
+            return 0;
+        //Ops may be executed asynchronously: wait for any previous ops, so they aren't attributed to this section
+        Nd4j.getExecutioner().commit();
+        return System.nanoTime();
+    }
+
+    /**
+     * End timing a section, and notify the timing listeners
+     *
+     * @param listeners Timing listeners, may be null
+     * @param model     Model being trained
+     * @param phase     Part of the training iteration
+     * @param name      Layer/vertex name, if applicable
+     * @param start     Start time, as returned by {@link #start(StepTimingListener[])}
+     */
+    public static void end(StepTimingListener[] listeners, Model model, StepPhase phase, String name, long start) {
+        if (listeners == null)
+            return;
+        Nd4j.getExecutioner().commit();
+        long nanos = System.nanoTime() - start;
+        for (StepTimingListener l : listeners) {
+            l.onStepTime(model, phase, name, nanos);
+        }
+    }
+}
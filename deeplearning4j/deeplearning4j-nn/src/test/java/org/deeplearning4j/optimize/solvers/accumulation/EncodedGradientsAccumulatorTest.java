@@ -19,11 +19,39 @@ package org.deeplearning4j.optimize.solvers.accumulation;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.GradientNormalization;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.EmbeddingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.gradient.DefaultGradient;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
+import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.threshold.FixedThresholdAlgorithm;
 import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.ThresholdCompression;
+import org.nd4j.linalg.compression.UpdateCodecs;
+import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -88,6 +116,379 @@ public class EncodedGradientsAccumulatorTest extends BaseDL4JTest {
         }
     }
 
+    /**
+     * Here we ensure that bucket, encoded and rebased, is decoded into the right place of the whole updates array
+     */
+    @Test
+    public void testBucketRebase1() throws Exception {
+        int bucketLength = 1000;
+        int offset = 3000;
+        int totalLength = 5000;
+
+        EncodingHandler handler = new EncodingHandler(new FixedThresholdAlgorithm(1e-3), null, null, false);
+
+        INDArray bucket = Nd4j.create(bucketLength);
+        bucket.putScalar(0, 2e-3);
+        bucket.putScalar(17, -2e-3);
+        bucket.putScalar(bucketLength - 1, 2e-3);
+
+        INDArray encoded = handler.encodeBucket(0, 0, bucket, true);
+        INDArray message = EncodingHandler.rebaseBucket(encoded, offset, totalLength);
+        assertEquals(totalLength, message.data().getInt(1));
+
+        INDArray exp = Nd4j.create(totalLength);
+        exp.putScalar(offset, 1e-3);
+        exp.putScalar(offset + 17, -1e-3);
+        exp.putScalar(offset + bucketLength - 1, 1e-3);
+
+        INDArray decoded = Nd4j.create(totalLength);
+        Nd4j.getExecutioner().thresholdDecode(message, decoded);
+        assertEquals(exp, decoded);
+
+        // residual keeps everything that wasn't sent
+        INDArray expResidual = Nd4j.create(bucketLength);
+        expResidual.putScalar(0, 1e-3);
+        expResidual.putScalar(17, -1e-3);
+        expResidual.putScalar(bucketLength - 1, 1e-3);
+        assertEquals(expResidual, bucket);
+    }
+
+    /**
+     * Here we ensure that bucketed encoding is still limited to 1/16 of bucket elements
+     */
+    @Test
+    public void testBucketEncodingLimits1() throws Exception {
+        int bucketLength = 10000;
+
+        EncodingHandler handler = new EncodingHandler(new FixedThresholdAlgorithm(1e-3), null, null, false);
+        INDArray encoded = handler.encodeBucket(0, 0, getGradients(bucketLength, bucketLength, 2e-3), true);
+
+        assertEquals(ThresholdCompression.FLEXIBLE_ENCODING, encoded.data().getInt(3));
+        assertTrue(encoded.data().getInt(0) <= bucketLength / 16);
+    }
+
+    @Test(expected = DL4JInvalidConfigException.class)
+    public void testBucketedRequiresEncodingHandler() {
+        new EncodedGradientsAccumulator.Builder(2)
+                .messageHandler(new MessageHandler() {
+                    @Override
+                    public void initialize(GradientsAccumulator accumulator) {
+                    }
+
+                    @Override
+                    public boolean broadcastUpdates(INDArray updates, int iterationNumber, int epochNumber) {
+                        return false;
+                    }
+                })
+                .bucketSize(100)
+                .build();
+    }
+
+    /**
+     * Here we ensure that bucketed sharing doesn't change training: updater is applied per updater block during
+     * backprop, but params and updater state must be the same as with regular sharing, and without sharing at all
+     */
+    @Test
+    public void testBucketedTrainingMultiLayer() throws Exception {
+        MultiLayerNetwork plain = new MultiLayerNetwork(multiLayerConf());
+        plain.init();
+
+        MultiLayerNetwork regular = new MultiLayerNetwork(multiLayerConf());
+        regular.init();
+        EncodedGradientsAccumulator regularAccumulator = exactAccumulator(0);
+        regular.setGradientsAccumulator(regularAccumulator);
+
+        MultiLayerNetwork bucketed = new MultiLayerNetwork(multiLayerConf());
+        bucketed.init();
+        EncodedGradientsAccumulator bucketedAccumulator = exactAccumulator(16);
+        bucketed.setGradientsAccumulator(bucketedAccumulator);
+
+        assertEquals(plain.params(), bucketed.params());
+
+        for (DataSet ds : dataSets(10)) {
+            plain.fit(ds);
+            regular.fit(ds);
+            bucketed.fit(ds);
+        }
+
+        assertEquals(plain.params(), regular.params());
+        assertEquals(plain.params(), bucketed.params());
+        assertEquals(plain.getUpdater().getStateViewArray(), regular.getUpdater().getStateViewArray());
+        assertEquals(plain.getUpdater().getStateViewArray(), bucketed.getUpdater().getStateViewArray());
+
+        regularAccumulator.reset();
+        bucketedAccumulator.reset();
+    }
+
+    @Test
+    public void testBucketedTrainingComputationGraph() throws Exception {
+        ComputationGraph plain = new ComputationGraph(graphConf());
+        plain.init();
+
+        ComputationGraph regular = new ComputationGraph(graphConf());
+        regular.init();
+        EncodedGradientsAccumulator regularAccumulator = exactAccumulator(0);
+        regular.setGradientsAccumulator(regularAccumulator);
+
+        ComputationGraph bucketed = new ComputationGraph(graphConf());
+        bucketed.init();
+        EncodedGradientsAccumulator bucketedAccumulator = exactAccumulator(16);
+        bucketed.setGradientsAccumulator(bucketedAccumulator);
+
+        assertEquals(plain.params(), bucketed.params());
+
+        for (DataSet ds : dataSets(10)) {
+            plain.fit(ds);
+            regular.fit(ds);
+            bucketed.fit(ds);
+        }
+
+        assertEquals(plain.params(), regular.params());
+        assertEquals(plain.params(), bucketed.params());
+        assertEquals(plain.getUpdater().getStateViewArray(), regular.getUpdater().getStateViewArray());
+        assertEquals(plain.getUpdater().getStateViewArray(), bucketed.getUpdater().getStateViewArray());
+
+        regularAccumulator.reset();
+        bucketedAccumulator.reset();
+    }
+
+    /**
+     * All layers share the same updater configuration, so there's a single updater block: updates must still be
+     * released layer by layer during backprop, and training must not change
+     */
+    @Test
+    public void testBucketedTrainingSingleUpdaterBlock() throws Exception {
+        MultiLayerNetwork plain = new MultiLayerNetwork(singleBlockConf());
+        plain.init();
+
+        MultiLayerNetwork bucketed = new MultiLayerNetwork(singleBlockConf());
+        bucketed.init();
+        EncodedGradientsAccumulator bucketedAccumulator = exactAccumulator(16);
+        bucketed.setGradientsAccumulator(bucketedAccumulator);
+
+        for (DataSet ds : dataSets(10)) {
+            plain.fit(ds);
+            bucketed.fit(ds);
+        }
+
+        assertEquals(plain.params(), bucketed.params());
+        assertEquals(plain.getUpdater().getStateViewArray(), bucketed.getUpdater().getStateViewArray());
+        bucketedAccumulator.reset();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(singleBlockConf());
+        net.init();
+        DataSet ds = dataSets(1).get(0);
+        net.setInput(ds.getFeatures());
+        net.setLabels(ds.getLabels());
+        net.computeGradientAndScore();
+
+        BaseMultiLayerUpdater<?> updater = (BaseMultiLayerUpdater<?>) net.getUpdater();
+        assertEquals(1, updater.getUpdaterBlocks().size());
+
+        // backprop is done for layers from the output to the input: updates are final from the start of each layer
+        long[] expReadyFrom = {236, 132, 0};
+        for (int i = 2; i >= 0; i--) {
+            Gradient g = new DefaultGradient();
+            for (String param : net.getLayer(i).paramTable().keySet())
+                g.setGradientFor(param, net.gradient().getGradientFor(i + "_" + param));
+
+            assertEquals(expReadyFrom[2 - i], updater.updateFinishedLayer(net.getLayer(i), g, 0, 0, ds.numExamples()));
+        }
+        updater.resetPartialUpdate();
+    }
+
+    /**
+     * Updates of other workers are decoded into the gradient view, so layers with sparse gradients can't assume that
+     * only rows used in their last minibatch are non-zero there
+     */
+    @Test
+    public void testSparseGradientsWithExternalUpdates() throws Exception {
+        MultiLayerNetwork dense = new MultiLayerNetwork(embeddingConf(false));
+        dense.init();
+        MultiLayerNetwork sparse = new MultiLayerNetwork(embeddingConf(true));
+        sparse.init();
+        assertEquals(dense.params(), sparse.params());
+
+        // emulated second worker updates embedding rows, that are never used locally
+        MultiLayerNetwork external = new MultiLayerNetwork(embeddingConf(false));
+        INDArray externalUpdates = Nd4j.create(DataType.FLOAT, dense.numParams());
+        external.init(externalUpdates, false);
+        external.getParam("0_W").getRow(8).assign(0.01);
+        external.getParam("0_W").getRow(9).assign(-0.02);
+
+        EncodedGradientsAccumulator denseAccumulator = exactAccumulator(0, new ExternalUpdatesEncodingHandler(externalUpdates));
+        dense.setGradientsAccumulator(denseAccumulator);
+        EncodedGradientsAccumulator sparseAccumulator = exactAccumulator(0, new ExternalUpdatesEncodingHandler(externalUpdates));
+        sparse.setGradientsAccumulator(sparseAccumulator);
+
+        for (int i = 0; i < 10; i++) {
+            INDArray features = Nd4j.create(DataType.FLOAT, 8, 1);
+            INDArray labels = Nd4j.create(DataType.FLOAT, 8, 3);
+            for (int e = 0; e < 8; e++) {
+                features.putScalar(e, 0, (i + e) % 6);
+                labels.putScalar(e, (i + e) % 3, 1.0);
+            }
+
+            DataSet ds = new DataSet(features, labels);
+            dense.fit(ds);
+            sparse.fit(ds);
+        }
+
+        assertEquals(dense.params(), sparse.params());
+
+        denseAccumulator.reset();
+        sparseAccumulator.reset();
+    }
+
+    protected static MultiLayerConfiguration embeddingConf(boolean sparseGradients) {
+        return new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .updater(new Sgd(0.1))
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(new EmbeddingLayer.Builder().sparseGradients(sparseGradients).nIn(10).nOut(4)
+                        .activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(4).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+    }
+
+    /**
+     * Layers have different learning rates, so each of them is a separate updater block
+     */
+    protected static MultiLayerConfiguration multiLayerConf() {
+        return new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .updater(new Adam(1e-2))
+                .gradientNormalization(GradientNormalization.RenormalizeL2PerLayer)
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(12).activation(Activation.TANH).updater(new Adam(2e-2)).build())
+                .layer(new DenseLayer.Builder().nIn(12).nOut(8).activation(Activation.TANH).updater(new Adam(3e-2)).build())
+                .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+    }
+
+    /**
+     * Same as {@link #multiLayerConf()}, but all layers use the same updater, so they form a single updater block
+     */
+    protected static MultiLayerConfiguration singleBlockConf() {
+        return new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .updater(new Adam(1e-2))
+                .gradientNormalization(GradientNormalization.RenormalizeL2PerLayer)
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(12).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nIn(12).nOut(8).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+    }
+
+    protected static ComputationGraphConfiguration graphConf() {
+        return new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .updater(new Adam(1e-2))
+                .gradientNormalization(GradientNormalization.RenormalizeL2PerLayer)
+                .weightInit(WeightInit.XAVIER)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("d0", new DenseLayer.Builder().nIn(10).nOut(12).activation(Activation.TANH).updater(new Adam(2e-2)).build(), "in")
+                .addLayer("d1", new DenseLayer.Builder().nIn(10).nOut(6).activation(Activation.TANH).updater(new Adam(3e-2)).build(), "in")
+                .addVertex("merge", new MergeVertex(), "d0", "d1")
+                .addLayer("out", new OutputLayer.Builder().nIn(18).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "merge")
+                .setOutputs("out")
+                .build();
+    }
+
+    protected static List<DataSet> dataSets(int count) {
+        Nd4j.getRandom().setSeed(12345);
+        List<DataSet> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            INDArray features = Nd4j.rand(DataType.FLOAT, 8, 10);
+            INDArray labels = Nd4j.create(DataType.FLOAT, 8, 3);
+            for (int e = 0; e < 8; e++)
+                labels.putScalar(e, (i + e) % 3, 1.0);
+
+            result.add(new DataSet(features, labels));
+        }
+        return result;
+    }
+
+    /**
+     * Single worker accumulator, that shares updates without any loss
+     */
+    protected static EncodedGradientsAccumulator exactAccumulator(long bucketSize) {
+        return exactAccumulator(bucketSize, new ExactEncodingHandler());
+    }
+
+    protected static EncodedGradientsAccumulator exactAccumulator(long bucketSize, ExactEncodingHandler handler) {
+        EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator.Builder(1)
+                .messageHandler(handler)
+                .bucketSize(bucketSize)
+                .build();
+
+        accumulator.touch();
+        accumulator.registerConsumers(1);
+        return accumulator;
+    }
+
+    /**
+     * This handler sends exact values of all updates (top-k encoded, with k equal to the updates length), so training
+     * results don't depend on how updates are split into messages
+     */
+    protected static class ExactEncodingHandler extends EncodingHandler {
+        protected ExactEncodingHandler() {
+            super(new FixedThresholdAlgorithm(1e-3), null, null, false);
+        }
+
+        @Override
+        public boolean broadcastUpdates(INDArray updates, int iterationNumber, int epochNumber) {
+            INDArray message = UpdateCodecs.encodeTopK(updates, (int) updates.length());
+            if (message == null)
+                return false;
+
+            sendMessage(message, iterationNumber, epochNumber);
+            return true;
+        }
+
+        @Override
+        public boolean broadcastBucket(INDArray residual, long offset, long totalLength, boolean firstBucket,
+                                       int iterationNumber, int epochNumber) {
+            INDArray updates = Nd4j.create(residual.dataType(), totalLength);
+            updates.get(NDArrayIndex.interval(offset, offset + residual.length())).assign(residual);
+            residual.assign(0.0);
+            return broadcastUpdates(updates, iterationNumber, epochNumber);
+        }
+    }
+
+    /**
+     * Same as {@link ExactEncodingHandler}, but emulates one more worker: every broadcast is followed by the given
+     * external updates
+     */
+    protected static class ExternalUpdatesEncodingHandler extends ExactEncodingHandler {
+        private final INDArray external;
+
+        protected ExternalUpdatesEncodingHandler(INDArray external) {
+            this.external = external;
+        }
+
+        @Override
+        public boolean broadcastUpdates(INDArray updates, int iterationNumber, int epochNumber) {
+            boolean result = super.broadcastUpdates(updates, iterationNumber, epochNumber);
+
+            INDArray residual = external.dup();
+            sendMessage(UpdateCodecs.encodeTopK(residual, (int) residual.length()), iterationNumber, epochNumber);
+            return result;
+        }
+    }
 
     protected INDArray getGradients(int length, int numPositives, double value) {
         INDArray grad = Nd4j.create(length);
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.DeltaIndexCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.QuantizedCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.ThresholdCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.TopKCodec;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for GradientCodec implementations: encode and decode throughput over different gradient distributions.
+ * Bytes on wire for each codec/distribution pair are printed at the end of each trial.
+ *
+ * Distributions:
+ * gaussian: N(0, 1e-3)
+ * heavy_tailed: gaussian scaled by log-normal factor, i.e. few large values among many small ones
+ * sparse: 1% non-zero values, i.e. embedding layer gradients
+ *
+ * Run main() from test classpath to get the numbers
+ */
+@Slf4j
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GradientCodecBenchmark {
+
+    @State(Scope.Thread)
+    public static class CodecState {
+        @Param({"threshold", "delta", "topk", "onebit", "int8"})
+        public String codecType;
+
+        @Param({"gaussian", "heavy_tailed", "sparse"})
+        public String distribution;
+
+        @Param({"1000000"})
+        public int length;
+
+        public GradientCodec codec;
+        public INDArray gradients;
+        public INDArray residual;
+        public INDArray encoded;
+        public INDArray target;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            switch (codecType) {
+                case "threshold":
+                    codec = new ThresholdCodec();
+                    break;
+                case "delta":
+                    codec = new DeltaIndexCodec();
+                    break;
+                case "topk":
+                    codec = new TopKCodec(1e-3);
+                    break;
+                case "onebit":
+                    codec = new QuantizedCodec(1);
+                    break;
+                case "int8":
+                    codec = new QuantizedCodec(8);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown codec: " + codecType);
+            }
+
+            Nd4j.getRandom().setSeed(12345);
+            gradients = Nd4j.randn(new long[]{length}).muli(1e-3);
+            switch (distribution) {
+                case "gaussian":
+                    break;
+                case "heavy_tailed":
+                    gradients.muli(Transforms.exp(Nd4j.randn(new long[]{length}), false));
+                    break;
+                case "sparse":
+                    gradients.muli(Nd4j.rand(new long[]{length}).lti(0.01).castTo(gradients.dataType()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown distribution: " + distribution);
+            }
+
+            residual = gradients.dup();
+            target = Nd4j.create(gradients.dataType(), length);
+            // ~1e-3 sparsity for threshold based codecs on gaussian gradients
+            encoded = codec.encode(residual.dup(), 3.3e-3, null);
+        }
+
+        @Setup(Level.Iteration)
+        public void resetMetrics() {
+            codec.resetMetrics();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            log.info("{} / {}: {}", codecType, distribution, codec.getMetrics());
+        }
+    }
+
+    @Benchmark
+    public INDArray encode(CodecState state) {
+        // every round adds new gradients to the residual, as in training
+        state.residual.addi(state.gradients);
+        return state.codec.encode(state.residual, 3.3e-3, null);
+    }
+
+    @Benchmark
+    public INDArray decode(CodecState state) {
+        if (state.encoded != null)
+            state.codec.decode(state.encoded, state.target);
+        return state.target;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(GradientCodecBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CodecMetrics;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.DeltaIndexCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.QuantizedCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.ThresholdCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.TopKCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.residual.ResidualClippingPostProcessor;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.threshold.FixedThresholdAlgorithm;
+import org.deeplearning4j.optimize.stepfunctions.NegativeDefaultStepFunction;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import static org.junit.Assert.*;
+
+public class GradientCodecTests extends BaseDL4JTest {
+
+    private static INDArray gradients(long length, double scale) {
+        Nd4j.getRandom().setSeed(12345);
+        return Nd4j.randn(new long[]{length}).muli(scale);
+    }
+
+    @Test
+    public void testErrorFeedback() {
+        GradientCodec[] codecs = new GradientCodec[]{new ThresholdCodec(), new DeltaIndexCodec(), new TopKCodec(0.01),
+                new QuantizedCodec(1), new QuantizedCodec(8)};
+
+        for (GradientCodec codec : codecs) {
+            INDArray original = gradients(10000, 1e-3);
+            INDArray residual = original.dup();
+
+            INDArray encoded = codec.encode(residual, 2e-3, null);
+            assertNotNull(codec.toString(), encoded);
+
+            //Whatever wasn't communicated must be kept in the residual
+            INDArray decoded = Nd4j.create(original.dataType(), original.length());
+            codec.decode(encoded, decoded);
+            assertTrue(codec.toString(), original.equalsWithEps(decoded.add(residual), 1e-5));
+        }
+    }
+
+    @Test
+    public void testDeltaIndexMatchesThreshold() {
+        INDArray r1 = gradients(100000, 1e-3);
+        INDArray r2 = r1.dup();
+
+        GradientCodec threshold = new ThresholdCodec();
+        GradientCodec delta = new DeltaIndexCodec();
+        INDArray e1 = threshold.encode(r1, 3e-3, null);
+        INDArray e2 = delta.encode(r2, 3e-3, null);
+
+        assertEquals(e1.data().getInt(0), e2.data().getInt(0));
+        assertEquals(r1, r2);
+
+        INDArray d1 = Nd4j.create(r1.dataType(), r1.length());
+        INDArray d2 = Nd4j.create(r1.dataType(), r1.length());
+        threshold.decode(e1, d1);
+        delta.decode(e2, d2);
+        assertEquals(d1, d2);
+
+        //Indices are delta coded: should be much smaller than 4 bytes per index
+        CodecMetrics m = delta.getMetrics();
+        assertEquals(1, m.getMessages());
+        assertTrue(String.valueOf(m.getBytesPerValue()), m.getBytesPerValue() < 2.5);
+        assertTrue(m.getBytesOnWire() < threshold.getMetrics().getBytesOnWire());
+    }
+
+    @Test
+    public void testTopK() {
+        INDArray original = gradients(1000, 1e-2);
+        INDArray residual = original.dup();
+
+        GradientCodec codec = new TopKCodec(0.05);
+        INDArray encoded = codec.encode(residual, 0.0, null);
+        assertEquals(50, encoded.data().getInt(0));
+
+        //Exact values of 50 largest elements
+        INDArray decoded = Nd4j.create(original.dataType(), original.length());
+        codec.decode(encoded, decoded);
+        INDArray abs = Transforms.abs(original, true);
+        double minSent = Double.MAX_VALUE;
+        double maxKept = 0.0;
+        for (int i = 0; i < original.length(); i++) {
+            if (decoded.getDouble(i) != 0.0) {
+                assertEquals(original.getDouble(i), decoded.getDouble(i), 0.0);
+                assertEquals(0.0, residual.getDouble(i), 0.0);
+                minSent = Math.min(minSent, abs.getDouble(i));
+            } else {
+                maxKept = Math.max(maxKept, abs.getDouble(i));
+            }
+        }
+        assertTrue(minSent >= maxKept);
+
+        //Boundary limits k
+        assertEquals(10, codec.encode(original.dup(), 0.0, 10).data().getInt(0));
+    }
+
+    @Test
+    public void testQuantizedSize() {
+        INDArray original = gradients(10240, 1e-3);
+
+        GradientCodec oneBit = new QuantizedCodec(1);
+        GradientCodec eightBit = new QuantizedCodec(8);
+        oneBit.encode(original.dup(), 0.0, null);
+        eightBit.encode(original.dup(), 0.0, null);
+
+        //5 ints header, plus 1 or 8 bits per element
+        assertEquals(10240 / 8 + 20, oneBit.getMetrics().getBytesOnWire());
+        assertEquals(10240 + 20, eightBit.getMetrics().getBytesOnWire());
+
+        //Nothing to share
+        assertNull(eightBit.encode(Nd4j.create(original.dataType(), 100), 0.0, null));
+    }
+
+    @Test
+    public void testEncodingHandlerWithCodec() {
+        INDArray original = gradients(10000, 1e-3);
+        INDArray residual = original.dup();
+
+        GradientCodec codec = new DeltaIndexCodec();
+        EncodingHandler handler = new EncodingHandler(new FixedThresholdAlgorithm(2e-3), null, null, false, codec);
+        INDArray encoded = handler.encodeUpdates(0, 0, residual);
+
+        INDArray decoded = Nd4j.create(original.dataType(), original.length());
+        codec.decode(encoded, decoded);
+        assertTrue(original.equalsWithEps(decoded.add(residual), 1e-5));
+        assertEquals(1, codec.getMetrics().getMessages());
+
+        codec.resetMetrics();
+        assertEquals(0, codec.getMetrics().getBytesOnWire());
+    }
+
+    @Test
+    public void testResidualPostProcessorRejected() {
+        //Residual clipping is relative to the threshold, which these codecs ignore
+        for (GradientCodec codec : new GradientCodec[]{new TopKCodec(0.01), new QuantizedCodec(8)}) {
+            assertFalse(codec.usesThreshold());
+            try {
+                new EncodingHandler(new FixedThresholdAlgorithm(2e-3), new ResidualClippingPostProcessor(5, 5), null, false, codec);
+                fail("Expected exception for " + codec);
+            } catch (DL4JInvalidConfigException e) {
+                //Expected
+            }
+        }
+
+        GradientCodec codec = new DeltaIndexCodec();
+        assertTrue(codec.usesThreshold());
+        new EncodingHandler(new FixedThresholdAlgorithm(2e-3), new ResidualClippingPostProcessor(5, 5), null, false, codec);
+    }
+
+    @Test
+    public void testDecodeMetricsInAccumulator() {
+        INDArray original = gradients(10000, 1e-2);
+
+        GradientCodec codec = new DeltaIndexCodec();
+        EncodingHandler handler = new EncodingHandler(new FixedThresholdAlgorithm(2e-3), null, null, false, codec);
+        EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator.Builder(1).messageHandler(handler).build();
+        accumulator.touch();
+        accumulator.registerConsumers(1);
+
+        INDArray params = Nd4j.create(original.dataType(), original.length());
+        INDArray updates = Nd4j.create(original.dataType(), original.length());
+        accumulator.storeUpdate(original.dup(), 0, 0);
+        accumulator.applyUpdate(new NegativeDefaultStepFunction(), params, updates, true);
+
+        // messages are decoded by the codec that encoded them, so both sides are accounted for
+        CodecMetrics metrics = codec.getMetrics();
+        assertEquals(1, metrics.getMessages());
+        assertEquals(original.length(), metrics.getDecodedElements());
+        assertTrue(metrics.getDecodeTimeNanos() > 0);
+        accumulator.reset();
+    }
+
+    @Test
+    public void testDecodeFallback() {
+        INDArray original = gradients(1000, 1e-2);
+        INDArray encoded = Nd4j.getExecutioner().thresholdEncode(original.dup(), 1e-3);
+
+        // threshold message isn't produced by DeltaIndexCodec, so it's decoded natively and not counted
+        GradientCodec codec = new DeltaIndexCodec();
+        INDArray decoded = EncodingHandler.decode(encoded, Nd4j.create(original.dataType(), original.length()), codec);
+        assertEquals(0, codec.getMetrics().getDecodedElements());
+
+        INDArray exp = Nd4j.create(original.dataType(), original.length());
+        Nd4j.getExecutioner().thresholdDecode(encoded, exp);
+        assertEquals(exp, decoded);
+
+        ThresholdCodec thresholdCodec = new ThresholdCodec();
+        EncodingHandler.decode(encoded, Nd4j.create(original.dataType(), original.length()), thresholdCodec);
+        assertEquals(original.length(), thresholdCodec.getMetrics().getDecodedElements());
+    }
+}
@@ -24,6 +24,7 @@ import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.parallelism.ParallelInference;
 import org.nd4j.adapters.InferenceAdapter;
 import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.MultiDataSet;
 import org.nd4j.remote.clients.serde.BinaryDeserializer;
 import org.nd4j.remote.clients.serde.BinarySerializer;
@@ -31,11 +32,16 @@ import org.nd4j.remote.clients.serde.JsonDeserializer;
 import org.nd4j.remote.clients.serde.JsonSerializer;
 import org.nd4j.remote.serving.SameDiffServlet;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 
 
@@ -50,6 +56,10 @@ public class DL4jServlet<I,O> extends SameDiffServlet<I,O> {
     protected ParallelInference parallelInference;
     protected Model model;
     protected boolean parallelEnabled = true;
+    protected boolean asyncEnabled = false;
+    protected long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+
+    public final static long DEFAULT_ASYNC_TIMEOUT = 30000L;
 
     public DL4jServlet(@NonNull ParallelInference parallelInference, @NonNull InferenceAdapter<I, O> inferenceAdapter,
                        JsonSerializer<O> serializer, JsonDeserializer<I> deserializer) {
@@ -94,33 +104,51 @@ public class DL4jServlet<I,O> extends SameDiffServlet<I,O> {
     }
 
     private O process(MultiDataSet mds) {
-        O result = null;
-        if (parallelEnabled) {
-            // process result
-            result = inferenceAdapter.apply(parallelInference.output(mds.getFeatures(), mds.getFeaturesMaskArrays()));
-        } else {
-            synchronized (this) {
-                if (model instanceof ComputationGraph)
-                    result = inferenceAdapter.apply(((ComputationGraph) model).output(false, mds.getFeatures(), mds.getFeaturesMaskArrays()));
-                else if (model instanceof MultiLayerNetwork) {
-                    Preconditions.checkArgument(mds.getFeatures().length > 0 || (mds.getFeaturesMaskArrays() != null && mds.getFeaturesMaskArrays().length > 0),
-                            "Input data for MultilayerNetwork is invalid!");
-                    result = inferenceAdapter.apply(((MultiLayerNetwork) model).output(mds.getFeatures()[0], false,
-                            mds.getFeaturesMaskArrays() != null ? mds.getFeaturesMaskArrays()[0] : null, null));
-                }
+        return inferenceAdapter.apply(output(mds.getFeatures(), mds.getFeaturesMaskArrays()));
+    }
+
+    @Override
+    protected INDArray[] output(INDArray[] features) {
+        return output(features, null);
+    }
+
+    protected INDArray[] output(INDArray[] features, INDArray[] featuresMasks) {
+        if (parallelEnabled)
+            return parallelInference.output(features, featuresMasks);
+
+        synchronized (this) {
+            if (model instanceof ComputationGraph)
+                return ((ComputationGraph) model).output(false, features, featuresMasks);
+            else if (model instanceof MultiLayerNetwork) {
+                Preconditions.checkArgument(features.length > 0 || (featuresMasks != null && featuresMasks.length > 0),
+                        "Input data for MultilayerNetwork is invalid!");
+                return new INDArray[] {((MultiLayerNetwork) model).output(features[0], false,
+                        featuresMasks != null ? featuresMasks[0] : null, null)};
             }
         }
-        return result;
+        return null;
     }
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-        String processorReturned = "";
         MultiDataSet mds = null;
         String path = request.getPathInfo();
         if (path.equals(SERVING_ENDPOINT)) {
             val contentType = request.getContentType();
-            if (contentType.equals(typeJson)) {
+            if (contentType.equals(typeTensor)) {
+                // raw tensors bypass adapters and serializers entirely
+                val input = readTensors(request, response);
+                if (input == null)
+                    return;
+
+                if (parallelEnabled && asyncEnabled && request.isAsyncSupported())
+                    processAsync(input, null, true, request);
+                else
+                    writeTensors(output(input), response);
+
+                return;
+            }
+            else if (contentType.equals(typeJson)) {
                 if (validateRequest(request, response)) {
                     val stream = request.getInputStream();
                     val bufferedReader = new BufferedReader(new InputStreamReader(stream));
@@ -150,24 +178,11 @@ public class DL4jServlet<I,O> extends SameDiffServlet<I,O> {
             }
             if (mds == null)
                 log.error("InferenceAdapter failed");
-            else {
+            else if (parallelEnabled && asyncEnabled && request.isAsyncSupported()) {
+                processAsync(mds.getFeatures(), mds.getFeaturesMaskArrays(), false, request);
+            } else {
                 val result = process(mds);
-                if (binarySerializer != null) {
-                    byte[] serialized = binarySerializer.serialize(result);
-                    response.setContentType(typeBinary);
-                    response.setContentLength(serialized.length);
-                    val out = response.getOutputStream();
-                    out.write(serialized);
-                }
-                else {
-                    processorReturned = serializer.serialize(result);
-                    try {
-                        val out = response.getWriter();
-                        out.write(processorReturned);
-                    } catch (IOException e) {
-                        log.error(e.getMessage());
-                    }
-                }
+                writeResult(result, response);
             }
         } else {
             // we return error otherwise
@@ -175,6 +190,118 @@ public class DL4jServlet<I,O> extends SameDiffServlet<I,O> {
         }
     }
 
+    /**
+     * This method releases servlet thread right away, and sends response once ParallelInference output is available.
+     * Response is written on a container thread via {@link AsyncContext#start(Runnable)}, so inference workers never
+     * wait for adapters, serialization or client I/O.
+     *
+     * @param features input arrays
+     * @param featuresMasks input masks, may be null
+     * @param rawTensors if true, output is sent as raw tensors, otherwise it goes through InferenceAdapter and serializer
+     * @param request incoming request
+     */
+    protected void processAsync(INDArray[] features, INDArray[] featuresMasks, final boolean rawTensors, HttpServletRequest request) {
+        final AsyncContext context = request.startAsync();
+        context.setTimeout(asyncTimeout);
+
+        // response is sent exactly once: either with inference result, or by timeout/error listener
+        final AtomicBoolean responded = new AtomicBoolean(false);
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (responded.compareAndSet(false, true)) {
+                    log.warn("Inference request timed out after {} ms", asyncTimeout);
+                    try {
+                        ((HttpServletResponse) context.getResponse()).sendError(503, "Inference timed out");
+                    } finally {
+                        context.complete();
+                    }
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) throws IOException {
+                if (responded.compareAndSet(false, true)) {
+                    log.error("Asynchronous request failed", event.getThrowable());
+                    context.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) throws IOException {
+                //
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) throws IOException {
+                //
+            }
+        });
+
+        parallelInference.outputAsync(features, featuresMasks)
+                .whenComplete(new BiConsumer<INDArray[], Throwable>() {
+                    @Override
+                    public void accept(final INDArray[] output, final Throwable throwable) {
+                        if (responded.get())
+                            return;
+
+                        // inference thread only hands result over, everything else happens on container thread
+                        try {
+                            context.start(new Runnable() {
+                                @Override
+                                public void run() {
+                                    sendAsyncResponse(context, responded, output, throwable, rawTensors);
+                                }
+                            });
+                        } catch (IllegalStateException e) {
+                            // request was completed by timeout in the meantime
+                            log.debug("Inference result dropped: {}", e.getMessage());
+                        }
+                    }
+                });
+    }
+
+    private void sendAsyncResponse(AsyncContext context, AtomicBoolean responded, INDArray[] output, Throwable throwable,
+                                   boolean rawTensors) {
+        if (!responded.compareAndSet(false, true))
+            return;
+
+        try {
+            val response = (HttpServletResponse) context.getResponse();
+            if (throwable != null) {
+                log.error("Inference failed", throwable);
+                response.sendError(500, throwable.getMessage());
+            } else if (rawTensors) {
+                writeTensors(output, response);
+            } else {
+                writeResult(inferenceAdapter.apply(output), response);
+            }
+        } catch (Exception e) {
+            log.error("Failed to send inference response", e);
+        } finally {
+            context.complete();
+        }
+    }
+
+    protected void writeResult(O result, HttpServletResponse response) throws IOException {
+        if (binarySerializer != null) {
+            byte[] serialized = binarySerializer.serialize(result);
+            response.setContentType(typeBinary);
+            response.setContentLength(serialized.length);
+            val out = response.getOutputStream();
+            out.write(serialized);
+        }
+        else {
+            val processorReturned = serializer.serialize(result);
+            try {
+                val out = response.getWriter();
+                out.write(processorReturned);
+            } catch (IOException e) {
+                log.error(e.getMessage());
+            }
+        }
+    }
+
     /**
      * Creates servlet to serve models
      *
@@ -196,6 +323,8 @@ public class DL4jServlet<I,O> extends SameDiffServlet<I,O> {
         private BinaryDeserializer<I> binaryDeserializer;
         private int port;
         private boolean parallelEnabled = true;
+        private boolean asyncEnabled = false;
+        private long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
 
         public Builder(@NonNull ParallelInference pi) {
             this.pi = pi;
@@ -276,9 +405,37 @@ public class DL4jServlet<I,O> extends SameDiffServlet<I,O> {
             return this;
         }
 
+        /**
+         * This method enables asynchronous request processing: servlet thread is released once request is submitted
+         * to ParallelInference, and response is sent once output is available.
+         *
+         * PLEASE NOTE: this option has effect only if parallel inference is enabled
+         *
+         * @param asyncEnabled
+         * @return
+         */
+        public Builder<I,O> asyncEnabled(boolean asyncEnabled) {
+            this.asyncEnabled = asyncEnabled;
+            return this;
+        }
+
+        /**
+         * This method allows to specify timeout for asynchronous requests, in milliseconds
+         *
+         * @param asyncTimeout
+         * @return
+         */
+        public Builder<I,O> asyncTimeout(long asyncTimeout) {
+            this.asyncTimeout = asyncTimeout;
+            return this;
+        }
+
         public DL4jServlet<I,O> build() {
-            return parallelEnabled ? new DL4jServlet<I, O>(pi, inferenceAdapter, serializer, deserializer, binarySerializer, binaryDeserializer) :
+            val servlet = parallelEnabled ? new DL4jServlet<I, O>(pi, inferenceAdapter, serializer, deserializer, binarySerializer, binaryDeserializer) :
                     new DL4jServlet<I, O>(model, inferenceAdapter,  serializer, deserializer, binarySerializer, binaryDeserializer);
+            servlet.asyncEnabled = asyncEnabled;
+            servlet.asyncTimeout = asyncTimeout;
+            return servlet;
         }
     }
 }
@@ -71,6 +71,7 @@ public class JsonModelServer<I, O> extends SameDiffJsonModelServer<I, O> {
     protected int numWorkers;
 
     protected boolean enabledParallel = true;
+    protected boolean enabledAsync = false;
 
     protected JsonModelServer(@NonNull SameDiff sdModel, InferenceAdapter<I, O> inferenceAdapter,
                               JsonSerializer<O> serializer, JsonDeserializer<I> deserializer,
@@ -151,6 +152,7 @@ public class JsonModelServer<I, O> extends SameDiffJsonModelServer<I, O> {
             }
             servingServlet = new DL4jServlet.Builder<I, O>(parallelInference)
                         .parallelEnabled(true)
+                        .asyncEnabled(enabledAsync)
                         .serializer(serializer)
                         .deserializer(deserializer)
                         .binarySerializer(binarySerializer)
@@ -202,6 +204,7 @@ public class JsonModelServer<I, O> extends SameDiffJsonModelServer<I, O> {
         private int port;
 
         private boolean parallelMode = true;
+        private boolean asyncMode = false;
 
         // these fields actually require defaults
         private InferenceMode inferenceMode = InferenceMode.BATCHED;
@@ -407,6 +410,20 @@ public class JsonModelServer<I, O> extends SameDiffJsonModelServer<I, O> {
             return this;
         }
 
+        /**
+         * This method switches on asynchronous request processing: HTTP threads aren't blocked while
+         * ParallelInference computes output, so small thread pool can hold many concurrent requests
+         *
+         * PLEASE NOTE: this only applies to parallel mode, and doesn't apply to SameDiff models
+         *
+         * @param enable
+         * @return
+         */
+        public Builder<I,O> asyncMode(boolean enable) {
+            this.asyncMode = enable;
+            return this;
+        }
+
         public JsonModelServer<I,O> build() {
             if (inferenceAdapter == null) {
                 if (inputAdapter != null && outputAdapter != null) {
@@ -442,6 +459,7 @@ public class JsonModelServer<I, O> extends SameDiffJsonModelServer<I, O> {
                  throw new IllegalStateException("No models were defined for JsonModelServer");
 
             server.enabledParallel = parallelMode;
+            server.enabledAsync = asyncMode;
             return server;
         }
     }
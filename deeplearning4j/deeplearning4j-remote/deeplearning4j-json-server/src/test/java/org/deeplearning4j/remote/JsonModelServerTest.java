@@ -49,15 +49,18 @@ import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.nd4j.remote.clients.JsonRemoteInference;
 import org.nd4j.remote.clients.serde.JsonDeserializer;
 import org.nd4j.remote.clients.serde.JsonSerializer;
+import org.nd4j.serde.binary.BinarySerde;
 import org.nd4j.shade.jackson.databind.ObjectMapper;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import static org.deeplearning4j.parallelism.inference.InferenceMode.BATCHED;
 import static org.deeplearning4j.parallelism.inference.InferenceMode.INPLACE;
 import static org.deeplearning4j.parallelism.inference.InferenceMode.SEQUENTIAL;
 import static org.junit.Assert.*;
@@ -431,6 +434,75 @@ public class JsonModelServerTest {
         }
     }
 
+    @Test
+    public void asyncServletServingTest() throws Exception {
+
+        val server = new JsonModelServer.Builder<House, PredictedPrice>(model)
+                    .outputSerializer(new PredictedPrice.PredictedPriceSerializer())
+                    .inputDeserializer(new House.HouseDeserializer())
+                    .inferenceAdapter(new HouseToPredictedPriceAdapter())
+                    .inferenceMode(BATCHED)
+                    .asyncMode(true)
+                    .numWorkers(1)
+                    .port(PORT)
+                    .build();
+
+        try {
+            server.start();
+
+            val client = JsonRemoteInference.<House, PredictedPrice>builder()
+                    .inputSerializer(new House.HouseSerializer())
+                    .outputDeserializer(new PredictedPrice.PredictedPriceDeserializer())
+                    .endpointAddress("http://localhost:" + PORT + "/v1/serving")
+                    .build();
+
+            int district = 2;
+            House house = House.builder().area(100).bathrooms(2).bedrooms(3).district(district).build();
+
+            val futures = new ArrayList<Future<PredictedPrice>>();
+            for (int e = 0; e < 32; e++)
+                futures.add(client.predictAsync(house));
+
+            for (val f : futures)
+                assertEquals((float) 0.421444, f.get().getPrice(), 1e-5);
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void tensorServingTest() throws Exception {
+
+        val server = new JsonModelServer.Builder<House, PredictedPrice>(model)
+                .outputSerializer(new PredictedPrice.PredictedPriceSerializer())
+                .inputDeserializer(new House.HouseDeserializer())
+                .inferenceAdapter(new HouseToPredictedPriceAdapter())
+                .inferenceMode(BATCHED)
+                .numWorkers(1)
+                .port(PORT)
+                .build();
+
+        try {
+            server.start();
+
+            val client = JsonRemoteInference.<House, PredictedPrice>builder()
+                    .tensorMode(true)
+                    .endpointAddress("http://localhost:" + PORT + "/v1/serving")
+                    .build();
+
+            val input = Nd4j.rand(DataType.FLOAT, 3, 4);
+            val expected = model.output(input);
+
+            val output = BinarySerde.toArrays(client.predictTensors(BinarySerde.toByteBuffer(new INDArray[]{input})));
+            assertEquals(1, output.length);
+            assertEquals(expected, output[0]);
+        }
+        finally {
+            server.stop();
+        }
+    }
+
     @Test
     public void negativeAsyncTest() throws Exception {
 
@@ -33,6 +33,7 @@ import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
@@ -97,6 +98,24 @@ public class InplaceParallelInference extends ParallelInference {
         return selector.output(input, inputMasks);
     }
 
+    /**
+     * This method does inference in the calling thread, so returned future is always completed
+     *
+     * @param input
+     * @param inputMasks
+     * @return
+     */
+    @Override
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks) {
+        val future = new CompletableFuture<INDArray[]>();
+        try {
+            future.complete(output(input, inputMasks));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     /**
      * This method does forward pass and returns output provided by OutputAdapter
      *
@@ -26,12 +26,15 @@ import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.AdaptiveBatchScheduler;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
+import org.deeplearning4j.parallelism.inference.WorkStealingQueue;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.FutureInferenceObserver;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
@@ -42,11 +45,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
 /**
  * This class is simple wrapper for
@@ -57,11 +62,14 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 @Slf4j
 public class ParallelInference {
     protected Model model;
-    protected long nanos;
+    protected long nanos = DEFAULT_MAX_WAIT_NANOS;
+    protected long latencyTargetNanos;
     protected int workers;
     protected int batchLimit;
     protected InferenceMode inferenceMode;
     protected int queueLimit;
+    protected boolean perWorkerQueues = false;
+    protected boolean sharedParameters = false;
     protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
 
     // this queue holds data for inference
@@ -70,7 +78,10 @@ public class ParallelInference {
     private final Object locker = new Object();
 
     private InferenceWorker[] zoo;
+    // in shared parameters mode all workers read their replicas from here, so model update is a single reference swap
+    private volatile Model[] sharedReplicas;
     private ObservablesProvider provider;
+    private AdaptiveBatchScheduler scheduler;
 
 
 
@@ -78,6 +89,7 @@ public class ParallelInference {
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static long DEFAULT_MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
 
 
 
@@ -91,7 +103,12 @@ public class ParallelInference {
      * @param model
      */
     public void updateModel(@NonNull Model model) {
-        if (zoo != null) {
+        if (zoo != null && sharedParameters) {
+            // replicas don't hold parameters, so we build them all first, and then publish them at once
+            synchronized (locker) {
+                sharedReplicas = buildSharedReplicas(model);
+            }
+        } else if (zoo != null) {
             for (val w: zoo)
                 w.updateModel(model);
         } else {
@@ -100,6 +117,59 @@ public class ParallelInference {
         }
     }
 
+    /**
+     * This method creates model replica for inference worker.
+     * In shared parameters mode replica uses parameters of the given model as is, otherwise parameters are copied.
+     *
+     * @param model source model
+     * @return
+     */
+    protected Model createReplica(@NonNull Model model) {
+        Model replica;
+        if (model instanceof ComputationGraph) {
+            replica = new ComputationGraph(ComputationGraphConfiguration
+                    .fromJson(((ComputationGraph) model).getConfiguration().toJson()));
+        } else if (model instanceof MultiLayerNetwork) {
+            replica = new MultiLayerNetwork(MultiLayerConfiguration.fromJson(
+                    ((MultiLayerNetwork) model).getLayerWiseConfigurations().toJson()));
+        } else
+            throw new ND4JIllegalStateException("Unsupported model type: [" + model.getClass().getSimpleName() + "]");
+
+        if (sharedParameters) {
+            // no copy here: replica gets views of the source parameters, only activations are private
+            if (replica instanceof ComputationGraph)
+                ((ComputationGraph) replica).init(model.params(), false);
+            else
+                ((MultiLayerNetwork) replica).init(model.params(), false);
+
+            Nd4j.getExecutioner().commit();
+        } else {
+            replica.init();
+
+            synchronized (locker) {
+                replica.setParams(model.params().unsafeDuplication(true));
+
+                Nd4j.getExecutioner().commit();
+            }
+        }
+
+        return replica;
+    }
+
+    /**
+     * This method builds replicas for all workers in shared parameters mode. Worker on root device uses given model as is.
+     *
+     * @param model source model
+     * @return
+     */
+    protected Model[] buildSharedReplicas(@NonNull Model model) {
+        val replicas = new Model[workers];
+        for (int e = 0; e < workers; e++)
+            replicas[e] = zoo[e].rootDevice ? model : createReplica(model);
+
+        return replicas;
+    }
+
     /**
      * This method returns Models used in workers at this moment
      * PLEASE NOTE: This method is NOT thread safe, and should NOT be used anywhere but tests
@@ -110,6 +180,9 @@ public class ParallelInference {
         if (zoo == null)
             return new Model[0];
 
+        if (sharedParameters)
+            return sharedReplicas.clone();
+
         val models = new Model[zoo.length];
         int cnt = 0;
         for (val w:zoo) {
@@ -120,7 +193,10 @@ public class ParallelInference {
     }
 
     protected void init() {
-        observables = new LinkedBlockingQueue<>(queueLimit);
+        if (perWorkerQueues)
+            observables = new WorkStealingQueue(workers, Math.max(1, queueLimit / workers), loadBalanceMode);
+        else
+            observables = new LinkedBlockingQueue<>(queueLimit);
 
         int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
         int currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
@@ -133,7 +209,13 @@ public class ParallelInference {
             assignedRoot.compareAndSet(false, cRoot);
 
             zoo[i] = new InferenceWorker(i, model, observables, cRoot, cDevice);
+        }
 
+        // shared replicas must be available before any worker gets its first request
+        if (sharedParameters)
+            sharedReplicas = buildSharedReplicas(model);
+
+        for (int i = 0; i < workers; i++) {
             zoo[i].setDaemon(true);
             zoo[i].start();
         }
@@ -142,9 +224,21 @@ public class ParallelInference {
         if (inferenceMode == InferenceMode.BATCHED) {
             log.info("Initializing ObservablesProvider...");
             provider = new ObservablesProvider(nanos, batchLimit, observables);
+        } else if (inferenceMode == InferenceMode.ADAPTIVE) {
+            log.info("Initializing AdaptiveBatchScheduler...");
+            scheduler = new AdaptiveBatchScheduler(nanos, batchLimit, latencyTargetNanos, observables);
         }
     }
 
+    /**
+     * This method returns scheduler used in ADAPTIVE inference mode, which provides queue wait and compute time statistics.
+     *
+     * @return scheduler instance, or null for other inference modes
+     */
+    public AdaptiveBatchScheduler getAdaptiveScheduler() {
+        return scheduler;
+    }
+
     protected long getWorkerCounter(int workerIdx) {
         return zoo[workerIdx].getCounterValue();
     }
@@ -156,6 +250,9 @@ public class ParallelInference {
         if (zoo == null)
             return;
 
+        if (scheduler != null)
+            scheduler.shutdown();
+
         for (int e = 0; e < zoo.length; e++) {
             if (zoo[e] == null)
                 continue;
@@ -234,8 +331,82 @@ public class ParallelInference {
 
         // basically, depending on model type we either throw stuff to specific model, or wait for batch
         BasicInferenceObserver observer = new BasicInferenceObserver();
-        InferenceObservable observable;
+        long submitTime = System.nanoTime();
+        InferenceObservable observable = submit(observer, input, inputMasks);
 
+        try {
+            // submit query to processing
+            // and block until Observable returns
+            //observer.wait();
+
+            observer.waitTillDone();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        if (scheduler != null)
+            scheduler.requestCompleted(observable, submitTime);
+
+        return observable.getOutput();
+    }
+
+    /**
+     * Generate predictions/outputs from the network asynchronously, optionally using input masks for predictions.
+     * Calling thread isn't blocked till output is available, so few threads can keep lots of requests in flight.
+     *
+     * PLEASE NOTE: calling thread may still block if input queue is full
+     * PLEASE NOTE: returned future is completed in inference worker thread
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @return Future for output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks) {
+        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+
+        final FutureInferenceObserver observer = new FutureInferenceObserver();
+        final long submitTime = System.nanoTime();
+        final InferenceObservable observable;
+        try {
+            observable = submit(observer, input, inputMasks);
+        } catch (Exception e) {
+            observer.getFuture().completeExceptionally(e);
+            return observer.getFuture();
+        }
+
+        if (scheduler != null) {
+            observer.getFuture().whenComplete(new BiConsumer<INDArray[], Throwable>() {
+                @Override
+                public void accept(INDArray[] output, Throwable throwable) {
+                    scheduler.requestCompleted(observable, submitTime);
+                }
+            });
+        }
+
+        observer.setObservable(observable);
+        return observer.getFuture();
+    }
+
+    /**
+     * Generate predictions/outputs from the network asynchronously
+     *
+     * @param input Input to the network
+     * @return Future for output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray... input) {
+        return outputAsync(input, null);
+    }
+
+    /**
+     * This method passes input to the workers, with respect to inference mode
+     *
+     * @param observer   observer that will be notified once output is available
+     * @param input      input arrays
+     * @param inputMasks input mask arrays, may be null
+     * @return observable that will hold output
+     */
+    protected InferenceObservable submit(@NonNull Observer observer, INDArray[] input, INDArray[] inputMasks) {
+        InferenceObservable observable;
         if (inferenceMode == InferenceMode.SEQUENTIAL) {
             observable = new BasicInferenceObservable(input, inputMasks);
             observable.addObserver(observer);
@@ -245,21 +416,13 @@ public class ParallelInference {
                 Thread.currentThread().interrupt();
                 throw new RuntimeException(e);
             }
+        } else if (inferenceMode == InferenceMode.ADAPTIVE) {
+            observable = scheduler.setInput(observer, input, inputMasks);
         } else {
             observable = provider.setInput(observer, input, inputMasks);
         }
 
-        try {
-            // submit query to processing
-            // and block until Observable returns
-            //observer.wait();
-
-            observer.waitTillDone();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-
-        return observable.getOutput();
+        return observable;
     }
 
     /**
@@ -293,6 +456,10 @@ public class ParallelInference {
         private int batchLimit = DEFAULT_BATCH_LIMIT;
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private long maxWaitNanos = DEFAULT_MAX_WAIT_NANOS;
+        private long latencyTargetNanos = 0;
+        private boolean perWorkerQueues = false;
+        private boolean sharedParameters = false;
         protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
 
         public Builder(@NonNull Model model) {
@@ -306,6 +473,8 @@ public class ParallelInference {
          * SEQUENTIAL: Input will be sent to last-used worker unmodified.
          * BATCHED: Multiple inputs will be packed into single batch, and
          * sent to last-used device.
+         * ADAPTIVE: Inputs will be grouped by shape, and batch will be sent
+         * once it reaches target size or max wait time
          *
          * @param inferenceMode
          * @return
@@ -363,6 +532,88 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method defines, how long the first input of the batch can wait for other inputs
+         * before batch is sent to workers.
+         *
+         * PLEASE NOTE: This value has effect only in ADAPTIVE inference mode
+         *
+         * Default value: 2 ms
+         *
+         * @param time
+         * @param timeUnit
+         * @return
+         */
+        public Builder maxWait(long time, @NonNull TimeUnit timeUnit) {
+            if (time < 0)
+                throw new IllegalStateException("Max wait time can't be negative");
+
+            this.maxWaitNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * This method defines latency target for single request. If set, batch size will be
+         * adjusted in runtime (up to batchLimit), with respect to observed compute time.
+         *
+         * PLEASE NOTE: This value has effect only in ADAPTIVE inference mode
+         *
+         * Default value: 0, batchLimit is always used as target batch size
+         *
+         * @param time
+         * @param timeUnit
+         * @return
+         */
+        public Builder latencyTarget(long time, @NonNull TimeUnit timeUnit) {
+            if (time < 0)
+                throw new IllegalStateException("Latency target can't be negative");
+
+            this.latencyTargetNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * This method enables separate lock-free ring buffer for each worker, instead of single shared queue.
+         * With FIFO load balance mode idle workers will steal requests from busy ones,
+         * with ROUND_ROBIN mode requests are strictly assigned to workers.
+         *
+         * PLEASE NOTE: queueLimit is split evenly between workers in this case
+         * PLEASE NOTE: This value has no effect in INPLACE inference mode
+         *
+         * Default value: false
+         *
+         * @param reallyEnable
+         * @return
+         */
+        public Builder perWorkerQueues(boolean reallyEnable) {
+            this.perWorkerQueues = reallyEnable;
+            return this;
+        }
+
+        /**
+         * This method enables parameters sharing between workers: all workers will use single read-only copy
+         * of model parameters, and only activations will be private to each worker. Model update is a reference swap
+         * in this case, parameters aren't copied.
+         *
+         * PLEASE NOTE: This mode is available for CPU backend only
+         * PLEASE NOTE: Model passed to ParallelInference (or to updateModel() call) must not be trained while it's used for inference
+         *
+         * Default value: false
+         *
+         * @param reallyShare
+         * @return
+         */
+        public Builder sharedParameters(boolean reallyShare) {
+            if (reallyShare) {
+                val backend = Nd4j.getExecutioner().getEnvironmentInformation().getProperty("backend");
+                if (!"CPU".equalsIgnoreCase(backend))
+                    throw new ND4JIllegalStateException("Shared parameters mode is available for CPU backend only, got [" + backend + "] instead");
+            }
+
+            this.sharedParameters = reallyShare;
+            return this;
+        }
+
         /**
          * This method defines buffer queue size.
          *
@@ -403,6 +654,10 @@ public class ParallelInference {
                 inference.model = this.model;
                 inference.workers = this.workers;
                 inference.loadBalanceMode = this.loadBalanceMode;
+                inference.nanos = this.maxWaitNanos;
+                inference.latencyTargetNanos = this.latencyTargetNanos;
+                inference.perWorkerQueues = this.perWorkerQueues;
+                inference.sharedParameters = this.sharedParameters;
 
                 inference.init();
 
@@ -421,22 +676,28 @@ public class ParallelInference {
         private AtomicBoolean shouldWork = new AtomicBoolean(true);
         private AtomicBoolean isStopped = new AtomicBoolean(false);
         private Model protoModel;
-        private Model replicatedModel;
+        // replica is published atomically, so requests in flight keep using the model they started with
+        private volatile Model replicatedModel;
         private AtomicLong counter = new AtomicLong(0);
         private boolean rootDevice;
         private int deviceId;
+        private int workerId;
 
-        private ReentrantReadWriteLock modelLock = new ReentrantReadWriteLock();
+        // guards replica creation only, inference itself doesn't take any locks
+        private final Object replicaLock = new Object();
 
         private InferenceWorker(int id, @NonNull Model model, @NonNull BlockingQueue inputQueue, boolean rootDevice, int deviceId) {
             this.inputQueue = inputQueue;
             this.protoModel = model;
             this.rootDevice = rootDevice;
             this.deviceId = deviceId;
+            this.workerId = id;
 
             this.setDaemon(true);
             this.setName("InferenceThread-" + id);
 
+            if (inputQueue instanceof WorkStealingQueue)
+                ((WorkStealingQueue) inputQueue).registerWorker(id, this);
         }
 
         protected long getCounterValue() {
@@ -444,67 +705,49 @@ public class ParallelInference {
         }
 
         protected void updateModel(@NonNull Model model) {
-            try {
-                modelLock.writeLock().lock();
+            synchronized (replicaLock) {
                 this.protoModel = model;
 
                 // now re-init model
                 initializeReplicaModel();
-            } finally {
-                modelLock.writeLock().unlock();
             }
         }
 
         /**
-         * This method duplicates model for future use during inference
+         * This method duplicates model for future use during inference, and publishes it once it's ready
          */
         protected void initializeReplicaModel() {
-            if (protoModel instanceof ComputationGraph) {
-                if (!rootDevice) {
-                    this.replicatedModel = new ComputationGraph(ComputationGraphConfiguration
-                            .fromJson(((ComputationGraph) protoModel).getConfiguration().toJson()));
-                    this.replicatedModel.init();
-
-                    synchronized (locker) {
-                        this.replicatedModel.setParams(protoModel.params().unsafeDuplication(true));
-
-                        Nd4j.getExecutioner().commit();
-                    }
-                } else {
-                    this.replicatedModel = protoModel;
-                }
-            } else if (protoModel instanceof MultiLayerNetwork) {
-                if (!rootDevice) {
-                    this.replicatedModel = new MultiLayerNetwork(MultiLayerConfiguration.fromJson(
-                            ((MultiLayerNetwork) protoModel).getLayerWiseConfigurations().toJson()));
-                    this.replicatedModel.init();
+            this.replicatedModel = rootDevice ? protoModel : createReplica(protoModel);
+        }
 
-                    synchronized (locker) {
-                        this.replicatedModel.setParams(protoModel.params().unsafeDuplication(true));
+        protected InferenceObservable nextRequest() throws InterruptedException {
+            if (inputQueue instanceof WorkStealingQueue)
+                return ((WorkStealingQueue) inputQueue).take(workerId);
 
-                        Nd4j.getExecutioner().commit();
-                    }
-                } else {
-                    this.replicatedModel = protoModel;
-                }
-            }
+            return inputQueue.take();
         }
 
         @Override
         public void run() {
             Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
             try {
-                // model should be replicated & initialized here
-                initializeReplicaModel();
+                // model should be replicated & initialized here, unless replicas are shared
+                if (!sharedParameters) {
+                    synchronized (replicaLock) {
+                        initializeReplicaModel();
+                    }
+                }
 
-                boolean isCG = replicatedModel instanceof  ComputationGraph;
-                boolean isMLN = replicatedModel instanceof  MultiLayerNetwork;
+                boolean isCG = protoModel instanceof  ComputationGraph;
+                boolean isMLN = protoModel instanceof  MultiLayerNetwork;
 
                 while (shouldWork.get()) {
-                    InferenceObservable request = inputQueue.take();
+                    InferenceObservable request = nextRequest();
 
                     if (request != null) {
                         counter.incrementAndGet();
+                        long computeStart = System.nanoTime();
+                        Model model = sharedParameters ? sharedReplicas[workerId] : replicatedModel;
 
                         // FIXME: get rid of instanceof here, model won't change during runtime anyway
                         if (isCG) {
@@ -513,18 +756,17 @@ public class ParallelInference {
                             try {
                                 for (Pair<INDArray[],INDArray[]> inBatch : batches) {
                                     try {
-                                        modelLock.readLock().lock();
-
-                                        INDArray[] output = ((ComputationGraph) replicatedModel).output(false, inBatch.getFirst(), inBatch.getSecond());
+                                        INDArray[] output = ((ComputationGraph) model).output(false, inBatch.getFirst(), inBatch.getSecond());
                                         out.add(output);
                                     } finally {
                                         Nd4j.getExecutioner().commit();
-                                        modelLock.readLock().unlock();
                                     }
 
                                 }
+                                batchCompleted(request, computeStart);
                                 request.setOutputBatches(out);
                             } catch (Exception e){
+                                batchCompleted(request, computeStart);
                                 request.setOutputException(e);
                             }
                         } else if (isMLN) {
@@ -535,17 +777,16 @@ public class ParallelInference {
                                     INDArray f = inBatch.getFirst()[0];
                                     INDArray fm = (inBatch.getSecond() == null ? null : inBatch.getSecond()[0]);
                                     try {
-                                        modelLock.readLock().lock();
-
-                                        INDArray output = ((MultiLayerNetwork) replicatedModel).output(f, false, fm, null);
+                                        INDArray output = ((MultiLayerNetwork) model).output(f, false, fm, null);
                                         out.add(new INDArray[]{output});
                                     } finally {
                                         Nd4j.getExecutioner().commit();
-                                        modelLock.readLock().unlock();
                                     }
                                 }
+                                batchCompleted(request, computeStart);
                                 request.setOutputBatches(out);
                             } catch (Exception e){
+                                batchCompleted(request, computeStart);
                                 request.setOutputException(e);
                             }
                         }
@@ -565,6 +806,20 @@ public class ParallelInference {
             }
         }
 
+        /**
+         * This method stores compute timings in the request, and reports them to scheduler, if any
+         */
+        private void batchCompleted(InferenceObservable request, long computeStart) {
+            long computeEnd = System.nanoTime();
+            if (request instanceof BasicInferenceObservable) {
+                ((BasicInferenceObservable) request).setComputeStartTime(computeStart);
+                ((BasicInferenceObservable) request).setComputeEndTime(computeEnd);
+            }
+
+            if (scheduler != null && request instanceof BatchedInferenceObservable)
+                scheduler.batchCompleted(((BatchedInferenceObservable) request).getCounter(), computeEnd - computeStart);
+        }
+
         protected void shutdown() {
             shouldWork.set(false);
             while (!isStopped.get()) {
@@ -690,6 +690,7 @@ public class ParallelWrapper implements AutoCloseable {
         protected Supplier<INDArray> updaterParamsSupplier;
         protected ThresholdAlgorithm thresholdAlgorithm;
         protected ResidualPostProcessor residualPostProcessor;
+        protected long gradientsBucketSize = 0;
 
         protected GradientsAccumulator accumulator;
 
@@ -884,6 +885,18 @@ public class ParallelWrapper implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Enable bucketed gradients sharing for SHARED_GRADIENTS training mode: updates are encoded and shared in
+         * buckets of the given size while backprop is still running, instead of once per iteration after backprop.
+         * See {@link EncodedGradientsAccumulator.Builder#bucketSize(long)} for details.<br>
+         * Default value: 0 (disabled)
+         * @param bucketSize Number of elements per bucket
+         */
+        public Builder gradientsBucketSize(long bucketSize){
+            this.gradientsBucketSize = bucketSize;
+            return this;
+        }
+
         /**
          * This method returns ParallelWrapper instance
          *
@@ -913,7 +926,15 @@ public class ParallelWrapper implements AutoCloseable {
                     this.trainerContext = new SymmetricTrainerContext();
                     if (this.accumulator == null) {
                         log.info("Creating new GradientsAccumulator instance with threshold of [5e-4");
-                        this.accumulator = new EncodedGradientsAccumulator(workers, thresholdAlgorithm, residualPostProcessor,  false);
+                        if (gradientsBucketSize > 0) {
+                            this.accumulator = new EncodedGradientsAccumulator.Builder(workers)
+                                    .thresholdAlgorithm(thresholdAlgorithm)
+                                    .residualPostProcessor(residualPostProcessor)
+                                    .bucketSize(gradientsBucketSize)
+                                    .build();
+                        } else {
+                            this.accumulator = new EncodedGradientsAccumulator(workers, thresholdAlgorithm, residualPostProcessor, false);
+                        }
                     }
                 }
                     break;
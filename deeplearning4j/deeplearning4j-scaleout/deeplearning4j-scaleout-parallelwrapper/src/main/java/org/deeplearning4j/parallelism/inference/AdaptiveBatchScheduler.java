@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Observer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class implements batching for ADAPTIVE inference mode.
+ *
+ * Requests are grouped by input shape, so every batch sent to workers can be merged into a single array.
+ * Each group is flushed either when it reaches the target batch size, or when the oldest request in it
+ * waited for longer than maxWait. If latency target is set, the target batch size is adjusted at runtime
+ * using observed per-batch compute time.
+ *
+ * PLEASE NOTE: Batches are sent to workers only once they are complete, so workers never lock open batches.
+ */
+@Slf4j
+public class AdaptiveBatchScheduler {
+    // buckets that weren't used for this long will be removed from the map
+    private static final long BUCKET_EXPIRATION_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // power-of-2 batch sizes up to 2^30 are tracked separately
+    private static final int LATENCY_BUCKETS = 31;
+
+    private final BlockingQueue<InferenceObservable> targetQueue;
+    private final long maxWaitNanos;
+    private final long latencyTargetNanos;
+    private final int maxBatchSize;
+    private final AtomicInteger targetBatchSize;
+
+    private final ConcurrentHashMap<String, ShapeBucket> buckets = new ConcurrentHashMap<>();
+
+    // moving average of compute time, per log2(batch size)
+    private final AtomicLongArray batchLatency = new AtomicLongArray(LATENCY_BUCKETS);
+
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong totalQueueWait = new AtomicLong(0);
+    private final AtomicLong totalCompute = new AtomicLong(0);
+    private final AtomicLong maxQueueWait = new AtomicLong(0);
+
+    private final AtomicBoolean shouldWork = new AtomicBoolean(true);
+    private final Thread flusher;
+
+    /**
+     * @param maxWaitNanos       maximum time the first request of the batch can spend waiting for other requests
+     * @param maxBatchSize       maximum number of requests in single batch
+     * @param latencyTargetNanos target latency for single request. Use 0 to always use maxBatchSize
+     * @param queue              queue used by inference workers
+     */
+    public AdaptiveBatchScheduler(long maxWaitNanos, int maxBatchSize, long latencyTargetNanos, @NonNull BlockingQueue<InferenceObservable> queue) {
+        if (maxWaitNanos < 0)
+            throw new IllegalArgumentException("Max wait time can't be negative");
+
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Max batch size should be positive value");
+
+        this.targetQueue = queue;
+        this.maxWaitNanos = maxWaitNanos;
+        this.maxBatchSize = maxBatchSize;
+        this.latencyTargetNanos = latencyTargetNanos;
+        this.targetBatchSize = new AtomicInteger(maxBatchSize);
+
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flusherLoop();
+            }
+        });
+        this.flusher.setDaemon(true);
+        this.flusher.setName("AdaptiveBatchScheduler-flusher");
+        this.flusher.start();
+    }
+
+    public InferenceObservable setInput(@NonNull Observer observer, INDArray... input) {
+        return setInput(observer, input, null);
+    }
+
+    /**
+     * This method adds input to the batch with the same input shapes, and returns this batch
+     *
+     * @param observer   observer that will be notified once batch is processed
+     * @param input      input arrays
+     * @param inputMask  input mask arrays, may be null
+     * @return
+     */
+    public InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+        String key = shapeKey(input, inputMask);
+
+        while (true) {
+            ShapeBucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ShapeBucket();
+                ShapeBucket existing = buckets.putIfAbsent(key, bucket);
+                if (existing != null)
+                    bucket = existing;
+            }
+
+            BatchedInferenceObservable result;
+            BatchedInferenceObservable ready = null;
+            synchronized (bucket) {
+                // this bucket was removed from the map by flusher, so we'll just use new one
+                if (bucket.retired)
+                    continue;
+
+                long now = System.nanoTime();
+                if (bucket.current == null) {
+                    bucket.current = new BatchedInferenceObservable();
+                    bucket.deadline = now + maxWaitNanos;
+                }
+                bucket.lastUsed = now;
+
+                result = bucket.current;
+                result.addInput(input, inputMask);
+                result.addObserver(observer);
+
+                if (result.getCounter() >= targetBatchSize.get() || maxWaitNanos == 0) {
+                    ready = result;
+                    bucket.current = null;
+                }
+            }
+
+            if (ready != null)
+                dispatch(ready);
+
+            return result;
+        }
+    }
+
+    /**
+     * This method is called by inference workers once batch is processed
+     *
+     * @param batchSize    number of requests in the batch
+     * @param computeNanos time spent on the batch
+     */
+    public void batchCompleted(int batchSize, long computeNanos) {
+        int idx = Math.min(LATENCY_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(Math.max(1, batchSize)));
+
+        // racy, but that's fine for moving average
+        long previous = batchLatency.get(idx);
+        long updated = previous == 0 ? computeNanos : previous + (computeNanos - previous) / 8;
+        batchLatency.set(idx, updated);
+
+        if (latencyTargetNanos <= 0)
+            return;
+
+        int target = targetBatchSize.get();
+
+        // only batches of target size tell us something about current target
+        if (batchSize < target)
+            return;
+
+        long budget = Math.max(1, latencyTargetNanos - maxWaitNanos);
+        if (updated > budget && target > 1) {
+            targetBatchSize.compareAndSet(target, Math.max(1, target / 2));
+        } else if (updated < budget / 2 && target < maxBatchSize) {
+            targetBatchSize.compareAndSet(target, Math.min(maxBatchSize, target * 2));
+        }
+    }
+
+    /**
+     * This method is called once request is processed, to update queue wait vs compute time statistics
+     *
+     * @param observable processed observable
+     * @param submitTime System.nanoTime() value captured when request was submitted
+     */
+    public void requestCompleted(@NonNull InferenceObservable observable, long submitTime) {
+        if (!(observable instanceof BasicInferenceObservable))
+            return;
+
+        BasicInferenceObservable o = (BasicInferenceObservable) observable;
+        if (o.getComputeStartTime() == 0)
+            return;
+
+        long queueWait = Math.max(0, o.getComputeStartTime() - submitTime);
+        long compute = Math.max(0, o.getComputeEndTime() - o.getComputeStartTime());
+
+        requests.incrementAndGet();
+        totalQueueWait.addAndGet(queueWait);
+        totalCompute.addAndGet(compute);
+
+        long max;
+        while ((max = maxQueueWait.get()) < queueWait && !maxQueueWait.compareAndSet(max, queueWait));
+    }
+
+    /**
+     * This method returns batch size used at this moment
+     *
+     * @return
+     */
+    public int getTargetBatchSize() {
+        return targetBatchSize.get();
+    }
+
+    /**
+     * This method returns average observed compute time for batches of given size, 0 if nothing was observed yet
+     *
+     * @param batchSize
+     * @return
+     */
+    public long getBatchLatencyNanos(int batchSize) {
+        return batchLatency.get(Math.min(LATENCY_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(Math.max(1, batchSize))));
+    }
+
+    public long getRequestsCount() {
+        return requests.get();
+    }
+
+    /**
+     * This method returns average time requests spent before computation started
+     *
+     * @return
+     */
+    public long getAverageQueueWaitNanos() {
+        long cnt = requests.get();
+        return cnt == 0 ? 0 : totalQueueWait.get() / cnt;
+    }
+
+    /**
+     * This method returns average time requests spent in computation
+     *
+     * @return
+     */
+    public long getAverageComputeNanos() {
+        long cnt = requests.get();
+        return cnt == 0 ? 0 : totalCompute.get() / cnt;
+    }
+
+    public long getMaxQueueWaitNanos() {
+        return maxQueueWait.get();
+    }
+
+    /**
+     * This method stops flusher thread. Pending batches are dispatched before return.
+     */
+    public void shutdown() {
+        shouldWork.set(false);
+        flusher.interrupt();
+        flush(Long.MAX_VALUE);
+    }
+
+    protected void flusherLoop() {
+        // we don't want to spin on tiny intervals, 50us is granular enough
+        long tick = Math.max(50000L, maxWaitNanos / 4);
+
+        while (shouldWork.get()) {
+            flush(System.nanoTime());
+            LockSupport.parkNanos(tick);
+        }
+    }
+
+    /**
+     * This method dispatches all batches with deadline before given time, and removes expired buckets
+     *
+     * @param now
+     */
+    protected void flush(long now) {
+        Iterator<Map.Entry<String, ShapeBucket>> iterator = buckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            ShapeBucket bucket = iterator.next().getValue();
+            BatchedInferenceObservable ready = null;
+            synchronized (bucket) {
+                if (bucket.current != null) {
+                    if (now == Long.MAX_VALUE || now - bucket.deadline >= 0) {
+                        ready = bucket.current;
+                        bucket.current = null;
+                    }
+                } else if (now != Long.MAX_VALUE && now - bucket.lastUsed > BUCKET_EXPIRATION_NANOS) {
+                    bucket.retired = true;
+                    iterator.remove();
+                }
+            }
+
+            if (ready != null)
+                dispatch(ready);
+        }
+    }
+
+    protected void dispatch(BatchedInferenceObservable observable) {
+        try {
+            targetQueue.put(observable);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static String shapeKey(INDArray[] input, INDArray[] inputMask) {
+        StringBuilder builder = new StringBuilder();
+        for (INDArray array : input)
+            builder.append(array.dataType()).append(Arrays.toString(array.shape())).append(';');
+
+        // masks should be either present or absent for all requests in the batch
+        builder.append('|');
+        if (inputMask != null) {
+            for (INDArray array : inputMask)
+                builder.append(array == null ? "null" : Arrays.toString(array.shape())).append(';');
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * This class holds currently open batch for one input shape
+     */
+    protected static class ShapeBucket {
+        private BatchedInferenceObservable current;
+        private long deadline;
+        private long lastUsed = System.nanoTime();
+        private boolean retired = false;
+    }
+}
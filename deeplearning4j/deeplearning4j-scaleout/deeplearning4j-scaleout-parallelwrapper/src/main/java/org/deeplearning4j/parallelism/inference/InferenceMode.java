@@ -36,4 +36,9 @@ public enum InferenceMode {
      * Inference will applied in the calling thread instead of workers. Worker models will be using shared parameters on per-device basis.
      */
     INPLACE,
+
+    /**
+     * inputs will be grouped by shape, and batch will be sent to workers once it reaches target size, or max wait time is reached. Target batch size is adjusted with respect to observed latency.
+     */
+    ADAPTIVE,
 }
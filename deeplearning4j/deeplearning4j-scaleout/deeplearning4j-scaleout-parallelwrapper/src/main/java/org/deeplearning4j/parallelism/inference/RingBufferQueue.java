@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.NonNull;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer, based on per-slot sequence numbers (D. Vyukov's bounded queue).
+ *
+ * Any number of threads can offer and poll concurrently. Normally each buffer has single consumer (owning worker),
+ * but other workers are allowed to poll from it as well, which is used for work stealing.
+ */
+public class RingBufferQueue<T> {
+    private final int mask;
+    private final AtomicReferenceArray<T> buffer;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+
+    /**
+     * @param capacity capacity of the buffer, will be rounded up to the next power of 2
+     */
+    public RingBufferQueue(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity should be positive value");
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int e = 0; e < size; e++)
+            sequences.set(e, e);
+    }
+
+    /**
+     * This method adds element to the buffer
+     *
+     * @param element
+     * @return true if element was added, false if buffer is full
+     */
+    public boolean offer(@NonNull T element) {
+        while (true) {
+            long position = tail.get();
+            int idx = (int) (position & mask);
+            long diff = sequences.get(idx) - position;
+
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(idx, element);
+                    sequences.set(idx, position + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // slot wasn't consumed yet, so buffer is full
+                return false;
+            }
+        }
+    }
+
+    /**
+     * This method removes element from the buffer
+     *
+     * @return element, or null if buffer is empty
+     */
+    public T poll() {
+        while (true) {
+            long position = head.get();
+            int idx = (int) (position & mask);
+            long diff = sequences.get(idx) - (position + 1);
+
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T element = buffer.get(idx);
+                    buffer.lazySet(idx, null);
+                    sequences.set(idx, position + mask + 1);
+                    return element;
+                }
+            } else if (diff < 0) {
+                // slot wasn't published yet, so buffer is empty
+                return null;
+            }
+        }
+    }
+
+    /**
+     * This method returns head element of the buffer, without removing it
+     *
+     * @return element, or null if buffer is empty
+     */
+    public T peek() {
+        while (true) {
+            long position = head.get();
+            int idx = (int) (position & mask);
+            long diff = sequences.get(idx) - (position + 1);
+
+            if (diff < 0)
+                return null;
+
+            if (diff == 0) {
+                T element = buffer.get(idx);
+
+                // element could have been polled concurrently, so we retry if head has moved
+                if (element != null && head.get() == position)
+                    return element;
+            }
+        }
+    }
+
+    /**
+     * This method adds all elements currently available in the buffer to the given collection, in FIFO order.
+     * Result is weakly consistent: elements offered or polled concurrently may or may not be included
+     *
+     * @param target
+     */
+    public void snapshot(@NonNull Collection<? super T> target) {
+        long last = tail.get();
+        for (long position = head.get(); position < last; position++) {
+            int idx = (int) (position & mask);
+            if (sequences.get(idx) != position + 1)
+                continue;
+
+            T element = buffer.get(idx);
+            if (element != null)
+                target.add(element);
+        }
+    }
+
+    /**
+     * This method returns approximate number of elements in the buffer
+     *
+     * @return
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.NonNull;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This queue holds separate lock-free ring buffer for each inference worker, instead of single shared queue.
+ *
+ * Load balancing:
+ * ROUND_ROBIN: requests are strictly assigned to workers in `n+1 % workers` order, workers never steal.
+ * FIFO: requests are assigned to idle or least loaded worker, and idle workers steal requests from busy ones.
+ *
+ * Workers are expected to use {@link #take(int)}, everyone else can use it as regular BlockingQueue.
+ *
+ * PLEASE NOTE: iteration over this queue is weakly consistent, and removal of arbitrary elements isn't supported
+ */
+public class WorkStealingQueue extends AbstractQueue<InferenceObservable> implements BlockingQueue<InferenceObservable> {
+    // idle workers wake up this often even without notification, to steal from other workers
+    private static final long PARK_NANOS = 100000L;
+
+    private final RingBufferQueue<InferenceObservable>[] queues;
+    private final AtomicReferenceArray<Thread> consumers;
+    private final AtomicIntegerArray parked;
+    private final LoadBalanceMode loadBalanceMode;
+    private final AtomicLong position = new AtomicLong(0);
+
+    /**
+     * @param workers           number of inference workers
+     * @param capacityPerWorker capacity of ring buffer for each worker
+     * @param loadBalanceMode   load balance mode
+     */
+    @SuppressWarnings("unchecked")
+    public WorkStealingQueue(int workers, int capacityPerWorker, @NonNull LoadBalanceMode loadBalanceMode) {
+        if (workers < 1)
+            throw new IllegalArgumentException("Workers should be positive value");
+
+        this.loadBalanceMode = loadBalanceMode;
+        this.queues = new RingBufferQueue[workers];
+        for (int e = 0; e < workers; e++)
+            queues[e] = new RingBufferQueue<>(capacityPerWorker);
+
+        this.consumers = new AtomicReferenceArray<>(workers);
+        this.parked = new AtomicIntegerArray(workers);
+    }
+
+    /**
+     * This method binds worker thread to the specific ring buffer, so it can be woken up once request arrives
+     *
+     * @param workerId
+     * @param thread
+     */
+    public void registerWorker(int workerId, @NonNull Thread thread) {
+        consumers.set(workerId, thread);
+    }
+
+    @Override
+    public boolean offer(@NonNull InferenceObservable observable) {
+        if (loadBalanceMode == LoadBalanceMode.ROUND_ROBIN) {
+            int idx = (int) (position.getAndIncrement() % queues.length);
+            if (!queues[idx].offer(observable))
+                return false;
+
+            wakeUp(idx);
+            return true;
+        }
+
+        // FIFO: idle worker first, least loaded worker otherwise
+        int start = (int) (position.getAndIncrement() % queues.length);
+        int best = -1;
+        int bestSize = Integer.MAX_VALUE;
+        for (int e = 0; e < queues.length; e++) {
+            int idx = (start + e) % queues.length;
+            if (parked.get(idx) == 1 && queues[idx].isEmpty()) {
+                best = idx;
+                break;
+            }
+
+            int size = queues[idx].size();
+            if (size < bestSize) {
+                best = idx;
+                bestSize = size;
+            }
+        }
+
+        for (int e = 0; e < queues.length; e++) {
+            int idx = (best + e) % queues.length;
+            if (queues[idx].offer(observable)) {
+                wakeUp(idx);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void put(@NonNull InferenceObservable observable) throws InterruptedException {
+        while (!offer(observable)) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            LockSupport.parkNanos(1000L);
+        }
+    }
+
+    @Override
+    public boolean offer(@NonNull InferenceObservable observable, long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(observable)) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            if (System.nanoTime() - deadline >= 0)
+                return false;
+
+            LockSupport.parkNanos(1000L);
+        }
+        return true;
+    }
+
+    /**
+     * This method returns next request for the given worker, blocking until one is available
+     *
+     * @param workerId
+     * @return
+     * @throws InterruptedException
+     */
+    public InferenceObservable take(int workerId) throws InterruptedException {
+        while (true) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            InferenceObservable request = queues[workerId].poll();
+            if (request != null)
+                return request;
+
+            if (loadBalanceMode == LoadBalanceMode.FIFO) {
+                request = steal(workerId);
+                if (request != null)
+                    return request;
+            }
+
+            parked.set(workerId, 1);
+
+            // request could have arrived before parked flag was visible to producer
+            request = queues[workerId].poll();
+            if (request != null) {
+                parked.set(workerId, 0);
+                return request;
+            }
+
+            LockSupport.parkNanos(this, PARK_NANOS);
+            parked.set(workerId, 0);
+        }
+    }
+
+    @Override
+    public InferenceObservable take() throws InterruptedException {
+        while (true) {
+            InferenceObservable request = poll();
+            if (request != null)
+                return request;
+
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    @Override
+    public InferenceObservable poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            InferenceObservable request = poll();
+            if (request != null)
+                return request;
+
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            if (System.nanoTime() - deadline >= 0)
+                return null;
+
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    @Override
+    public InferenceObservable poll() {
+        return steal(-1);
+    }
+
+    @Override
+    public InferenceObservable peek() {
+        for (RingBufferQueue<InferenceObservable> q : queues) {
+            InferenceObservable request = q.peek();
+            if (request != null)
+                return request;
+        }
+
+        return null;
+    }
+
+    /**
+     * This method returns weakly consistent iterator over snapshot of per-worker ring buffers:
+     * requests added or taken concurrently may or may not be returned.
+     * Iterator doesn't support removal.
+     */
+    @Override
+    public Iterator<InferenceObservable> iterator() {
+        List<InferenceObservable> snapshot = new ArrayList<>();
+        for (RingBufferQueue<InferenceObservable> q : queues)
+            q.snapshot(snapshot);
+
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (RingBufferQueue<InferenceObservable> q : queues)
+            size += q.size();
+
+        return size;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        int capacity = 0;
+        for (RingBufferQueue<InferenceObservable> q : queues)
+            capacity += q.capacity();
+
+        return Math.max(0, capacity - size());
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super InferenceObservable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super InferenceObservable> c, int maxElements) {
+        int cnt = 0;
+        InferenceObservable request;
+        while (cnt < maxElements && (request = poll()) != null) {
+            c.add(request);
+            cnt++;
+        }
+        return cnt;
+    }
+
+    /**
+     * This method polls ring buffers of other workers, starting from the one next to given worker
+     */
+    protected InferenceObservable steal(int workerId) {
+        for (int e = 1; e <= queues.length; e++) {
+            int idx = (workerId + e) % queues.length;
+            if (idx == workerId)
+                continue;
+
+            InferenceObservable request = queues[idx].poll();
+            if (request != null)
+                return request;
+        }
+
+        return null;
+    }
+
+    protected void wakeUp(int workerId) {
+        if (parked.get(workerId) == 1) {
+            Thread thread = consumers.get(workerId);
+            if (thread != null)
+                LockSupport.unpark(thread);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.deeplearning4j.parallelism.inference.observers;
 import org.nd4j.shade.guava.base.Preconditions;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -40,6 +41,12 @@ public class BasicInferenceObservable extends Observable implements InferenceObs
     private INDArray[] output;
     protected Exception exception;
 
+    // System.nanoTime() values, set by inference worker before observers are notified
+    @Getter @Setter
+    private volatile long computeStartTime;
+    @Getter @Setter
+    private volatile long computeEndTime;
+
 
     public BasicInferenceObservable(INDArray... inputs) {
         this(inputs, null);
@@ -218,6 +218,15 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         position.set(pos);
     }
 
+    /**
+     * This method returns position of the input added by the current thread
+     *
+     * @return
+     */
+    public int getPosition() {
+        return position.get();
+    }
+
     public int getCounter() {
         return counter.get();
     }
@@ -242,4 +251,15 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         checkOutputException();
         return outputs.get(position.get());
     }
+
+    /**
+     * This method returns output for the input at the given position, regardless of the calling thread
+     *
+     * @param position position of the input, as returned by {@link #getPosition()}
+     * @return
+     */
+    public INDArray[] getOutput(int position) {
+        checkOutputException();
+        return outputs.get(position);
+    }
 }
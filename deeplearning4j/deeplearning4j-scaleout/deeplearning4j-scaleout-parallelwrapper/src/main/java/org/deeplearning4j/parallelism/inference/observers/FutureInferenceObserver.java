@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Observer implementation for asynchronous inference: instead of blocking the caller, it completes
+ * CompletableFuture once output is available.
+ *
+ * PLEASE NOTE: Future is completed in inference worker thread, so heavy work should be moved to other executor
+ */
+@Slf4j
+public class FutureInferenceObserver implements Observer {
+    @Getter
+    private final CompletableFuture<INDArray[]> future = new CompletableFuture<>();
+
+    private InferenceObservable observable;
+    private int position = -1;
+    private boolean finished = false;
+
+    @Override
+    public void update(Observable o, Object arg) {
+        synchronized (this) {
+            finished = true;
+        }
+        tryComplete();
+    }
+
+    /**
+     * This method binds this observer to the observable it was added to.
+     * Must be called from the thread that submitted input, since batched output is resolved by position.
+     *
+     * @param observable
+     */
+    public void setObservable(@NonNull InferenceObservable observable) {
+        int pos = -1;
+        if (observable instanceof BatchedInferenceObservable)
+            pos = ((BatchedInferenceObservable) observable).getPosition();
+
+        synchronized (this) {
+            this.observable = observable;
+            this.position = pos;
+        }
+        tryComplete();
+    }
+
+    /**
+     * Output can arrive before observable is bound, so we complete future only once both events happened
+     */
+    protected void tryComplete() {
+        InferenceObservable o;
+        int pos;
+        synchronized (this) {
+            if (!finished || observable == null || future.isDone())
+                return;
+
+            o = observable;
+            pos = position;
+        }
+
+        try {
+            INDArray[] output = pos >= 0 ? ((BatchedInferenceObservable) o).getOutput(pos) : o.getOutput();
+            future.complete(output);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
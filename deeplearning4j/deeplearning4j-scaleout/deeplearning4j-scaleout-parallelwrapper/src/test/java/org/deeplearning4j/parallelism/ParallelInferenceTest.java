@@ -35,6 +35,7 @@ import org.deeplearning4j.eval.Evaluation;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
 import org.deeplearning4j.util.ModelSerializer;
@@ -52,8 +53,10 @@ import org.nd4j.resources.Resources;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -216,6 +219,104 @@ public class ParallelInferenceTest extends BaseDL4JTest {
     }
 
 
+    @Test(timeout = 30000L)
+    public void testInferenceAdaptive1() throws Exception {
+        ParallelInference inf = new ParallelInference.Builder(model).inferenceMode(InferenceMode.ADAPTIVE).batchLimit(8)
+                .maxWait(2, TimeUnit.MILLISECONDS).latencyTarget(50, TimeUnit.MILLISECONDS).workers(2).build();
+        try {
+            iterator = new MnistDataSetIterator(1, false, 12345);
+
+            INDArray array1 = inf.output(iterator.next().getFeatures());
+            assertFalse(array1.isAttached());
+
+            iterator.reset();
+
+            evalClassifcationMultipleThreads(inf, iterator, 10);
+
+            val scheduler = inf.getAdaptiveScheduler();
+            assertNotNull(scheduler);
+            assertTrue(scheduler.getRequestsCount() > 0);
+            assertTrue(scheduler.getAverageComputeNanos() > 0);
+            assertTrue(scheduler.getTargetBatchSize() >= 1 && scheduler.getTargetBatchSize() <= 8);
+        } finally {
+            inf.shutdown();
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void testInferencePerWorkerQueues1() throws Exception {
+        for (LoadBalanceMode mode : LoadBalanceMode.values()) {
+            ParallelInference inf = new ParallelInference.Builder(model).inferenceMode(InferenceMode.SEQUENTIAL)
+                    .perWorkerQueues(true).loadBalanceMode(mode).workers(2).build();
+            try {
+                iterator = new MnistDataSetIterator(1, false, 12345);
+
+                INDArray array1 = inf.output(iterator.next().getFeatures());
+                assertFalse(array1.isAttached());
+
+                iterator.reset();
+
+                evalClassifcationMultipleThreads(inf, iterator, 10);
+
+                assertTrue(inf.getWorkerCounter(0) + inf.getWorkerCounter(1) > 0L);
+            } finally {
+                inf.shutdown();
+            }
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void testInferenceSharedParameters1() throws Exception {
+        ParallelInference inf = new ParallelInference.Builder(model).inferenceMode(InferenceMode.BATCHED)
+                .sharedParameters(true).workers(2).build();
+        try {
+            iterator = new MnistDataSetIterator(1, false, 12345);
+
+            evalClassifcationMultipleThreads(inf, iterator, 10);
+
+            // all workers should use the very same parameters array
+            for (Model m : inf.getCurrentModelsFromWorkers())
+                assertTrue(m.params() == model.params());
+
+            // model update shouldn't copy parameters either
+            val updated = model.clone();
+            inf.updateModel(updated);
+            for (Model m : inf.getCurrentModelsFromWorkers())
+                assertTrue(m.params() == updated.params());
+
+            INDArray features = iterator.next().getFeatures();
+            assertEquals(updated.output(features), inf.output(features));
+        } finally {
+            inf.shutdown();
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void testOutputAsync1() throws Exception {
+        for (InferenceMode mode : new InferenceMode[]{InferenceMode.SEQUENTIAL, InferenceMode.BATCHED, InferenceMode.ADAPTIVE, InferenceMode.INPLACE}) {
+            ParallelInference inf = new ParallelInference.Builder(model).inferenceMode(mode).batchLimit(8).workers(2).build();
+            try {
+                iterator = new MnistDataSetIterator(1, false, 12345);
+
+                val features = new ArrayList<INDArray>();
+                val futures = new ArrayList<CompletableFuture<INDArray[]>>();
+                for (int e = 0; e < 32 && iterator.hasNext(); e++) {
+                    val f = iterator.next().getFeatures();
+                    features.add(f);
+                    futures.add(inf.outputAsync(f));
+                }
+
+                for (int e = 0; e < futures.size(); e++) {
+                    INDArray[] out = futures.get(e).get();
+                    assertEquals(1, out.length);
+                    assertEquals(model.output(features.get(e)), out[0]);
+                }
+            } finally {
+                inf.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testProvider1() throws Exception {
         LinkedBlockingQueue queue = new LinkedBlockingQueue();
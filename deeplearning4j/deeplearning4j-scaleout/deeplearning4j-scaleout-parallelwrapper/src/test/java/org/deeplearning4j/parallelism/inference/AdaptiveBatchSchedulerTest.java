@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.BaseDL4JTest;
+import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class AdaptiveBatchSchedulerTest extends BaseDL4JTest {
+
+    @Test(timeout = 10000L)
+    public void testShapeGrouping_1() throws Exception {
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        AdaptiveBatchScheduler scheduler = new AdaptiveBatchScheduler(TimeUnit.SECONDS.toNanos(5), 4, 0, queue);
+
+        try {
+            InferenceObservable o1 = scheduler.setInput(observer, Nd4j.create(1, 100));
+            InferenceObservable o2 = scheduler.setInput(observer, Nd4j.create(1, 50));
+            InferenceObservable o3 = scheduler.setInput(observer, Nd4j.create(1, 100));
+
+            assertTrue(o1 == o3);
+            assertTrue(o1 != o2);
+
+            // nothing should be dispatched before deadline or batch limit
+            assertEquals(0, queue.size());
+        } finally {
+            scheduler.shutdown();
+        }
+
+        // shutdown flushes everything that's pending
+        assertEquals(2, queue.size());
+    }
+
+    @Test(timeout = 10000L)
+    public void testBatchLimit_1() throws Exception {
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        AdaptiveBatchScheduler scheduler = new AdaptiveBatchScheduler(TimeUnit.SECONDS.toNanos(5), 2, 0, queue);
+
+        try {
+            InferenceObservable o1 = scheduler.setInput(observer, Nd4j.create(1, 100).assign(1.0));
+            InferenceObservable o2 = scheduler.setInput(observer, Nd4j.create(1, 100).assign(2.0));
+            InferenceObservable o3 = scheduler.setInput(observer, Nd4j.create(1, 100).assign(3.0));
+
+            assertTrue(o1 == o2);
+            assertTrue(o1 != o3);
+            assertEquals(1, queue.size());
+            assertTrue(o1 == queue.take());
+
+            INDArray[] input = o1.getInputBatches().get(0).getFirst();
+            assertArrayEquals(new long[] {2, 100}, input[0].shape());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void testDeadline_1() throws Exception {
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        AdaptiveBatchScheduler scheduler = new AdaptiveBatchScheduler(TimeUnit.MILLISECONDS.toNanos(2), 32, 0, queue);
+
+        try {
+            InferenceObservable o1 = scheduler.setInput(observer, Nd4j.create(1, 100));
+
+            // single request should be dispatched once max wait time is reached
+            InferenceObservable dispatched = queue.poll(5, TimeUnit.SECONDS);
+            assertTrue(o1 == dispatched);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchSizeAdaptation_1() throws Exception {
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        AdaptiveBatchScheduler scheduler = new AdaptiveBatchScheduler(TimeUnit.MILLISECONDS.toNanos(1), 32,
+                TimeUnit.MILLISECONDS.toNanos(11), queue);
+
+        try {
+            assertEquals(32, scheduler.getTargetBatchSize());
+
+            // batches of 32 take way more than latency budget, so target should go down
+            scheduler.batchCompleted(32, TimeUnit.MILLISECONDS.toNanos(50));
+            assertEquals(16, scheduler.getTargetBatchSize());
+
+            scheduler.batchCompleted(16, TimeUnit.MILLISECONDS.toNanos(30));
+            assertEquals(8, scheduler.getTargetBatchSize());
+
+            // batches of 8 are fast enough, and batches of 4 are way below budget
+            scheduler.batchCompleted(8, TimeUnit.MILLISECONDS.toNanos(8));
+            assertEquals(8, scheduler.getTargetBatchSize());
+
+            scheduler.batchCompleted(8, TimeUnit.MILLISECONDS.toNanos(1));
+            assertEquals(8, scheduler.getTargetBatchSize());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * JMH benchmark for request ingestion: shared LinkedBlockingQueue vs per-worker ring buffers.
+ * Consumers do no actual inference here, so this measures queue overhead only.
+ *
+ * Run main() from test classpath to get the numbers
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InferenceQueueBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class QueueState {
+        @Param({"shared", "stealing_fifo", "stealing_round_robin"})
+        public String queueType;
+
+        @Param({"4"})
+        public int workers;
+
+        public BlockingQueue<InferenceObservable> queue;
+        private Thread[] consumers;
+        private final AtomicBoolean shouldWork = new AtomicBoolean(true);
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            switch (queueType) {
+                case "shared":
+                    queue = new LinkedBlockingQueue<>(64);
+                    break;
+                case "stealing_fifo":
+                    queue = new WorkStealingQueue(workers, 64 / workers, LoadBalanceMode.FIFO);
+                    break;
+                case "stealing_round_robin":
+                    queue = new WorkStealingQueue(workers, 64 / workers, LoadBalanceMode.ROUND_ROBIN);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown queue type: " + queueType);
+            }
+
+            shouldWork.set(true);
+            consumers = new Thread[workers];
+            for (int e = 0; e < workers; e++) {
+                final int id = e;
+                consumers[e] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (shouldWork.get()) {
+                                if (queue instanceof WorkStealingQueue)
+                                    ((WorkStealingQueue) queue).take(id);
+                                else
+                                    queue.take();
+                            }
+                        } catch (InterruptedException ex) {
+                            // that's fine, we're done
+                        }
+                    }
+                });
+                consumers[e].setDaemon(true);
+
+                if (queue instanceof WorkStealingQueue)
+                    ((WorkStealingQueue) queue).registerWorker(id, consumers[e]);
+
+                consumers[e].start();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            shouldWork.set(false);
+            for (Thread t : consumers) {
+                t.interrupt();
+                t.join();
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void submit(QueueState state) throws Exception {
+        state.queue.put(new BasicInferenceObservable());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(InferenceQueueBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.BaseDL4JTest;
+import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class WorkStealingQueueTest extends BaseDL4JTest {
+
+    @Test
+    public void testRingBuffer_1() throws Exception {
+        RingBufferQueue<Integer> buffer = new RingBufferQueue<>(3);
+        assertEquals(4, buffer.capacity());
+
+        for (int e = 0; e < 4; e++)
+            assertTrue(buffer.offer(e));
+
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+
+        for (int e = 0; e < 4; e++)
+            assertEquals(e, buffer.poll().intValue());
+
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testPeekAndIterator_1() throws Exception {
+        WorkStealingQueue queue = new WorkStealingQueue(2, 4, LoadBalanceMode.ROUND_ROBIN);
+
+        assertNull(queue.peek());
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.iterator().hasNext());
+
+        InferenceObservable o1 = new BasicInferenceObservable();
+        InferenceObservable o2 = new BasicInferenceObservable();
+        InferenceObservable o3 = new BasicInferenceObservable();
+
+        queue.put(o1);
+        queue.put(o2);
+        queue.put(o3);
+
+        // peek doesn't remove anything
+        assertTrue(o1 == queue.peek());
+        assertEquals(3, queue.size());
+
+        List<InferenceObservable> list = new ArrayList<>();
+        for (InferenceObservable o : queue)
+            list.add(o);
+
+        // worker 0 buffer goes first: o1, o3, then worker 1 buffer: o2
+        assertEquals(Arrays.asList(o1, o3, o2), list);
+        assertTrue(queue.contains(o2));
+        assertNotNull(queue.toString());
+
+        assertTrue(o1 == queue.take(0));
+        assertTrue(o3 == queue.peek());
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testRoundRobin_1() throws Exception {
+        WorkStealingQueue queue = new WorkStealingQueue(2, 4, LoadBalanceMode.ROUND_ROBIN);
+
+        InferenceObservable o1 = new BasicInferenceObservable();
+        InferenceObservable o2 = new BasicInferenceObservable();
+        InferenceObservable o3 = new BasicInferenceObservable();
+
+        queue.put(o1);
+        queue.put(o2);
+        queue.put(o3);
+
+        assertEquals(3, queue.size());
+
+        // strict assignment: worker 0 gets 1st and 3rd requests, worker 1 gets 2nd
+        assertTrue(o1 == queue.take(0));
+        assertTrue(o3 == queue.take(0));
+        assertTrue(o2 == queue.take(1));
+    }
+
+    @Test
+    public void testStealing_1() throws Exception {
+        WorkStealingQueue queue = new WorkStealingQueue(2, 4, LoadBalanceMode.FIFO);
+
+        InferenceObservable o1 = new BasicInferenceObservable();
+        InferenceObservable o2 = new BasicInferenceObservable();
+
+        queue.put(o1);
+        queue.put(o2);
+
+        // single worker should be able to drain everything
+        assertNotNull(queue.take(1));
+        assertNotNull(queue.take(1));
+        assertEquals(0, queue.size());
+    }
+
+    @Test(timeout = 30000L)
+    public void testConcurrentAccess_1() throws Exception {
+        final int workers = 4;
+        final int producers = 4;
+        final int requests = 10000;
+        final WorkStealingQueue queue = new WorkStealingQueue(workers, 8, LoadBalanceMode.FIFO);
+        final AtomicLong consumed = new AtomicLong(0);
+
+        Thread[] consumers = new Thread[workers];
+        for (int e = 0; e < workers; e++) {
+            final int id = e;
+            consumers[e] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            queue.take(id);
+                            consumed.incrementAndGet();
+                        }
+                    } catch (InterruptedException ex) {
+                        // we're done
+                    }
+                }
+            });
+            queue.registerWorker(id, consumers[e]);
+            consumers[e].start();
+        }
+
+        Thread[] threads = new Thread[producers];
+        for (int e = 0; e < producers; e++) {
+            threads[e] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < requests; i++)
+                            queue.put(new BasicInferenceObservable());
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+            });
+            threads[e].start();
+        }
+
+        for (Thread t : threads)
+            t.join();
+
+        while (consumed.get() < producers * requests)
+            Thread.sleep(10);
+
+        for (Thread t : consumers) {
+            t.interrupt();
+            t.join();
+        }
+
+        assertEquals(producers * requests, consumed.get());
+    }
+}
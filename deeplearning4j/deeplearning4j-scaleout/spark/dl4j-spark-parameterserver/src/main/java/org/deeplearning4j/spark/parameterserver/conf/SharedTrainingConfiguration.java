@@ -19,6 +19,7 @@ package org.deeplearning4j.spark.parameterserver.conf;
 import lombok.*;
 import org.deeplearning4j.nn.conf.WorkspaceMode;
 import org.deeplearning4j.optimize.solvers.accumulation.MessageHandler;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.nd4j.parameterserver.distributed.conf.VoidConfiguration;
@@ -55,8 +56,15 @@ public class SharedTrainingConfiguration implements Serializable {
     @Builder.Default
     protected int bufferSize = 0;
 
+    /**
+     * Number of elements per bucket for bucketed gradients sharing, 0 to disable
+     */
+    @Builder.Default
+    protected long gradientsBucketSize = 0L;
+
     protected ThresholdAlgorithm thresholdAlgorithm;
     protected ResidualPostProcessor residualPostProcessor;
+    protected GradientCodec codec;
     protected String messageHandlerClass;
 
 
@@ -21,12 +21,13 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.optimize.api.StepFunction;
+import org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler;
 import org.deeplearning4j.optimize.solvers.accumulation.FancyBlockingQueue;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.optimize.solvers.accumulation.IndexedTail;
 import org.deeplearning4j.optimize.solvers.accumulation.SmartFancyBlockingQueue;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.compression.ThresholdCompression;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
@@ -59,6 +60,9 @@ public class UpdatesConsumer implements UpdatesHandler {
 
     protected transient GradientsAccumulator accumulator;
 
+    // codec used to encode updates, if any. it's used for decoding too, to keep its metrics complete
+    protected transient GradientCodec codec;
+
     protected transient final AtomicLong updatesCount = new AtomicLong(0);
     protected transient final AtomicBoolean hasSomething = new AtomicBoolean(false);
     protected transient final AtomicBoolean bypassMode = new AtomicBoolean(false);
@@ -93,7 +97,7 @@ public class UpdatesConsumer implements UpdatesHandler {
         if (updatesBuffer == null && accumulator != null) {
             synchronized (this) {
                 if (updatesBuffer == null) {
-                    updatesBuffer = new IndexedTail(numWorkers, true, params.shape());
+                    updatesBuffer = new IndexedTail(numWorkers, true, params.shape(), codec);
                 }
             }
         }
@@ -106,7 +110,7 @@ public class UpdatesConsumer implements UpdatesHandler {
         if (updatesBuffer == null && accumulator != null) {
             synchronized (this) {
                 if (updatesBuffer == null) {
-                    updatesBuffer = new IndexedTail(numWorkers, true, params.shape());
+                    updatesBuffer = new IndexedTail(numWorkers, true, params.shape(), codec);
                 }
             }
         }
@@ -126,15 +130,14 @@ public class UpdatesConsumer implements UpdatesHandler {
             } else if (params != null && stepFunction != null) {
                 synchronized (this) {
                     // threshold decoder is inplace & fast
+                    EncodingHandler.decode(array, updates, codec);
+
                     int encoding = array.data().getInt(3);
-                    if (encoding == ThresholdCompression.FLEXIBLE_ENCODING) {
-                        Nd4j.getExecutioner().thresholdDecode(array, updates);
-                        sparseCounter.incrementAndGet();
-                    } else if (encoding == ThresholdCompression.BITMAP_ENCODING) {
-                        Nd4j.getExecutioner().bitmapDecode(array, updates);
+                    if (encoding == ThresholdCompression.BITMAP_ENCODING || encoding == ThresholdCompression.ONEBIT_ENCODING
+                                    || encoding == ThresholdCompression.INT8_ENCODING)
                         denseCounter.incrementAndGet();
-                    } else
-                        throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
+                    else
+                        sparseCounter.incrementAndGet();
 
 
                     // this simple flag shows that we have something not applied, will be used at finishTraining() method
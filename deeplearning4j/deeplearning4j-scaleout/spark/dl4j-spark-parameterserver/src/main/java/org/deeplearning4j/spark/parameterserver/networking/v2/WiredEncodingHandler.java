@@ -19,13 +19,17 @@ package org.deeplearning4j.spark.parameterserver.networking.v2;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.parameterserver.distributed.v2.ModelParameterServer;
+import org.nd4j.parameterserver.distributed.v2.enums.GradientExchangeMode;
 
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -48,6 +52,43 @@ public class WiredEncodingHandler extends EncodingHandler {
         super(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode);
     }
 
+    /**
+     * This method builds new WiredEncodingHandler instance, that uses given codec to encode updates
+     *
+     * @param thresholdAlgorithm The threshold algorithm to use
+     * @param codec              Codec to use instead of default threshold/bitmap encoding. May be null
+     */
+    public WiredEncodingHandler(ThresholdAlgorithm thresholdAlgorithm, ResidualPostProcessor residualPostProcessor, Double boundary, boolean encodingDebugMode, GradientCodec codec) {
+        super(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode, codec);
+    }
+
+    @Override
+    public boolean broadcastUpdates(INDArray updates, int iterationNumber, int epochNumber) {
+        if (ModelParameterServer.getInstance().getGradientExchangeMode() != GradientExchangeMode.RING_ALLREDUCE)
+            return super.broadcastUpdates(updates, iterationNumber, epochNumber);
+
+        // ring all-reduce is a collective operation, so we have to take part in each round, even if we have nothing to share
+        INDArray message = encodeUpdates(iterationNumber, epochNumber, updates);
+        if (message != null) {
+            sendMessage(message, updates.dataType(), iterationNumber, epochNumber);
+            return true;
+        }
+
+        try (MemoryWorkspace wsO = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            ModelParameterServer.getInstance().sendUpdate(Nd4j.create(updates.dataType(), updates.length()), updates.dataType(), iterationNumber, epochNumber);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean broadcastBucket(INDArray residual, long offset, long totalLength, boolean firstBucket, int iterationNumber, int epochNumber) {
+        // ring all-reduce rounds are built for full updates arrays, so buckets can't be mixed in there
+        if (ModelParameterServer.getInstance().getGradientExchangeMode() == GradientExchangeMode.RING_ALLREDUCE)
+            throw new DL4JInvalidConfigException("Bucketed gradients sharing can't be used with RING_ALLREDUCE gradient exchange mode");
+
+        return super.broadcastBucket(residual, offset, totalLength, firstBucket, iterationNumber, epochNumber);
+    }
+
     /**
      * This method sends given message to all registered recipients
      *
@@ -55,6 +96,16 @@ public class WiredEncodingHandler extends EncodingHandler {
      */
     @Override
     protected void sendMessage(@NonNull INDArray message, int iterationNumber, int epochNumber) {
+        sendMessage(message, Nd4j.defaultFloatingPointType(), iterationNumber, epochNumber);
+    }
+
+    /**
+     * This method sends given message to all registered recipients
+     *
+     * @param message
+     * @param updatesType data type of the updates the message was encoded from
+     */
+    protected void sendMessage(@NonNull INDArray message, @NonNull DataType updatesType, int iterationNumber, int epochNumber) {
         // here we'll send our stuff to other executores over the wire
         // and let's pray for udp broadcast availability
 
@@ -63,8 +114,13 @@ public class WiredEncodingHandler extends EncodingHandler {
         try (MemoryWorkspace wsO = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
             long updateId = updatesCounter.getAndIncrement();
 
-            val m = message.unsafeDuplication();
-            ModelParameterServer.getInstance().sendUpdate(m, iterationNumber, epochNumber);
+            INDArray m = message.unsafeDuplication();
+
+            // all-reduce sums dense updates, so encoded message is decoded here, by the codec that encoded it
+            if (ModelParameterServer.getInstance().getGradientExchangeMode() == GradientExchangeMode.RING_ALLREDUCE && m.data().dataType() == DataType.INT)
+                m = decode(m, Nd4j.create(updatesType, m.data().getInt(1)), codec);
+
+            ModelParameterServer.getInstance().sendUpdate(m, updatesType, iterationNumber, epochNumber);
         }
 
 
@@ -57,7 +57,9 @@ import org.nd4j.parameterserver.distributed.conf.VoidConfiguration;
 import org.nd4j.parameterserver.distributed.enums.TransportType;
 import org.nd4j.parameterserver.distributed.util.NetworkOrganizer;
 import org.nd4j.parameterserver.distributed.v2.ModelParameterServer;
+import org.nd4j.parameterserver.distributed.v2.enums.GradientExchangeMode;
 import org.nd4j.parameterserver.distributed.v2.transport.UpdaterParametersProvider;
+import org.nd4j.parameterserver.distributed.v2.transport.impl.AeronIpcTransport;
 import org.nd4j.parameterserver.distributed.v2.transport.impl.AeronUdpTransport;
 
 import java.util.ArrayList;
@@ -254,7 +256,7 @@ public class SharedTrainingWrapper {
                     }
                 }
 
-                val handler = new WiredEncodingHandler(trainingConfiguration.getThresholdAlgorithm(), trainingConfiguration.getResidualPostProcessor(), null, trainingConfiguration.isEncodingDebugMode());
+                val handler = new WiredEncodingHandler(trainingConfiguration.getThresholdAlgorithm(), trainingConfiguration.getResidualPostProcessor(), null, trainingConfiguration.isEncodingDebugMode(), trainingConfiguration.getCodec());
 
                 // TODO: if there will be no code difference - use the same class instead of 2 different classes
                 val modelParamsSupplier = new ModelParamsConsumer();
@@ -280,6 +282,7 @@ public class SharedTrainingWrapper {
                             .residualPostProcessor(trainingConfiguration.getResidualPostProcessor())
                             .memoryParameters(bufferSize, queueSize)
                             .encodingDebugMode(trainingConfiguration.isEncodingDebugMode())
+                            .bucketSize(trainingConfiguration.getGradientsBucketSize())
                             .build();
 
                     // we should introduce ourselves to controller
@@ -314,7 +317,9 @@ public class SharedTrainingWrapper {
                         // FIXME: implement support for Custom transport implementation
 
                         val transport = voidConfiguration.getTransportType() == TransportType.ROUTED_UDP ? new AeronUdpTransport(localIP, voidConfiguration.getPortSupplier().getPort(),
-                                voidConfiguration.getControllerAddress(), voidConfiguration.getUnicastControllerPort(), voidConfiguration) :  null;
+                                voidConfiguration.getControllerAddress(), voidConfiguration.getUnicastControllerPort(), voidConfiguration) :
+                                voidConfiguration.getTransportType() == TransportType.ROUTED_UDP_IPC ? new AeronIpcTransport(localIP, voidConfiguration.getPortSupplier().getPort(),
+                                voidConfiguration.getControllerAddress(), voidConfiguration.getUnicastControllerPort(), voidConfiguration) : null;
 
                         if (transport == null)
                             throw new DL4JInvalidConfigException(
@@ -324,6 +329,7 @@ public class SharedTrainingWrapper {
                                 .numWorkers(numWorkers)
                                 .accumulator(accumulator)
                                 .params(model.params())
+                                .codec(trainingConfiguration.getCodec())
                                 .build();
 
                         accumulator.setExternalSource(consumer.getUpdatesQueue());
@@ -480,6 +486,12 @@ public class SharedTrainingWrapper {
                 exception = t;
             }
 
+            // other workers might still have data: we keep taking part in their all-reduce rounds, with zero updates
+            if (ModelParameterServer.getInstance().getGradientExchangeMode() == GradientExchangeMode.RING_ALLREDUCE) {
+                val params = originalModel.params();
+                ModelParameterServer.getInstance().finishUpdates(params.length(), params.dataType());
+            }
+
 
             // conditionally shutdown & reset ParallelWrapper
             EncodedGradientsAccumulator accum;
@@ -39,6 +39,7 @@ import org.deeplearning4j.api.storage.StorageMetaData;
 import org.deeplearning4j.config.DL4JEnvironmentVars;
 import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.residual.ResidualClippingPostProcessor;
@@ -74,6 +75,7 @@ import org.nd4j.parameterserver.distributed.enums.TransportType;
 import org.nd4j.parameterserver.distributed.util.NetworkOrganizer;
 import org.nd4j.parameterserver.distributed.v2.ModelParameterServer;
 import org.nd4j.parameterserver.distributed.v2.transport.Transport;
+import org.nd4j.parameterserver.distributed.v2.transport.impl.AeronIpcTransport;
 import org.nd4j.parameterserver.distributed.v2.transport.impl.AeronUdpTransport;
 import org.nd4j.shade.jackson.core.JsonProcessingException;
 import org.nd4j.shade.jackson.databind.ObjectMapper;
@@ -117,6 +119,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
     protected long debugLongerIterations = 0L;
     protected boolean logMinibatchesPerWorker = false;
     protected boolean encodingDebugMode = false;
+    protected long gradientsBucketSize = 0L;
+    protected GradientCodec codec;
 
     protected ThresholdAlgorithm thresholdAlgorithm;
     protected ResidualPostProcessor residualPostProcessor;
@@ -267,7 +271,9 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
                 .voidConfiguration(voidConfiguration)
                 .debugLongerIterations(debugLongerIterations)
                 .numberOfWorkersPerNode(numWorkersPerNode)
-                .encodingDebugMode(encodingDebugMode).build();
+                .encodingDebugMode(encodingDebugMode)
+                .gradientsBucketSize(gradientsBucketSize)
+                .codec(codec).build();
 
         if (collectTrainingStats)
             stats.logBroadcastStart();
@@ -299,6 +305,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
                 .numberOfWorkersPerNode(numWorkersPerNode)
                 .prefetchSize(workerPrefetchBatches)
                 .encodingDebugMode(encodingDebugMode)
+                .gradientsBucketSize(gradientsBucketSize)
+                .codec(codec)
                 .build();
 
         if (collectTrainingStats)
@@ -504,6 +512,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
 
             val transport = voidConfiguration.getTransportType() == TransportType.ROUTED_UDP
                     ? new AeronUdpTransport(voidConfiguration.getControllerAddress(), voidConfiguration.getUnicastControllerPort(), voidConfiguration)
+                    : voidConfiguration.getTransportType() == TransportType.ROUTED_UDP_IPC
+                    ? new AeronIpcTransport(voidConfiguration.getControllerAddress(), voidConfiguration.getUnicastControllerPort(), voidConfiguration)
                     : null;
 
             if (transport == null)
@@ -515,6 +525,7 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
                     .params(params)
                     .updates(Nd4j.create(params.shape(), params.ordering()))
                     .stepFunction(network != null ? network.getNetwork().getOptimizer().getStepFunction() : graph.getNetwork().getOptimizer().getStepFunction())
+                    .codec(codec)
                     .build();
 
             // apply configuration
@@ -918,6 +929,9 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
         protected Boolean workerTogglePeriodicGC = new Boolean(true);
         protected Integer workerPeriodicGCFrequency = new Integer(5000);
         protected boolean encodingDebugMode = false;
+        protected long gradientsBucketSize = 0L;
+        protected GradientCodec codec;
+        protected boolean residualPostProcessorSet = false;
 
         /**
          * Create a SharedTrainingMaster with defaults other than the RDD number of examples
@@ -1112,12 +1126,14 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
          * Residual post processor. See {@link ResidualPostProcessor} for details.
          *
          * Default: {@code new ResidualClippingPostProcessor(5.0, 5)} - i.e., a {@link ResidualClippingPostProcessor}
-         * that clips the residual to +/- 5x current threshold, every 5 iterations.
+         * that clips the residual to +/- 5x current threshold, every 5 iterations.<br>
+         * Must be null when a codec that doesn't use the threshold is set via {@link #codec(GradientCodec)}.
          *
          * @param residualPostProcessor Residual post processor to use
          */
         public Builder residualPostProcessor(ResidualPostProcessor residualPostProcessor){
             this.residualPostProcessor = residualPostProcessor;
+            this.residualPostProcessorSet = true;
             return this;
         }
 
@@ -1251,7 +1267,49 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
             return this;
         }
 
+        /**
+         * Enable bucketed gradients sharing: instead of encoding and sharing updates once per iteration after backprop
+         * is done, updates are split into buckets of the specified size, and each bucket is encoded and shared from a
+         * separate thread as soon as backprop is done for the layers it covers. This overlaps communication with backprop.<br>
+         * The updater is applied layer by layer, so this works with a single updater for the whole network too.<br>
+         * Not supported with ring all-reduce gradient exchange mode. Gradients sharing (bucketed or not) can't be used
+         * with mixed precision training.<br>
+         * Bucketed sharing is disabled by default (bucket size of 0).<br>
+         *
+         * @param bucketSize Number of elements per bucket
+         */
+        public Builder gradientsBucketSize(long bucketSize){
+            Preconditions.checkArgument(bucketSize >= 0, "Bucket size must be >= 0, got %s", bucketSize);
+            this.gradientsBucketSize = bucketSize;
+            return this;
+        }
+
+        /**
+         * Set the codec used to encode updates shared between workers, instead of default threshold/bitmap encoding.
+         * For example, {@link org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.DeltaIndexCodec} has the
+         * same semantics as threshold encoding, but needs 1-2 bytes per index instead of 4.<br>
+         * Can't be used with bucketed gradients sharing. Default: null (threshold/bitmap encoding)<br>
+         * Codecs that don't use the threshold (see {@link GradientCodec#usesThreshold()}), such as
+         * {@link org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.TopKCodec}, don't use the default
+         * residual post processor either. Setting a non-null residual post processor explicitly for such a codec
+         * is an error.
+         *
+         * @param codec Codec to use
+         */
+        public Builder codec(GradientCodec codec){
+            this.codec = codec;
+            return this;
+        }
+
         public SharedTrainingMaster build() {
+            if (codec != null && !codec.usesThreshold() && residualPostProcessor != null) {
+                if (residualPostProcessorSet)
+                    throw new DL4JInvalidConfigException("Residual post processor " + residualPostProcessor + " is based on the "
+                            + "encoding threshold, but codec " + codec + " doesn't use the threshold. Set residualPostProcessor(null) "
+                            + "or use a codec that uses the threshold");
+                residualPostProcessor = null;
+            }
+
             SharedTrainingMaster master = new SharedTrainingMaster(voidConfiguration, numWorkers, rddTrainingApproach,
                             storageLevel, collectTrainingStats, repartitionStrategy, repartition,
                         thresholdAlgorithm, residualPostProcessor, rddDataSetNumExamples, batchSize,
@@ -1259,6 +1317,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
                     workerPeriodicGCFrequency, encodingDebugMode);
             if (transport != null)
                 master.transport = this.transport;
+            master.gradientsBucketSize = this.gradientsBucketSize;
+            master.codec = this.codec;
 
             return master;
         }
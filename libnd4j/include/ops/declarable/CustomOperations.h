@@ -40,6 +40,7 @@
 #include <ops/declarable/headers/third_party.h>
 #include <ops/declarable/headers/tests.h>
 #include <ops/declarable/headers/kernels.h>
+#include <ops/declarable/headers/updaters.h>
 #include <ops/declarable/headers/BarnesHutTsne.h>
 #include <dll.h>
 #include <helpers/shape.h>
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+#include <op_boilerplate.h>
+#if NOT_EXCLUDED(OP_fused_nesterovs_updater)
+
+#include <ops/declarable/CustomOperations.h>
+#include <ops/declarable/helpers/updaters.h>
+
+namespace nd4j {
+    namespace ops {
+        CONFIGURABLE_OP_IMPL(fused_nesterovs_updater, 3, 3, true, 5, 0) {
+            auto gradient = INPUT_VARIABLE(0);
+            auto params = INPUT_VARIABLE(1);
+            auto stateV = INPUT_VARIABLE(2);
+
+            REQUIRE_TRUE(block.isInplace(), 0, "fused_nesterovs_updater: this operation requires inplace execution only");
+            REQUIRE_TRUE(gradient->lengthOf() == params->lengthOf() && gradient->lengthOf() == stateV->lengthOf(), 0,
+                         "fused_nesterovs_updater: gradient, params and state arrays must have the same length, got %lld, %lld and %lld",
+                         gradient->lengthOf(), params->lengthOf(), stateV->lengthOf());
+            REQUIRE_TRUE(gradient->dataType() == params->dataType() && gradient->dataType() == stateV->dataType(), 0,
+                         "fused_nesterovs_updater: all input arrays must have the same data type");
+
+            helpers::FusedRegularization reg = {T_ARG(2), T_ARG(3), T_ARG(4)};
+            helpers::fusedNesterovsUpdater(block.launchContext(), *gradient, *params, *stateV, T_ARG(0), T_ARG(1), reg);
+
+            return Status::OK();
+        }
+
+        DECLARE_TYPES(fused_nesterovs_updater) {
+            getOpDescriptor()
+                    ->setAllowedInputTypes({ALL_FLOATS})
+                    ->setSameMode(true);
+        }
+    }
+}
+
+#endif
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+#ifndef LIBND4J_HEADERS_UPDATERS_H
+#define LIBND4J_HEADERS_UPDATERS_H
+
+#include <ops/declarable/headers/common.h>
+
+namespace nd4j {
+    namespace ops {
+        /**
+         * Fused updaters: regularization and updater are applied in a single pass over the gradient, parameters and
+         * updater state, instead of one op per step. All of these ops are in-place only: gradient array is replaced with
+         * the update (i.e., params -= gradient should be applied afterwards), and updater state arrays are modified.
+         *
+         * Common T arguments, after updater-specific ones:
+         * l1          - L1 regularization coefficient, applied to gradient before updater
+         * l2          - L2 regularization coefficient, applied to gradient before updater
+         * weightDecay - weight decay coefficient (including learning rate, if required), applied to update after updater
+         */
+
+        /**
+         * Adam updater
+         * Input arrays: gradient, params, M state, V state
+         * T arguments: learningRate, beta1, beta2, epsilon, l1, l2, weightDecay
+         * Int arguments: iteration
+         */
+        #if NOT_EXCLUDED(OP_fused_adam_updater)
+        DECLARE_CONFIGURABLE_OP(fused_adam_updater, 4, 4, true, 7, 1);
+        #endif
+
+        /**
+         * Nesterov momentum updater
+         * Input arrays: gradient, params, V state
+         * T arguments: learningRate, momentum, l1, l2, weightDecay
+         */
+        #if NOT_EXCLUDED(OP_fused_nesterovs_updater)
+        DECLARE_CONFIGURABLE_OP(fused_nesterovs_updater, 3, 3, true, 5, 0);
+        #endif
+
+        /**
+         * RMSProp updater
+         * Input arrays: gradient, params, G state
+         * T arguments: learningRate, rmsDecay, epsilon, l1, l2, weightDecay
+         */
+        #if NOT_EXCLUDED(OP_fused_rms_prop_updater)
+        DECLARE_CONFIGURABLE_OP(fused_rms_prop_updater, 3, 3, true, 6, 0);
+        #endif
+    }
+}
+
+#endif //LIBND4J_HEADERS_UPDATERS_H
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+#include <ops/declarable/helpers/updaters.h>
+#include <templatemath.h>
+
+namespace nd4j {
+    namespace ops {
+        namespace helpers {
+
+            // offset of element e within array, with fast path for contiguous arrays
+            FORCEINLINE Nd4jLong updaterOffset(Nd4jLong e, const Nd4jLong *shapeInfo, bool contiguous) {
+                return contiguous ? e : shape::getIndexOffset(e, shapeInfo);
+            }
+
+            // pre-updater regularization: gradient + l1 * sign(param) + l2 * param
+            template <typename T>
+            FORCEINLINE T regularizedGradient(T g, T p, T l1, T l2) {
+                return g + l1 * static_cast<T>((p > static_cast<T>(0)) - (p < static_cast<T>(0))) + l2 * p;
+            }
+
+            static bool allContiguous(const std::initializer_list<const NDArray*> &arrays) {
+                char order = arrays.begin()[0]->ordering();
+                for (auto arr : arrays)
+                    if (arr->ews() != 1 || arr->ordering() != order)
+                        return false;
+
+                return true;
+            }
+
+            template <typename T>
+            static void fusedAdamUpdater_(NDArray &gradient, const NDArray &params, NDArray &stateM, NDArray &stateV, double dLr, double dBeta1, double dBeta2, double dEpsilon, int iteration, const FusedRegularization &reg) {
+                auto g = gradient.bufferAsT<T>();
+                auto p = params.bufferAsT<T>();
+                auto m = stateM.bufferAsT<T>();
+                auto v = stateV.bufferAsT<T>();
+
+                const Nd4jLong *gShape = gradient.getShapeInfo();
+                const Nd4jLong *pShape = params.getShapeInfo();
+                const Nd4jLong *mShape = stateM.getShapeInfo();
+                const Nd4jLong *vShape = stateV.getShapeInfo();
+                const bool contiguous = allContiguous({&gradient, &params, &stateM, &stateV});
+
+                const double beta1t = nd4j::math::nd4j_pow<double, double, double>(dBeta1, iteration + 1);
+                const double beta2t = nd4j::math::nd4j_pow<double, double, double>(dBeta2, iteration + 1);
+                double dAlphat = dLr * nd4j::math::nd4j_sqrt<double, double>(1.0 - beta2t) / (1.0 - beta1t);
+                if (nd4j::math::nd4j_isnan(dAlphat) || dAlphat == 0.0)
+                    dAlphat = dEpsilon;
+
+                const T beta1 = static_cast<T>(dBeta1);
+                const T beta2 = static_cast<T>(dBeta2);
+                const T oneMinusBeta1 = static_cast<T>(1.0 - dBeta1);
+                const T oneMinusBeta2 = static_cast<T>(1.0 - dBeta2);
+                const T alphat = static_cast<T>(dAlphat);
+                const T epsilon = static_cast<T>(dEpsilon);
+                const T l1 = static_cast<T>(reg.l1);
+                const T l2 = static_cast<T>(reg.l2);
+                const T wd = static_cast<T>(reg.weightDecay);
+
+                const Nd4jLong length = gradient.lengthOf();
+                PRAGMA_OMP_PARALLEL_FOR_SIMD
+                for (Nd4jLong e = 0; e < length; e++) {
+                    auto gOffset = updaterOffset(e, gShape, contiguous);
+                    auto pOffset = updaterOffset(e, pShape, contiguous);
+                    auto mOffset = updaterOffset(e, mShape, contiguous);
+                    auto vOffset = updaterOffset(e, vShape, contiguous);
+
+                    const T param = p[pOffset];
+                    const T grad = regularizedGradient<T>(g[gOffset], param, l1, l2);
+                    const T mNew = beta1 * m[mOffset] + oneMinusBeta1 * grad;
+                    const T vNew = beta2 * v[vOffset] + oneMinusBeta2 * grad * grad;
+                    m[mOffset] = mNew;
+                    v[vOffset] = vNew;
+                    g[gOffset] = alphat * mNew / (nd4j::math::nd4j_sqrt<T, T>(vNew) + epsilon) + wd * param;
+                }
+            }
+
+            template <typename T>
+            static void fusedNesterovsUpdater_(NDArray &gradient, const NDArray &params, NDArray &stateV, double dLr, double dMomentum, const FusedRegularization &reg) {
+                auto g = gradient.bufferAsT<T>();
+                auto p = params.bufferAsT<T>();
+                auto v = stateV.bufferAsT<T>();
+
+                const Nd4jLong *gShape = gradient.getShapeInfo();
+                const Nd4jLong *pShape = params.getShapeInfo();
+                const Nd4jLong *vShape = stateV.getShapeInfo();
+                const bool contiguous = allContiguous({&gradient, &params, &stateV});
+
+                const T lr = static_cast<T>(dLr);
+                const T momentum = static_cast<T>(dMomentum);
+                const T momentumPlusOne = static_cast<T>(dMomentum + 1.0);
+                const T l1 = static_cast<T>(reg.l1);
+                const T l2 = static_cast<T>(reg.l2);
+                const T wd = static_cast<T>(reg.weightDecay);
+
+                const Nd4jLong length = gradient.lengthOf();
+                PRAGMA_OMP_PARALLEL_FOR_SIMD
+                for (Nd4jLong e = 0; e < length; e++) {
+                    auto gOffset = updaterOffset(e, gShape, contiguous);
+                    auto pOffset = updaterOffset(e, pShape, contiguous);
+                    auto vOffset = updaterOffset(e, vShape, contiguous);
+
+                    const T param = p[pOffset];
+                    const T grad = regularizedGradient<T>(g[gOffset], param, l1, l2);
+                    // v = mu * vPrev - lr * gradient; update = mu * vPrev - (1 + mu) * v
+                    const T vPrev = v[vOffset];
+                    const T vNew = momentum * vPrev - lr * grad;
+                    v[vOffset] = vNew;
+                    g[gOffset] = momentum * vPrev - momentumPlusOne * vNew + wd * param;
+                }
+            }
+
+            template <typename T>
+            static void fusedRmsPropUpdater_(NDArray &gradient, const NDArray &params, NDArray &stateG, double dLr, double dRmsDecay, double dEpsilon, const FusedRegularization &reg) {
+                auto g = gradient.bufferAsT<T>();
+                auto p = params.bufferAsT<T>();
+                auto c = stateG.bufferAsT<T>();
+
+                const Nd4jLong *gShape = gradient.getShapeInfo();
+                const Nd4jLong *pShape = params.getShapeInfo();
+                const Nd4jLong *cShape = stateG.getShapeInfo();
+                const bool contiguous = allContiguous({&gradient, &params, &stateG});
+
+                const T lr = static_cast<T>(dLr);
+                const T rmsDecay = static_cast<T>(dRmsDecay);
+                const T oneMinusDecay = static_cast<T>(1.0 - dRmsDecay);
+                const T epsilon = static_cast<T>(dEpsilon);
+                const T l1 = static_cast<T>(reg.l1);
+                const T l2 = static_cast<T>(reg.l2);
+                const T wd = static_cast<T>(reg.weightDecay);
+
+                const Nd4jLong length = gradient.lengthOf();
+                PRAGMA_OMP_PARALLEL_FOR_SIMD
+                for (Nd4jLong e = 0; e < length; e++) {
+                    auto gOffset = updaterOffset(e, gShape, contiguous);
+                    auto pOffset = updaterOffset(e, pShape, contiguous);
+                    auto cOffset = updaterOffset(e, cShape, contiguous);
+
+                    const T param = p[pOffset];
+                    const T grad = regularizedGradient<T>(g[gOffset], param, l1, l2);
+                    const T cNew = rmsDecay * c[cOffset] + oneMinusDecay * grad * grad;
+                    c[cOffset] = cNew;
+                    g[gOffset] = lr * grad / (nd4j::math::nd4j_sqrt<T, T>(cNew) + epsilon) + wd * param;
+                }
+            }
+
+            void fusedAdamUpdater(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateM, NDArray &stateV,
+                                  double lr, double beta1, double beta2, double epsilon, int iteration, const FusedRegularization &reg) {
+                BUILD_SINGLE_SELECTOR(gradient.dataType(), fusedAdamUpdater_, (gradient, params, stateM, stateV, lr, beta1, beta2, epsilon, iteration, reg), FLOAT_TYPES);
+            }
+
+            void fusedNesterovsUpdater(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateV,
+                                       double lr, double momentum, const FusedRegularization &reg) {
+                BUILD_SINGLE_SELECTOR(gradient.dataType(), fusedNesterovsUpdater_, (gradient, params, stateV, lr, momentum, reg), FLOAT_TYPES);
+            }
+
+            void fusedRmsPropUpdater(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateG,
+                                     double lr, double rmsDecay, double epsilon, const FusedRegularization &reg) {
+                BUILD_SINGLE_SELECTOR(gradient.dataType(), fusedRmsPropUpdater_, (gradient, params, stateG, lr, rmsDecay, epsilon, reg), FLOAT_TYPES);
+            }
+
+            BUILD_SINGLE_TEMPLATE(template void fusedAdamUpdater_, (NDArray &gradient, const NDArray &params, NDArray &stateM, NDArray &stateV, double dLr, double dBeta1, double dBeta2, double dEpsilon, int iteration, const FusedRegularization &reg), FLOAT_TYPES);
+            BUILD_SINGLE_TEMPLATE(template void fusedNesterovsUpdater_, (NDArray &gradient, const NDArray &params, NDArray &stateV, double dLr, double dMomentum, const FusedRegularization &reg), FLOAT_TYPES);
+            BUILD_SINGLE_TEMPLATE(template void fusedRmsPropUpdater_, (NDArray &gradient, const NDArray &params, NDArray &stateG, double dLr, double dRmsDecay, double dEpsilon, const FusedRegularization &reg), FLOAT_TYPES);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+#include <ops/declarable/helpers/updaters.h>
+#include <templatemath.h>
+
+namespace nd4j {
+    namespace ops {
+        namespace helpers {
+
+            static __device__ FORCEINLINE Nd4jLong updaterOffset(Nd4jLong e, const Nd4jLong *shapeInfo, bool contiguous) {
+                return contiguous ? e : shape::getIndexOffset(e, shapeInfo);
+            }
+
+            template <typename T>
+            static __device__ FORCEINLINE T regularizedGradient(T g, T p, T l1, T l2) {
+                return g + l1 * static_cast<T>((p > static_cast<T>(0)) - (p < static_cast<T>(0))) + l2 * p;
+            }
+
+            static bool allContiguous(const std::initializer_list<const NDArray*> &arrays) {
+                char order = arrays.begin()[0]->ordering();
+                for (auto arr : arrays)
+                    if (arr->ews() != 1 || arr->ordering() != order)
+                        return false;
+
+                return true;
+            }
+
+            template <typename T>
+            static __global__ void fusedAdamKernel(void *vg, const Nd4jLong *gShape, const void *vp, const Nd4jLong *pShape, void *vm, const Nd4jLong *mShape, void *vv, const Nd4jLong *vShape,
+                                                   Nd4jLong length, bool contiguous, T beta1, T beta2, T alphat, T epsilon, T l1, T l2, T wd) {
+                auto g = reinterpret_cast<T*>(vg);
+                auto p = reinterpret_cast<const T*>(vp);
+                auto m = reinterpret_cast<T*>(vm);
+                auto v = reinterpret_cast<T*>(vv);
+
+                for (Nd4jLong e = blockIdx.x * blockDim.x + threadIdx.x; e < length; e += blockDim.x * gridDim.x) {
+                    auto gOffset = updaterOffset(e, gShape, contiguous);
+                    auto pOffset = updaterOffset(e, pShape, contiguous);
+                    auto mOffset = updaterOffset(e, mShape, contiguous);
+                    auto vOffset = updaterOffset(e, vShape, contiguous);
+
+                    const T param = p[pOffset];
+                    const T grad = regularizedGradient<T>(g[gOffset], param, l1, l2);
+                    const T mNew = beta1 * m[mOffset] + (static_cast<T>(1) - beta1) * grad;
+                    const T vNew = beta2 * v[vOffset] + (static_cast<T>(1) - beta2) * grad * grad;
+                    m[mOffset] = mNew;
+                    v[vOffset] = vNew;
+                    g[gOffset] = alphat * mNew / (nd4j::math::nd4j_sqrt<T, T>(vNew) + epsilon) + wd * param;
+                }
+            }
+
+            template <typename T>
+            static __global__ void fusedNesterovsKernel(void *vg, const Nd4jLong *gShape, const void *vp, const Nd4jLong *pShape, void *vv, const Nd4jLong *vShape,
+                                                        Nd4jLong length, bool contiguous, T lr, T momentum, T l1, T l2, T wd) {
+                auto g = reinterpret_cast<T*>(vg);
+                auto p = reinterpret_cast<const T*>(vp);
+                auto v = reinterpret_cast<T*>(vv);
+
+                for (Nd4jLong e = blockIdx.x * blockDim.x + threadIdx.x; e < length; e += blockDim.x * gridDim.x) {
+                    auto gOffset = updaterOffset(e, gShape, contiguous);
+                    auto pOffset = updaterOffset(e, pShape, contiguous);
+                    auto vOffset = updaterOffset(e, vShape, contiguous);
+
+                    const T param = p[pOffset];
+                    const T grad = regularizedGradient<T>(g[gOffset], param, l1, l2);
+                    const T vPrev = v[vOffset];
+                    const T vNew = momentum * vPrev - lr * grad;
+                    v[vOffset] = vNew;
+                    g[gOffset] = momentum * vPrev - (momentum + static_cast<T>(1)) * vNew + wd * param;
+                }
+            }
+
+            template <typename T>
+            static __global__ void fusedRmsPropKernel(void *vg, const Nd4jLong *gShape, const void *vp, const Nd4jLong *pShape, void *vc, const Nd4jLong *cShape,
+                                                      Nd4jLong length, bool contiguous, T lr, T rmsDecay, T epsilon, T l1, T l2, T wd) {
+                auto g = reinterpret_cast<T*>(vg);
+                auto p = reinterpret_cast<const T*>(vp);
+                auto c = reinterpret_cast<T*>(vc);
+
+                for (Nd4jLong e = blockIdx.x * blockDim.x + threadIdx.x; e < length; e += blockDim.x * gridDim.x) {
+                    auto gOffset = updaterOffset(e, gShape, contiguous);
+                    auto pOffset = updaterOffset(e, pShape, contiguous);
+                    auto cOffset = updaterOffset(e, cShape, contiguous);
+
+                    const T param = p[pOffset];
+                    const T grad = regularizedGradient<T>(g[gOffset], param, l1, l2);
+                    const T cNew = rmsDecay * c[cOffset] + (static_cast<T>(1) - rmsDecay) * grad * grad;
+                    c[cOffset] = cNew;
+                    g[gOffset] = lr * grad / (nd4j::math::nd4j_sqrt<T, T>(cNew) + epsilon) + wd * param;
+                }
+            }
+
+            template <typename T>
+            static void fusedAdamUpdater_(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateM, NDArray &stateV, double dLr, double dBeta1, double dBeta2, double dEpsilon, int iteration, const FusedRegularization &reg) {
+                double beta1t = nd4j::math::nd4j_pow<double, double, double>(dBeta1, iteration + 1);
+                double beta2t = nd4j::math::nd4j_pow<double, double, double>(dBeta2, iteration + 1);
+                double alphat = dLr * nd4j::math::nd4j_sqrt<double, double>(1.0 - beta2t) / (1.0 - beta1t);
+                if (nd4j::math::nd4j_isnan(alphat) || alphat == 0.0)
+                    alphat = dEpsilon;
+
+                bool contiguous = allContiguous({&gradient, &params, &stateM, &stateV});
+
+                NDArray::prepareSpecialUse({&gradient, &stateM, &stateV}, {&params});
+                fusedAdamKernel<T><<<256, 512, 1024, *context->getCudaStream()>>>(gradient.specialBuffer(), gradient.specialShapeInfo(), params.getSpecialBuffer(), params.getSpecialShapeInfo(),
+                        stateM.specialBuffer(), stateM.specialShapeInfo(), stateV.specialBuffer(), stateV.specialShapeInfo(), gradient.lengthOf(), contiguous,
+                        static_cast<T>(dBeta1), static_cast<T>(dBeta2), static_cast<T>(alphat), static_cast<T>(dEpsilon), static_cast<T>(reg.l1), static_cast<T>(reg.l2), static_cast<T>(reg.weightDecay));
+                NDArray::registerSpecialUse({&gradient, &stateM, &stateV}, {&params});
+            }
+
+            template <typename T>
+            static void fusedNesterovsUpdater_(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateV, double dLr, double dMomentum, const FusedRegularization &reg) {
+                bool contiguous = allContiguous({&gradient, &params, &stateV});
+
+                NDArray::prepareSpecialUse({&gradient, &stateV}, {&params});
+                fusedNesterovsKernel<T><<<256, 512, 1024, *context->getCudaStream()>>>(gradient.specialBuffer(), gradient.specialShapeInfo(), params.getSpecialBuffer(), params.getSpecialShapeInfo(),
+                        stateV.specialBuffer(), stateV.specialShapeInfo(), gradient.lengthOf(), contiguous,
+                        static_cast<T>(dLr), static_cast<T>(dMomentum), static_cast<T>(reg.l1), static_cast<T>(reg.l2), static_cast<T>(reg.weightDecay));
+                NDArray::registerSpecialUse({&gradient, &stateV}, {&params});
+            }
+
+            template <typename T>
+            static void fusedRmsPropUpdater_(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateG, double dLr, double dRmsDecay, double dEpsilon, const FusedRegularization &reg) {
+                bool contiguous = allContiguous({&gradient, &params, &stateG});
+
+                NDArray::prepareSpecialUse({&gradient, &stateG}, {&params});
+                fusedRmsPropKernel<T><<<256, 512, 1024, *context->getCudaStream()>>>(gradient.specialBuffer(), gradient.specialShapeInfo(), params.getSpecialBuffer(), params.getSpecialShapeInfo(),
+                        stateG.specialBuffer(), stateG.specialShapeInfo(), gradient.lengthOf(), contiguous,
+                        static_cast<T>(dLr), static_cast<T>(dRmsDecay), static_cast<T>(dEpsilon), static_cast<T>(reg.l1), static_cast<T>(reg.l2), static_cast<T>(reg.weightDecay));
+                NDArray::registerSpecialUse({&gradient, &stateG}, {&params});
+            }
+
+            void fusedAdamUpdater(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateM, NDArray &stateV,
+                                  double lr, double beta1, double beta2, double epsilon, int iteration, const FusedRegularization &reg) {
+                BUILD_SINGLE_SELECTOR(gradient.dataType(), fusedAdamUpdater_, (context, gradient, params, stateM, stateV, lr, beta1, beta2, epsilon, iteration, reg), FLOAT_TYPES);
+            }
+
+            void fusedNesterovsUpdater(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateV,
+                                       double lr, double momentum, const FusedRegularization &reg) {
+                BUILD_SINGLE_SELECTOR(gradient.dataType(), fusedNesterovsUpdater_, (context, gradient, params, stateV, lr, momentum, reg), FLOAT_TYPES);
+            }
+
+            void fusedRmsPropUpdater(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateG,
+                                     double lr, double rmsDecay, double epsilon, const FusedRegularization &reg) {
+                BUILD_SINGLE_SELECTOR(gradient.dataType(), fusedRmsPropUpdater_, (context, gradient, params, stateG, lr, rmsDecay, epsilon, reg), FLOAT_TYPES);
+            }
+        }
+    }
+}
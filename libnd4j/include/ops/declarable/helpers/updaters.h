@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+#ifndef LIBND4J_HELPERS_UPDATERS_H
+#define LIBND4J_HELPERS_UPDATERS_H
+
+#include <ops/declarable/helpers/helpers.h>
+
+namespace nd4j {
+    namespace ops {
+        namespace helpers {
+            /**
+             * Regularization coefficients for fused updaters:
+             * l1 and l2 are applied to the gradient before the updater, weightDecay is applied to the update after the
+             * updater (and is expected to already include learning rate, if required)
+             */
+            struct FusedRegularization {
+                double l1;
+                double l2;
+                double weightDecay;
+            };
+
+            /**
+             * Fused Adam update, in a single pass over the arrays: gradient is replaced with the update, and state arrays
+             * are updated in-place. Parameters are read for regularization only
+             */
+            void fusedAdamUpdater(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateM, NDArray &stateV,
+                                  double lr, double beta1, double beta2, double epsilon, int iteration, const FusedRegularization &reg);
+
+            /**
+             * Fused Nesterov momentum update - see fusedAdamUpdater
+             */
+            void fusedNesterovsUpdater(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateV,
+                                       double lr, double momentum, const FusedRegularization &reg);
+
+            /**
+             * Fused RMSProp update - see fusedAdamUpdater
+             */
+            void fusedRmsPropUpdater(nd4j::LaunchContext* context, NDArray &gradient, const NDArray &params, NDArray &stateG,
+                                     double lr, double rmsDecay, double epsilon, const FusedRegularization &reg);
+        }
+    }
+}
+
+#endif //LIBND4J_HELPERS_UPDATERS_H
@@ -150,4 +150,57 @@ TEST_F(DeclarableOpsTests16, test_knn_mindistance_1) {
     auto result = op.execute({&input, &low, &high}, {&output}, {}, {}, {});
     ASSERT_EQ(Status::OK(), result);
 
-}
\ No newline at end of file
+}
+TEST_F(DeclarableOpsTests16, test_fused_adam_updater_1) {
+    auto gradient = NDArrayFactory::create<float>('c', {1, 4}, {0.1f, -0.2f, 0.3f, -0.4f});
+    auto params = NDArrayFactory::create<float>('c', {1, 4}, {1.0f, 2.0f, -1.0f, 0.5f});
+    auto stateM = NDArrayFactory::create<float>('c', {1, 4});
+    auto stateV = NDArrayFactory::create<float>('c', {1, 4});
+
+    // first iteration: bias corrected update is lr * sign(gradient)
+    auto expUpdate = NDArrayFactory::create<float>('c', {1, 4}, {0.01f, -0.01f, 0.01f, -0.01f});
+    auto expM = NDArrayFactory::create<float>('c', {1, 4}, {0.01f, -0.02f, 0.03f, -0.04f});
+    auto expV = NDArrayFactory::create<float>('c', {1, 4}, {1e-5f, 4e-5f, 9e-5f, 1.6e-4f});
+
+    nd4j::ops::fused_adam_updater op;
+    auto status = op.execute({&gradient, &params, &stateM, &stateV}, {&gradient, &params, &stateM, &stateV}, {0.01, 0.9, 0.999, 1e-8, 0.0, 0.0, 0.0}, {0}, {}, true);
+    ASSERT_EQ(Status::OK(), status);
+
+    ASSERT_TRUE(expUpdate.equalsTo(gradient, 1e-4));
+    ASSERT_TRUE(expM.equalsTo(stateM, 1e-6));
+    ASSERT_TRUE(expV.equalsTo(stateV, 1e-8));
+}
+
+TEST_F(DeclarableOpsTests16, test_fused_nesterovs_updater_1) {
+    auto gradient = NDArrayFactory::create<float>('c', {1, 2}, {1.0f, 2.0f});
+    auto params = NDArrayFactory::create<float>('c', {1, 2}, {1.0f, -1.0f});
+    auto stateV = NDArrayFactory::create<float>('c', {1, 2});
+
+    // l2 = 0.5: regularized gradient is 1.5 for both elements
+    auto expUpdate = NDArrayFactory::create<float>('c', {1, 2}, {0.285f, 0.285f});
+    auto expV = NDArrayFactory::create<float>('c', {1, 2}, {-0.15f, -0.15f});
+
+    nd4j::ops::fused_nesterovs_updater op;
+    auto status = op.execute({&gradient, &params, &stateV}, {&gradient, &params, &stateV}, {0.1, 0.9, 0.0, 0.5, 0.0}, {}, {}, true);
+    ASSERT_EQ(Status::OK(), status);
+
+    ASSERT_TRUE(expUpdate.equalsTo(gradient, 1e-5));
+    ASSERT_TRUE(expV.equalsTo(stateV, 1e-5));
+}
+
+TEST_F(DeclarableOpsTests16, test_fused_rms_prop_updater_1) {
+    auto gradient = NDArrayFactory::create<float>('c', {1, 2}, {1.0f, -1.0f});
+    auto params = NDArrayFactory::create<float>('c', {1, 2}, {2.0f, 2.0f});
+    auto stateG = NDArrayFactory::create<float>('c', {1, 2});
+
+    // weight decay 0.01: 0.02 added to the update
+    auto expUpdate = NDArrayFactory::create<float>('c', {1, 2}, {0.4672136f, -0.4272136f});
+    auto expG = NDArrayFactory::create<float>('c', {1, 2}, {0.05f, 0.05f});
+
+    nd4j::ops::fused_rms_prop_updater op;
+    auto status = op.execute({&gradient, &params, &stateG}, {&gradient, &params, &stateG}, {0.1, 0.95, 1e-8, 0.0, 0.0, 0.01}, {}, {}, true);
+    ASSERT_EQ(Status::OK(), status);
+
+    ASSERT_TRUE(expUpdate.equalsTo(gradient, 1e-5));
+    ASSERT_TRUE(expG.equalsTo(stateG, 1e-6));
+}
@@ -0,0 +1,359 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.listeners.profiler;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.autodiff.listeners.At;
+import org.nd4j.autodiff.listeners.BaseListener;
+import org.nd4j.autodiff.listeners.Operation;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+import org.nd4j.shade.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * ProfilingListener: records wall time, input/output shapes, output bytes and thread id for every op executed
+ * by SameDiff (inference and training).<br>
+ * Recorded ops can be exported in Chrome trace event format (open with chrome://tracing or https://ui.perfetto.dev),
+ * or aggregated into a hotspot table, by op type or by op name.<br>
+ * <br>
+ * Usage:
+ * <pre>{@code
+ * ProfilingListener l = new ProfilingListener();
+ * sd.output(placeholders, Collections.<Listener>singletonList(l), "out");
+ * System.out.println(l.hotspotTable(true, 20));
+ * l.writeChromeTrace(new File("trace.json"));
+ * }</pre>
+ * Op time is measured between {@link #preOpExecution(SameDiff, At, SameDiffOp)} and
+ * {@link #opExecution(SameDiff, At, MultiDataSet, SameDiffOp, INDArray[])} calls, so it includes output array
+ * allocation, but not the session overhead between ops.<br>
+ * <br>
+ * PLEASE NOTE: at most maxEvents individual op executions are kept for the trace, but all op executions are included
+ * in the aggregated statistics. Use {@link #reset()} to drop warmup iterations.
+ */
+public class ProfilingListener extends BaseListener {
+    public static final int DEFAULT_MAX_EVENTS = 1000000;
+
+    private final int maxEvents;
+    private long startNanos;
+    private final Map<Long, Long> opStartByThread = new HashMap<>();
+    private final Map<String, long[]> shapes = new HashMap<>();
+    private final List<OpEvent> events = new ArrayList<>();
+    private final Map<String, OpStats> statsByType = new LinkedHashMap<>();
+    private final Map<String, OpStats> statsByName = new LinkedHashMap<>();
+    private long droppedEvents;
+
+    public ProfilingListener() {
+        this(DEFAULT_MAX_EVENTS);
+    }
+
+    /**
+     * @param maxEvents Maximum number of op executions to keep for the trace
+     */
+    public ProfilingListener(int maxEvents) {
+        this.maxEvents = maxEvents;
+        this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public boolean isActive(Operation operation) {
+        return true;
+    }
+
+    @Override
+    public synchronized void preOpExecution(SameDiff sd, At at, SameDiffOp op) {
+        opStartByThread.put(Thread.currentThread().getId(), System.nanoTime());
+    }
+
+    @Override
+    public synchronized void opExecution(SameDiff sd, At at, MultiDataSet batch, SameDiffOp op, INDArray[] outputs) {
+        long end = System.nanoTime();
+        long threadId = Thread.currentThread().getId();
+        Long start = opStartByThread.remove(threadId);
+        if (start == null)
+            return;
+
+        //Inputs aren't available from the op at this point: use shapes of activations seen so far instead
+        List<String> inNames = op.getInputsToOp();
+        long[][] inShapes = new long[inNames == null ? 0 : inNames.size()][];
+        for (int i = 0; i < inShapes.length; i++)
+            inShapes[i] = shapeOf(sd, inNames.get(i));
+
+        long[][] outShapes = new long[outputs == null ? 0 : outputs.length][];
+        long outBytes = 0;
+        for (int i = 0; i < outShapes.length; i++) {
+            if (outputs[i] == null)
+                continue;
+            outShapes[i] = outputs[i].shape();
+            if (!outputs[i].isEmpty())
+                outBytes += outputs[i].length() * outputs[i].dataType().width();
+        }
+
+        String opType = op.getOp().getClass().getSimpleName();
+        long duration = end - start;
+        OpEvent e = new OpEvent(op.getName(), opType, threadId, start - startNanos, duration, inShapes, outShapes,
+                outBytes, at.operation(), at.iteration());
+
+        if (events.size() < maxEvents)
+            events.add(e);
+        else
+            droppedEvents++;
+
+        stats(statsByType, opType, opType).add(duration, outBytes);
+        stats(statsByName, op.getName(), opType).add(duration, outBytes);
+    }
+
+    @Override
+    public synchronized void activationAvailable(SameDiff sd, At at, MultiDataSet batch, SameDiffOp op, String varName, INDArray activation) {
+        if (activation != null)
+            shapes.put(varName, activation.shape());
+    }
+
+    protected long[] shapeOf(SameDiff sd, String varName) {
+        long[] shape = shapes.get(varName);
+        if (shape != null || !sd.hasVariable(varName) || sd.getVariable(varName).getVariableType() == VariableType.ARRAY)
+            return shape;
+
+        INDArray arr = sd.getArrForVarName(varName);
+        return arr == null ? null : arr.shape();
+    }
+
+    private static OpStats stats(Map<String, OpStats> m, String key, String opType) {
+        OpStats s = m.get(key);
+        if (s == null) {
+            s = new OpStats(key, opType);
+            m.put(key, s);
+        }
+        return s;
+    }
+
+    /**
+     * Clear all recorded op executions and statistics
+     */
+    public synchronized void reset() {
+        opStartByThread.clear();
+        events.clear();
+        statsByType.clear();
+        statsByName.clear();
+        droppedEvents = 0;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return Recorded op executions, in order of completion
+     */
+    public synchronized List<OpEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * @return Number of op executions that weren't kept for the trace, due to maxEvents limit
+     */
+    public synchronized long getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * Aggregated statistics, sorted by total time (descending)
+     *
+     * @param byOpType If true: aggregate by op type (class). If false: aggregate by op name
+     */
+    public synchronized List<OpStats> hotspots(boolean byOpType) {
+        List<OpStats> l = new ArrayList<>();
+        for (OpStats s : (byOpType ? statsByType : statsByName).values())
+            l.add(s.copy());
+        Collections.sort(l, new Comparator<OpStats>() {
+            @Override
+            public int compare(OpStats o1, OpStats o2) {
+                return Long.compare(o2.getTotalNanos(), o1.getTotalNanos());
+            }
+        });
+        return l;
+    }
+
+    /**
+     * Format the hotspots as a table
+     *
+     * @param byOpType If true: aggregate by op type (class). If false: aggregate by op name
+     * @param maxRows  Maximum number of rows. <= 0 for all rows
+     */
+    public String hotspotTable(boolean byOpType, int maxRows) {
+        List<OpStats> l = hotspots(byOpType);
+        long total = 0;
+        int keyLength = byOpType ? 7 : 4;
+        for (OpStats s : l) {
+            total += s.getTotalNanos();
+            keyLength = Math.max(keyLength, s.getKey().length());
+        }
+
+        String format = "%-" + keyLength + "s  %10s  %12s  %12s  %12s  %8s  %12s%n";
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(format, byOpType ? "Op type" : "Op name", "Count", "Total (ms)", "Mean (us)",
+                "Max (us)", "% Time", "Output (MB)"));
+        int rows = 0;
+        for (OpStats s : l) {
+            if (maxRows > 0 && rows++ >= maxRows)
+                break;
+            sb.append(String.format(format, s.getKey(), s.getCount(),
+                    String.format("%.3f", s.getTotalNanos() / 1e6),
+                    String.format("%.1f", s.getMeanNanos() / 1e3),
+                    String.format("%.1f", s.getMaxNanos() / 1e3),
+                    String.format("%.2f", total == 0 ? 0.0 : 100.0 * s.getTotalNanos() / total),
+                    String.format("%.3f", s.getTotalBytes() / (1024.0 * 1024.0))));
+        }
+        sb.append(String.format("Total op time: %.3f ms", total / 1e6));
+        return sb.toString();
+    }
+
+    /**
+     * @return Recorded op executions in Chrome trace event format (JSON)
+     */
+    public String toChromeTrace() {
+        try {
+            return new ObjectMapper().writeValueAsString(chromeTrace());
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing Chrome trace", e);
+        }
+    }
+
+    /**
+     * Write recorded op executions to the specified file, in Chrome trace event format (JSON)
+     */
+    public void writeChromeTrace(@NonNull File file) throws IOException {
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, chromeTrace());
+    }
+
+    protected Map<String, Object> chromeTrace() {
+        List<Map<String, Object>> traceEvents = new ArrayList<>();
+        for (OpEvent e : getEvents()) {
+            Map<String, Object> args = new LinkedHashMap<>();
+            args.put("opType", e.getOpType());
+            args.put("operation", String.valueOf(e.getOperation()));
+            args.put("iteration", e.getIteration());
+            args.put("inputShapes", shapesToString(e.getInputShapes()));
+            args.put("outputShapes", shapesToString(e.getOutputShapes()));
+            args.put("outputBytes", e.getOutputBytes());
+
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("name", e.getOpName());
+            m.put("cat", e.getOpType());
+            m.put("ph", "X");
+            //Trace timestamps and durations are in microseconds
+            m.put("ts", e.getStartNanos() / 1e3);
+            m.put("dur", e.getDurationNanos() / 1e3);
+            m.put("pid", 0);
+            m.put("tid", e.getThreadId());
+            m.put("args", args);
+            traceEvents.add(m);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("traceEvents", traceEvents);
+        out.put("displayTimeUnit", "ms");
+        return out;
+    }
+
+    private static List<String> shapesToString(long[][] shapes) {
+        List<String> l = new ArrayList<>(shapes.length);
+        for (long[] s : shapes)
+            l.add(s == null ? null : Arrays.toString(s));
+        return l;
+    }
+
+    /**
+     * A single op execution
+     */
+    @Getter
+    public static class OpEvent {
+        private final String opName;
+        private final String opType;
+        private final long threadId;
+        /**
+         * Start time, relative to listener creation (or last reset)
+         */
+        private final long startNanos;
+        private final long durationNanos;
+        /**
+         * Input shapes, null for inputs with unknown shape
+         */
+        private final long[][] inputShapes;
+        private final long[][] outputShapes;
+        private final long outputBytes;
+        private final Operation operation;
+        private final int iteration;
+
+        public OpEvent(String opName, String opType, long threadId, long startNanos, long durationNanos, long[][] inputShapes,
+                       long[][] outputShapes, long outputBytes, Operation operation, int iteration) {
+            this.opName = opName;
+            this.opType = opType;
+            this.threadId = threadId;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.inputShapes = inputShapes;
+            this.outputShapes = outputShapes;
+            this.outputBytes = outputBytes;
+            this.operation = operation;
+            this.iteration = iteration;
+        }
+    }
+
+    /**
+     * Aggregated statistics for an op type or op name
+     */
+    @Getter
+    public static class OpStats {
+        private final String key;
+        private final String opType;
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long totalBytes;
+
+        public OpStats(String key, String opType) {
+            this.key = key;
+            this.opType = opType;
+        }
+
+        protected void add(long nanos, long bytes) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            totalBytes += bytes;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0.0 : totalNanos / (double) count;
+        }
+
+        protected OpStats copy() {
+            OpStats s = new OpStats(key, opType);
+            s.count = count;
+            s.totalNanos = totalNanos;
+            s.maxNanos = maxNanos;
+            s.totalBytes = totalBytes;
+            return s;
+        }
+    }
+}
@@ -265,6 +265,14 @@ public class SameDiff extends SDBaseOps {
     @Setter
     boolean logExecution = true;
 
+    /**
+     * If true: ops in independent branches of the graph are executed in parallel during inference.
+     * Only applies to graphs without control flow - see {@link InferenceSession#setParallelExecution(boolean)}
+     */
+    @Getter
+    @Setter
+    boolean parallelExecution = false;
+
     @Getter
     private SameDiff parent;
 
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * ExecutionPlan: linearized execution order for a static (no control flow) SameDiff subgraph.<br>
+ * Every variable used during execution is assigned an integer slot, and every step holds precomputed input and
+ * output slots for its op, so plan can be executed by walking a flat array, without dependency tracking or
+ * any lookups by variable name/VarId.<br>
+ * Plans are built and cached by {@link InferenceSession}, keyed by {@link Key}
+ */
+@Getter
+@AllArgsConstructor
+public class ExecutionPlan {
+    /**
+     * Plans aren't available for dynamic graphs (control flow ops, control dependencies etc) - in this case
+     * plan will be marked as dynamic, and regular execution is used
+     */
+    private final boolean dynamic;
+    /**
+     * Number of ops and variables in the graph at plan build time - used as a quick check for graph structure changes.
+     * Dynamic plans are validated by these counts only, since they fall back to regular execution anyway
+     */
+    private final int numGraphOps;
+    private final int numGraphVariables;
+
+    private final int numSlots;
+    private final Step[] steps;
+
+    /**
+     * Constants and variables: slot index and variable name, values are fetched at the start of every execution
+     */
+    private final int[] constSlots;
+    private final String[] constNames;
+    /**
+     * Placeholders required for execution: slot index and placeholder name
+     */
+    private final int[] placeholderSlots;
+    private final String[] placeholderNames;
+    /**
+     * Requested outputs and required activations: slot index and variable name
+     */
+    private final int[] outputSlots;
+    private final String[] outputNames;
+    /**
+     * Liveness of intermediate arrays, by slot: index of the step that produced the array, and index of the step
+     * after which it is released. -1 for slots that aren't produced by an op (or are an alias of another slot, as for
+     * Identity ops), or are never released (i.e., outputs)
+     */
+    private final int[] producedAt;
+    private final int[] releasedAt;
+    /**
+     * Root slot for every slot: slot of the array it holds. Differs from the slot itself only for Identity outputs,
+     * which hold the same array as their input
+     */
+    private final int[] rootSlots;
+    /**
+     * Dependencies between steps, used for parallel execution: number of distinct steps that each step depends on,
+     * the steps that depend on each step, and the number of distinct steps that use each root slot as input
+     */
+    private final int[] numDependencies;
+    private final int[][] dependents;
+    private final int[] numConsumers;
+    /**
+     * Graph structure snapshot for all slots: variable name, Variable instance, its type and the op it's an output of.
+     * Together with the op inputs/outputs stored in every {@link Step}, used to detect any structure change that
+     * keeps the number of ops and variables the same
+     */
+    private final String[] slotNames;
+    private final Variable[] slotVariables;
+    private final VariableType[] slotTypes;
+    private final String[] slotProducers;
+
+    /**
+     * Memory plan for intermediate arrays, built after the first execution of this plan - see {@link MemoryPlan}
+     */
+    @Setter
+    private MemoryPlan memoryPlan;
+
+    protected static ExecutionPlan dynamicPlan(int numGraphOps, int numGraphVariables) {
+        return new ExecutionPlan(true, numGraphOps, numGraphVariables, 0, null, null, null, null, null, null, null,
+                null, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    /**
+     * @return True if graph structure wasn't changed since this plan was built: the same ops, with the same inputs,
+     * outputs and no control dependencies, and the same variables of the same types
+     */
+    public boolean isValidFor(@NonNull SameDiff sameDiff) {
+        if (numGraphOps != sameDiff.getOps().size() || numGraphVariables != sameDiff.getVariables().size())
+            return false;
+
+        if (dynamic)
+            return true;
+
+        for (int i = 0; i < slotNames.length; i++) {
+            Variable v = sameDiff.getVariables().get(slotNames[i]);
+            if (v != slotVariables[i] || v.getVariable().getVariableType() != slotTypes[i] ||
+                    !Objects.equals(v.getOutputOfOp(), slotProducers[i]) || !isEmpty(v.getControlDeps()))
+                return false;
+        }
+
+        for (Step step : steps) {
+            SameDiffOp op = sameDiff.getOps().get(step.op.getName());
+            if (op != step.op || !sameNames(step.inputNames, op.getInputsToOp()) || !sameNames(step.outputNames, op.getOutputsOfOp()) ||
+                    !isEmpty(op.getControlDeps()) || !isEmpty(op.getVarControlDeps()) || !isEmpty(op.getControlDepFor()))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean isEmpty(List<String> list) {
+        return list == null || list.isEmpty();
+    }
+
+    private static boolean sameNames(List<String> saved, List<String> current) {
+        return current == null ? saved.isEmpty() : saved.equals(current);
+    }
+
+    /**
+     * Single execution step: one op, with slots for its inputs (in op arg order) and outputs.
+     * releaseSlots are the slots whose arrays are no longer required once this step has been executed.
+     * inputNames and outputNames are copies of op inputs/outputs at plan build time (empty lists if op had none)
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Step {
+        private final SameDiffOp op;
+        private final int[] inputSlots;
+        private final int[] outputSlots;
+        private final int[] releaseSlots;
+        private final List<String> inputNames;
+        private final List<String> outputNames;
+    }
+
+    /**
+     * Plan cache key: requested outputs, required activations, and shapes of the provided placeholders
+     */
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    public static class Key {
+        @NonNull
+        private final Set<String> outputs;
+        @NonNull
+        private final Set<String> requiredActivations;
+        @NonNull
+        private final Map<String, LongShapeDescriptor> placeholderShapes;
+    }
+}
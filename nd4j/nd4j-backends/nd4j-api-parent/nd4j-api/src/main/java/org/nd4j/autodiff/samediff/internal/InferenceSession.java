@@ -46,8 +46,14 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.INDArrayIndex;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.util.ArrayUtil;
+import org.nd4j.shade.guava.primitives.Ints;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * InferenceSession: Performs inference (forward pass) on a SameDiff instance to get the outputs of the requested nodes.<br>
@@ -81,6 +87,58 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
     @Setter
     private IdentityDependencyTracker<INDArray, Dep> arrayUseTracker = new IdentityDependencyTracker<>();
 
+    /**
+     * If true: for static graphs, linearized execution plans are built once and reused for repeated calls with the
+     * same outputs and placeholder shapes. See {@link ExecutionPlan}
+     */
+    @Getter
+    @Setter
+    protected boolean planCacheEnabled = true;
+    /**
+     * Maximum number of execution plans to keep - least recently used plans are evicted first
+     */
+    @Getter
+    @Setter
+    protected int maxCachedPlans = DEFAULT_MAX_CACHED_PLANS;
+    /**
+     * If true: intermediate arrays of static execution plans are placed into a reusable arena, with memory reuse
+     * between arrays that aren't live at the same time. See {@link MemoryPlan}
+     */
+    @Getter
+    @Setter
+    protected boolean memoryPlanningEnabled = true;
+    protected final Map<ExecutionPlan.Key, ExecutionPlan> planCache = new LinkedHashMap<ExecutionPlan.Key, ExecutionPlan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ExecutionPlan.Key, ExecutionPlan> eldest) {
+            if (size() > maxCachedPlans) {
+                closeMemoryPlan(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    /**
+     * If true: ops in independent branches of static execution plans are executed in parallel using {@link #executor}.
+     * Graphs with control flow are always executed sequentially. Parallel execution is also enabled when
+     * {@link SameDiff#isParallelExecution()} is true
+     */
+    @Getter
+    @Setter
+    protected boolean parallelExecution = false;
+    /**
+     * Executor used for parallel execution - {@link ForkJoinPool#commonPool()} is used if not set
+     */
+    @Getter
+    @Setter
+    protected ForkJoinPool executor;
+    //Planned output arrays for the op currently being parameterized, by output index - see allocateOutput
+    private final ThreadLocal<INDArray[]> plannedOutputs = new ThreadLocal<>();
+    //Memory manager and listeners aren't thread safe - used to guard them during parallel execution
+    private final Object mmgrLock = new Object();
+    private final Object listenerLock = new Object();
+
+    public static final int DEFAULT_MAX_CACHED_PLANS = 16;
+
 
     public InferenceSession(@NonNull SameDiff sameDiff) {
         super(sameDiff);
@@ -88,6 +146,702 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
         mmgr = new ArrayCloseMemoryMgr();   //TODO replace this with new (planned) array reuse memory manager
     }
 
+    /**
+     * Remove all cached execution plans, and release memory held by their memory plans. Graph structure changes are
+     * detected automatically (see {@link ExecutionPlan#isValidFor(SameDiff)}), so this is never required for correctness
+     */
+    public void clearPlanCache() {
+        for (ExecutionPlan p : planCache.values())
+            closeMemoryPlan(p);
+        planCache.clear();
+    }
+
+    /**
+     * Get the peak memory size of the intermediate arrays for the specified outputs and placeholder shapes, as per
+     * the {@link MemoryPlan}. Memory plans are built during the first execution for the given outputs and placeholder
+     * shapes, hence this value is available only after the first (warmup) call.
+     *
+     * @param variables           Output variables
+     * @param placeholderValues   Placeholder values (only shapes are used)
+     * @param requiredActivations Additional required activations, may be null
+     * @return Planned peak size in bytes, or -1 if no memory plan is available
+     */
+    public long getPlannedPeakBytes(@NonNull List<String> variables, Map<String, INDArray> placeholderValues, Collection<String> requiredActivations) {
+        if (requiredActivations == null)
+            requiredActivations = Collections.emptyList();
+
+        ExecutionPlan plan = planCache.get(planKey(variables, placeholderValues, requiredActivations));
+        if (plan == null || plan.isDynamic() || plan.getMemoryPlan() == null)
+            return -1;
+
+        return plan.getMemoryPlan().getPeakBytes();
+    }
+
+    protected void closeMemoryPlan(ExecutionPlan plan) {
+        if (plan != null && plan.getMemoryPlan() != null) {
+            plan.getMemoryPlan().close();
+            plan.setMemoryPlan(null);
+        }
+    }
+
+    @Override
+    public Map<String, INDArray> output(@NonNull List<String> variables, Map<String, INDArray> placeholderValues,
+                                        MultiDataSet batch, Collection<String> requiredActivations, List<Listener> listeners, At at) {
+        if (!planCacheEnabled)
+            return super.output(variables, placeholderValues, batch, requiredActivations, listeners, at);
+
+        if (requiredActivations == null)
+            requiredActivations = Collections.emptyList();
+
+        Preconditions.checkState(!variables.isEmpty() || !requiredActivations.isEmpty(), "Variables to perform forward pass for must not be empty");
+
+        ExecutionPlan.Key key = planKey(variables, placeholderValues, requiredActivations);
+        ExecutionPlan plan = planCache.get(key);
+        if (plan == null || !plan.isValidFor(sameDiff)) {
+            for (String s : variables) {
+                Preconditions.checkState(sameDiff.variableMap().containsKey(s), "Requested output variable %s does not exist in SameDiff instance", s);
+            }
+
+            closeMemoryPlan(plan);
+            plan = buildPlan(variables, requiredActivations);
+            planCache.put(key, plan);
+        }
+
+        if (plan.isDynamic())
+            return super.output(variables, placeholderValues, batch, requiredActivations, listeners, at);
+
+        return execPlan(plan, placeholderValues, batch, new HashSet<>(variables), listeners, at);
+    }
+
+    /**
+     * @return True if static execution plans should be executed in parallel
+     */
+    protected boolean isParallel() {
+        return parallelExecution || sameDiff.isParallelExecution();
+    }
+
+    protected ExecutionPlan.Key planKey(List<String> variables, Map<String, INDArray> placeholderValues, Collection<String> requiredActivations) {
+        Map<String, LongShapeDescriptor> shapes;
+        if (placeholderValues == null || placeholderValues.isEmpty()) {
+            shapes = Collections.emptyMap();
+        } else {
+            shapes = new HashMap<>();
+            for (Map.Entry<String, INDArray> e : placeholderValues.entrySet())
+                shapes.put(e.getKey(), e.getValue() == null ? null : e.getValue().shapeDescriptor());
+        }
+
+        return new ExecutionPlan.Key(new HashSet<>(variables), new HashSet<>(requiredActivations), shapes);
+    }
+
+    /**
+     * Build linearized execution plan for the requested outputs. If the subgraph required to calculate them contains
+     * control flow ops, control dependencies or other dynamic elements, plan is marked as dynamic instead
+     */
+    protected ExecutionPlan buildPlan(List<String> variables, Collection<String> requiredActivations) {
+        int numOps = sameDiff.getOps().size();
+        int numVars = sameDiff.getVariables().size();
+
+        Set<String> allRequired = new HashSet<>(requiredActivations);
+        allRequired.addAll(variables);
+
+        subgraph.clear();
+        subgraphOps.clear();
+        zeroInputOpsInSubgraph.clear();
+        initSubgraph(allRequired);
+
+        //Step 1: check that subgraph is static, and assign slots to all variables
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        List<Integer> constSlots = new ArrayList<>();
+        List<String> constNames = new ArrayList<>();
+        List<Integer> phSlots = new ArrayList<>();
+        List<String> phNames = new ArrayList<>();
+        for (String s : subgraph) {
+            Variable v = sameDiff.getVariables().get(s);
+            if (v.getControlDeps() != null && !v.getControlDeps().isEmpty())
+                return ExecutionPlan.dynamicPlan(numOps, numVars);
+
+            int slot = slots.size();
+            slots.put(s, slot);
+            VariableType vt = v.getVariable().getVariableType();
+            if (vt == VariableType.CONSTANT || vt == VariableType.VARIABLE) {
+                constSlots.add(slot);
+                constNames.add(s);
+            } else if (vt == VariableType.PLACEHOLDER) {
+                phSlots.add(slot);
+                phNames.add(s);
+            }
+        }
+
+        for (String opName : subgraphOps) {
+            SameDiffOp op = sameDiff.getOps().get(opName);
+            DifferentialFunction df = op.getOp();
+            if (df instanceof LoopCond || df instanceof Enter || df instanceof Exit || df instanceof NextIteration ||
+                    df instanceof Merge || df instanceof Switch || df instanceof BaseTensorOp ||
+                    df instanceof GradientBackwardsMarker || df instanceof ExternalErrorsFunction ||
+                    !(df instanceof CustomOp || df instanceof Op) || df.isInPlace())
+                return ExecutionPlan.dynamicPlan(numOps, numVars);
+
+            if ((op.getControlDeps() != null && !op.getControlDeps().isEmpty()) ||
+                    (op.getVarControlDeps() != null && !op.getVarControlDeps().isEmpty()) ||
+                    (op.getControlDepFor() != null && !op.getControlDepFor().isEmpty()))
+                return ExecutionPlan.dynamicPlan(numOps, numVars);
+
+            //Ops might have outputs that aren't required, but we still need somewhere to put them
+            for (String out : op.getOutputsOfOp()) {
+                if (!slots.containsKey(out))
+                    slots.put(out, slots.size());
+            }
+        }
+
+        //Step 2: topological sort of the subgraph ops
+        Map<String, Set<String>> pendingInputs = new HashMap<>();
+        Queue<String> ready = new ArrayDeque<>();
+        for (String opName : subgraphOps) {
+            Set<String> pending = new HashSet<>();
+            for (String in : sameDiff.getOps().get(opName).getInputsToOp()) {
+                if (sameDiff.getVariables().get(in).getOutputOfOp() != null)
+                    pending.add(in);
+            }
+            pendingInputs.put(opName, pending);
+            if (pending.isEmpty())
+                ready.add(opName);
+        }
+
+        List<SameDiffOp> order = new ArrayList<>(subgraphOps.size());
+        while (!ready.isEmpty()) {
+            SameDiffOp op = sameDiff.getOps().get(ready.remove());
+            order.add(op);
+            for (String out : op.getOutputsOfOp()) {
+                List<String> consumers = sameDiff.getVariables().get(out).getInputsForOp();
+                if (consumers == null)
+                    continue;
+
+                for (String c : consumers) {
+                    Set<String> pending = pendingInputs.get(c);
+                    if (pending != null && pending.remove(out) && pending.isEmpty())
+                        ready.add(c);
+                }
+            }
+        }
+
+        if (order.size() != subgraphOps.size()) {
+            //Should never happen for static graphs, but let's fall back to dynamic execution instead of failing
+            log.warn("Could not determine static execution order for outputs {}, using dynamic execution", variables);
+            return ExecutionPlan.dynamicPlan(numOps, numVars);
+        }
+
+        //Step 3: precompute input/output slots, and work out when arrays can be released
+        //Identity ops pass their input through, so all slots holding the same array share the same "root" slot
+        int numSlots = slots.size();
+        int[] root = new int[numSlots];
+        int[] lastUse = new int[numSlots];
+        boolean[] keep = new boolean[numSlots];
+        int[] producedAt = new int[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            root[i] = i;
+            lastUse[i] = -1;
+            producedAt[i] = -1;
+        }
+        for (int s : constSlots)
+            keep[s] = true;
+        for (int s : phSlots)
+            keep[s] = true;
+
+        int[][] inSlots = new int[order.size()][];
+        int[][] outSlots = new int[order.size()][];
+        for (int i = 0; i < order.size(); i++) {
+            SameDiffOp op = order.get(i);
+            String[] argNames = op.getOp().argNames();
+            int[] in = new int[argNames == null ? 0 : argNames.length];
+            for (int j = 0; j < in.length; j++) {
+                in[j] = slots.get(argNames[j]);
+                lastUse[root[in[j]]] = i;
+            }
+
+            List<String> outNames = op.getOutputsOfOp();
+            int[] out = new int[outNames.size()];
+            for (int j = 0; j < out.length; j++) {
+                out[j] = slots.get(outNames.get(j));
+                lastUse[out[j]] = i;
+            }
+
+            if (op.getOp() instanceof Identity && in.length == 1 && out.length == 1) {
+                root[out[0]] = root[in[0]];
+            } else {
+                for (int s : out)
+                    producedAt[s] = i;
+            }
+
+            inSlots[i] = in;
+            outSlots[i] = out;
+        }
+
+        int[] outputSlots = new int[allRequired.size()];
+        String[] outputNames = new String[allRequired.size()];
+        int cnt = 0;
+        for (String s : allRequired) {
+            outputSlots[cnt] = slots.get(s);
+            outputNames[cnt++] = s;
+            keep[root[slots.get(s)]] = true;
+        }
+
+        List<List<Integer>> release = new ArrayList<>(order.size());
+        for (int i = 0; i < order.size(); i++)
+            release.add(new ArrayList<Integer>());
+        int[] releasedAt = new int[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            releasedAt[i] = -1;
+            if (root[i] == i && !keep[i] && lastUse[i] >= 0) {
+                release.get(lastUse[i]).add(i);
+                releasedAt[i] = lastUse[i];
+            }
+        }
+
+        //Step 4: dependencies between steps, and number of steps using each array - used for parallel execution
+        int[] producerStep = new int[numSlots];
+        Arrays.fill(producerStep, -1);
+        for (int i = 0; i < order.size(); i++) {
+            for (int s : outSlots[i])
+                producerStep[s] = i;
+        }
+        int[] numDependencies = new int[order.size()];
+        int[] numConsumers = new int[numSlots];
+        List<Set<Integer>> dependents = new ArrayList<>(order.size());
+        for (int i = 0; i < order.size(); i++)
+            dependents.add(new LinkedHashSet<Integer>());
+        for (int i = 0; i < order.size(); i++) {
+            Set<Integer> inRoots = new HashSet<>();
+            Set<Integer> deps = new HashSet<>();
+            for (int s : inSlots[i]) {
+                if (inRoots.add(root[s]))
+                    numConsumers[root[s]]++;
+                if (producerStep[s] >= 0)
+                    deps.add(producerStep[s]);
+            }
+            numDependencies[i] = deps.size();
+            for (int d : deps)
+                dependents.get(d).add(i);
+        }
+        int[][] dependentsArr = new int[order.size()][];
+        for (int i = 0; i < order.size(); i++)
+            dependentsArr[i] = Ints.toArray(dependents.get(i));
+
+        ExecutionPlan.Step[] steps = new ExecutionPlan.Step[order.size()];
+        for (int i = 0; i < steps.length; i++) {
+            SameDiffOp op = order.get(i);
+            List<String> inNames = op.getInputsToOp() == null ? Collections.<String>emptyList() : new ArrayList<>(op.getInputsToOp());
+            List<String> outNames = op.getOutputsOfOp() == null ? Collections.<String>emptyList() : new ArrayList<>(op.getOutputsOfOp());
+            steps[i] = new ExecutionPlan.Step(op, inSlots[i], outSlots[i], Ints.toArray(release.get(i)), inNames, outNames);
+        }
+
+        //Step 5: snapshot of the graph structure, used to detect changes before the plan is reused
+        String[] slotNames = new String[numSlots];
+        Variable[] slotVariables = new Variable[numSlots];
+        VariableType[] slotTypes = new VariableType[numSlots];
+        String[] slotProducers = new String[numSlots];
+        for (Map.Entry<String, Integer> e : slots.entrySet()) {
+            int s = e.getValue();
+            Variable v = sameDiff.getVariables().get(e.getKey());
+            slotNames[s] = e.getKey();
+            slotVariables[s] = v;
+            slotTypes[s] = v.getVariable().getVariableType();
+            slotProducers[s] = v.getOutputOfOp();
+        }
+
+        log.trace("Built execution plan for outputs {}: {} steps, {} slots", variables, steps.length, numSlots);
+
+        return new ExecutionPlan(false, numOps, numVars, numSlots, steps, Ints.toArray(constSlots), constNames.toArray(new String[0]),
+                Ints.toArray(phSlots), phNames.toArray(new String[0]), outputSlots, outputNames, producedAt, releasedAt, root,
+                numDependencies, dependentsArr, numConsumers, slotNames, slotVariables, slotTypes, slotProducers, null);
+    }
+
+    /**
+     * Execute the previously built static execution plan
+     */
+    protected Map<String, INDArray> execPlan(ExecutionPlan plan, Map<String, INDArray> placeholderValues, MultiDataSet batch,
+                                             Set<String> reqOutputVariablesSet, List<Listener> listeners, At at) {
+        if (at == null)
+            at = At.defaultAt();
+
+        placeholderValues = preprocessPlaceholders(placeholderValues, at);
+
+        //Clear state from past iterations, if any
+        dt.clear();
+        nodeOutputs.clear();
+        tensorArrays.clear();
+
+        INDArray[] slots = new INDArray[plan.getNumSlots()];
+        //Shapes of intermediate arrays are recorded during the first execution, and used to build the memory plan
+        //Memory plans assume sequential execution order, so aren't used when ops are executed in parallel
+        boolean usePlan = memoryPlanningEnabled && !isParallel();
+        MemoryPlan memPlan = usePlan ? plan.getMemoryPlan() : null;
+        LongShapeDescriptor[] observed = usePlan && memPlan == null ? new LongShapeDescriptor[slots.length] : null;
+        boolean[] aliased = observed == null ? null : new boolean[slots.length];
+        int[] producedAt = plan.getProducedAt();
+
+        //Same as for dynamic execution, arrays are released by identity: op outputs may be (one of) their inputs
+        ArrayRefCounts refs = new ArrayRefCounts();
+
+        int[] constSlots = plan.getConstSlots();
+        String[] constNames = plan.getConstNames();
+        for (int i = 0; i < constSlots.length; i++) {
+            INDArray arr = getConstantOrVariable(constNames[i]);
+            Preconditions.checkNotNull(arr, "Encountered null array for constant or variable: %s", constNames[i]);
+            slots[constSlots[i]] = arr;
+            refs.add(arr);
+        }
+
+        int[] phSlots = plan.getPlaceholderSlots();
+        String[] phNames = plan.getPlaceholderNames();
+        for (int i = 0; i < phSlots.length; i++) {
+            INDArray arr = placeholderValues == null ? null : placeholderValues.get(phNames[i]);
+            if (arr == null) {
+                throw new IllegalStateException(
+                        "An input placeholder \"" + phNames[i] + "\" is required to calculate the requested outputs," +
+                                " but a placeholder value was not provided");
+            }
+            slots[phSlots[i]] = arr;
+            refs.add(arr);
+        }
+
+        ExecutionPlan.Step[] steps = plan.getSteps();
+        if (isParallel()) {
+            new ParallelPlanExecution(plan, slots, refs, reqOutputVariablesSet, listeners, at, batch).run();
+        } else {
+            for (int stepIdx = 0; stepIdx < steps.length; stepIdx++) {
+                ExecutionPlan.Step step = steps[stepIdx];
+                int[] outSlots = step.getOutputSlots();
+                INDArray[] out = execStep(step, slots, memPlan == null ? null : memPlan.getStepViews(stepIdx),
+                        reqOutputVariablesSet, listeners, at, batch);
+
+                for (int i = 0; i < out.length; i++) {
+                    slots[outSlots[i]] = out[i];
+                    //Identity outputs aren't counted: they share the root slot of their input
+                    if (out[i] != null && producedAt[outSlots[i]] == stepIdx) {
+                        refs.add(out[i]);
+                        if (observed != null && !aliased[outSlots[i]])
+                            observed[outSlots[i]] = out[i].shapeDescriptor();
+                    }
+                }
+                if (observed != null)
+                    markAliasedOutputs(step, slots, out, plan.getRootSlots(), aliased, observed);
+
+                //Close any no longer required arrays, unless still referenced by another slot
+                //Arrays in the arena aren't released, they will be reused next time
+                for (int s : step.getReleaseSlots()) {
+                    INDArray arr = slots[s];
+                    if (arr != null) {
+                        slots[s] = null;
+                        if (refs.remove(arr) && (memPlan == null || !memPlan.isPlanned(s, arr)))
+                            mmgr.release(arr);
+                    }
+                }
+            }
+        }
+
+        if (observed != null)
+            plan.setMemoryPlan(MemoryPlan.build(plan, observed));
+
+        Map<String, INDArray> out = new HashMap<>();
+        int[] outSlots = plan.getOutputSlots();
+        String[] outNames = plan.getOutputNames();
+        for (int i = 0; i < outSlots.length; i++) {
+            out.put(outNames[i], slots[outSlots[i]]);
+            //Outputs are also available via SameDiff.getArrForVarName, same as for dynamic execution
+            nodeOutputs.put(new VarId(outNames[i], OUTER_FRAME, 0, null), slots[outSlots[i]]);
+        }
+
+        return postProcessOutput(out);
+    }
+
+    /**
+     * Outputs that are (one of) the op inputs share the buffer with the input array, so neither of them can be placed
+     * in the memory plan arena: their lifetimes are tracked by array identity, not by slot
+     */
+    private static void markAliasedOutputs(ExecutionPlan.Step step, INDArray[] slots, INDArray[] out, int[] rootSlots,
+                                           boolean[] aliased, LongShapeDescriptor[] observed) {
+        int[] inSlots = step.getInputSlots();
+        int[] outSlots = step.getOutputSlots();
+        for (int i = 0; i < out.length; i++) {
+            if (out[i] == null || step.getOp().getOp() instanceof Identity)
+                continue;
+
+            for (int in : inSlots) {
+                if (slots[in] == out[i]) {
+                    aliased[outSlots[i]] = true;
+                    aliased[rootSlots[in]] = true;
+                    observed[outSlots[i]] = null;
+                    observed[rootSlots[in]] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Execute a single step of a static execution plan
+     *
+     * @param step    Step to execute
+     * @param slots   Arrays, by slot
+     * @param planned Planned output arrays for the step (see {@link MemoryPlan}), or null if none
+     * @return Op outputs, in op output order
+     */
+    protected INDArray[] execStep(ExecutionPlan.Step step, INDArray[] slots, INDArray[] planned, Set<String> reqOutputVariablesSet,
+                                  List<Listener> listeners, At at, MultiDataSet batch) {
+        SameDiffOp op = step.getOp();
+        DifferentialFunction df = op.getOp();
+        int[] inSlots = step.getInputSlots();
+
+        INDArray[] args = inSlots.length == 0 ? null : new INDArray[inSlots.length];
+        for (int i = 0; i < inSlots.length; i++) {
+            args[i] = slots[inSlots[i]];
+            Preconditions.checkNotNull(args[i], "Could not parameterize op %s: array %s is null", op.getName(), i);
+        }
+
+        synchronized (listenerLock) {
+            preOpListeners(op, listeners, at);
+        }
+
+        INDArray[] out;
+        if (df instanceof Identity) {
+            out = new INDArray[]{args[0]};
+        } else {
+            plannedOutputs.set(planned);
+            try {
+                parameterizeOp(op, args, false, reqOutputVariablesSet);
+            } finally {
+                plannedOutputs.remove();
+            }
+
+            if (df instanceof CustomOp) {
+                CustomOp c = (CustomOp) df;
+                Nd4j.exec(c);
+                out = c.outputArguments();
+            } else {
+                Op o = (Op) df;
+                Nd4j.exec(o);
+                out = new INDArray[]{o.z()};
+            }
+        }
+        df.clearArrays();
+
+        Preconditions.checkState(out.length == step.getOutputSlots().length, "Unexpected number of outputs from executed op %s:" +
+                " got %s outputs when %s outputs were expected (%s)", df.getClass().getSimpleName(), out.length,
+                step.getOutputSlots().length, op.getOutputsOfOp());
+
+        synchronized (listenerLock) {
+            postOpListeners(op, out, listeners, at, batch);
+        }
+
+        return out;
+    }
+
+    /**
+     * Parallel execution of a static execution plan: every step is submitted to the executor as soon as all steps it
+     * depends on have been executed, so independent branches of the graph are executed concurrently.<br>
+     * Step completion order isn't known in advance, so arrays are released once all steps using them have been
+     * executed, instead of at the precomputed release steps.<br>
+     * If any step fails, no further steps are started, and {@link #run()} returns only once all steps that are
+     * already running have finished. Waiting is done via {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)},
+     * so the pool can compensate for the blocked thread if execution is started from a ForkJoin task.
+     */
+    protected class ParallelPlanExecution {
+        private final ExecutionPlan.Step[] steps;
+        private final INDArray[] slots;
+        private final int[] rootSlots;
+        private final int[] releasedAt;
+        private final int[] numConsumers;
+        private final int[] producedAt;
+        private final ArrayRefCounts refs;
+        private final int[][] dependents;
+        private final AtomicIntegerArray pendingDependencies;
+        private final AtomicIntegerArray pendingConsumers;
+        //Number of submitted steps that haven't finished yet, plus one while steps are being submitted by run()
+        private final AtomicInteger inFlight = new AtomicInteger(1);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final Set<String> reqOutputVariablesSet;
+        private final List<Listener> listeners;
+        private final At at;
+        private final MultiDataSet batch;
+        private final Integer deviceId;
+        private final ForkJoinPool pool;
+
+        protected ParallelPlanExecution(ExecutionPlan plan, INDArray[] slots, ArrayRefCounts refs, Set<String> reqOutputVariablesSet,
+                                        List<Listener> listeners, At at, MultiDataSet batch) {
+            this.steps = plan.getSteps();
+            //Slots are written and read from different threads: AtomicReferenceArray isn't required, as completion of a
+            //step happens-before submission of its dependents
+            this.slots = slots;
+            this.rootSlots = plan.getRootSlots();
+            this.releasedAt = plan.getReleasedAt();
+            this.numConsumers = plan.getNumConsumers();
+            this.producedAt = plan.getProducedAt();
+            this.refs = refs;
+            this.dependents = plan.getDependents();
+            this.pendingDependencies = new AtomicIntegerArray(plan.getNumDependencies());
+            this.pendingConsumers = new AtomicIntegerArray(numConsumers);
+            this.reqOutputVariablesSet = reqOutputVariablesSet;
+            this.listeners = listeners;
+            this.at = at;
+            this.batch = batch;
+            this.deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+            this.pool = executor == null ? ForkJoinPool.commonPool() : executor;
+        }
+
+        protected void run() {
+            for (int i = 0; i < steps.length; i++) {
+                if (pendingDependencies.get(i) == 0)
+                    submit(i);
+            }
+            finished();
+
+            boolean interrupted = false;
+            while (done.getCount() > 0) {
+                try {
+                    ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                        @Override
+                        public boolean block() throws InterruptedException {
+                            done.await();
+                            return true;
+                        }
+
+                        @Override
+                        public boolean isReleasable() {
+                            return done.getCount() == 0;
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    //Steps that are already running still use slots and memory manager: stop scheduling, but wait for them
+                    error.compareAndSet(null, new RuntimeException("Interrupted while waiting for parallel execution of ops", e));
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+
+            Throwable t = error.get();
+            if (t != null) {
+                if (t instanceof RuntimeException)
+                    throw (RuntimeException) t;
+                if (t instanceof Error)
+                    throw (Error) t;
+                throw new RuntimeException(t);
+            }
+        }
+
+        protected void submit(final int stepIdx) {
+            inFlight.incrementAndGet();
+            try {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            execute(stepIdx);
+                        } finally {
+                            finished();
+                        }
+                    }
+                });
+            } catch (Throwable t) {
+                //Rejected by the executor
+                error.compareAndSet(null, t);
+                finished();
+            }
+        }
+
+        private void finished() {
+            //Dependents are submitted before their parent finishes, so zero means there's nothing left running
+            if (inFlight.decrementAndGet() == 0)
+                done.countDown();
+        }
+
+        protected void execute(int stepIdx) {
+            if (error.get() == null) {
+                try {
+                    Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+
+                    ExecutionPlan.Step step = steps[stepIdx];
+                    int[] outSlots = step.getOutputSlots();
+                    INDArray[] out = execStep(step, slots, null, reqOutputVariablesSet, listeners, at, batch);
+                    for (int i = 0; i < out.length; i++) {
+                        slots[outSlots[i]] = out[i];
+                        if (out[i] != null && producedAt[outSlots[i]] == stepIdx)
+                            refs.add(out[i]);
+                    }
+
+                    //Inputs: release once the last step using them has been executed
+                    int[] inSlots = step.getInputSlots();
+                    for (int i = 0; i < inSlots.length; i++) {
+                        int r = rootSlots[inSlots[i]];
+                        if (isFirstUse(inSlots, i) && pendingConsumers.decrementAndGet(r) == 0 && releasedAt[r] >= 0)
+                            release(r);
+                    }
+
+                    //Outputs that aren't used by any other step, and aren't required
+                    for (int s : outSlots) {
+                        if (rootSlots[s] == s && numConsumers[s] == 0 && releasedAt[s] >= 0)
+                            release(s);
+                    }
+
+                    for (int d : dependents[stepIdx]) {
+                        if (pendingDependencies.decrementAndGet(d) == 0)
+                            submit(d);
+                    }
+                } catch (Throwable t) {
+                    //Dependents of the failed step are never submitted, and no other steps are started
+                    error.compareAndSet(null, t);
+                }
+            }
+        }
+
+        private boolean isFirstUse(int[] inSlots, int idx) {
+            int r = rootSlots[inSlots[idx]];
+            for (int i = 0; i < idx; i++) {
+                if (rootSlots[inSlots[i]] == r)
+                    return false;
+            }
+            return true;
+        }
+
+        private void release(int slot) {
+            INDArray arr = slots[slot];
+            slots[slot] = null;
+            if (arr != null && refs.remove(arr)) {
+                synchronized (mmgrLock) {
+                    mmgr.release(arr);
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of plan slots referencing each array, by array identity. Array can be released only once no slot
+     * references it anymore - i.e., not if it's also an output of another op (as for ops returning their input as
+     * is), a constant, a placeholder or a requested output. Slots that are Identity outputs aren't counted, as
+     * they are covered by their root slot
+     */
+    protected static class ArrayRefCounts {
+        private final Map<INDArray, Integer> counts = new IdentityHashMap<>();
+
+        public synchronized void add(@NonNull INDArray arr) {
+            Integer c = counts.get(arr);
+            counts.put(arr, c == null ? 1 : c + 1);
+        }
+
+        /**
+         * @return True if array isn't referenced by any slot anymore, and can be released
+         */
+        public synchronized boolean remove(@NonNull INDArray arr) {
+            Integer c = counts.get(arr);
+            if (c == null || c <= 1) {
+                counts.remove(arr);
+                return true;
+            }
+            counts.put(arr, c - 1);
+            return false;
+        }
+    }
+
     @Override
     protected Map<String, INDArray> preprocessPlaceholders(Map<String, INDArray> placeholders, At at) {
         arrayUseTracker.clear();
@@ -206,13 +960,7 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
     @Override
     public INDArray[] getOutputs(SameDiffOp op, FrameIter outputFrameIter, Set<VarId> opInputs, Set<VarId> allIterInputs,
                                  Set<String> constAndPhInputs, List<Listener> listeners, At at, MultiDataSet batch, Set<String> allReqVariables) {
-        if (listeners != null && listeners.size() > 0) {
-            SameDiffOp sdOp = sameDiff.getOps().get(op.getOp().getOwnName());
-            for (Listener l : listeners) {
-                if (l.isActive(at.operation()))
-                    l.preOpExecution(sameDiff, at, sdOp);
-            }
-        }
+        preOpListeners(sameDiff.getOps().get(op.getOp().getOwnName()), listeners, at);
 
         INDArray[] out = doExec(op.getOp(), outputFrameIter, opInputs, allIterInputs, constAndPhInputs);
         op.getOp().clearArrays();
@@ -231,29 +979,7 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
         }
 
         //Call listeners, before we (maybe) deallocate input arrays
-        if (listeners != null && listeners.size() > 0) {
-            Map<String, INDArray> namedOuts = null;
-
-            for (Listener l : listeners) {
-                if (l.isActive(at.operation())) {
-                    //Lazily create map, only if required
-                    if (namedOuts == null) {
-                        Map<String, INDArray> namedOutsBuilder = new HashMap<>();
-
-                        for (int i = 0; i < out.length; i++)
-                            namedOutsBuilder.put(op.outputsOfOp.get(i), out[i]);
-                        namedOuts = Collections.unmodifiableMap(namedOutsBuilder);
-                    }
-
-
-                    l.opExecution(sameDiff, at, batch, op, out);
-
-                    for (String varName : namedOuts.keySet()) {
-                        l.activationAvailable(sameDiff, at, batch, op, varName, namedOuts.get(varName));
-                    }
-                }
-            }
-        }
+        postOpListeners(op, out, listeners, at, batch);
 
 
         //Record array uses for memory management/deallocation
@@ -342,6 +1068,41 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
         return out;
     }
 
+    protected void preOpListeners(SameDiffOp op, List<Listener> listeners, At at) {
+        if (listeners != null && listeners.size() > 0) {
+            for (Listener l : listeners) {
+                if (l.isActive(at.operation()))
+                    l.preOpExecution(sameDiff, at, op);
+            }
+        }
+    }
+
+    protected void postOpListeners(SameDiffOp op, INDArray[] out, List<Listener> listeners, At at, MultiDataSet batch) {
+        if (listeners != null && listeners.size() > 0) {
+            Map<String, INDArray> namedOuts = null;
+
+            for (Listener l : listeners) {
+                if (l.isActive(at.operation())) {
+                    //Lazily create map, only if required
+                    if (namedOuts == null) {
+                        Map<String, INDArray> namedOutsBuilder = new HashMap<>();
+
+                        for (int i = 0; i < out.length; i++)
+                            namedOutsBuilder.put(op.outputsOfOp.get(i), out[i]);
+                        namedOuts = Collections.unmodifiableMap(namedOutsBuilder);
+                    }
+
+
+                    l.opExecution(sameDiff, at, batch, op, out);
+
+                    for (String varName : namedOuts.keySet()) {
+                        l.activationAvailable(sameDiff, at, batch, op, varName, namedOuts.get(varName));
+                    }
+                }
+            }
+        }
+    }
+
     public INDArray[] doExec(DifferentialFunction op, FrameIter outputFrameIter, Set<VarId> opInputs, Set<VarId> allIterInputs,
                              Set<String> constAndPhInputs) {
 
@@ -814,6 +1575,21 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
         //TODO let's find a way to use in-place modification for loops where possible to reduce memory requirements
         boolean isLoop = !frameIter.getFrame().equals(OUTER_FRAME) && frameIter.getIteration() > 0;
 
+        return parameterizeOp(sdo, args, isLoop, allReqVariables);
+    }
+
+    /**
+     * Set the (already resolved) input arrays on the op, and allocate the output arrays if required
+     *
+     * @param sdo             Op to parameterize
+     * @param args            Op input arrays, in op arg order
+     * @param isLoop          If true: always allocate new output arrays
+     * @param allReqVariables All required variables requested for the current session execution
+     * @return The parameterized op
+     */
+    protected SameDiffOp parameterizeOp(SameDiffOp sdo, INDArray[] args, boolean isLoop, Set<String> allReqVariables) {
+        DifferentialFunction df = sdo.getOp();
+
         if (df instanceof CustomOp) {
             DynamicCustomOp customOp = (DynamicCustomOp) df;
             if (args != null) {
@@ -844,7 +1620,7 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
 
                 if (currOutput == null || currOutput.wasClosed() || !currOutput.shapeDescriptor().equals(reqShape) || currOutput.isEmpty() != reqShape.isEmpty() || isLoop) {
                     boolean isOutput = allReqVariables.contains(outNames[i]);
-                    INDArray out = mmgr.allocate(isOutput, reqShape);
+                    INDArray out = allocateOutput(i, isOutput, reqShape);
                     customOp.setOutputArgument(i, out);
                 }
             }
@@ -859,7 +1635,7 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
                 SDVariable axisArgVar = df.arg(1);
                 Preconditions.checkState(axisArgVar.dataType().isIntType(), "Legacy op %s input 1 (axis) was expected to be an integer type, is %s", df.getClass(), axisArgVar.dataType());
 
-                INDArray arr = getArray(axisArgVar, opInputs, allIterInputs);
+                INDArray arr = args[1];
                 Preconditions.checkState(arr != null, "Could not get axis argument for op %s: %s", df.getOwnName(), df.getClass());
                 if (!arr.isEmpty()) {
                     int[] axis = arr.toIntVector();
@@ -877,8 +1653,7 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
                 axisArg = true;
             } else if (op instanceof ScalarOp && df.argNames().length == 2) {
                 //Scalar ops: 2nd input should be treated as scalar...
-                SDVariable scalarVar = df.arg(1);
-                INDArray scalar = getArray(scalarVar, opInputs, allIterInputs);
+                INDArray scalar = args[1];
                 Preconditions.checkState(scalar != null, "Could not get scalar argument for op %s: %s", df.getOwnName(), df.getClass());
                 Preconditions.checkState(scalar.isScalar(), "Scalar argument for op %s (%s) is not a scalar: has shape %ndShape", df.getOwnName(), df.getClass(), scalar);
                 ((ScalarOp) op).setScalar(scalar);
@@ -897,7 +1672,7 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
                 INDArray z = op.z();
                 if (z == null || !op.x().equalShapes(z) || isLoop) {
                     //Note: edge case: [x,y].sum(empty) = [x,y] for TF import compatibility.
-                    z = mmgr.allocate(false, op.x().dataType(), op.x().shape());
+                    z = allocateOutput(0, false, LongShapeDescriptor.fromShape(op.x().shape(), op.x().dataType()));
                     op.setZ(z);
                 }
             } else {
@@ -913,7 +1688,7 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
                     LongShapeDescriptor lsd = outputShape.get(0);
 
                     boolean isOutput = allReqVariables.contains(((BaseOp) op).outputVariablesNames()[0]);
-                    z = mmgr.allocate(isOutput, lsd);
+                    z = allocateOutput(0, isOutput, lsd);
                     op.setZ(z);
                 }
             }
@@ -923,6 +1698,21 @@ public class InferenceSession extends AbstractSession<INDArray, SameDiffOp> {
     }
 
 
+    /**
+     * Allocate the specified op output: planned array from the {@link MemoryPlan} (when executing a static plan) if
+     * it is compatible with the required shape, or new array from the memory manager otherwise
+     */
+    protected INDArray allocateOutput(int outputIdx, boolean isOutput, LongShapeDescriptor shape) {
+        INDArray[] planned = plannedOutputs.get();
+        if (!isOutput && planned != null && outputIdx < planned.length) {
+            if (planned[outputIdx] != null && MemoryPlan.matches(planned[outputIdx], shape))
+                return planned[outputIdx];
+        }
+        synchronized (mmgrLock) {
+            return mmgr.allocate(isOutput, shape);
+        }
+    }
+
     protected INDArray getArray(SDVariable sdv, Collection<VarId> opInputs, Collection<VarId> allIterInputs) {
         String n = sdv.name();
         if (sdv.getVariableType() == VariableType.CONSTANT || sdv.getVariableType() == VariableType.VARIABLE) {
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.util.ArrayUtil;
+
+import java.util.*;
+
+/**
+ * MemoryPlan: static buffer assignment for the intermediate arrays of an {@link ExecutionPlan}.<br>
+ * Each intermediate array is live from the step that produces it until the step it is released at. Arrays with
+ * non-overlapping lifetimes can share memory, so all intermediate arrays are laid out in a single arena (one per
+ * data type) using greedy by-size offset assignment: largest buffers are placed first, each at the lowest offset that
+ * doesn't overlap any already placed buffer with an overlapping lifetime.<br>
+ * Arenas and the views into them are created once, and reused for every execution of the plan.<br>
+ * <br>
+ * Output shapes are only known once placeholder shapes are known, so memory plans are built from the shapes observed
+ * during the first execution of an execution plan (which are keyed by placeholder shapes). If an op produces an output
+ * with a different shape later (i.e., shape depends on the array values, not just placeholder shapes), regular
+ * allocation is used for that output instead.
+ */
+@Slf4j
+@Getter
+public class MemoryPlan {
+    /**
+     * Offsets of all buffers in the arena are aligned to this number of bytes
+     */
+    public static final int ALIGNMENT_BYTES = 64;
+
+    /**
+     * Planned views, by slot. Null for slots not managed by this memory plan
+     */
+    private final INDArray[] slotViews;
+    /**
+     * Planned views, by step and op output index. Null for outputs not managed by this memory plan
+     */
+    private final INDArray[][] stepViews;
+    private final Map<DataType, INDArray> arenas;
+    private final int numBuffers;
+    /**
+     * Total size of all arenas, in bytes
+     */
+    private final long peakBytes;
+    /**
+     * Size that would be required for all planned buffers without any memory reuse, in bytes
+     */
+    private final long totalBytes;
+
+    private MemoryPlan(INDArray[] slotViews, INDArray[][] stepViews, Map<DataType, INDArray> arenas, int numBuffers,
+                       long peakBytes, long totalBytes) {
+        this.slotViews = slotViews;
+        this.stepViews = stepViews;
+        this.arenas = arenas;
+        this.numBuffers = numBuffers;
+        this.peakBytes = peakBytes;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Build the memory plan for the specified execution plan
+     *
+     * @param plan     Execution plan
+     * @param observed Shapes of the arrays for each slot, as observed during execution of the plan. Null for slots
+     *                 that weren't produced by an op
+     * @return Memory plan
+     */
+    public static MemoryPlan build(@NonNull ExecutionPlan plan, @NonNull LongShapeDescriptor[] observed) {
+        int[] producedAt = plan.getProducedAt();
+        int[] releasedAt = plan.getReleasedAt();
+
+        //Collect the buffers with known lifetime, grouped by datatype
+        Map<DataType, List<Buffer>> byType = new LinkedHashMap<>();
+        int numBuffers = 0;
+        for (int i = 0; i < observed.length; i++) {
+            LongShapeDescriptor d = observed[i];
+            if (producedAt[i] < 0 || releasedAt[i] < 0 || !canPlan(d))
+                continue;
+
+            List<Buffer> l = byType.get(d.dataType());
+            if (l == null) {
+                l = new ArrayList<>();
+                byType.put(d.dataType(), l);
+            }
+            l.add(new Buffer(i, d, alignedLength(d), producedAt[i], releasedAt[i]));
+            numBuffers++;
+        }
+
+        INDArray[] slotViews = new INDArray[observed.length];
+        Map<DataType, INDArray> arenas = new LinkedHashMap<>();
+        long peakBytes = 0;
+        long totalBytes = 0;
+        for (Map.Entry<DataType, List<Buffer>> e : byType.entrySet()) {
+            DataType dt = e.getKey();
+            List<Buffer> buffers = e.getValue();
+            long arenaLength = assignOffsets(buffers);
+
+            INDArray arena = Nd4j.createUninitializedDetached(dt, arenaLength);
+            arenas.put(dt, arena);
+            peakBytes += arenaLength * dt.width();
+
+            for (Buffer b : buffers) {
+                LongShapeDescriptor d = b.descriptor;
+                slotViews[b.slot] = Nd4j.create(arena.data(), d.getShape(), d.getStride(), b.offset, 1, d.getOrder());
+                totalBytes += b.length * dt.width();
+            }
+        }
+
+        ExecutionPlan.Step[] steps = plan.getSteps();
+        INDArray[][] stepViews = new INDArray[steps.length][];
+        for (int i = 0; i < steps.length; i++) {
+            int[] outSlots = steps[i].getOutputSlots();
+            INDArray[] views = null;
+            for (int j = 0; j < outSlots.length; j++) {
+                if (slotViews[outSlots[j]] != null && producedAt[outSlots[j]] == i) {
+                    if (views == null)
+                        views = new INDArray[outSlots.length];
+                    views[j] = slotViews[outSlots[j]];
+                }
+            }
+            stepViews[i] = views;
+        }
+
+        log.debug("Built memory plan: {} buffers in {} arenas, peak size {} bytes ({} bytes without memory reuse)",
+                numBuffers, arenas.size(), peakBytes, totalBytes);
+
+        return new MemoryPlan(slotViews, stepViews, arenas, numBuffers, peakBytes, totalBytes);
+    }
+
+    /**
+     * Greedy by-size offset assignment. Offsets are set on the buffers
+     *
+     * @return Required arena length, in elements
+     */
+    protected static long assignOffsets(List<Buffer> buffers) {
+        List<Buffer> bySize = new ArrayList<>(buffers);
+        Collections.sort(bySize, new Comparator<Buffer>() {
+            @Override
+            public int compare(Buffer b1, Buffer b2) {
+                int c = Long.compare(b2.length, b1.length);
+                return c != 0 ? c : Integer.compare(b1.start, b2.start);
+            }
+        });
+
+        long arenaLength = 0;
+        List<Buffer> placed = new ArrayList<>(bySize.size());
+        List<Buffer> conflicts = new ArrayList<>();
+        for (Buffer b : bySize) {
+            conflicts.clear();
+            for (Buffer p : placed) {
+                if (p.start <= b.end && b.start <= p.end)
+                    conflicts.add(p);
+            }
+            Collections.sort(conflicts, new Comparator<Buffer>() {
+                @Override
+                public int compare(Buffer b1, Buffer b2) {
+                    return Long.compare(b1.offset, b2.offset);
+                }
+            });
+
+            //Smallest gap between live buffers that fits this buffer, or end of live buffers otherwise
+            long offset = 0;
+            long bestOffset = -1;
+            long bestGap = Long.MAX_VALUE;
+            for (Buffer p : conflicts) {
+                long gap = p.offset - offset;
+                if (gap >= b.length && gap < bestGap) {
+                    bestOffset = offset;
+                    bestGap = gap;
+                }
+                offset = Math.max(offset, p.offset + p.length);
+            }
+            b.offset = bestOffset >= 0 ? bestOffset : offset;
+            arenaLength = Math.max(arenaLength, b.offset + b.length);
+            placed.add(b);
+        }
+
+        return arenaLength;
+    }
+
+    protected static boolean canPlan(LongShapeDescriptor d) {
+        if (d == null || d.isEmpty() || d.rank() == 0)
+            return false;
+
+        DataType dt = d.dataType();
+        if (dt == DataType.UTF8 || dt == DataType.COMPRESSED || dt == DataType.UNKNOWN)
+            return false;
+
+        //Only dense (non-view) layouts are planned
+        return Arrays.equals(d.getStride(), Nd4j.getStrides(d.getShape(), d.getOrder()));
+    }
+
+    protected static long alignedLength(LongShapeDescriptor d) {
+        long align = Math.max(1, ALIGNMENT_BYTES / d.dataType().width());
+        long length = ArrayUtil.prodLong(d.getShape());
+        return (length + align - 1) / align * align;
+    }
+
+    /**
+     * @return True if the planned array can be used as an array with the specified shape
+     */
+    public static boolean matches(@NonNull INDArray planned, @NonNull LongShapeDescriptor required) {
+        return planned.dataType() == required.dataType() && planned.ordering() == required.getOrder() &&
+                !required.isEmpty() && Arrays.equals(planned.shape(), required.getShape()) &&
+                Arrays.equals(planned.stride(), required.getStride());
+    }
+
+    /**
+     * @return Planned views for outputs of the specified step, or null if none of its outputs are planned
+     */
+    public INDArray[] getStepViews(int step) {
+        return stepViews[step];
+    }
+
+    /**
+     * @return True if the array is the planned view for the specified slot (i.e., it is in the arena, and must not
+     * be released)
+     */
+    public boolean isPlanned(int slot, INDArray arr) {
+        return slotViews[slot] != null && slotViews[slot] == arr;
+    }
+
+    /**
+     * Release the arenas. The plan must not be used after calling this method
+     */
+    public void close() {
+        for (INDArray arr : arenas.values()) {
+            if (arr.closeable())
+                arr.close();
+        }
+        arenas.clear();
+    }
+
+    protected static class Buffer {
+        private final int slot;
+        private final LongShapeDescriptor descriptor;
+        private final long length;
+        private final int start;
+        private final int end;
+        private long offset;
+
+        protected Buffer(int slot, LongShapeDescriptor descriptor, long length, int start, int end) {
+            this.slot = slot;
+            this.descriptor = descriptor;
+            this.length = length;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -40,6 +40,9 @@ public class TrainingSession extends InferenceSession {
 
     public TrainingSession(SameDiff sameDiff) {
         super(sameDiff);
+
+        //Training relies on per-op hooks (getOutputs), so static execution plans aren't used here
+        this.planCacheEnabled = false;
     }
 
     /**
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.transform;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.RandomOp;
+import org.nd4j.linalg.api.ops.impl.controlflow.compat.BaseCompatOp;
+import org.nd4j.linalg.api.ops.impl.layers.ExternalErrorsFunction;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
+import org.nd4j.linalg.api.ops.impl.transforms.gradient.GradientBackwardsMarker;
+
+import java.util.*;
+
+/**
+ * Constant folding: ops that only depend on constants are executed once, and their outputs are replaced by constants.<br>
+ * Only outputs that are still required after folding (used by the remaining ops, not used by any op, or protected)
+ * are kept as constants, with the same names as before. All other outputs of the folded ops are removed.<br>
+ * Random ops, control flow ops and ops with control dependencies are never folded.<br>
+ * Note that constant folding is applied to CONSTANT variables only - VARIABLE type variables (i.e., trainable
+ * parameters) aren't considered to be constant.
+ */
+@Slf4j
+public class ConstantFoldingPass implements GraphOptimizationPass {
+
+    @Override
+    public boolean apply(SameDiff sd, Set<String> protectedVariables) {
+        //Step 1: Find all ops that (directly or indirectly) depend only on constants
+        Set<String> constVars = new HashSet<>();
+        for (Variable v : sd.getVariables().values()) {
+            if (v.getVariable().getVariableType() == VariableType.CONSTANT)
+                constVars.add(v.getName());
+        }
+
+        Set<String> foldable = new LinkedHashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SameDiffOp op : sd.getOps().values()) {
+                if (foldable.contains(op.getName()) || !canFold(op) || !constVars.containsAll(op.getInputsToOp()))
+                    continue;
+
+                foldable.add(op.getName());
+                constVars.addAll(op.getOutputsOfOp());
+                changed = true;
+            }
+        }
+
+        if (foldable.isEmpty())
+            return false;
+
+        //Step 2: Work out which of the folded outputs are still required
+        List<String> keep = new ArrayList<>();
+        for (String opName : foldable) {
+            for (String s : sd.getOps().get(opName).getOutputsOfOp()) {
+                List<String> inputsFor = sd.getVariables().get(s).getInputsForOp();
+                boolean required = inputsFor == null || inputsFor.isEmpty() || protectedVariables.contains(s);
+                if (!required) {
+                    for (String c : inputsFor) {
+                        if (!foldable.contains(c)) {
+                            required = true;
+                            break;
+                        }
+                    }
+                }
+                if (required)
+                    keep.add(s);
+            }
+        }
+
+        Map<String, INDArray> values = sd.output(Collections.<String, INDArray>emptyMap(), keep.toArray(new String[0]));
+
+        //Step 3: Remove the folded ops, and replace the required outputs by constants
+        List<String> foldedOutputs = new ArrayList<>();
+        for (String opName : foldable) {
+            SameDiffOp op = sd.getOps().remove(opName);
+            foldedOutputs.addAll(op.getOutputsOfOp());
+            for (String in : op.getInputsToOp()) {
+                Variable v = sd.getVariables().get(in);
+                if (v != null && v.getInputsForOp() != null) {
+                    List<String> l = new ArrayList<>(v.getInputsForOp());
+                    l.removeAll(Collections.singleton(opName));
+                    v.setInputsForOp(l);
+                }
+            }
+        }
+
+        Set<String> keepSet = new HashSet<>(keep);
+        for (String s : foldedOutputs) {
+            if (keepSet.contains(s)) {
+                Variable v = sd.getVariables().get(s);
+                v.setOutputOfOp(null);
+                SDVariable sdv = v.getVariable();
+                sdv.setVariableType(VariableType.CONSTANT);
+                sd.associateArrayWithVariable(values.get(s), sdv);
+            } else {
+                sd.getVariables().remove(s);
+            }
+        }
+
+        log.debug("Constant folding: folded {} ops into {} constants", foldable.size(), keep.size());
+        return true;
+    }
+
+    protected boolean canFold(SameDiffOp op) {
+        DifferentialFunction df = op.getOp();
+        if (op.getInputsToOp() == null || op.getInputsToOp().isEmpty())
+            return false;
+
+        if (df instanceof RandomOp || df.getClass().getName().startsWith("org.nd4j.linalg.api.ops.random.") ||
+                df instanceof BaseCompatOp || df instanceof BaseTensorOp || df instanceof ExternalErrorsFunction ||
+                df instanceof GradientBackwardsMarker)
+            return false;
+
+        return (op.getControlDeps() == null || op.getControlDeps().isEmpty()) &&
+                (op.getVarControlDeps() == null || op.getVarControlDeps().isEmpty()) &&
+                (op.getControlDepFor() == null || op.getControlDepFor().isEmpty());
+    }
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.transform;
+
+import org.nd4j.autodiff.samediff.SameDiff;
+
+import java.util.Set;
+
+/**
+ * A single graph optimization pass, as used by {@link GraphOptimizer}.<br>
+ * Passes modify the SameDiff instance in-place, and must not remove or rename any of the protected variables.
+ */
+public interface GraphOptimizationPass {
+
+    /**
+     * Apply the optimization to the graph
+     *
+     * @param sd                 SameDiff instance to modify
+     * @param protectedVariables Variables that must remain available by name after optimization: placeholders,
+     *                           outputs and loss variables, etc
+     * @return True if the graph was modified
+     */
+    boolean apply(SameDiff sd, Set<String> protectedVariables);
+
+}
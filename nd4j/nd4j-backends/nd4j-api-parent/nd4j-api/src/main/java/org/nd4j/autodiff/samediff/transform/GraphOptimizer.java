@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.transform;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.base.Preconditions;
+
+import java.util.*;
+
+/**
+ * GraphOptimizer: applies a set of {@link GraphOptimizationPass}es to a SameDiff graph, usually after import (for
+ * example, from TensorFlow) and before inference.<br>
+ * Passes are applied repeatedly until none of them modify the graph any further (as one pass may enable another - for
+ * example, mmul + bias add fusion enables relu_layer fusion). See {@link OptimizationPasses} for the built-in passes.<br>
+ * <br>
+ * Note that the original SameDiff instance is not modified; a copy is made, which is then modified and returned.<br>
+ * Placeholders, outputs (as specified, and as set via {@link SameDiff#setOutputs(List)}), loss variables and
+ * variables not used by any ops are always available under the same names after optimization. Intermediate
+ * variables however may be removed - hence all variables that will be requested later must be specified as outputs.
+ */
+@Slf4j
+public class GraphOptimizer {
+    /**
+     * Maximum number of times all passes are applied
+     */
+    public static final int MAX_ITERATIONS = 10;
+
+    private GraphOptimizer() {
+    }
+
+    /**
+     * Optimize the graph using the default passes - see {@link OptimizationPasses#defaults()}
+     *
+     * @param sd      SameDiff instance to optimize. Not modified
+     * @param outputs Variables that must remain available by name after optimization. May be null
+     * @return Optimized copy of the SameDiff instance
+     */
+    public static SameDiff optimize(@NonNull SameDiff sd, String... outputs) {
+        return optimize(sd, outputs == null ? null : Arrays.asList(outputs), OptimizationPasses.defaults());
+    }
+
+    /**
+     * Optimize the graph using the specified passes
+     *
+     * @param sd      SameDiff instance to optimize. Not modified
+     * @param outputs Variables that must remain available by name after optimization. May be null
+     * @param passes  Optimization passes to apply, in order
+     * @return Optimized copy of the SameDiff instance
+     */
+    public static SameDiff optimize(@NonNull SameDiff sd, Collection<String> outputs, @NonNull List<GraphOptimizationPass> passes) {
+        //Make a copy so that if the optimization fails part way through, we don't leave user with broken graph
+        sd = sd.dup();
+        Set<String> protectedVariables = protectedVariables(sd, outputs);
+
+        int numOps = sd.getOps().size();
+        int iter = 0;
+        boolean modified = true;
+        while (modified && iter++ < MAX_ITERATIONS) {
+            modified = false;
+            for (GraphOptimizationPass p : passes) {
+                if (p.apply(sd, protectedVariables)) {
+                    log.debug("Graph optimization pass {} modified the graph: {} ops remaining", p.getClass().getSimpleName(), sd.getOps().size());
+                    modified = true;
+                }
+            }
+        }
+
+        log.info("Graph optimization complete: {} ops before, {} ops after optimization", numOps, sd.getOps().size());
+        return sd;
+    }
+
+    protected static Set<String> protectedVariables(SameDiff sd, Collection<String> outputs) {
+        Set<String> out = new HashSet<>();
+        if (outputs != null) {
+            for (String s : outputs) {
+                Preconditions.checkState(sd.hasVariable(s), "Cannot optimize graph: requested output variable \"%s\" does not exist", s);
+                out.add(s);
+            }
+        }
+        if (sd.outputs() != null)
+            out.addAll(sd.outputs());
+        out.addAll(sd.getLossVariables());
+
+        for (Variable v : sd.getVariables().values()) {
+            if (v.getVariable().getVariableType() == VariableType.PLACEHOLDER || v.getInputsForOp() == null || v.getInputsForOp().isEmpty())
+                out.add(v.getName());
+        }
+
+        return out;
+    }
+}
@@ -60,113 +60,130 @@ public class GraphTransformUtil {
 
         for (SubGraph sg : subgraphs) {
             List<SDVariable> newOutputs = processor.processSubgraph(sd, sg);
-            List<SDVariable> oldOutputs = sg.outputs();
-            Preconditions.checkState(oldOutputs.size() == newOutputs.size(), "Error applying subgraph processor: " +
-                    "different number of outputs for subgraph (%s) vs. returned by preprocessor (%s)", oldOutputs.size(), newOutputs.size());
-
-            //Step 1: replace the old outputs with new outputs
-            //So for initial graph (x -> y -> z) and post application of processor we now have (x -> (y, A); y->z),
-            // we want to end up with (x -> A -> z)
-            List<DifferentialFunction> allSubGraphFns = sg.allFunctionsInSubgraph();
-            for (int i = 0; i < oldOutputs.size(); i++) {
-                String oldOutVarName = oldOutputs.get(i).name();
-                String newOutVarName = newOutputs.get(i).name();
-                Preconditions.checkState(!oldOutVarName.equals(newOutVarName), "Reusing old variables not yet implemented");
-
-                //Update inputs for ops: if X->opA, and now Y->opA, then X.inputsForOps contains "opA"; Y.inputsForOps should be updated
-                List<String> oldInputsForOps = sd.getVariables().get(oldOutVarName).getInputsForOp();
-                if (oldInputsForOps != null) {
-                    List<String> newInputsForOps = new ArrayList<>();
-                    for (String s : oldInputsForOps) {
-                        DifferentialFunction df = sd.getOpById(s);
-                        if (!allSubGraphFns.contains(df)) {
-                            newInputsForOps.add(s);
-                        }
+            replaceSubgraph(sd, sg, newOutputs);
+        }
+
+        return sd;
+    }
+
+    /**
+     * Replace the specified subgraph with the new outputs, in-place.<br>
+     * Anywhere the subgraph outputs were used as inputs (or as control dependencies), the corresponding new outputs are used
+     * instead; the subgraph ops and their output variables are then removed from the SameDiff instance.<br>
+     * New outputs must already be present in the SameDiff instance: they may be outputs of newly added ops, or existing
+     * variables that are not part of the subgraph (for example, one of the subgraph inputs).
+     *
+     * @param sd         SameDiff instance to modify
+     * @param sg         Subgraph to replace
+     * @param newOutputs New outputs - must have the same number of outputs as {@link SubGraph#outputs()}
+     */
+    public static void replaceSubgraph(@NonNull SameDiff sd, @NonNull SubGraph sg, @NonNull List<SDVariable> newOutputs) {
+        List<SDVariable> oldOutputs = sg.outputs();
+        Preconditions.checkState(oldOutputs.size() == newOutputs.size(), "Error applying subgraph processor: " +
+                "different number of outputs for subgraph (%s) vs. returned by preprocessor (%s)", oldOutputs.size(), newOutputs.size());
+
+        //Step 1: replace the old outputs with new outputs
+        //So for initial graph (x -> y -> z) and post application of processor we now have (x -> (y, A); y->z),
+        // we want to end up with (x -> A -> z)
+        List<DifferentialFunction> allSubGraphFns = sg.allFunctionsInSubgraph();
+        for (int i = 0; i < oldOutputs.size(); i++) {
+            String oldOutVarName = oldOutputs.get(i).name();
+            String newOutVarName = newOutputs.get(i).name();
+            Preconditions.checkState(!oldOutVarName.equals(newOutVarName), "Reusing old variables not yet implemented");
+
+            //Update inputs for ops: if X->opA, and now Y->opA, then X.inputsForOps contains "opA"; Y.inputsForOps should be updated
+            List<String> oldInputsForOps = sd.getVariables().get(oldOutVarName).getInputsForOp();
+            if (oldInputsForOps != null) {
+                //New output may be an existing variable (i.e., subgraph input) with its own consumers - keep them
+                List<String> existing = sd.getVariables().get(newOutVarName).getInputsForOp();
+                List<String> newInputsForOps = existing == null ? new ArrayList<String>() : new ArrayList<>(existing);
+                for (String s : oldInputsForOps) {
+                    DifferentialFunction df = sd.getOpById(s);
+                    if (!allSubGraphFns.contains(df) && !newInputsForOps.contains(s)) {
+                        newInputsForOps.add(s);
                     }
-                    sd.getVariables().get(newOutVarName).setInputsForOp(newInputsForOps);
                 }
+                sd.getVariables().get(newOutVarName).setInputsForOp(newInputsForOps);
+            }
 
 
-                //Basically: anywhere that oldName exists, newName should be substituted
-                for (Variable v : sd.getVariables().values()) {
-                    // if control dep v -> oldOutput exists, replace it
-                    if (v.getControlDepsForVar() != null) {
-                        List<String> cds = v.getControlDepsForVar();
-                        int idx;
-                        while ((idx = cds.indexOf(oldOutVarName)) > 0) {
-                            cds.set(idx, newOutVarName);
-                        }
+            //Basically: anywhere that oldName exists, newName should be substituted
+            for (Variable v : sd.getVariables().values()) {
+                // if control dep v -> oldOutput exists, replace it
+                if (v.getControlDepsForVar() != null) {
+                    List<String> cds = v.getControlDepsForVar();
+                    int idx;
+                    while ((idx = cds.indexOf(oldOutVarName)) > 0) {
+                        cds.set(idx, newOutVarName);
                     }
+                }
 
-                    if (v.getControlDeps() != null) {
-                        List<String> cds = v.getControlDeps();
-                        //Control dependency oldOutput -> v exists, replace it
-                        int idx;
-                        while ((idx = cds.indexOf(oldOutVarName)) > 0) {
-                            cds.set(idx, newOutVarName);
-                        }
+                if (v.getControlDeps() != null) {
+                    List<String> cds = v.getControlDeps();
+                    //Control dependency oldOutput -> v exists, replace it
+                    int idx;
+                    while ((idx = cds.indexOf(oldOutVarName)) > 0) {
+                        cds.set(idx, newOutVarName);
                     }
                 }
+            }
 
-                for (SameDiffOp op : sd.getOps().values()) {
-                    List<String> inputsToOp = op.getInputsToOp();
-                    if (inputsToOp != null) {
-                        int idx;
-                        while ((idx = inputsToOp.indexOf(oldOutVarName)) >= 0) {
-                            //Previous Op.inputs = {oldVarName, ...} - now {newVarName, ...}
-                            inputsToOp.set(idx, newOutVarName);
-                        }
+            for (SameDiffOp op : sd.getOps().values()) {
+                List<String> inputsToOp = op.getInputsToOp();
+                if (inputsToOp != null) {
+                    int idx;
+                    while ((idx = inputsToOp.indexOf(oldOutVarName)) >= 0) {
+                        //Previous Op.inputs = {oldVarName, ...} - now {newVarName, ...}
+                        inputsToOp.set(idx, newOutVarName);
                     }
+                }
 
-                    //Don't need to modify outputsOfOp - old outputs are only on functions to be removed anyway
-                    List<String> controlDeps = op.getControlDeps();
-                    if (controlDeps != null) {
-                        int idx;
-                        while ((idx = controlDeps.indexOf(oldOutVarName)) >= 0) {
-                            //Previous Op.inputs = {oldVarName, ...} - now {newVarName, ...}
-                            controlDeps.set(idx, newOutVarName);
-                        }
+                //Don't need to modify outputsOfOp - old outputs are only on functions to be removed anyway
+                List<String> controlDeps = op.getControlDeps();
+                if (controlDeps != null) {
+                    int idx;
+                    while ((idx = controlDeps.indexOf(oldOutVarName)) >= 0) {
+                        //Previous Op.inputs = {oldVarName, ...} - now {newVarName, ...}
+                        controlDeps.set(idx, newOutVarName);
                     }
                 }
             }
+        }
 
-            //Step 2: Update input variables: if X -> (subgraph) exists, then X.inputsForOp needs to be updated
-            List<SDVariable> inputs = sg.inputs();
-            for (SDVariable v : inputs) {
-                Variable var = sd.getVariables().get(v.name());
-                if (var.getInputsForOp() != null) {
-                    List<String> newInputsForOp = new ArrayList<>(var.getInputsForOp());
-                    for (String opName : var.getInputsForOp()) {
-                        //Two possibilities here:
-                        // (1) variable is (was) input to op that has been removed - just remove from list
-                        // (2) variable is now connected directly as an output: (A->B->C) becomes (A->C)
-                        // For the latter case, this
-                        DifferentialFunction df = sd.getOpById(opName);
-                        if (allSubGraphFns.contains(df)) {
-                            newInputsForOp.remove(opName);
-                        }
+        //Step 2: Update input variables: if X -> (subgraph) exists, then X.inputsForOp needs to be updated
+        List<SDVariable> inputs = sg.inputs();
+        for (SDVariable v : inputs) {
+            Variable var = sd.getVariables().get(v.name());
+            if (var.getInputsForOp() != null) {
+                List<String> newInputsForOp = new ArrayList<>(var.getInputsForOp());
+                for (String opName : var.getInputsForOp()) {
+                    //Two possibilities here:
+                    // (1) variable is (was) input to op that has been removed - just remove from list
+                    // (2) variable is now connected directly as an output: (A->B->C) becomes (A->C)
+                    // For the latter case, this
+                    DifferentialFunction df = sd.getOpById(opName);
+                    if (allSubGraphFns.contains(df)) {
+                        newInputsForOp.remove(opName);
                     }
-                    var.setInputsForOp(newInputsForOp);
                 }
+                var.setInputsForOp(newInputsForOp);
             }
+        }
 
 
-            //Step 3: Remove the old variables and old functions
-            Map<String, SameDiffOp> ops = sd.getOps();
-            Map<String, Variable> vars = sd.getVariables();
+        //Step 3: Remove the old variables and old functions
+        Map<String, SameDiffOp> ops = sd.getOps();
+        Map<String, Variable> vars = sd.getVariables();
 
-            for (DifferentialFunction df : sg.allFunctionsInSubgraph()) {
-                ops.remove(df.getOwnName());
-                SDVariable[] outputs = df.outputVariables();
-                if (outputs != null) {
-                    for (SDVariable v : outputs) {
-                        vars.remove(v.name());
-                    }
+        for (DifferentialFunction df : sg.allFunctionsInSubgraph()) {
+            ops.remove(df.getOwnName());
+            SDVariable[] outputs = df.outputVariables();
+            if (outputs != null) {
+                for (SDVariable v : outputs) {
+                    vars.remove(v.name());
                 }
             }
         }
-
-        return sd;
     }
 
     /**
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.transform;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.ScalarOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BiasAdd;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.BatchNorm;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.scalar.RectifiedLinear;
+import org.nd4j.linalg.api.ops.impl.shape.Reshape;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Identity;
+import org.nd4j.linalg.factory.Broadcast;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Built-in graph optimization passes, for use with {@link GraphOptimizer}:<br>
+ * - {@link #removeIdentity()}: removes identity ops and reshape ops that don't change the shape<br>
+ * - {@link #foldConstants()}: replaces subgraphs that only depend on constants by their (constant) outputs<br>
+ * - {@link #fuseMatMulBias()}: mmul + bias add to a single xw_plus_b op<br>
+ * - {@link #fuseMatMulBiasRelu()}: xw_plus_b + relu to a single relu_layer op<br>
+ * - {@link #fuseConvBias()}: conv2d (without bias) + bias add to a single conv2d op with bias<br>
+ * - {@link #foldBatchNorm()}: inference batch norm after conv2d, folded into conv2d weights and bias<br>
+ * Note that batch norm folding requires the conv2d weights and batch norm parameters to be constants - see
+ * {@link SameDiff#convertToConstants(List)} for converting trained variables to constants for inference.
+ */
+public class OptimizationPasses {
+
+    private OptimizationPasses() {
+    }
+
+    /**
+     * @return All built-in passes, in the order used by {@link GraphOptimizer}
+     */
+    public static List<GraphOptimizationPass> defaults() {
+        return Arrays.asList(removeIdentity(), foldConstants(), fuseMatMulBias(), fuseMatMulBiasRelu(), fuseConvBias(),
+                foldBatchNorm());
+    }
+
+    /**
+     * Remove identity ops, and reshape ops where the input already has the requested shape
+     */
+    public static GraphOptimizationPass removeIdentity() {
+        SubGraphPredicate p = SubGraphPredicate.withRoot(new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                return function instanceof Identity || (function instanceof Reshape && isNoOpReshape((Reshape) function));
+            }
+        });
+
+        return new SubGraphReplacementPass(p, new SubGraphProcessor() {
+            @Override
+            public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                return Collections.singletonList(subGraph.getRootNode().arg(0));
+            }
+        }, true);
+    }
+
+    /**
+     * Replace ops that only depend on constants by constants. See {@link ConstantFoldingPass}
+     */
+    public static GraphOptimizationPass foldConstants() {
+        return new ConstantFoldingPass();
+    }
+
+    /**
+     * Fuse mmul(x, w) + bias (no transpose mmul, followed by bias add) into a single xw_plus_b op
+     */
+    public static GraphOptimizationPass fuseMatMulBias() {
+        SubGraphPredicate p = SubGraphPredicate.withRoot(OpPredicate.classEquals(BiasAdd.class))
+                .withInputCount(2)
+                .withInputSubgraph(0, SubGraphPredicate.withRoot(new OpPredicate() {
+                    @Override
+                    public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                        return function.getClass() == Mmul.class && isPlainMmul((Mmul) function);
+                    }
+                }).withInputCount(2));
+
+        return new SubGraphReplacementPass(p, new SubGraphProcessor() {
+            @Override
+            public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                DifferentialFunction biasAdd = subGraph.getRootNode();
+                DifferentialFunction mmul = sd.getVariableOutputOp(biasAdd.arg(0).name());
+                SDVariable[] mmulArgs = mmul.args();
+                if (!isRank(mmulArgs[0], 2) || !isRank(mmulArgs[1], 2))
+                    return null;
+
+                return Collections.singletonList(sd.f().xwPlusB(mmulArgs[0], mmulArgs[1], biasAdd.arg(1)));
+            }
+        }, false);
+    }
+
+    /**
+     * Fuse relu(xw_plus_b(x, w, b)) into a single relu_layer op
+     */
+    public static GraphOptimizationPass fuseMatMulBiasRelu() {
+        SubGraphPredicate p = SubGraphPredicate.withRoot(new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                if (function.getClass() != RectifiedLinear.class)
+                    return false;
+                INDArray cutoff = ((ScalarOp) function).scalar();
+                return cutoff != null && cutoff.getDouble(0) == 0.0;
+            }
+        }).withInputCount(1).withInputSubgraph(0, OpPredicate.classEquals(XwPlusB.class));
+
+        return new SubGraphReplacementPass(p, new SubGraphProcessor() {
+            @Override
+            public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                SDVariable[] args = sd.getVariableOutputOp(subGraph.getRootNode().arg(0).name()).args();
+                return Collections.singletonList(sd.f().reluLayer(args[0], args[1], args[2]));
+            }
+        }, false);
+    }
+
+    /**
+     * Fuse conv2d(x, w) + bias into a single conv2d(x, w, b) op
+     */
+    public static GraphOptimizationPass fuseConvBias() {
+        SubGraphPredicate p = SubGraphPredicate.withRoot(OpPredicate.classEquals(BiasAdd.class))
+                .withInputCount(2)
+                .withInputSubgraph(0, SubGraphPredicate.withRoot(OpPredicate.classEquals(Conv2D.class)).withInputCount(2));
+
+        return new SubGraphReplacementPass(p, new SubGraphProcessor() {
+            @Override
+            public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                DifferentialFunction biasAdd = subGraph.getRootNode();
+                Conv2D conv = (Conv2D) sd.getVariableOutputOp(biasAdd.arg(0).name());
+                Conv2DConfig config = conv.getConfig();
+                boolean[] bArgs = biasAdd.bArgs();
+                if (config == null || bArgs == null || bArgs.length == 0 || bArgs[0] != isNchw(config))
+                    return null;
+
+                SDVariable[] convArgs = conv.args();
+                return Collections.singletonList(sd.f().conv2d(new SDVariable[]{convArgs[0], convArgs[1], biasAdd.arg(1)}, config));
+            }
+        }, false);
+    }
+
+    /**
+     * Fold batch norm (inference mode) following conv2d into the conv2d weights and bias:<br>
+     * w' = w * gamma / sqrt(var + eps)<br>
+     * b' = (b - mean) * gamma / sqrt(var + eps) + beta<br>
+     * Conv2d weights, bias and all batch norm parameters must be constants.
+     */
+    public static GraphOptimizationPass foldBatchNorm() {
+        SubGraphPredicate p = SubGraphPredicate.withRoot(OpPredicate.classEquals(BatchNorm.class))
+                .withInputSubgraph(0, OpPredicate.classEquals(Conv2D.class));
+
+        return new SubGraphReplacementPass(p, new SubGraphProcessor() {
+            @Override
+            public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                DifferentialFunction bn = subGraph.getRootNode();
+                Conv2D conv = (Conv2D) sd.getVariableOutputOp(bn.arg(0).name());
+                Conv2DConfig config = conv.getConfig();
+                SDVariable[] bnArgs = bn.args();
+                SDVariable[] convArgs = conv.args();
+                long[] iArgs = bn.iArgs();
+                double[] tArgs = bn.tArgs();
+                if (config == null || iArgs == null || iArgs.length != 3 || tArgs == null || tArgs.length != 1)
+                    return null;
+
+                //Batch norm must be applied over the channels dimension
+                long axis = iArgs[2];
+                boolean nchw = isNchw(config);
+                if (!(nchw && axis == 1) && !(!nchw && (axis == 3 || axis == -1)))
+                    return null;
+
+                boolean applyGamma = iArgs[0] != 0;
+                boolean applyBeta = iArgs[1] != 0;
+                int expArgs = 3 + (applyGamma ? 1 : 0) + (applyBeta ? 1 : 0);
+                if (bnArgs.length != expArgs)
+                    return null;
+                for (int i = 1; i < bnArgs.length; i++) {
+                    if (!isConstant(bnArgs[i]))
+                        return null;
+                }
+                for (int i = 1; i < convArgs.length; i++) {
+                    if (!isConstant(convArgs[i]))
+                        return null;
+                }
+
+                //Weights: [kH, kW, iC, oC]
+                INDArray w = convArgs[1].getArr();
+                if (w.rank() != 4)
+                    return null;
+                long oC = w.size(3);
+                DataType dt = w.dataType();
+
+                INDArray mean = channels(bnArgs[1].getArr(), oC, dt);
+                INDArray var = channels(bnArgs[2].getArr(), oC, dt);
+                INDArray gamma = applyGamma ? channels(bnArgs[3].getArr(), oC, dt) : null;
+                INDArray beta = applyBeta ? channels(bnArgs[applyGamma ? 4 : 3].getArr(), oC, dt) : null;
+                INDArray b = convArgs.length == 3 ? channels(convArgs[2].getArr(), oC, dt) : null;
+                if (mean == null || var == null || (applyGamma && gamma == null) || (applyBeta && beta == null) ||
+                        (convArgs.length == 3 && b == null))
+                    return null;
+
+                INDArray scale = Transforms.sqrt(var.add(tArgs[0]), false).rdivi(1.0);
+                if (gamma != null)
+                    scale.muli(gamma);
+
+                INDArray newW = Broadcast.mul(w, scale, w.ulike(), 3);
+                INDArray newB = (b == null ? mean.neg() : b.sub(mean)).muli(scale);
+                if (beta != null)
+                    newB.addi(beta);
+
+                SDVariable wVar = sd.constant(sd.generateNewVarName(convArgs[1].name() + "_bnfold", 0), newW);
+                SDVariable bVar = sd.constant(sd.generateNewVarName(bn.getOwnName() + "_bias", 0), newB);
+                return Collections.singletonList(sd.f().conv2d(new SDVariable[]{convArgs[0], wVar, bVar}, config));
+            }
+        }, false);
+    }
+
+    protected static boolean isPlainMmul(Mmul mmul) {
+        //iArgs: transposeA, transposeB, transposeResult
+        long[] iArgs = mmul.iArgs();
+        if (iArgs != null) {
+            for (long l : iArgs) {
+                if (l != 0)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    protected static boolean isNoOpReshape(Reshape reshape) {
+        SDVariable[] args = reshape.args();
+        long[] inShape = args[0].getShape();
+        if (inShape == null)
+            return false;
+        for (long l : inShape) {
+            if (l < 0)
+                return false;
+        }
+
+        long[] newShape;
+        if (args.length == 2) {
+            if (!isConstant(args[1]))
+                return false;
+            newShape = args[1].getArr().toLongVector();
+        } else {
+            newShape = reshape.iArgs();
+            //Reshape order may be specified as the first integer arg
+            if (newShape != null && newShape.length == inShape.length + 1 && (newShape[0] == 'c' || newShape[0] == 'f'))
+                newShape = Arrays.copyOfRange(newShape, 1, newShape.length);
+        }
+
+        return Arrays.equals(inShape, newShape);
+    }
+
+    protected static boolean isNchw(Conv2DConfig config) {
+        return Conv2DConfig.NCHW.equalsIgnoreCase(config.getDataFormat());
+    }
+
+    protected static boolean isConstant(SDVariable v) {
+        return v != null && v.getVariableType() == VariableType.CONSTANT && v.getArr() != null;
+    }
+
+    protected static boolean isRank(SDVariable v, int rank) {
+        //Shape is known only for constants, variables and placeholders - unknown rank is never matched
+        long[] shape = v.getShape();
+        return shape != null && shape.length == rank;
+    }
+
+    /**
+     * @return Per-channel parameters as a rank 1 array with the specified length and type, or null if the array
+     * doesn't have the expected length
+     */
+    protected static INDArray channels(INDArray arr, long numChannels, DataType dt) {
+        if (arr == null || arr.length() != numChannels)
+            return null;
+        return arr.reshape(numChannels).castTo(dt);
+    }
+}
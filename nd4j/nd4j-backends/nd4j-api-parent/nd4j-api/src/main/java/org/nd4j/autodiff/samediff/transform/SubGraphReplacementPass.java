@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.transform;
+
+import lombok.NonNull;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Graph optimization pass that replaces all subgraphs matching a {@link SubGraphPredicate} using a {@link SubGraphProcessor}.<br>
+ * Only subgraphs with a single output (the output of the root op) are replaced - i.e., subgraphs where intermediate
+ * results are used elsewhere in the graph are left as is. Subgraphs with control dependencies are also left as is.<br>
+ * The processor should return a single new output for the subgraph, or null if the subgraph should not be replaced.
+ * The new output is renamed to the name of the original output, so the graph outputs are still available under the
+ * same names after the replacement.<br>
+ * For pass-through processors (i.e., processors that return one of the existing variables, such as the subgraph input
+ * for identity removal) the original output name can't be kept, hence such subgraphs aren't replaced if the original
+ * output is protected.
+ */
+public class SubGraphReplacementPass implements GraphOptimizationPass {
+
+    private final SubGraphPredicate predicate;
+    private final SubGraphProcessor processor;
+    private final boolean passThrough;
+
+    /**
+     * @param predicate   Predicate for selecting the subgraphs to replace
+     * @param processor   Processor to create the replacement for the subgraph
+     * @param passThrough If true: processor returns an existing variable instead of creating a new one
+     */
+    public SubGraphReplacementPass(@NonNull SubGraphPredicate predicate, @NonNull SubGraphProcessor processor, boolean passThrough) {
+        this.predicate = predicate;
+        this.processor = processor;
+        this.passThrough = passThrough;
+    }
+
+    @Override
+    public boolean apply(SameDiff sd, Set<String> protectedVariables) {
+        boolean modified = false;
+        for (DifferentialFunction df : sd.ops()) {
+            //Op may have been removed as part of an earlier replacement
+            if (!sd.getOps().containsKey(df.getOwnName()) || !predicate.matches(sd, df))
+                continue;
+
+            SubGraph sg = predicate.getSubGraph(sd, df);
+            if (!canReplace(sd, sg, protectedVariables))
+                continue;
+
+            String outName = df.outputVariables()[0].name();
+            List<SDVariable> newOut = processor.processSubgraph(sd, sg);
+            if (newOut == null || newOut.isEmpty())
+                continue;
+
+            //Root output may not be used by any ops (i.e., graph output), in which case there is nothing to re-wire
+            List<SDVariable> oldOut = sg.outputs();
+            GraphTransformUtil.replaceSubgraph(sd, sg, oldOut.isEmpty() ? Collections.<SDVariable>emptyList() : newOut);
+            if (!passThrough)
+                sd.renameVariable(newOut.get(0).name(), outName);
+            modified = true;
+        }
+
+        return modified;
+    }
+
+    protected boolean canReplace(SameDiff sd, SubGraph sg, Set<String> protectedVariables) {
+        SDVariable[] rootOut = sg.getRootNode().outputVariables();
+        if (rootOut == null || rootOut.length != 1)
+            return false;
+
+        if (passThrough && protectedVariables.contains(rootOut[0].name()))
+            return false;
+
+        List<SDVariable> outputs = sg.outputs();
+        if (outputs.size() > 1 || (outputs.size() == 1 && !outputs.get(0).name().equals(rootOut[0].name())))
+            return false;
+
+        for (DifferentialFunction df : sg.allFunctionsInSubgraph()) {
+            SameDiffOp op = sd.getOps().get(df.getOwnName());
+            if (op == null || notEmpty(op.getControlDeps()) || notEmpty(op.getVarControlDeps()) || notEmpty(op.getControlDepFor()))
+                return false;
+
+            if (df != sg.getRootNode()) {
+                for (String s : op.getOutputsOfOp()) {
+                    if (protectedVariables.contains(s))
+                        return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean notEmpty(List<String> l) {
+        return l != null && !l.isEmpty();
+    }
+}
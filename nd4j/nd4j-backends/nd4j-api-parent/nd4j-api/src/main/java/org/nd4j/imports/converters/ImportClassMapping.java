@@ -557,6 +557,9 @@ public class ImportClassMapping {
             org.nd4j.linalg.api.ops.impl.transforms.strict.TanDerivative.class,
             org.nd4j.linalg.api.ops.impl.transforms.strict.Tanh.class,
             org.nd4j.linalg.api.ops.impl.transforms.strict.TanhDerivative.class,
+            org.nd4j.linalg.api.ops.impl.updaters.FusedAdamUpdater.class,
+            org.nd4j.linalg.api.ops.impl.updaters.FusedNesterovsUpdater.class,
+            org.nd4j.linalg.api.ops.impl.updaters.FusedRmsPropUpdater.class,
             org.nd4j.linalg.api.ops.persistence.RestoreV2.class,
             org.nd4j.linalg.api.ops.persistence.SaveV2.class,
             org.nd4j.linalg.api.ops.random.compat.RandomStandardNormal.class,
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.api.ops.impl.updaters;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+
+/**
+ * Fused Adam updater op: L1/L2 regularization, Adam update and weight decay in a single pass over the arrays.<br>
+ * This op is always in-place: gradient array is replaced with the update (to be subtracted from the parameters), and
+ * M/V state arrays are updated. Parameters are only used for regularization, and are not modified.
+ */
+public class FusedAdamUpdater extends DynamicCustomOp {
+
+    public FusedAdamUpdater() {
+        //
+    }
+
+    /**
+     * @param gradient     Gradient - replaced by the update
+     * @param params       Parameters
+     * @param stateM       Adam M state
+     * @param stateV       Adam V state
+     * @param learningRate Learning rate for the current iteration
+     * @param beta1        Adam beta1
+     * @param beta2        Adam beta2
+     * @param epsilon      Adam epsilon
+     * @param l1           L1 regularization coefficient (applied to the gradient before the updater)
+     * @param l2           L2 regularization coefficient (applied to the gradient before the updater)
+     * @param weightDecay  Weight decay coefficient, including learning rate if applicable (applied after the updater)
+     * @param iteration    Current iteration, for bias correction
+     */
+    public FusedAdamUpdater(@NonNull INDArray gradient, @NonNull INDArray params, @NonNull INDArray stateM, @NonNull INDArray stateV,
+                            double learningRate, double beta1, double beta2, double epsilon, double l1, double l2,
+                            double weightDecay, int iteration) {
+        addInputArgument(gradient, params, stateM, stateV);
+        addTArgument(learningRate, beta1, beta2, epsilon, l1, l2, weightDecay);
+        addIArgument(iteration);
+
+        // this op is always inplace
+        setInPlace(true);
+        setInplaceCall(true);
+        addOutputArgument(gradient, params, stateM, stateV);
+    }
+
+    @Override
+    public String opName() {
+        return "fused_adam_updater";
+    }
+}
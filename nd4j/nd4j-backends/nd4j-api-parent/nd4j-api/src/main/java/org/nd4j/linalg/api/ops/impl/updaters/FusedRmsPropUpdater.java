@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.api.ops.impl.updaters;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+
+/**
+ * Fused RMSProp updater op: L1/L2 regularization, RMSProp update and weight decay in a single pass over the arrays.
+ * See {@link FusedAdamUpdater} for details
+ */
+public class FusedRmsPropUpdater extends DynamicCustomOp {
+
+    public FusedRmsPropUpdater() {
+        //
+    }
+
+    /**
+     * @param gradient     Gradient - replaced by the update
+     * @param params       Parameters
+     * @param stateG       RMSProp cache state
+     * @param learningRate Learning rate for the current iteration
+     * @param rmsDecay     RMSProp decay
+     * @param epsilon      RMSProp epsilon
+     * @param l1           L1 regularization coefficient (applied to the gradient before the updater)
+     * @param l2           L2 regularization coefficient (applied to the gradient before the updater)
+     * @param weightDecay  Weight decay coefficient, including learning rate if applicable (applied after the updater)
+     */
+    public FusedRmsPropUpdater(@NonNull INDArray gradient, @NonNull INDArray params, @NonNull INDArray stateG,
+                               double learningRate, double rmsDecay, double epsilon, double l1, double l2, double weightDecay) {
+        addInputArgument(gradient, params, stateG);
+        addTArgument(learningRate, rmsDecay, epsilon, l1, l2, weightDecay);
+
+        // this op is always inplace
+        setInPlace(true);
+        setInplaceCall(true);
+        addOutputArgument(gradient, params, stateG);
+    }
+
+    @Override
+    public String opName() {
+        return "fused_rms_prop_updater";
+    }
+}
@@ -19,4 +19,10 @@ package org.nd4j.linalg.compression;
 public class ThresholdCompression {
     public static final int FLEXIBLE_ENCODING = 0;
     public static final int BITMAP_ENCODING = 1;
+
+    // encodings below are implemented in UpdateCodecs
+    public static final int DELTA_ENCODING = 2;
+    public static final int TOPK_ENCODING = 3;
+    public static final int ONEBIT_ENCODING = 4;
+    public static final int INT8_ENCODING = 5;
 }
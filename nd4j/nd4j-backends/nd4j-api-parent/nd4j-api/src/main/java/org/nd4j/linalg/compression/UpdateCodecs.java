@@ -0,0 +1,428 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.compression;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * Java implementations of additional update encodings, used in addition to native threshold and bitmap encodings.
+ *
+ * All encodings use the same layout as threshold encoding: INT array with 5 header elements:
+ * [0] number of encoded values, [1] length of original array, [2] float bits of the threshold (or scale),
+ * [3] encoding type (see {@link ThresholdCompression}), [4] encoding specific value, followed by encoding specific body.
+ *
+ * - DELTA_ENCODING: same semantics as threshold encoding (sign of each value above threshold), but indices are
+ *   delta-coded and stored as varints, with sign in the lowest bit. [4] is the number of bytes in the index stream.
+ * - TOPK_ENCODING: exact values of top-k elements by magnitude. Indices are delta-coded varints ([4] is the number of
+ *   bytes in the index stream), followed by float bits of the values.
+ * - ONEBIT_ENCODING: dense, 1 bit per element: sign. Positive values are decoded as mean of positive values ([2]),
+ *   negative values as mean of negative values ([4]).
+ * - INT8_ENCODING: dense, 8 bits per element: value / scale, rounded. [2] is the scale.
+ *
+ * All encode methods implement error feedback: encoded part is subtracted from the given array, so the rest of it is
+ * kept as residual for the next round. Decode methods add decoded values to the target array.
+ *
+ * Arrays are read and updated in bulk: values are copied out once, and encoded/decoded values are applied with a single
+ * dense op, instead of per-element access.
+ */
+public class UpdateCodecs {
+    public static final int HEADER_LENGTH = 5;
+
+    private UpdateCodecs() {
+        //
+    }
+
+    /**
+     * This method returns true if given encoding type is implemented by this class
+     */
+    public static boolean isSupported(int encoding) {
+        return encoding == ThresholdCompression.DELTA_ENCODING || encoding == ThresholdCompression.TOPK_ENCODING
+                || encoding == ThresholdCompression.ONEBIT_ENCODING || encoding == ThresholdCompression.INT8_ENCODING;
+    }
+
+    /**
+     * This method returns number of bytes used by the encoded message
+     */
+    public static long bytesOnWire(@NonNull INDArray encoded) {
+        return encoded.data().length() * 4;
+    }
+
+    /**
+     * Threshold encoding with delta-coded index stream: all elements with absolute value >= threshold are encoded as
+     * sign * threshold, and threshold is subtracted from their magnitude in the residual
+     *
+     * @param residual  updates + residual. Will be modified in place
+     * @param threshold threshold
+     * @param limit     max number of encoded elements, or null if not limited
+     * @return encoded array, or null if there's nothing to encode
+     */
+    public static INDArray encodeDelta(@NonNull INDArray residual, double threshold, Integer limit) {
+        INDArray flat = residual.reshape(residual.length());
+        float[] values = toFloatArray(flat);
+        int max = limit == null ? values.length : Math.min(limit, values.length);
+
+        VarIntWriter writer = new VarIntWriter(Math.max(16, max / 4));
+        float[] encodedPart = new float[values.length];
+        int count = 0;
+        int prev = 0;
+        for (int i = 0; i < values.length && count < max; i++) {
+            float v = values[i];
+            if (v >= threshold || v <= -threshold) {
+                boolean negative = v < 0;
+                writer.write(((long) (i - prev) << 1) | (negative ? 1 : 0));
+                prev = i;
+                count++;
+
+                encodedPart[i] = negative ? (float) -threshold : (float) threshold;
+            }
+        }
+
+        if (count == 0)
+            return null;
+
+        flat.subi(Nd4j.createFromArray(encodedPart).castTo(flat.dataType()));
+
+        int[] encoded = writer.pack(count, values.length, Float.floatToIntBits((float) threshold),
+                ThresholdCompression.DELTA_ENCODING, new int[0]);
+        return Nd4j.createFromArray(encoded);
+    }
+
+    /**
+     * Exact top-k encoding: k elements with largest absolute values are encoded with their exact values, and set
+     * to zero in the residual
+     *
+     * @param residual updates + residual. Will be modified in place
+     * @param k        number of elements to encode
+     * @return encoded array, or null if there's nothing to encode
+     */
+    public static INDArray encodeTopK(@NonNull INDArray residual, int k) {
+        INDArray flat = residual.reshape(residual.length());
+        float[] values = toFloatArray(flat);
+        k = Math.min(k, values.length);
+        if (k <= 0)
+            return null;
+
+        // k-th largest magnitude
+        float[] abs = new float[values.length];
+        for (int i = 0; i < values.length; i++)
+            abs[i] = Math.abs(values[i]);
+        float kth = select(abs, values.length - k);
+        if (kth == 0.0f)
+            kth = Float.MIN_VALUE;
+
+        // first pass: everything above k-th magnitude, second pass: ties, till we have k elements
+        boolean[] selected = new boolean[values.length];
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (Math.abs(values[i]) > kth) {
+                selected[i] = true;
+                count++;
+            }
+        }
+        for (int i = 0; i < values.length && count < k; i++) {
+            if (!selected[i] && Math.abs(values[i]) == kth) {
+                selected[i] = true;
+                count++;
+            }
+        }
+
+        if (count == 0)
+            return null;
+
+        VarIntWriter writer = new VarIntWriter(Math.max(16, count * 2));
+        int[] body = new int[count];
+        float[] encodedPart = new float[values.length];
+        int prev = 0;
+        int e = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (selected[i]) {
+                writer.write(i - prev);
+                body[e++] = Float.floatToIntBits(values[i]);
+                prev = i;
+
+                encodedPart[i] = values[i];
+            }
+        }
+
+        flat.subi(Nd4j.createFromArray(encodedPart).castTo(flat.dataType()));
+
+        int[] encoded = writer.pack(count, values.length, 0, ThresholdCompression.TOPK_ENCODING, body);
+        return Nd4j.createFromArray(encoded);
+    }
+
+    /**
+     * 1-bit quantization: sign of every element is encoded, positive elements are decoded as mean of positive
+     * elements, negative (and zero) elements as mean of negative elements
+     *
+     * @param residual updates + residual. Will be modified in place
+     * @return encoded array, or null if there's nothing to encode
+     */
+    public static INDArray encodeOneBit(@NonNull INDArray residual) {
+        INDArray flat = residual.reshape(residual.length());
+        float[] values = toFloatArray(flat);
+
+        double posSum = 0.0, negSum = 0.0;
+        int posCnt = 0, negCnt = 0;
+        for (float v : values) {
+            if (v > 0) {
+                posSum += v;
+                posCnt++;
+            } else {
+                negSum += v;
+                negCnt++;
+            }
+        }
+
+        if (posSum == 0.0 && negSum == 0.0)
+            return null;
+
+        float posMean = posCnt == 0 ? 0.0f : (float) (posSum / posCnt);
+        float negMean = negCnt == 0 ? 0.0f : (float) (negSum / negCnt);
+
+        int[] encoded = new int[HEADER_LENGTH + (values.length + 31) / 32];
+        encoded[0] = values.length;
+        encoded[1] = values.length;
+        encoded[2] = Float.floatToIntBits(posMean);
+        encoded[3] = ThresholdCompression.ONEBIT_ENCODING;
+        encoded[4] = Float.floatToIntBits(negMean);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] > 0) {
+                encoded[HEADER_LENGTH + i / 32] |= 1 << (i % 32);
+                values[i] -= posMean;
+            } else {
+                values[i] -= negMean;
+            }
+        }
+
+        flat.assign(Nd4j.createFromArray(values).castTo(flat.dataType()));
+        return Nd4j.createFromArray(encoded);
+    }
+
+    /**
+     * 8-bit quantization: every element is encoded as signed byte, scaled by max absolute value
+     *
+     * @param residual updates + residual. Will be modified in place
+     * @return encoded array, or null if there's nothing to encode
+     */
+    public static INDArray encodeInt8(@NonNull INDArray residual) {
+        INDArray flat = residual.reshape(residual.length());
+        float[] values = toFloatArray(flat);
+
+        float maxAbs = 0.0f;
+        for (float v : values)
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+
+        if (maxAbs == 0.0f)
+            return null;
+
+        float scale = maxAbs / 127.0f;
+        int[] encoded = new int[HEADER_LENGTH + (values.length + 3) / 4];
+        encoded[0] = values.length;
+        encoded[1] = values.length;
+        encoded[2] = Float.floatToIntBits(scale);
+        encoded[3] = ThresholdCompression.INT8_ENCODING;
+        for (int i = 0; i < values.length; i++) {
+            int q = Math.max(-127, Math.min(127, Math.round(values[i] / scale)));
+            encoded[HEADER_LENGTH + i / 4] |= (q & 0xFF) << ((i % 4) * 8);
+            values[i] -= q * scale;
+        }
+
+        flat.assign(Nd4j.createFromArray(values).castTo(flat.dataType()));
+        return Nd4j.createFromArray(encoded);
+    }
+
+    /**
+     * This method decodes given message and adds decoded values to the target array
+     *
+     * @param encoded encoded message
+     * @param target  target array, must have length of the original array
+     * @return target
+     */
+    public static INDArray decode(@NonNull INDArray encoded, @NonNull INDArray target) {
+        DataBuffer buffer = encoded.data();
+        int encoding = buffer.getInt(3);
+        int count = buffer.getInt(0);
+        int length = buffer.getInt(1);
+        if (target.length() != length)
+            throw new ND4JIllegalStateException("Target length [" + target.length() + "] doesn't match encoded length [" + length + "]");
+
+        INDArray flat = target.reshape(target.length());
+        int[] body = buffer.asInt();
+        float[] decoded = new float[length];
+        switch (encoding) {
+            case ThresholdCompression.DELTA_ENCODING: {
+                float threshold = Float.intBitsToFloat(body[2]);
+                VarIntReader reader = new VarIntReader(body, HEADER_LENGTH);
+                int idx = 0;
+                for (int e = 0; e < count; e++) {
+                    long v = reader.read();
+                    idx += (int) (v >>> 1);
+                    decoded[idx] += (v & 1) == 1 ? -threshold : threshold;
+                }
+            }
+                break;
+            case ThresholdCompression.TOPK_ENCODING: {
+                int bodyOffset = HEADER_LENGTH + (body[4] + 3) / 4;
+                VarIntReader reader = new VarIntReader(body, HEADER_LENGTH);
+                int idx = 0;
+                for (int e = 0; e < count; e++) {
+                    idx += (int) reader.read();
+                    decoded[idx] += Float.intBitsToFloat(body[bodyOffset + e]);
+                }
+            }
+                break;
+            case ThresholdCompression.ONEBIT_ENCODING: {
+                float posMean = Float.intBitsToFloat(body[2]);
+                float negMean = Float.intBitsToFloat(body[4]);
+                for (int i = 0; i < length; i++)
+                    decoded[i] = ((body[HEADER_LENGTH + i / 32] >>> (i % 32)) & 1) == 1 ? posMean : negMean;
+            }
+                break;
+            case ThresholdCompression.INT8_ENCODING: {
+                float scale = Float.intBitsToFloat(body[2]);
+                for (int i = 0; i < length; i++)
+                    decoded[i] = ((byte) (body[HEADER_LENGTH + i / 4] >>> ((i % 4) * 8))) * scale;
+            }
+                break;
+            default:
+                throw new ND4JIllegalStateException("Unknown encoding mode: [" + encoding + "]");
+        }
+
+        flat.addi(Nd4j.createFromArray(decoded).castTo(flat.dataType()));
+        return target;
+    }
+
+    /**
+     * Copies values of the given vector into float array, with a single copy if possible
+     */
+    protected static float[] toFloatArray(INDArray flat) {
+        INDArray floats = flat.dataType() == DataType.FLOAT ? flat : flat.castTo(DataType.FLOAT);
+        if (floats.isView() || floats.data().length() != floats.length())
+            floats = floats.dup();
+
+        return floats.data().asFloat();
+    }
+
+    /**
+     * Quickselect: returns the element that would be at the given position if array was sorted. Array is reordered
+     */
+    protected static float select(float[] array, int position) {
+        int left = 0;
+        int right = array.length - 1;
+        while (left < right) {
+            float pivot = array[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (array[i] < pivot)
+                    i++;
+                while (array[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    float tmp = array[i];
+                    array[i] = array[j];
+                    array[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (position <= j)
+                right = j;
+            else if (position >= i)
+                left = i;
+            else
+                break;
+        }
+        return array[position];
+    }
+
+    /**
+     * Writes unsigned LEB128 varints into the byte stream
+     */
+    protected static class VarIntWriter {
+        private byte[] bytes;
+        private int position;
+
+        protected VarIntWriter(int initialCapacity) {
+            bytes = new byte[initialCapacity];
+        }
+
+        protected void write(long value) {
+            if (position + 10 > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + 10));
+
+            while ((value & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        /**
+         * Packs header, byte stream (little endian, 4 bytes per int) and body into single int array
+         */
+        protected int[] pack(int count, int length, int header2, int encoding, int[] body) {
+            int streamInts = (position + 3) / 4;
+            int[] result = new int[HEADER_LENGTH + streamInts + body.length];
+            result[0] = count;
+            result[1] = length;
+            result[2] = header2;
+            result[3] = encoding;
+            result[4] = position;
+            for (int i = 0; i < position; i++)
+                result[HEADER_LENGTH + i / 4] |= (bytes[i] & 0xFF) << ((i % 4) * 8);
+
+            System.arraycopy(body, 0, result, HEADER_LENGTH + streamInts, body.length);
+            return result;
+        }
+    }
+
+    /**
+     * Reads unsigned LEB128 varints from the byte stream packed into int buffer
+     */
+    protected static class VarIntReader {
+        private final int[] ints;
+        private final int offset;
+        private int position;
+
+        protected VarIntReader(int[] ints, int offset) {
+            this.ints = ints;
+            this.offset = offset;
+        }
+
+        protected long read() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                int b = (ints[offset + position / 4] >>> ((position % 4) * 8)) & 0xFF;
+                position++;
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return result;
+                shift += 7;
+            }
+        }
+    }
+}
@@ -0,0 +1,460 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.*;
+import org.bytedeco.javacpp.indexer.*;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.util.ArrayUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * MappedDataSetSerializer: a binary file format for {@link DataSet} and {@link MultiDataSet} objects that can be
+ * read by memory-mapping the file, without any deserialization or copying of the array data.<br>
+ * Unlike {@link DataSet#save(File)} and {@link MultiDataSet#save(File)}, the data for each array is stored in its
+ * native (in-memory) layout, at an aligned offset in the file. When reading, each array's data is memory-mapped and
+ * used directly as the array's {@link DataBuffer} - on CPU, no copy of the data is made, and pages are loaded
+ * on demand by the OS (and are shared with the page cache).<br>
+ * <br>
+ * File layout (all values in native byte order):<br>
+ * - Header: magic bytes, format version, byte order mark, type (DataSet or MultiDataSet), number of features and
+ * labels arrays, and header length<br>
+ * - Array table: for each of features, labels, features masks and labels masks (in that order): datatype (as
+ * {@link DataType#toInt()}, or -1 for null arrays), order, rank, shape and offset of the data in the file<br>
+ * - Array data: aligned to {@link #ALIGNMENT_BYTES}<br>
+ * <br>
+ * Files are mapped copy-on-write, so arrays can be modified in place (for example, by normalizers) without changing
+ * the file. If the file can't be opened for writing (required for copy-on-write mapping), the array data is read
+ * into off-heap memory instead.<br>
+ * Files are not portable between platforms with different byte order. Only numerical and boolean datatypes are
+ * supported; boolean arrays are copied when reading. The data for a single array is limited to Integer.MAX_VALUE
+ * bytes (the maximum size of a single memory mapping). Use {@link #convertDataSet(File, File)} and {@link #convertMultiDataSet(File, File)} to convert files
+ * previously saved with {@link DataSet#save(File)} or {@link MultiDataSet#save(File)}.
+ */
+@Slf4j
+public class MappedDataSetSerializer {
+    /**
+     * Default file extension for memory-mappable DataSet and MultiDataSet files
+     */
+    public static final String FILE_EXTENSION = "mmds";
+    /**
+     * Offsets of all array data in the file are aligned to this number of bytes
+     */
+    public static final int ALIGNMENT_BYTES = 64;
+
+    private static final byte[] MAGIC = "ND4JMMDS".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 2;
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+    private static final int FIXED_HEADER_BYTES = 32;
+    private static final int TYPE_DATASET = 0;
+    private static final int TYPE_MULTIDATASET = 1;
+
+    private MappedDataSetSerializer() {
+    }
+
+    /**
+     * Write the DataSet to the specified file. Feature/label names and example metadata are not saved
+     *
+     * @param ds   DataSet to write
+     * @param file File to write to
+     */
+    public static void write(@NonNull DataSet ds, @NonNull File file) throws IOException {
+        write(TYPE_DATASET, 1, 1, new INDArray[]{ds.getFeatures(), ds.getLabels(), ds.getFeaturesMaskArray(),
+                ds.getLabelsMaskArray()}, file);
+    }
+
+    /**
+     * Write the MultiDataSet to the specified file. Example metadata is not saved
+     *
+     * @param mds  MultiDataSet to write
+     * @param file File to write to
+     */
+    public static void write(@NonNull org.nd4j.linalg.dataset.api.MultiDataSet mds, @NonNull File file) throws IOException {
+        int nF = mds.numFeatureArrays();
+        int nL = mds.numLabelsArrays();
+        INDArray[] arrays = new INDArray[2 * (nF + nL)];
+        copyInto(mds.getFeatures(), arrays, 0, nF);
+        copyInto(mds.getLabels(), arrays, nF, nL);
+        copyInto(mds.getFeaturesMaskArrays(), arrays, nF + nL, nF);
+        copyInto(mds.getLabelsMaskArrays(), arrays, 2 * nF + nL, nL);
+        write(TYPE_MULTIDATASET, nF, nL, arrays, file);
+    }
+
+    /**
+     * Read a DataSet previously written with {@link #write(DataSet, File)}, memory-mapping the array data
+     *
+     * @param file File to read
+     * @return DataSet, with arrays backed by the memory-mapped file
+     */
+    public static DataSet readDataSet(@NonNull File file) throws IOException {
+        Contents c = read(file, TYPE_DATASET);
+        return new DataSet(c.arrays[0], c.arrays[1], c.arrays[2], c.arrays[3]);
+    }
+
+    /**
+     * Read a MultiDataSet previously written with {@link #write(org.nd4j.linalg.dataset.api.MultiDataSet, File)},
+     * memory-mapping the array data
+     *
+     * @param file File to read
+     * @return MultiDataSet, with arrays backed by the memory-mapped file
+     */
+    public static MultiDataSet readMultiDataSet(@NonNull File file) throws IOException {
+        Contents c = read(file, TYPE_MULTIDATASET);
+        int nF = c.numFeatures;
+        int nL = c.numLabels;
+        INDArray[] f = Arrays.copyOfRange(c.arrays, 0, nF);
+        INDArray[] l = Arrays.copyOfRange(c.arrays, nF, nF + nL);
+        INDArray[] fm = Arrays.copyOfRange(c.arrays, nF + nL, 2 * nF + nL);
+        INDArray[] lm = Arrays.copyOfRange(c.arrays, 2 * nF + nL, c.arrays.length);
+        return new MultiDataSet(f, l, allNull(fm) ? null : fm, allNull(lm) ? null : lm);
+    }
+
+    /**
+     * Convert a DataSet file saved with {@link DataSet#save(File)} to the memory-mappable format
+     *
+     * @param source File saved with {@link DataSet#save(File)}
+     * @param target File to write
+     */
+    public static void convertDataSet(@NonNull File source, @NonNull File target) throws IOException {
+        DataSet ds = new DataSet();
+        ds.load(source);
+        write(ds, target);
+    }
+
+    /**
+     * Convert a MultiDataSet file saved with {@link MultiDataSet#save(File)} to the memory-mappable format
+     *
+     * @param source File saved with {@link MultiDataSet#save(File)}
+     * @param target File to write
+     */
+    public static void convertMultiDataSet(@NonNull File source, @NonNull File target) throws IOException {
+        MultiDataSet mds = new MultiDataSet();
+        mds.load(source);
+        write(mds, target);
+    }
+
+    /**
+     * Convert all DataSet (or MultiDataSet) files in the source directory (non-recursively) to the memory-mappable
+     * format. Converted files are written to the target directory, with the same name, and the extension replaced
+     * by {@link #FILE_EXTENSION}
+     *
+     * @param sourceDir    Directory containing files saved with {@link DataSet#save(File)} or {@link MultiDataSet#save(File)}
+     * @param targetDir    Directory to write the converted files to
+     * @param multiDataSet If true: files are MultiDataSets. If false: files are DataSets
+     * @return Number of converted files
+     */
+    public static int convertDirectory(@NonNull File sourceDir, @NonNull File targetDir, boolean multiDataSet) throws IOException {
+        Preconditions.checkState(sourceDir.isDirectory(), "Source directory does not exist or is not a directory: %s", sourceDir);
+        if (!targetDir.exists() && !targetDir.mkdirs())
+            throw new IOException("Could not create target directory: " + targetDir.getAbsolutePath());
+
+        File[] files = sourceDir.listFiles();
+        int count = 0;
+        if (files != null) {
+            for (File f : files) {
+                if (!f.isFile())
+                    continue;
+                String name = f.getName();
+                int idx = name.lastIndexOf('.');
+                File target = new File(targetDir, (idx > 0 ? name.substring(0, idx) : name) + "." + FILE_EXTENSION);
+                if (multiDataSet) {
+                    convertMultiDataSet(f, target);
+                } else {
+                    convertDataSet(f, target);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    protected static void write(int type, int numFeatures, int numLabels, INDArray[] arrays, File file) throws IOException {
+        //Array data must be contiguous, in host memory
+        Nd4j.getExecutioner().commit();
+        INDArray[] toWrite = new INDArray[arrays.length];
+        for (int i = 0; i < arrays.length; i++) {
+            INDArray arr = arrays[i];
+            if (arr == null)
+                continue;
+            Preconditions.checkState(isSupported(arr.dataType()), "Datatype %s is not supported for memory-mapped files", arr.dataType());
+            Preconditions.checkState(dataBytes(arr) <= Integer.MAX_VALUE, "Array data (%s bytes, shape %s) exceeds the " +
+                    "maximum of Integer.MAX_VALUE bytes per array for memory-mapped files", dataBytes(arr), Arrays.toString(arr.shape()));
+            if (arr.isView() || arr.data().length() != arr.length())
+                arr = arr.dup(arr.ordering());
+            Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+            toWrite[i] = arr;
+        }
+
+        //Header length, then array data offsets
+        int headerBytes = FIXED_HEADER_BYTES;
+        for (INDArray arr : toWrite) {
+            headerBytes += 3 * 4 + 8 + (arr == null ? 0 : 8 * arr.rank());
+        }
+        long[] offsets = new long[toWrite.length];
+        long position = align(headerBytes);
+        for (int i = 0; i < toWrite.length; i++) {
+            if (toWrite[i] == null)
+                continue;
+            offsets[i] = position;
+            position = align(position + dataBytes(toWrite[i]));
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.nativeOrder());
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(BYTE_ORDER_MARK);
+        header.putInt(type);
+        header.putInt(numFeatures);
+        header.putInt(numLabels);
+        header.putInt(headerBytes);
+        for (int i = 0; i < toWrite.length; i++) {
+            INDArray arr = toWrite[i];
+            if (arr == null) {
+                header.putInt(-1);
+                header.putInt(0);
+                header.putInt(0);
+                header.putLong(0);
+            } else {
+                header.putInt(arr.dataType().toInt());
+                header.putInt(arr.ordering());
+                header.putInt(arr.rank());
+                header.putLong(offsets[i]);
+                for (long l : arr.shape())
+                    header.putLong(l);
+            }
+        }
+        header.flip();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            channel.truncate(0);
+            writeFully(channel, header, 0);
+            for (int i = 0; i < toWrite.length; i++) {
+                if (toWrite[i] == null || toWrite[i].length() == 0)
+                    continue;
+                ByteBuffer data = toWrite[i].data().pointer().asByteBuffer().order(ByteOrder.nativeOrder());
+                data.limit((int) dataBytes(toWrite[i]));
+                writeFully(channel, data, offsets[i]);
+            }
+            //Pad to full length, so the last array can be mapped
+            raf.setLength(Math.max(raf.length(), position));
+        }
+    }
+
+    protected static Contents read(File file, int expectedType) throws IOException {
+        Preconditions.checkState(file.exists() && file.isFile(), "File does not exist or is a directory: %s", file);
+
+        RandomAccessFile raf;
+        FileChannel.MapMode mode;
+        if (file.canWrite()) {
+            //Copy-on-write mapping requires the channel to be opened for writing; the file itself is never modified
+            raf = new RandomAccessFile(file, "rw");
+            mode = FileChannel.MapMode.PRIVATE;
+        } else {
+            raf = new RandomAccessFile(file, "r");
+            mode = null;
+        }
+
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer fixed = readFully(channel, 0, FIXED_HEADER_BYTES, false);
+            byte[] magic = new byte[MAGIC.length];
+            fixed.get(magic);
+            if (!Arrays.equals(MAGIC, magic))
+                throw new IllegalStateException("Not a memory-mapped DataSet file (invalid header): " + file.getAbsolutePath());
+            int version = fixed.getInt();
+            if (version != VERSION)
+                throw new IllegalStateException("Unsupported memory-mapped DataSet file version " + version + ": " + file.getAbsolutePath());
+            if (fixed.getInt() != BYTE_ORDER_MARK)
+                throw new IllegalStateException("Memory-mapped DataSet file was written on a platform with different byte order: " + file.getAbsolutePath());
+            int type = fixed.getInt();
+            if (type != expectedType)
+                throw new IllegalStateException("Expected " + (expectedType == TYPE_DATASET ? "DataSet" : "MultiDataSet")
+                        + " file, but file contains a " + (type == TYPE_DATASET ? "DataSet" : "MultiDataSet") + ": " + file.getAbsolutePath());
+
+            Contents c = new Contents();
+            c.numFeatures = fixed.getInt();
+            c.numLabels = fixed.getInt();
+            int headerBytes = fixed.getInt();
+            c.arrays = new INDArray[2 * (c.numFeatures + c.numLabels)];
+
+            ByteBuffer table = readFully(channel, FIXED_HEADER_BYTES, headerBytes - FIXED_HEADER_BYTES, false);
+            for (int i = 0; i < c.arrays.length; i++) {
+                int dtCode = table.getInt();
+                char order = (char) table.getInt();
+                int rank = table.getInt();
+                long offset = table.getLong();
+                if (dtCode < 0)
+                    continue;
+
+                DataType dt = DataType.fromInt(dtCode);
+                long[] shape = new long[rank];
+                for (int j = 0; j < rank; j++)
+                    shape[j] = table.getLong();
+                long length = ArrayUtil.prodLong(shape);
+
+                if (length == 0) {
+                    c.arrays[i] = Nd4j.create(dt, shape);
+                    continue;
+                }
+
+                long bytes = length * dt.width();
+                if (bytes > Integer.MAX_VALUE)
+                    throw new IllegalStateException("Array data (" + bytes + " bytes) exceeds the maximum of Integer.MAX_VALUE bytes: " + file.getAbsolutePath());
+                ByteBuffer data;
+                if (mode != null) {
+                    data = channel.map(mode, offset, bytes);
+                } else {
+                    data = readFully(channel, offset, bytes, true);
+                }
+                data.order(ByteOrder.nativeOrder());
+
+                DataBuffer buffer = wrap(data, dt, length);
+                c.arrays[i] = Nd4j.create(buffer, shape, Nd4j.getStrides(shape, order), 0, order);
+            }
+            return c;
+        } finally {
+            //Mappings remain valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Wrap the (direct) buffer as a DataBuffer, without copying. Pointers created from a buffer keep a reference to
+     * it, so the mapping stays valid as long as the DataBuffer is in use
+     */
+    protected static DataBuffer wrap(ByteBuffer data, DataType dt, long length) {
+        switch (dt) {
+            case DOUBLE: {
+                DoublePointer p = new DoublePointer(data.asDoubleBuffer());
+                return Nd4j.createBuffer(p, dt, length, DoubleIndexer.create(p));
+            }
+            case FLOAT: {
+                FloatPointer p = new FloatPointer(data.asFloatBuffer());
+                return Nd4j.createBuffer(p, dt, length, FloatIndexer.create(p));
+            }
+            case HALF: {
+                ShortPointer p = new ShortPointer(data.asShortBuffer());
+                return Nd4j.createBuffer(p, dt, length, HalfIndexer.create(p));
+            }
+            case BFLOAT16: {
+                ShortPointer p = new ShortPointer(data.asShortBuffer());
+                return Nd4j.createBuffer(p, dt, length, Bfloat16Indexer.create(p));
+            }
+            case UINT64:
+            case LONG: {
+                LongPointer p = new LongPointer(data.asLongBuffer());
+                return Nd4j.createBuffer(p, dt, length, LongIndexer.create(p));
+            }
+            case UINT32:
+            case INT: {
+                IntPointer p = new IntPointer(data.asIntBuffer());
+                return Nd4j.createBuffer(p, dt, length, IntIndexer.create(p));
+            }
+            case UINT16: {
+                ShortPointer p = new ShortPointer(data.asShortBuffer());
+                return Nd4j.createBuffer(p, dt, length, UShortIndexer.create(p));
+            }
+            case SHORT: {
+                ShortPointer p = new ShortPointer(data.asShortBuffer());
+                return Nd4j.createBuffer(p, dt, length, ShortIndexer.create(p));
+            }
+            case UBYTE: {
+                BytePointer p = new BytePointer(data);
+                return Nd4j.createBuffer(p, dt, length, UByteIndexer.create(p));
+            }
+            case BYTE: {
+                BytePointer p = new BytePointer(data);
+                return Nd4j.createBuffer(p, dt, length, ByteIndexer.create(p));
+            }
+            case BOOL: {
+                //BooleanPointer can't wrap a buffer (and keep it reachable), so boolean arrays are copied
+                BooleanPointer p = new BooleanPointer(length);
+                Pointer.memcpy(p, new BytePointer(data), length);
+                return Nd4j.createBuffer(p, dt, length, BooleanIndexer.create(p));
+            }
+            default:
+                throw new UnsupportedOperationException("Datatype " + dt + " is not supported for memory-mapped files");
+        }
+    }
+
+    protected static boolean isSupported(DataType dt) {
+        return dt != DataType.UTF8 && dt != DataType.COMPRESSED && dt != DataType.UNKNOWN;
+    }
+
+    private static long dataBytes(INDArray arr) {
+        return arr.length() * arr.dataType().width();
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT_BYTES - 1) / ALIGNMENT_BYTES * ALIGNMENT_BYTES;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, long length, boolean direct) throws IOException {
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalStateException("Cannot read more than Integer.MAX_VALUE bytes into a single buffer: " + length);
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect((int) length) : ByteBuffer.allocate((int) length);
+        buffer.order(ByteOrder.nativeOrder());
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0)
+                throw new EOFException("Unexpected end of file: expected " + length + " bytes, got " + buffer.position());
+            position += n;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void copyInto(INDArray[] from, INDArray[] to, int offset, int n) {
+        if (from == null)
+            return;
+        System.arraycopy(from, 0, to, offset, n);
+    }
+
+    private static boolean allNull(INDArray[] arrays) {
+        for (INDArray arr : arrays) {
+            if (arr != null)
+                return false;
+        }
+        return true;
+    }
+
+    private static class Contents {
+        private int numFeatures;
+        private int numLabels;
+        private INDArray[] arrays;
+    }
+}
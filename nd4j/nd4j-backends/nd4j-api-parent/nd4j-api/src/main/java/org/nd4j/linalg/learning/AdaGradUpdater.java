@@ -38,7 +38,7 @@ import static org.nd4j.linalg.ops.transforms.Transforms.sqrt;
  * @author Adam Gibson
  */
 @Data
-public class AdaGradUpdater implements GradientUpdater<AdaGrad> {
+public class AdaGradUpdater implements SparseGradientUpdater<AdaGrad> {
     public static final String GRAD_STATE = "grad";
     public INDArray historicalGradient;
     public int[] shape;
@@ -104,4 +104,24 @@ public class AdaGradUpdater implements GradientUpdater<AdaGrad> {
         // lr * gradient / (sqrt(sumSquaredGradients) + epsilon)
         gradient.muli(sqrtHistory.rdivi(learningRate));
     }
+
+    @Override
+    public void applySparseUpdater(INDArray gradient, INDArray rows, int iteration, int epoch) {
+        if (historicalGradient == null)
+            throw new IllegalStateException("Updater has not been initialized with view state");
+
+        double learningRate = config.getLearningRate(iteration, epoch);
+        double epsilon = config.getEpsilon();
+
+        INDArray history2d = SparseUpdaterUtils.reshapeLike(historicalGradient, gradient);
+        INDArray g = SparseUpdaterUtils.getRows(gradient, rows);
+        INDArray historyRows = SparseUpdaterUtils.getRows(history2d, rows).addi(g.mul(g));
+
+        INDArray sqrtHistory = sqrt(historyRows, true).addi(epsilon);
+        // lr * gradient / (sqrt(sumSquaredGradients) + epsilon)
+        g.muli(sqrtHistory.rdivi(learningRate));
+
+        SparseUpdaterUtils.putRows(history2d, rows, historyRows);
+        SparseUpdaterUtils.putRows(gradient, rows, g);
+    }
 }
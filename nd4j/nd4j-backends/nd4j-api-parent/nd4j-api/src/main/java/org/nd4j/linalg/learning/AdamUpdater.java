@@ -20,7 +20,9 @@ import lombok.Data;
 import lombok.NonNull;
 import org.apache.commons.math3.util.FastMath;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.updaters.FusedAdamUpdater;
 import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.ops.transforms.Transforms;
@@ -35,7 +37,7 @@ import java.util.Map;
  * @author Adam Gibson
  */
 @Data
-public class AdamUpdater implements GradientUpdater<Adam> {
+public class AdamUpdater implements SparseGradientUpdater<Adam>, FusedGradientUpdater<Adam> {
     public static final String M_STATE = "M";
     public static final String V_STATE = "V";
 
@@ -118,4 +120,47 @@ public class AdamUpdater implements GradientUpdater<Adam> {
 
         gradient.assign(m).muli(alphat).divi(sqrtV);
     }
+
+    @Override
+    public void applyFusedUpdater(INDArray gradient, INDArray params, double l1, double l2, double weightDecay, int iteration, int epoch) {
+        if (m == null || v == null)
+            throw new IllegalStateException("Updater has not been initialized with view state");
+
+        Nd4j.getExecutioner().exec(new FusedAdamUpdater(gradient, params, m, v, config.getLearningRate(iteration, epoch),
+                config.getBeta1(), config.getBeta2(), config.getEpsilon(), l1, l2, weightDecay, iteration));
+    }
+
+    /**
+     * Lazy Adam: moment estimates are only updated for the rows present in the gradient. Bias correction uses the
+     * global iteration count, same as for dense updates
+     */
+    @Override
+    public void applySparseUpdater(INDArray gradient, INDArray rows, int iteration, int epoch) {
+        if (m == null || v == null)
+            throw new IllegalStateException("Updater has not been initialized with view state");
+
+        double beta1 = config.getBeta1();
+        double beta2 = config.getBeta2();
+        double learningRate = config.getLearningRate(iteration, epoch);
+        double epsilon = config.getEpsilon();
+
+        INDArray m2d = SparseUpdaterUtils.reshapeLike(m, gradient);
+        INDArray v2d = SparseUpdaterUtils.reshapeLike(v, gradient);
+
+        INDArray g = SparseUpdaterUtils.getRows(gradient, rows);
+        INDArray mRows = SparseUpdaterUtils.getRows(m2d, rows).muli(beta1).addi(g.mul(1.0 - beta1));
+        INDArray vRows = SparseUpdaterUtils.getRows(v2d, rows).muli(beta2).addi(g.muli(g).muli(1.0 - beta2));
+
+        double beta1t = FastMath.pow(beta1, iteration + 1);
+        double beta2t = FastMath.pow(beta2, iteration + 1);
+
+        double alphat = learningRate * FastMath.sqrt(1 - beta2t) / (1 - beta1t);
+        if (Double.isNaN(alphat) || alphat == 0.0)
+            alphat = epsilon;
+        INDArray update = mRows.mul(alphat).divi(Transforms.sqrt(vRows, true).addi(epsilon));
+
+        SparseUpdaterUtils.putRows(m2d, rows, mRows);
+        SparseUpdaterUtils.putRows(v2d, rows, vRows);
+        SparseUpdaterUtils.putRows(gradient, rows, update);
+    }
 }
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.learning;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.learning.config.IUpdater;
+
+/**
+ * A {@link GradientUpdater} that can apply L1/L2 regularization, the update itself and weight decay as a single
+ * native op, instead of a separate op (or several ops) for each of these steps.<br>
+ * The result is the same as applying L1 and L2 regularization, then {@link #applyUpdater(INDArray, int, int)}, then
+ * weight decay - parameters are not modified, and the gradient is replaced by the update (to be subtracted from the
+ * parameters).
+ */
+public interface FusedGradientUpdater<T extends IUpdater> extends GradientUpdater<T> {
+
+    /**
+     * Modify the gradient to be an update, in-place, including regularization
+     *
+     * @param gradient    The gradient to modify
+     * @param params      The parameters. Must have the same shape and order as the gradient. Not modified
+     * @param l1          L1 regularization coefficient, for the current iteration/epoch. 0 if not used
+     * @param l2          L2 regularization coefficient, for the current iteration/epoch. 0 if not used
+     * @param weightDecay Weight decay coefficient, for the current iteration/epoch, already multiplied by the learning
+     *                    rate if applicable. 0 if not used
+     * @param iteration   Current iteration
+     * @param epoch       Current epoch
+     */
+    void applyFusedUpdater(INDArray gradient, INDArray params, double l1, double l2, double weightDecay, int iteration, int epoch);
+}
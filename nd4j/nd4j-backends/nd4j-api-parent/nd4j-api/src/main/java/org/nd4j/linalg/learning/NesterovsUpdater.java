@@ -20,6 +20,7 @@ import lombok.Data;
 import lombok.NonNull;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.api.ops.impl.updaters.FusedNesterovsUpdater;
 import org.nd4j.linalg.api.shape.Shape;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.Nesterovs;
@@ -35,7 +36,7 @@ import java.util.Map;
  * @author Adam Gibson
  */
 @Data
-public class NesterovsUpdater implements GradientUpdater<Nesterovs> {
+public class NesterovsUpdater implements FusedGradientUpdater<Nesterovs> {
     public static final String V_STATE = "V";
 
     private final Nesterovs config;
@@ -107,4 +108,13 @@ public class NesterovsUpdater implements GradientUpdater<Nesterovs> {
         */
         Nd4j.getExecutioner().exec(new AddOp(vPrev.muli(momentum), v.mul(-momentum - 1), gradient));
     }
+
+    @Override
+    public void applyFusedUpdater(INDArray gradient, INDArray params, double l1, double l2, double weightDecay, int iteration, int epoch) {
+        if (v == null)
+            throw new IllegalStateException("Updater has not been initialized with view state");
+
+        Nd4j.getExecutioner().exec(new FusedNesterovsUpdater(gradient, params, v, config.getLearningRate(iteration, epoch),
+                config.currentMomentum(iteration, epoch), l1, l2, weightDecay));
+    }
 }
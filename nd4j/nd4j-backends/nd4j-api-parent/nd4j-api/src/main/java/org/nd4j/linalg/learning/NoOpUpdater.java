@@ -30,7 +30,7 @@ import java.util.Map;
  * @author Alex Black
  */
 @Data
-public class NoOpUpdater implements GradientUpdater<NoOp> {
+public class NoOpUpdater implements SparseGradientUpdater<NoOp> {
 
     private final NoOp config;
 
@@ -58,4 +58,9 @@ public class NoOpUpdater implements GradientUpdater<NoOp> {
     public void applyUpdater(INDArray gradient, int iteration, int epoch) {
         //No op
     }
+
+    @Override
+    public void applySparseUpdater(INDArray gradient, INDArray rows, int iteration, int epoch) {
+        //No op
+    }
 }
@@ -19,7 +19,9 @@ package org.nd4j.linalg.learning;
 import lombok.Data;
 import lombok.NonNull;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.updaters.FusedRmsPropUpdater;
 import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.RmsProp;
 import org.nd4j.linalg.ops.transforms.Transforms;
 
@@ -35,7 +37,7 @@ import java.util.Map;
  * @author Adam Gibson
  */
 @Data
-public class RmsPropUpdater implements GradientUpdater<RmsProp> {
+public class RmsPropUpdater implements SparseGradientUpdater<RmsProp>, FusedGradientUpdater<RmsProp> {
     public static final String G_STATE = "G";
 
     private final RmsProp config;
@@ -89,4 +91,32 @@ public class RmsPropUpdater implements GradientUpdater<RmsProp> {
         // lr * gradient / (sqrt(cache) + 1e-8)
         gradient.muli(learningRate).divi(Transforms.sqrt(lastGradient.dup(gradientReshapeOrder), false).addi(epsilon));
     }
+
+    @Override
+    public void applyFusedUpdater(INDArray gradient, INDArray params, double l1, double l2, double weightDecay, int iteration, int epoch) {
+        if (lastGradient == null)
+            throw new IllegalStateException("Updater has not been initialized with view state");
+
+        Nd4j.getExecutioner().exec(new FusedRmsPropUpdater(gradient, params, lastGradient, config.getLearningRate(iteration, epoch),
+                config.getRmsDecay(), config.getEpsilon(), l1, l2, weightDecay));
+    }
+
+    @Override
+    public void applySparseUpdater(INDArray gradient, INDArray rows, int iteration, int epoch) {
+        if (lastGradient == null)
+            throw new IllegalStateException("Updater has not been initialized with view state");
+
+        double learningRate = config.getLearningRate(iteration, epoch);
+        double rmsDecay = config.getRmsDecay();
+        double epsilon = config.getEpsilon();
+
+        INDArray cache2d = SparseUpdaterUtils.reshapeLike(lastGradient, gradient);
+        INDArray g = SparseUpdaterUtils.getRows(gradient, rows);
+        INDArray cacheRows = SparseUpdaterUtils.getRows(cache2d, rows).muli(rmsDecay).addi(g.mul(g).muli(1 - rmsDecay));
+        // lr * gradient / (sqrt(cache) + 1e-8)
+        g.muli(learningRate).divi(Transforms.sqrt(cacheRows, true).addi(epsilon));
+
+        SparseUpdaterUtils.putRows(cache2d, rows, cacheRows);
+        SparseUpdaterUtils.putRows(gradient, rows, g);
+    }
 }
@@ -29,7 +29,7 @@ import java.util.Map;
  * @author Adam Gibson
  */
 @Data
-public class SgdUpdater implements GradientUpdater<Sgd> {
+public class SgdUpdater implements SparseGradientUpdater<Sgd> {
 
     private final Sgd config;
 
@@ -58,4 +58,10 @@ public class SgdUpdater implements GradientUpdater<Sgd> {
         double lr = config.getLearningRate(iteration, epoch);
         gradient.muli(lr);
     }
+
+    @Override
+    public void applySparseUpdater(INDArray gradient, INDArray rows, int iteration, int epoch) {
+        double lr = config.getLearningRate(iteration, epoch);
+        SparseUpdaterUtils.putRows(gradient, rows, SparseUpdaterUtils.getRows(gradient, rows).muli(lr));
+    }
 }
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.learning;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.learning.config.IUpdater;
+
+/**
+ * A {@link GradientUpdater} that can also apply updates for row-sparse gradients: i.e., gradients where only a
+ * (usually small) subset of the rows can be non-zero, such as the gradients for embedding layer weights.<br>
+ * Only the specified rows of the gradient and the updater state are read and modified. Rows not in the subset must be
+ * zero in the gradient, and are left as zero. Their updater state isn't changed (lazy updates): for example, moment
+ * estimates for Adam are only decayed for the rows that have a gradient in the current iteration.
+ */
+public interface SparseGradientUpdater<T extends IUpdater> extends GradientUpdater<T> {
+
+    /**
+     * Modify the specified rows of the gradient to be an update, in-place
+     *
+     * @param gradient  The gradient to modify. Must be a 2d view with the same shape and order as the parameters
+     * @param rows      Indices of the rows to update, as an integer vector. Must not contain duplicates
+     * @param iteration Current iteration
+     * @param epoch     Current epoch
+     */
+    void applySparseUpdater(INDArray gradient, INDArray rows, int iteration, int epoch);
+}
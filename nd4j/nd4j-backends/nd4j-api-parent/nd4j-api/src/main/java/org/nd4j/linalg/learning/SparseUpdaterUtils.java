@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.learning;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.scatter.ScatterUpdate;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * Utilities for {@link SparseGradientUpdater} implementations: gathering and scattering rows of 2d arrays
+ */
+public class SparseUpdaterUtils {
+    private static final int[] DIM_1 = new int[]{1};
+
+    private SparseUpdaterUtils() {
+    }
+
+    /**
+     * Reshape the (row vector) updater state view array to the same shape and order as the gradient, without copying
+     */
+    public static INDArray reshapeLike(@NonNull INDArray state, @NonNull INDArray gradient) {
+        if (state.equalShapes(gradient) && state.ordering() == gradient.ordering())
+            return state;
+        INDArray out = Shape.newShapeNoCopy(state, gradient.shape(), gradient.ordering() == 'f');
+        if (out == null)
+            throw new IllegalStateException("Could not reshape updater state view array to shape " +
+                    Arrays.toString(gradient.shape()) + " without copying");
+        return out;
+    }
+
+    /**
+     * @return Copy of the specified rows of the 2d array
+     */
+    public static INDArray getRows(@NonNull INDArray arr, @NonNull INDArray rows) {
+        return Nd4j.pullRows(arr, 1, rows.toIntVector());
+    }
+
+    /**
+     * Assign the values to the specified rows of the 2d array
+     */
+    public static void putRows(@NonNull INDArray arr, @NonNull INDArray rows, @NonNull INDArray values) {
+        Nd4j.scatterUpdate(ScatterUpdate.UpdateOp.ASSIGN, arr, rows, values, DIM_1);
+    }
+}
@@ -26,6 +26,7 @@ import org.bytedeco.javacpp.Pointer;
 import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.WorkspaceStatistics;
 import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.memory.enums.*;
 import org.nd4j.linalg.api.memory.pointers.PagedPointer;
@@ -41,6 +42,7 @@ import java.io.FileOutputStream;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.LinkedTransferQueue;
@@ -128,6 +130,21 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
 
     protected AtomicLong generationId = new AtomicLong(0);
 
+    // telemetry counters, cumulative since workspace creation
+    protected AtomicLong spilledTotalCount = new AtomicLong(0);
+    protected AtomicLong pinnedTotalCount = new AtomicLong(0);
+    protected AtomicLong reallocationsCount = new AtomicLong(0);
+    protected AtomicLong cyclicResetsCount = new AtomicLong(0);
+
+    // shape bucket this workspace belongs to, if any
+    @Getter
+    @Setter
+    protected String bucket;
+
+    // per-cycle memory demand over last window, used for PERCENTILE learning policy
+    protected long[] demandWindow;
+    protected long demandCount = 0;
+
     // this memory manager implementation will be used to allocate real memory for this workspace
 
     public Nd4jWorkspace(@NonNull WorkspaceConfiguration configuration) {
@@ -160,6 +177,10 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
             log.trace("Steps: {}", stepsNumber);
         }
 
+        if (workspaceConfiguration.getPolicyLearning() == LearningPolicy.PERCENTILE
+                        && workspaceConfiguration.getPolicyReset() == ResetPolicy.ENDOFBUFFER_REACHED)
+            throw new ND4JIllegalStateException("Workspace [" + workspaceId + "]: PERCENTILE learning policy isn't supported for circular workspaces");
+
         //if (workspaceConfiguration.getPolicyLearning() == LearningPolicy.OVER_TIME && workspaceConfiguration.getCyclesBeforeInitialization() < 1)
         //log.warn("Workspace [{}]: initialization OVER_TIME was selected, but number of cycles isn't positive value!", id);
 
@@ -315,6 +336,8 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
             if (workspaceConfiguration.getMaxSize() > 0 && currentSize.get() > workspaceConfiguration.getMaxSize())
                 currentSize.set(workspaceConfiguration.getMaxSize());
 
+            // backend implementations allocate memory right after this call
+            reallocationsCount.incrementAndGet();
         }
     }
 
@@ -399,14 +422,18 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
                             && !trimmer && Nd4j.getWorkspaceManager().getDebugMode() != DebugMode.SPILL_EVERYTHING) {
                 reset();
                 resetPlanned.set(true);
+                cyclicResetsCount.incrementAndGet();
                 return alloc(requiredMemory, kind, type, initialize);
             }
 
             // updating respective counters
-            if (!trimmer)
+            if (!trimmer) {
                 spilledAllocationsSize.addAndGet(requiredMemory);
-            else
+                spilledTotalCount.incrementAndGet();
+            } else {
                 pinnedAllocationsSize.addAndGet(requiredMemory);
+                pinnedTotalCount.incrementAndGet();
+            }
 
             if (isDebug.get())
                 log.info("Workspace [{}]: step: {}, spilled  {} bytes, capacity of {} elements", id, stepsCount.get(),
@@ -643,7 +670,10 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
                 resetPlanned.set(false);
             }
 
-            if ((workspaceConfiguration.getPolicyLearning() == LearningPolicy.OVER_TIME
+            if (workspaceConfiguration.getPolicyLearning() == LearningPolicy.PERCENTILE) {
+                if (Nd4j.getWorkspaceManager().getDebugMode() != DebugMode.SPILL_EVERYTHING)
+                    updatePercentileSize();
+            } else if ((workspaceConfiguration.getPolicyLearning() == LearningPolicy.OVER_TIME
                             && workspaceConfiguration.getCyclesBeforeInitialization() == cyclesCount.intValue())
                             || (workspaceConfiguration.getPolicyLearning() == LearningPolicy.FIRST_LOOP
                                             && currentSize.get() == 0)) {
@@ -705,6 +735,93 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
         cycleAllocations.set(0);
     }
 
+    /**
+     * This method records memory demand of current cycle, and resizes workspace to configured percentile of demand once
+     * per window. Used for PERCENTILE learning policy only.
+     */
+    protected void updatePercentileSize() {
+        int window = Math.max(1, workspaceConfiguration.getPercentileWindow());
+        if (demandWindow == null || demandWindow.length != window)
+            demandWindow = new long[window];
+
+        demandWindow[(int) (demandCount % window)] = cycleAllocations.get();
+        demandCount++;
+
+        // first cycle: allocate just like FIRST_LOOP does, so we don't spill until first window is complete
+        if (currentSize.get() == 0) {
+            resizeWorkspace(maxCycle.get());
+            return;
+        }
+
+        if (demandCount % window != 0)
+            return;
+
+        long[] sorted = Arrays.copyOf(demandWindow, window);
+        Arrays.sort(sorted);
+        int idx = (int) Math.ceil(workspaceConfiguration.getPercentile() * window) - 1;
+        long target = sorted[Math.max(0, Math.min(window - 1, idx))];
+        if (target <= 0)
+            return;
+
+        long expected = target;
+        if (workspaceConfiguration.getPolicyAllocation() == AllocationPolicy.OVERALLOCATE)
+            expected += (long) (target * workspaceConfiguration.getOverallocationLimit());
+
+        // we grow if percentile doesn't fit, and shrink only if workspace is way too large, to avoid reallocations back and forth
+        if (currentSize.get() < target || currentSize.get() > 2 * expected) {
+            if (isDebug.get())
+                log.info("Workspace [{}]: resizing from {} to {} bytes, p{} of last {} cycles", id, currentSize.get(),
+                                target, workspaceConfiguration.getPercentile() * 100, window);
+
+            resizeWorkspace(target);
+        }
+    }
+
+    /**
+     * This method reallocates workspace memory to the given size (plus overallocation, if configured)
+     *
+     * PLEASE NOTE: Never call this method while workspace is open
+     *
+     * @param size size in bytes
+     */
+    protected void resizeWorkspace(long size) {
+        destroyWorkspace(true);
+        isInit.set(false);
+        isOver.set(false);
+
+        if (workspaceConfiguration.getMaxSize() > 0)
+            size = Math.min(size, workspaceConfiguration.getMaxSize());
+
+        if (workspaceConfiguration.getMinSize() > 0)
+            size = Math.max(size, workspaceConfiguration.getMinSize());
+
+        currentSize.set(size);
+        initialBlockSize.set(size);
+        init();
+    }
+
+    /**
+     * This method returns telemetry snapshot for this workspace
+     *
+     * @return
+     */
+    public WorkspaceStatistics getStatistics() {
+        return WorkspaceStatistics.builder()
+                        .id(id)
+                        .bucket(bucket)
+                        .currentSize(currentSize.get())
+                        .cycles(cyclesCount.get())
+                        .lastCycleAllocations(lastCycleAllocations.get())
+                        .maxCycleAllocations(maxCycle.get())
+                        .spilledCount(spilledTotalCount.get())
+                        .spilledBytes(spilledAllocationsSize.get())
+                        .pinnedCount(pinnedTotalCount.get())
+                        .pinnedBytes(pinnedAllocationsSize.get())
+                        .reallocations(reallocationsCount.get())
+                        .cyclicResets(cyclicResetsCount.get())
+                        .build();
+    }
+
     protected abstract void clearPinnedAllocations(boolean extended);
 
     protected abstract void clearExternalAllocations();
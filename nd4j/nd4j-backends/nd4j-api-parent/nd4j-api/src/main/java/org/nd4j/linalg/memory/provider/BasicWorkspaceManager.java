@@ -21,9 +21,11 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.memory.MemoryWorkspaceManager;
+import org.nd4j.linalg.api.memory.WorkspaceStatistics;
 import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.memory.enums.*;
 import org.nd4j.linalg.api.memory.pointers.PointersPair;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.memory.abstracts.DummyWorkspace;
 import org.nd4j.linalg.memory.abstracts.Nd4jWorkspace;
@@ -32,6 +34,7 @@ import org.nd4j.linalg.primitives.SynchronizedObject;
 import java.lang.ref.ReferenceQueue;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -44,10 +47,15 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 @Slf4j
 public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
+    /**
+     * Separator between workspace id and shape bucket in the keys of bucketed workspaces
+     */
+    public static final String BUCKET_SEPARATOR = "@";
 
     protected AtomicLong counter = new AtomicLong();
     protected WorkspaceConfiguration defaultConfiguration;
     protected ThreadLocal<Map<String, MemoryWorkspace>> backingMap = new ThreadLocal<>();
+    protected ThreadLocal<String> workspaceBucket = new ThreadLocal<>();
     //private ReferenceQueue<MemoryWorkspace> queue;
     //private WorkspaceDeallocatorThread thread;
     //private Map<String, Nd4jWorkspace.GarbageWorkspaceReference> referenceMap = new ConcurrentHashMap<>();
@@ -149,7 +157,46 @@ public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
     public void setWorkspaceForCurrentThread(@NonNull MemoryWorkspace workspace, @NonNull String id) {
         ensureThreadExistense();
 
-        backingMap.get().put(id, workspace);
+        backingMap.get().put(backingKey(id), workspace);
+    }
+
+    /**
+     * This method returns key of the workspace with a given id in backing map, for the current shape bucket
+     *
+     * @param id
+     * @return
+     */
+    protected String backingKey(@NonNull String id) {
+        String bucket = workspaceBucket.get();
+        return bucket == null ? id : id + BUCKET_SEPARATOR + bucket;
+    }
+
+    /**
+     * This method marks newly created workspace with the current shape bucket, if any
+     *
+     * @param workspace
+     */
+    protected void assignBucket(MemoryWorkspace workspace) {
+        String bucket = workspaceBucket.get();
+        if (bucket != null && workspace instanceof Nd4jWorkspace)
+            ((Nd4jWorkspace) workspace).setBucket(bucket);
+    }
+
+    @Override
+    public void setWorkspaceBucket(String bucket) {
+        String current = workspaceBucket.get();
+        if (current == null ? bucket == null : current.equals(bucket))
+            return;
+
+        if (anyWorkspaceActiveForCurrentThread())
+            throw new ND4JIllegalStateException("Workspace bucket can't be changed while any workspace is open in current thread");
+
+        workspaceBucket.set(bucket);
+    }
+
+    @Override
+    public String getWorkspaceBucket() {
+        return workspaceBucket.get();
     }
 
     /**
@@ -163,7 +210,12 @@ public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
             return;
 
         //workspace.destroyWorkspace();
-        backingMap.get().remove(workspace.getId());
+        ensureThreadExistense();
+        String key = workspace.getId();
+        if (workspace instanceof Nd4jWorkspace && ((Nd4jWorkspace) workspace).getBucket() != null)
+            key = key + BUCKET_SEPARATOR + ((Nd4jWorkspace) workspace).getBucket();
+
+        backingMap.get().remove(key);
     }
 
     /**
@@ -173,11 +225,11 @@ public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
     public void destroyWorkspace() {
         ensureThreadExistense();
 
-        MemoryWorkspace workspace = backingMap.get().get(MemoryWorkspace.DEFAULT_ID);
+        MemoryWorkspace workspace = backingMap.get().get(backingKey(MemoryWorkspace.DEFAULT_ID));
         //if (workspace != null)
         //workspace.destroyWorkspace();
 
-        backingMap.get().remove(MemoryWorkspace.DEFAULT_ID);
+        backingMap.get().remove(backingKey(MemoryWorkspace.DEFAULT_ID));
     }
 
     /**
@@ -244,7 +296,7 @@ public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
     @Override
     public boolean checkIfWorkspaceExists(@NonNull String id) {
         ensureThreadExistense();
-        return backingMap.get().containsKey(id);
+        return backingMap.get().containsKey(backingKey(id));
     }
 
 
@@ -254,7 +306,7 @@ public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
         if (!exists)
             return false;
 
-        return backingMap.get().get(id).isScopeActive();
+        return backingMap.get().get(backingKey(id)).isScopeActive();
     }
 
     /**
@@ -352,17 +404,31 @@ public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
         Map<String, MemoryWorkspace> map = backingMap.get();
         log.info("Workspace statistics: ---------------------------------");
         log.info("Number of workspaces in current thread: {}", map.size());
-        log.info("Workspace name: Allocated / external (spilled) / external (pinned)");
+        log.info("Workspace name: Allocated / external (spilled) / external (pinned) [spills / reallocations / cyclic resets]");
         for (String key : map.keySet()) {
-            long current = ((Nd4jWorkspace) map.get(key)).getCurrentSize();
-            long spilled = ((Nd4jWorkspace) map.get(key)).getSpilledSize();
-            long pinned = ((Nd4jWorkspace) map.get(key)).getPinnedSize();
-            log.info(String.format("%-26s %8s / %8s / %8s (%11d / %11d / %11d)", (key + ":"),
+            Nd4jWorkspace workspace = (Nd4jWorkspace) map.get(key);
+            WorkspaceStatistics stats = workspace.getStatistics();
+            long current = workspace.getCurrentSize();
+            long spilled = workspace.getSpilledSize();
+            long pinned = workspace.getPinnedSize();
+            log.info(String.format("%-26s %8s / %8s / %8s (%11d / %11d / %11d) [%d / %d / %d]", (key + ":"),
                     BinaryByteUnit.format(current, "#.00"),
                     BinaryByteUnit.format(spilled, "#.00"),
                     BinaryByteUnit.format(pinned, "#.00"),
-                    current, spilled, pinned));
+                    current, spilled, pinned,
+                    stats.getSpilledCount(), stats.getReallocations(), stats.getCyclicResets()));
+        }
+    }
+
+    @Override
+    public Map<String, WorkspaceStatistics> getWorkspaceStatisticsForCurrentThread() {
+        ensureThreadExistense();
+        Map<String, WorkspaceStatistics> result = new LinkedHashMap<>();
+        for (Map.Entry<String, MemoryWorkspace> e : backingMap.get().entrySet()) {
+            if (e.getValue() instanceof Nd4jWorkspace)
+                result.put(e.getKey(), ((Nd4jWorkspace) e.getValue()).getStatistics());
         }
+        return result;
     }
 
 
@@ -20,12 +20,15 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.WorkspaceStatistics;
 import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.memory.provider.BasicWorkspaceManager;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -138,6 +141,32 @@ public abstract class BaseWorkspaceMgr<T extends Enum<T>> implements WorkspaceMg
         setConfiguration(forEnum, configuration);
     }
 
+    /**
+     * Telemetry for the workspaces used by this workspace manager in the current thread (and current workspace bucket,
+     * if any - see {@link org.nd4j.linalg.api.memory.MemoryWorkspaceManager#setWorkspaceBucket(String)}).
+     * Array types that are scoped out, or whose workspaces weren't created yet, are not included
+     *
+     * @return Workspace statistics, by array type
+     */
+    public Map<T, WorkspaceStatistics> getWorkspaceStatistics() {
+        Map<String, WorkspaceStatistics> all = null;
+        Map<T, WorkspaceStatistics> out = new LinkedHashMap<>();
+        for (Map.Entry<T, String> e : workspaceNames.entrySet()) {
+            if (scopeOutOfWs.contains(e.getKey()) || e.getValue() == null
+                    || !Nd4j.getWorkspaceManager().checkIfWorkspaceExists(e.getValue()))
+                continue;
+
+            if (all == null)
+                all = Nd4j.getWorkspaceManager().getWorkspaceStatisticsForCurrentThread();
+
+            String bucket = Nd4j.getWorkspaceManager().getWorkspaceBucket();
+            WorkspaceStatistics stats = all.get(bucket == null ? e.getValue() : e.getValue() + BasicWorkspaceManager.BUCKET_SEPARATOR + bucket);
+            if (stats != null)
+                out.put(e.getKey(), stats);
+        }
+        return out;
+    }
+
     @Override
     public boolean isWorkspaceOpen(@NonNull T arrayType) {
         validateConfig(arrayType);
@@ -35,6 +35,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 
 /**
@@ -145,6 +146,146 @@ public class BinarySerde {
 
     }
 
+    /**
+     * Convert a set of ndarrays to a single direct buffer.
+     * Layout is: 4 bytes int for number of arrays, followed by each array
+     * in the same format as {@link #toByteBuffer(INDArray)}
+     *
+     * @param arrays the arrays to convert
+     * @return the direct buffer holding all arrays, rewound
+     */
+    public static ByteBuffer toByteBuffer(INDArray[] arrays) {
+        val prepared = new INDArray[arrays.length];
+        int size = 4;
+        for (int e = 0; e < arrays.length; e++) {
+            //subset and get rid of 1 off non 1 element wise stride cases
+            prepared[e] = arrays[e].isView() ? arrays[e].dup() : arrays[e];
+            size += byteBufferSizeFor(prepared[e]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        buffer.putInt(prepared.length);
+        for (val arr : prepared) {
+            if (arr.isCompressed())
+                doByteBufferPutCompressed(arr, buffer, false);
+            else
+                doByteBufferPutUnCompressed(arr, buffer, false);
+        }
+
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Create a set of ndarrays from the buffer
+     * created by {@link #toByteBuffer(INDArray[])}.
+     * Arrays are read starting from the current position of the buffer, and position of the buffer isn't changed.
+     * For direct buffers uncompressed arrays share memory with the buffer, heap buffers are copied off-heap once.
+     *
+     * @param buffer the buffer to create the arrays from, direct buffer is preferred
+     * @return the ndarrays derived from this buffer
+     */
+    public static INDArray[] toArrays(ByteBuffer buffer) {
+        // slice respects both position and array offset, and keeps caller's buffer intact
+        ByteBuffer byteBuffer = buffer.slice();
+        if (!byteBuffer.isDirect()) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(byteBuffer.remaining());
+            direct.put(byteBuffer);
+            direct.rewind();
+            byteBuffer = direct;
+        }
+        byteBuffer.order(ByteOrder.nativeOrder());
+
+        int numArrays = byteBuffer.getInt();
+        if (numArrays < 0)
+            throw new IllegalStateException("Found negative number of arrays. Corrupt serialization?");
+
+        val result = new INDArray[numArrays];
+        for (int e = 0; e < numArrays; e++)
+            result[e] = readArray(byteBuffer);
+
+        return result;
+    }
+
+    /**
+     * Create an ndarray from the current position of the direct buffer, and advance the buffer past it.
+     * Uncompressed arrays are created on top of buffer memory, without copying the data
+     *
+     * @param byteBuffer direct buffer, in native byte order
+     * @return the created INDArray
+     */
+    protected static INDArray readArray(ByteBuffer byteBuffer) {
+        int rank = byteBuffer.getInt();
+        if (rank < 0)
+            throw new IllegalStateException("Found negative integer. Corrupt serialization?");
+
+        int shapeBufferLength = Shape.shapeInfoLength(rank);
+        DataBuffer shapeBuff = Nd4j.createBufferDetached(new int[shapeBufferLength]);
+
+        DataType type = DataType.values()[byteBuffer.getInt()];
+        for (int i = 0; i < shapeBufferLength; i++) {
+            shapeBuff.put(i, byteBuffer.getLong());
+        }
+
+        if (type != DataType.COMPRESSED) {
+            if (Shape.length(shapeBuff) > Integer.MAX_VALUE)
+                throw new ND4JArraySizeException();
+
+            ByteBuffer slice = byteBuffer.slice().order(ByteOrder.nativeOrder());
+            DataBuffer buff = Nd4j.createBuffer(slice, type, (int) Shape.length(shapeBuff));
+            byteBuffer.position(byteBuffer.position() + (buff.getElementSize() * (int) buff.length()));
+            return Nd4j.createArrayFromShapeBuffer(buff, shapeBuff);
+        } else {
+            CompressionDescriptor compressionDescriptor = CompressionDescriptor.fromByteBuffer(byteBuffer);
+            BytePointer byteBufferPointer = new BytePointer(byteBuffer.slice());
+            CompressedDataBuffer compressedDataBuffer = new CompressedDataBuffer(byteBufferPointer, compressionDescriptor);
+            INDArray arr = Nd4j.createArrayFromShapeBuffer(compressedDataBuffer.dup(), shapeBuff);
+            byteBuffer.position(byteBuffer.position() + (int) compressionDescriptor.getCompressedLength());
+            return arr;
+        }
+    }
+
+    /**
+     * Write a set of arrays to a channel, in the format of {@link #toByteBuffer(INDArray[])}.
+     * Channel isn't closed afterwards.
+     *
+     * @param arrays the arrays to write
+     * @param channel the channel to write to
+     * @return number of bytes written
+     * @throws IOException on an I/O exception.
+     */
+    public static int writeArraysToChannel(INDArray[] arrays, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = toByteBuffer(arrays);
+        int size = buffer.remaining();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        return size;
+    }
+
+    /**
+     * Read a set of arrays written by {@link #toByteBuffer(INDArray[])} from the channel.
+     * Exactly length bytes are read into a single off-heap buffer, without materializing the payload as byte array.
+     * PLEASE NOTE: whether data is copied on the way depends on the channel: file and socket channels write to the
+     * direct buffer as is, while channels created via Channels.newChannel(InputStream) copy through a small
+     * (8 KB at most) transfer buffer, since InputStream has no ByteBuffer API.
+     *
+     * @param channel the channel to read from
+     * @param length number of bytes to read
+     * @return the created INDArrays
+     * @throws IOException on an I/O exception, or if channel ends before length bytes were read
+     */
+    public static INDArray[] readArraysFromChannel(ReadableByteChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new EOFException("Expected " + length + " bytes, but got only " + buffer.position());
+        }
+
+        buffer.rewind();
+        return toArrays(buffer);
+    }
+
     /**
      * Returns the byte buffer size for the given
      * ndarray. This is an auxillary method
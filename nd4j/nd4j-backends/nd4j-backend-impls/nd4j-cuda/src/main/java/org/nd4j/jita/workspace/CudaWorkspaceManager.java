@@ -51,7 +51,8 @@ public class CudaWorkspaceManager extends BasicWorkspaceManager {
 
         MemoryWorkspace workspace = newWorkspace(configuration);
 
-        backingMap.get().put(workspace.getId(), workspace);
+        assignBucket(workspace);
+        backingMap.get().put(backingKey(workspace.getId()), workspace);
 
         if (Nd4j.getWorkspaceManager().getDebugMode() != DebugMode.BYPASS_EVERYTHING)
             pickReference(workspace);
@@ -70,7 +71,8 @@ public class CudaWorkspaceManager extends BasicWorkspaceManager {
 
         MemoryWorkspace workspace = newWorkspace(defaultConfiguration);
 
-        backingMap.get().put(workspace.getId(), workspace);
+        assignBucket(workspace);
+        backingMap.get().put(backingKey(workspace.getId()), workspace);
 
         if (Nd4j.getWorkspaceManager().getDebugMode() != DebugMode.BYPASS_EVERYTHING)
             pickReference(workspace);
@@ -85,7 +87,8 @@ public class CudaWorkspaceManager extends BasicWorkspaceManager {
 
         MemoryWorkspace workspace = newWorkspace(configuration, id);
 
-        backingMap.get().put(id, workspace);
+        assignBucket(workspace);
+        backingMap.get().put(backingKey(id), workspace);
 
         if (Nd4j.getWorkspaceManager().getDebugMode() != DebugMode.BYPASS_EVERYTHING)
             pickReference(workspace);
@@ -99,7 +102,8 @@ public class CudaWorkspaceManager extends BasicWorkspaceManager {
 
         MemoryWorkspace workspace = newWorkspace(configuration, id, deviceId);
 
-        backingMap.get().put(id, workspace);
+        assignBucket(workspace);
+        backingMap.get().put(backingKey(id), workspace);
 
         if (Nd4j.getWorkspaceManager().getDebugMode() != DebugMode.BYPASS_EVERYTHING)
             pickReference(workspace);
@@ -111,10 +115,12 @@ public class CudaWorkspaceManager extends BasicWorkspaceManager {
     public MemoryWorkspace getWorkspaceForCurrentThread(@NonNull WorkspaceConfiguration configuration, @NonNull String id) {
         ensureThreadExistense();
 
-        MemoryWorkspace workspace = backingMap.get().get(id);
+        String key = backingKey(id);
+        MemoryWorkspace workspace = backingMap.get().get(key);
         if (workspace == null) {
             workspace = newWorkspace(configuration, id);
-            backingMap.get().put(id, workspace);
+            assignBucket(workspace);
+            backingMap.get().put(key, workspace);
 
             if (Nd4j.getWorkspaceManager().getDebugMode() != DebugMode.BYPASS_EVERYTHING)
                 pickReference(workspace);
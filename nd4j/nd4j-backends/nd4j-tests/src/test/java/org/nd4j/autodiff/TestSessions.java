@@ -18,25 +18,33 @@ package org.nd4j.autodiff;
 
 import org.junit.Test;
 import org.nd4j.autodiff.listeners.At;
+import org.nd4j.autodiff.listeners.BaseListener;
+import org.nd4j.autodiff.listeners.Listener;
 import org.nd4j.autodiff.listeners.Operation;
 import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.internal.AbstractSession;
 import org.nd4j.autodiff.samediff.internal.InferenceSession;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
 import org.nd4j.autodiff.samediff.internal.memory.NoOpMemoryMgr;
 import org.nd4j.imports.graphmapper.tf.TFGraphMapper;
 import org.nd4j.linalg.BaseNd4jTest;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 import org.nd4j.linalg.io.ClassPathResource;
+import org.nd4j.linalg.ops.transforms.Transforms;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -120,6 +128,229 @@ public class TestSessions extends BaseNd4jTest {
         assertEquals(dExp, outMap.get("d"));
     }
 
+    @Test
+    public void testInferenceSessionPlanCache(){
+        SameDiff sd = SameDiff.create();
+        SDVariable ph1 = sd.placeHolder("x", DataType.FLOAT, -1,3);
+        SDVariable ph2 = sd.placeHolder("y", DataType.FLOAT, 3,3);
+        SDVariable w = sd.constant("w", Nd4j.linspace(1, 9, 9).castTo(DataType.FLOAT).reshape(3,3));
+
+        SDVariable a = ph1.mmul("a", ph2);
+        SDVariable b = sd.identity("b", a);
+        SDVariable c = b.add("c", w.sum(0));
+        SDVariable d = sd.nn().tanh("d", c);
+        SDVariable e = a.sub("e", 1.0);         //Not required for d
+
+        InferenceSession planned = new InferenceSession(sd);
+        InferenceSession dynamic = new InferenceSession(sd);
+        dynamic.setPlanCacheEnabled(false);
+
+        for (int mb : new int[]{2, 2, 5, 2}) {
+            INDArray x = Nd4j.rand(DataType.FLOAT, mb, 3);
+            INDArray y = Nd4j.rand(DataType.FLOAT, 3, 3);
+
+            Map<String,INDArray> m = new HashMap<>();
+            m.put("x", x);
+            m.put("y", y);
+
+            Map<String,INDArray> outPlanned = planned.output(Arrays.asList("d", "b"), m, null,
+                    Collections.<String>emptyList(), null, At.defaultAt(Operation.INFERENCE));
+            Map<String,INDArray> outDynamic = dynamic.output(Arrays.asList("d", "b"), m, null,
+                    Collections.<String>emptyList(), null, At.defaultAt(Operation.INFERENCE));
+
+            assertEquals(2, outPlanned.size());
+            assertEquals(outDynamic.get("d"), outPlanned.get("d"));
+            assertEquals(outDynamic.get("b"), outPlanned.get("b"));
+            assertEquals(x.mmul(y), outPlanned.get("b"));
+        }
+
+        //Missing placeholder should still be reported for cached plans
+        try {
+            planned.output(Collections.singletonList("d"), Collections.singletonMap("x", Nd4j.rand(DataType.FLOAT, 2, 3)), null,
+                    Collections.<String>emptyList(), null, At.defaultAt(Operation.INFERENCE));
+            fail("Expected exception");
+        } catch (IllegalStateException ex){
+            assertTrue(ex.getMessage(), ex.getMessage().contains("\"y\""));
+        }
+    }
+
+    @Test
+    public void testInferenceSessionPlanInvalidation(){
+        SameDiff sd = SameDiff.create();
+        SDVariable x = sd.placeHolder("x", DataType.FLOAT, -1, 3);
+        INDArray w1Arr = Nd4j.linspace(1, 3, 3).castTo(DataType.FLOAT);
+        INDArray w2Arr = Nd4j.linspace(10, 30, 3).castTo(DataType.FLOAT);
+        SDVariable w1 = sd.constant("w1", w1Arr);
+        SDVariable w2 = sd.constant("w2", w2Arr);
+        SDVariable a = sd.nn().tanh("a", x);
+        SDVariable out = a.add("out", w1);
+
+        InferenceSession s = new InferenceSession(sd);
+        INDArray in = Nd4j.rand(DataType.FLOAT, 2, 3);
+        Map<String,INDArray> m = Collections.singletonMap("x", in);
+        List<String> outputs = Collections.singletonList("out");
+
+        INDArray first = s.output(outputs, m, null, Collections.<String>emptyList(), null,
+                At.defaultAt(Operation.INFERENCE)).get("out");
+        assertEquals(Transforms.tanh(in, true).addRowVector(w1Arr.reshape(1, 3)), first);
+
+        //Number of ops and variables stays the same, but the plan must not be reused
+        sd.replaceArgFor(1, w2, sd.getVariableOutputOp("out"));
+
+        INDArray second = s.output(outputs, m, null, Collections.<String>emptyList(), null,
+                At.defaultAt(Operation.INFERENCE)).get("out");
+        assertEquals(Transforms.tanh(in, true).addRowVector(w2Arr.reshape(1, 3)), second);
+    }
+
+    @Test
+    public void testInferenceSessionMemoryPlan(){
+        SameDiff sd = SameDiff.create();
+        SDVariable x = sd.placeHolder("x", DataType.FLOAT, -1, 8);
+        SDVariable a = sd.nn().tanh("a", x);
+        SDVariable b = sd.nn().sigmoid("b", a);
+        SDVariable c = sd.math().exp("c", b);
+        SDVariable d = sd.math().sin("d", c);
+        SDVariable out = sd.nn().tanh("out", d);
+
+        InferenceSession planned = new InferenceSession(sd);
+        InferenceSession unplanned = new InferenceSession(sd);
+        unplanned.setMemoryPlanningEnabled(false);
+
+        List<String> outputs = Collections.singletonList("out");
+        List<INDArray> previous = new ArrayList<>();
+        List<INDArray> previousCopies = new ArrayList<>();
+        for (int mb : new int[]{4, 4, 4, 3, 4}) {
+            INDArray in = Nd4j.rand(DataType.FLOAT, mb, 8);
+            Map<String,INDArray> m = Collections.singletonMap("x", in);
+
+            INDArray outPlanned = planned.output(outputs, m, null, Collections.<String>emptyList(), null,
+                    At.defaultAt(Operation.INFERENCE)).get("out");
+            INDArray outUnplanned = unplanned.output(outputs, m, null, Collections.<String>emptyList(), null,
+                    At.defaultAt(Operation.INFERENCE)).get("out");
+
+            assertEquals(outUnplanned, outPlanned);
+            previous.add(outPlanned);
+            previousCopies.add(outPlanned.dup());
+        }
+
+        //Outputs must not be overwritten by the later executions (only intermediate arrays are in the arena)
+        for (int i = 0; i < previous.size(); i++)
+            assertEquals(previousCopies.get(i), previous.get(i));
+
+        //4 intermediate arrays of shape [4,8], but no more than 2 of them are live at any time
+        long peak = planned.getPlannedPeakBytes(outputs, Collections.singletonMap("x", Nd4j.create(DataType.FLOAT, 4, 8)), null);
+        assertEquals(2 * 4 * 8 * 4, peak);
+        assertEquals(-1, unplanned.getPlannedPeakBytes(outputs, Collections.singletonMap("x", Nd4j.create(DataType.FLOAT, 4, 8)), null));
+        assertEquals(-1, planned.getPlannedPeakBytes(outputs, Collections.singletonMap("x", Nd4j.create(DataType.FLOAT, 5, 8)), null));
+    }
+
+    @Test
+    public void testInferenceSessionParallelExecution(){
+        //Several independent branches, with arrays shared between branches and an Identity op
+        SameDiff sd = SameDiff.create();
+        SDVariable x = sd.placeHolder("x", DataType.FLOAT, -1, 8);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 8, 8));
+        SDVariable a = sd.nn().tanh("a", x);
+        SDVariable b1 = sd.math().exp("b1", a.mmul(w));
+        SDVariable b2 = sd.nn().sigmoid("b2", a);
+        SDVariable b3 = sd.math().sin("b3", sd.identity(x));
+        SDVariable c = sd.math().cos("c", b2);
+        SDVariable out = b1.add(c).add(b3).sum("out", 1);
+        SDVariable out2 = c.mul("out2", b3);
+
+        InferenceSession sequential = new InferenceSession(sd);
+        InferenceSession parallel = new InferenceSession(sd);
+        parallel.setParallelExecution(true);
+
+        List<String> outputs = Arrays.asList("out", "out2");
+        for (int mb : new int[]{4, 4, 3}) {
+            Map<String,INDArray> m = Collections.singletonMap("x", Nd4j.rand(DataType.FLOAT, mb, 8));
+
+            Map<String,INDArray> expected = sequential.output(outputs, m, null, Collections.<String>emptyList(), null,
+                    At.defaultAt(Operation.INFERENCE));
+            Map<String,INDArray> actual = parallel.output(outputs, m, null, Collections.<String>emptyList(), null,
+                    At.defaultAt(Operation.INFERENCE));
+
+            assertEquals(expected, actual);
+        }
+
+        //Also via SameDiff
+        Map<String,INDArray> m = Collections.singletonMap("x", Nd4j.rand(DataType.FLOAT, 2, 8));
+        Map<String,INDArray> expected = sd.output(m, "out", "out2");
+        sd.setParallelExecution(true);
+        Map<String,INDArray> actual = sd.output(m, "out", "out2");
+        assertEquals(expected, actual);
+    }
+
+    @Test(timeout = 60000L)
+    public void testInferenceSessionParallelExecutionFailure() throws Exception {
+        //Wide graph: many independent branches, one of them fails while others are still running
+        SameDiff sd = SameDiff.create();
+        SDVariable x = sd.placeHolder("x", DataType.FLOAT, -1, 8);
+        SDVariable sum = null;
+        for (int i = 0; i < 16; i++) {
+            SDVariable b = sd.math().sin("b" + i, x.mul(i + 1.0));
+            sum = sum == null ? b : sum.add(b);
+        }
+        sd.identity("out", sum);
+
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        Listener failing = new BaseListener() {
+            @Override
+            public boolean isActive(Operation operation) {
+                return true;
+            }
+
+            @Override
+            public void preOpExecution(SameDiff sd, At at, SameDiffOp op) {
+                started.incrementAndGet();
+                if (op.getOutputsOfOp().contains("b7"))
+                    throw new IllegalStateException("Expected failure");
+
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void opExecution(SameDiff sd, At at, MultiDataSet batch, SameDiffOp op, INDArray[] outputs) {
+                finished.incrementAndGet();
+            }
+        };
+
+        InferenceSession parallel = new InferenceSession(sd);
+        parallel.setParallelExecution(true);
+
+        List<String> outputs = Collections.singletonList("out");
+        Map<String,INDArray> m = Collections.singletonMap("x", Nd4j.rand(DataType.FLOAT, 4, 8));
+        try {
+            parallel.output(outputs, m, null, Collections.<String>emptyList(), Collections.singletonList(failing),
+                    At.defaultAt(Operation.INFERENCE));
+            fail("Expected exception");
+        } catch (RuntimeException e) {
+            Throwable t = e;
+            while (t.getCause() != null && !"Expected failure".equals(t.getMessage()))
+                t = t.getCause();
+            assertEquals("Expected failure", t.getMessage());
+        }
+
+        //All steps that were started have finished before output() returned: only the failed one is incomplete
+        int s = started.get();
+        int f = finished.get();
+        assertEquals(s - 1, f);
+        Thread.sleep(200);
+        assertEquals(s, started.get());
+        assertEquals(f, finished.get());
+
+        //Session is still usable after the failure
+        InferenceSession sequential = new InferenceSession(sd);
+        assertEquals(sequential.output(outputs, m, null, Collections.<String>emptyList(), null, At.defaultAt(Operation.INFERENCE)),
+                parallel.output(outputs, m, null, Collections.<String>emptyList(), null, At.defaultAt(Operation.INFERENCE)));
+    }
+
     @Test
     public void testMergeSimple(){
         //This isn't really a sensible graph, as merge op behaviour is undefined when multiple inputs are available...
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.transform.GraphOptimizer;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.BatchNorm;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class GraphOptimizerTests extends BaseNd4jTest {
+
+    public GraphOptimizerTests(Nd4jBackend b){
+        super(b);
+    }
+
+    @Override
+    public char ordering(){
+        return 'c';
+    }
+
+    @Test
+    public void testMatMulBiasReluFusion(){
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.constant("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable w2 = w.mul(2.0);             //Only depends on constants - should be folded
+        SDVariable b = sd.constant("b", Nd4j.rand(DataType.FLOAT, 3));
+        SDVariable mmul = in.mmul(w2);
+        SDVariable bias = sd.nn().biasAdd(mmul, b, true);
+        SDVariable id = sd.identity(bias);
+        sd.nn().relu("out", id, 0.0);
+
+        SameDiff optimized = GraphOptimizer.optimize(sd, "out");
+        assertEquals(1, optimized.getOps().size());
+        SameDiffOp op = optimized.getOps().values().iterator().next();
+        assertEquals(ReluLayer.class, op.getOp().getClass());
+        assertEquals(Collections.singletonList("out"), op.getOutputsOfOp());
+
+        //Original graph should not be modified
+        assertEquals(5, sd.getOps().size());
+
+        INDArray x = Nd4j.rand(DataType.FLOAT, 5, 4).subi(0.5);
+        Map<String,INDArray> ph = Collections.singletonMap("in", x);
+        INDArray exp = sd.output(ph, "out").get("out");
+        INDArray out = optimized.output(ph, "out").get("out");
+        assertTrue(exp.equalsWithEps(out, 1e-5));
+    }
+
+    @Test
+    public void testMatMulBiasNotFusedForUnknownRank(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, (long[]) null);     //Unknown rank - might be rank 3+
+        SDVariable w = sd.constant("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable b = sd.constant("b", Nd4j.rand(DataType.FLOAT, 3));
+        SDVariable mmul = in.mmul(w);
+        sd.nn().biasAdd("out", mmul, b, true);
+
+        SameDiff optimized = GraphOptimizer.optimize(sd, "out");
+        assertEquals(2, optimized.getOps().size());
+        for (SameDiffOp op : optimized.getOps().values())
+            assertNotEquals(XwPlusB.class, op.getOp().getClass());
+    }
+
+    @Test
+    public void testProtectedVariablesAreKept(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable id = sd.identity("id", in);
+        sd.math().tanh("out", id);
+
+        SameDiff optimized = GraphOptimizer.optimize(sd, "id", "out");
+        assertTrue(optimized.hasVariable("id"));
+        assertEquals(2, optimized.getOps().size());
+
+        optimized = GraphOptimizer.optimize(sd, "out");
+        assertFalse(optimized.hasVariable("id"));
+        assertEquals(1, optimized.getOps().size());
+
+        INDArray x = Nd4j.rand(DataType.FLOAT, 3, 4);
+        assertEquals(sd.output(Collections.singletonMap("in", x), "out").get("out"),
+                optimized.output(Collections.singletonMap("in", x), "out").get("out"));
+    }
+
+    @Test
+    public void testConvBatchNormFolding(){
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 3, 8, 8);
+        SDVariable w = sd.constant("w", Nd4j.rand(DataType.FLOAT, 2, 2, 3, 4));
+        SDVariable b = sd.constant("b", Nd4j.rand(DataType.FLOAT, 4));
+        SDVariable conv = sd.cnn().conv2d(in, w, Conv2DConfig.builder().kH(2).kW(2).dataFormat(Conv2DConfig.NCHW).build());
+        SDVariable bias = sd.nn().biasAdd(conv, b, true);
+
+        SDVariable mean = sd.constant("mean", Nd4j.rand(DataType.FLOAT, 4));
+        SDVariable var = sd.constant("var", Nd4j.rand(DataType.FLOAT, 4).addi(0.5));
+        SDVariable gamma = sd.constant("gamma", Nd4j.rand(DataType.FLOAT, 4));
+        SDVariable beta = sd.constant("beta", Nd4j.rand(DataType.FLOAT, 4));
+        sd.nn().batchNorm("out", bias, mean, var, gamma, beta, 1e-5, 1);
+
+        SameDiff optimized = GraphOptimizer.optimize(sd, "out");
+        assertEquals(1, optimized.getOps().size());
+        SameDiffOp op = optimized.getOps().values().iterator().next();
+        assertEquals(Conv2D.class, op.getOp().getClass());
+        assertEquals(3, op.getInputsToOp().size());
+        for (SameDiffOp o : optimized.getOps().values())
+            assertFalse(o.getOp() instanceof BatchNorm);
+
+        INDArray x = Nd4j.rand(DataType.FLOAT, 2, 3, 8, 8);
+        Map<String,INDArray> ph = Collections.singletonMap("in", x);
+        INDArray exp = sd.output(ph, "out").get("out");
+        INDArray out = optimized.output(ph, "out").get("out");
+        assertTrue(exp.equalsWithEps(out, 1e-4));
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.listeners;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.autodiff.listeners.Listener;
+import org.nd4j.autodiff.listeners.profiler.ProfilingListener;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.shade.jackson.databind.JsonNode;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ProfilingListenerTest extends BaseNd4jTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    public ProfilingListenerTest(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Test
+    public void testProfilingListener() throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 3);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 3, 2));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 1, 2));
+        SDVariable mmul = in.mmul("mmul", w);
+        SDVariable sm = sd.nn.softmax("softmax", mmul.add("add", b));
+
+        ProfilingListener l = new ProfilingListener();
+        Map<String,INDArray> ph = Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 4, 3));
+        for (int i = 0; i < 3; i++)
+            sd.output(ph, Collections.<Listener>singletonList(l), "softmax");
+
+        List<ProfilingListener.OpEvent> events = l.getEvents();
+        assertEquals(3 * 3, events.size());
+        for (ProfilingListener.OpEvent e : events)
+            assertTrue(e.getDurationNanos() >= 0);
+
+        ProfilingListener.OpEvent mmulEvent = events.get(0);
+        assertEquals("mmul", mmulEvent.getOpName());
+        assertArrayEquals(new long[]{4, 3}, mmulEvent.getInputShapes()[0]);
+        assertArrayEquals(new long[]{3, 2}, mmulEvent.getInputShapes()[1]);
+        assertArrayEquals(new long[]{4, 2}, mmulEvent.getOutputShapes()[0]);
+        assertEquals(4 * 2 * 4, mmulEvent.getOutputBytes());
+
+        List<ProfilingListener.OpStats> byName = l.hotspots(false);
+        assertEquals(3, byName.size());
+        for (ProfilingListener.OpStats s : byName)
+            assertEquals(3, s.getCount());
+
+        String table = l.hotspotTable(true, 10);
+        assertTrue(table, table.contains("Mmul"));
+
+        File f = testDir.newFile("trace.json");
+        l.writeChromeTrace(f);
+        JsonNode trace = new ObjectMapper().readTree(f);
+        assertEquals(9, trace.get("traceEvents").size());
+        assertEquals("X", trace.get("traceEvents").get(0).get("ph").asText());
+
+        l.reset();
+        assertEquals(0, l.getEvents().size());
+        assertEquals(0, l.hotspots(true).size());
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+}
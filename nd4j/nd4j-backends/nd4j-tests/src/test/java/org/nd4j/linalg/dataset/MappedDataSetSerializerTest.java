@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class MappedDataSetSerializerTest extends BaseNd4jTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    public MappedDataSetSerializerTest(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Test
+    public void testDataSetRoundTrip() throws Exception {
+        File dir = testDir.newFolder();
+        for (DataType dt : new DataType[]{DataType.DOUBLE, DataType.FLOAT, DataType.HALF, DataType.INT, DataType.BOOL}) {
+            INDArray f = Nd4j.rand(DataType.FLOAT, 3, 4, 5).castTo(dt);
+            INDArray l = Nd4j.rand(DataType.FLOAT, 'f', 3, 2).castTo(dt);
+            INDArray fm = Nd4j.ones(DataType.FLOAT, 3, 5);
+            DataSet ds = new DataSet(f, l, fm, null);
+
+            File file = new File(dir, dt + ".mmds");
+            MappedDataSetSerializer.write(ds, file);
+            DataSet read = MappedDataSetSerializer.readDataSet(file);
+
+            assertEquals(dt.toString(), ds, read);
+            assertEquals(f.ordering(), read.getFeatures().ordering());
+            assertEquals(l.ordering(), read.getLabels().ordering());
+            assertNull(read.getLabelsMaskArray());
+        }
+    }
+
+    @Test
+    public void testViewsAndInPlaceModification() throws Exception {
+        File file = testDir.newFile();
+        INDArray f = Nd4j.linspace(1, 60, 60, DataType.FLOAT).reshape(6, 10);
+        INDArray fView = f.get(NDArrayIndex.interval(1, 4), NDArrayIndex.interval(2, 7));
+        INDArray l = Nd4j.linspace(1, 3, 3, DataType.FLOAT).reshape(3, 1);
+        DataSet ds = new DataSet(fView, l);
+        MappedDataSetSerializer.write(ds, file);
+
+        DataSet read = MappedDataSetSerializer.readDataSet(file);
+        assertEquals(fView, read.getFeatures());
+
+        //Arrays are mapped copy-on-write: in-place modification must not change the file
+        read.getFeatures().addi(1.0);
+        assertEquals(fView.add(1.0), read.getFeatures());
+        assertEquals(fView, MappedDataSetSerializer.readDataSet(file).getFeatures());
+    }
+
+    @Test
+    public void testMultiDataSetRoundTrip() throws Exception {
+        File file = testDir.newFile();
+        INDArray[] f = {Nd4j.rand(DataType.FLOAT, 4, 3), Nd4j.rand(DataType.DOUBLE, 4, 2, 6)};
+        INDArray[] l = {Nd4j.rand(DataType.FLOAT, 4, 5)};
+        INDArray[] fm = {null, Nd4j.ones(DataType.FLOAT, 4, 6)};
+        MultiDataSet mds = new MultiDataSet(f, l, fm, null);
+
+        MappedDataSetSerializer.write(mds, file);
+        MultiDataSet read = MappedDataSetSerializer.readMultiDataSet(file);
+        assertEquals(mds, read);
+        assertNull(read.getLabelsMaskArrays());
+    }
+
+    @Test
+    public void testConvert() throws Exception {
+        File bin = testDir.newFile();
+        File mmds = testDir.newFile();
+        DataSet ds = new DataSet(Nd4j.rand(DataType.FLOAT, 5, 3), Nd4j.rand(DataType.FLOAT, 5, 2));
+        ds.save(bin);
+
+        MappedDataSetSerializer.convertDataSet(bin, mmds);
+        assertEquals(ds, MappedDataSetSerializer.readDataSet(mmds));
+
+        try {
+            MappedDataSetSerializer.readMultiDataSet(mmds);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("MultiDataSet"));
+        }
+
+        try {
+            MappedDataSetSerializer.readDataSet(bin);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("invalid header"));
+        }
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+}
@@ -20,6 +20,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.rng.distribution.Distribution;
 import org.nd4j.linalg.factory.Nd4j;
@@ -27,6 +28,7 @@ import org.nd4j.linalg.factory.Nd4jBackend;
 import org.nd4j.linalg.learning.config.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(Parameterized.class)
 public class UpdaterTest extends BaseNd4jTest {
@@ -170,6 +172,44 @@ public class UpdaterTest extends BaseNd4jTest {
         }
     }
 
+    @Test
+    public void testSparseUpdaters() {
+        int rows = 10;
+        int cols = 3;
+        INDArray rowIdxs = Nd4j.createFromArray(1, 4, 7);
+
+        for (IUpdater u : new IUpdater[]{new Sgd(0.1), new AdaGrad(0.1), new Adam(0.01), new RmsProp(0.01), new NoOp()}) {
+            long stateSize = u.stateSize(rows * cols);
+            GradientUpdater dense = u.instantiate(stateSize == 0 ? null : Nd4j.zeros(DataType.DOUBLE, 1, stateSize), true);
+            GradientUpdater sparse = u.instantiate(stateSize == 0 ? null : Nd4j.zeros(DataType.DOUBLE, 1, stateSize), true);
+            assertTrue(sparse instanceof SparseGradientUpdater);
+
+            //Gradients are views of the flattened gradient array, as in DL4J
+            INDArray denseFlat = Nd4j.zeros(DataType.DOUBLE, 1, rows * cols);
+            INDArray sparseFlat = Nd4j.zeros(DataType.DOUBLE, 1, rows * cols);
+            INDArray denseGrad = denseFlat.reshape('f', rows, cols);
+            INDArray sparseGrad = sparseFlat.reshape('f', rows, cols);
+
+            for (int i = 0; i < 3; i++) {
+                //Only rows 1, 4 and 7 are non-zero
+                denseGrad.assign(0);
+                for (int r : rowIdxs.toIntVector())
+                    denseGrad.putRow(r, Nd4j.rand(DataType.DOUBLE, 1, cols));
+                sparseGrad.assign(denseGrad);
+
+                dense.applyUpdater(denseFlat, i, 0);
+                ((SparseGradientUpdater) sparse).applySparseUpdater(sparseGrad, rowIdxs, i, 0);
+
+                String msg = u.getClass().getSimpleName() + " - iteration " + i;
+                assertEquals(msg, denseGrad, sparseGrad);
+                if (stateSize > 0) {
+                    for (String key : dense.getState().keySet())
+                        assertEquals(msg, dense.getState().get(key), sparse.getState().get(key));
+                }
+            }
+        }
+    }
+
     @Override
     public char ordering() {
         return 'f';
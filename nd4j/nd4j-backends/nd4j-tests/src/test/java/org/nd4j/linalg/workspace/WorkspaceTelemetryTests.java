@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.workspace;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.WorkspaceStatistics;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.*;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.memory.abstracts.Nd4jWorkspace;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for workspace telemetry, PERCENTILE learning policy and shape-bucketed workspaces
+ */
+@Slf4j
+@RunWith(Parameterized.class)
+public class WorkspaceTelemetryTests extends BaseNd4jTest {
+
+    public WorkspaceTelemetryTests(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @After
+    public void shutUp() {
+        Nd4j.getWorkspaceManager().setWorkspaceBucket(null);
+        Nd4j.getMemoryManager().setCurrentWorkspace(null);
+        Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+    }
+
+    @Test
+    public void testSpillTelemetry_1() {
+        val configuration = WorkspaceConfiguration.builder().initialSize(1024 * 1024L)
+                .policyAllocation(AllocationPolicy.STRICT).policyLearning(LearningPolicy.NONE)
+                .policySpill(SpillPolicy.EXTERNAL).build();
+
+        for (int e = 0; e < 3; e++) {
+            try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(configuration, "WS_TELEMETRY_1")) {
+                // 2 allocations of 4MB each, both should be spilled
+                Nd4j.create(DataType.FLOAT, 1024 * 1024);
+                Nd4j.create(DataType.FLOAT, 1024 * 1024);
+            }
+        }
+
+        val workspace = (Nd4jWorkspace) Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread("WS_TELEMETRY_1");
+        WorkspaceStatistics stats = workspace.getStatistics();
+        log.info("Stats: {}", stats);
+
+        assertEquals("WS_TELEMETRY_1", stats.getId());
+        assertEquals(3, stats.getCycles());
+        assertEquals(6, stats.getSpilledCount());
+        assertEquals(1, stats.getReallocations());
+        assertEquals(0, stats.getCyclicResets());
+
+        Map<String, WorkspaceStatistics> map = Nd4j.getWorkspaceManager().getWorkspaceStatisticsForCurrentThread();
+        assertTrue(map.containsKey("WS_TELEMETRY_1"));
+        assertEquals(stats, map.get("WS_TELEMETRY_1"));
+    }
+
+    @Test
+    public void testPercentilePolicy_1() {
+        val configuration = WorkspaceConfiguration.builder().initialSize(0)
+                .policyAllocation(AllocationPolicy.STRICT).policyLearning(LearningPolicy.PERCENTILE)
+                .percentileWindow(5).percentile(1.0).policySpill(SpillPolicy.EXTERNAL).build();
+
+        // first cycle: nothing is allocated yet, so allocation is spilled, and workspace is sized by observed demand
+        try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(configuration, "WS_PERCENTILE_1")) {
+            Nd4j.create(DataType.FLOAT, 100);
+        }
+
+        val workspace = (Nd4jWorkspace) Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread("WS_PERCENTILE_1");
+        long initialSize = workspace.getCurrentSize();
+        assertTrue(initialSize >= 100 * 4);
+        assertEquals(1, workspace.getStatistics().getSpilledCount());
+        assertEquals(1, workspace.getStatistics().getReallocations());
+
+        // rest of the window: demand is 10x higher, so allocations are spilled until window is complete
+        for (int e = 1; e < 5; e++) {
+            try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(configuration, "WS_PERCENTILE_1")) {
+                Nd4j.create(DataType.FLOAT, 1000);
+            }
+
+            if (e < 4)
+                assertEquals(initialSize, workspace.getCurrentSize());
+        }
+
+        assertEquals(5, workspace.getStatistics().getSpilledCount());
+        assertEquals(2, workspace.getStatistics().getReallocations());
+        assertTrue(workspace.getCurrentSize() >= 1000 * 4);
+
+        // next window fits into workspace, so there's no spills and no reallocations
+        for (int e = 0; e < 5; e++) {
+            try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(configuration, "WS_PERCENTILE_1")) {
+                Nd4j.create(DataType.FLOAT, 1000);
+            }
+        }
+
+        assertEquals(5, workspace.getStatistics().getSpilledCount());
+        assertEquals(2, workspace.getStatistics().getReallocations());
+    }
+
+    @Test(expected = ND4JIllegalStateException.class)
+    public void testPercentilePolicy_2() {
+        val configuration = WorkspaceConfiguration.builder().initialSize(1024 * 1024L)
+                .policyReset(ResetPolicy.ENDOFBUFFER_REACHED).policyLearning(LearningPolicy.PERCENTILE).build();
+
+        Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(configuration, "WS_PERCENTILE_2");
+    }
+
+    @Test
+    public void testBuckets_1() {
+        val configuration = WorkspaceConfiguration.builder().initialSize(1024 * 1024L)
+                .policyAllocation(AllocationPolicy.STRICT).policyLearning(LearningPolicy.NONE).build();
+
+        Nd4j.getWorkspaceManager().setWorkspaceBucket("32");
+        MemoryWorkspace ws1 = Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(configuration, "WS_BUCKETS_1");
+
+        Nd4j.getWorkspaceManager().setWorkspaceBucket("64");
+        assertFalse(Nd4j.getWorkspaceManager().checkIfWorkspaceExists("WS_BUCKETS_1"));
+        MemoryWorkspace ws2 = Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(configuration, "WS_BUCKETS_1");
+
+        // bucketed workspaces are separate, but keep the same id
+        assertNotSame(ws1, ws2);
+        assertEquals(ws1.getId(), ws2.getId());
+        assertEquals("64", ((Nd4jWorkspace) ws2).getBucket());
+
+        Nd4j.getWorkspaceManager().setWorkspaceBucket("32");
+        assertSame(ws1, Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(configuration, "WS_BUCKETS_1"));
+
+        Map<String, WorkspaceStatistics> map = Nd4j.getWorkspaceManager().getWorkspaceStatisticsForCurrentThread();
+        assertTrue(map.containsKey("WS_BUCKETS_1@32"));
+        assertTrue(map.containsKey("WS_BUCKETS_1@64"));
+
+        Nd4j.getWorkspaceManager().destroyWorkspace(ws2);
+        assertFalse(Nd4j.getWorkspaceManager().getWorkspaceStatisticsForCurrentThread().containsKey("WS_BUCKETS_1@64"));
+        assertTrue(Nd4j.getWorkspaceManager().checkIfWorkspaceExists("WS_BUCKETS_1"));
+    }
+
+    @Test(expected = ND4JIllegalStateException.class)
+    public void testBuckets_2() {
+        try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace("WS_BUCKETS_2")) {
+            Nd4j.getWorkspaceManager().setWorkspaceBucket("32");
+        }
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+}
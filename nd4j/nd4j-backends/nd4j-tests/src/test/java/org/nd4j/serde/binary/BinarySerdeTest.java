@@ -21,15 +21,18 @@ import org.junit.Test;
 import org.nd4j.OpValidationSuite;
 import org.nd4j.linalg.BaseNd4jTest;
 import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.UUID;
 
 import static org.junit.Assert.*;
@@ -66,6 +69,56 @@ public class BinarySerdeTest extends BaseNd4jTest {
         assertEquals(arr, back);
     }
 
+    @Test
+    public void testToAndFromMultiple() throws Exception {
+        INDArray[] arrays = new INDArray[] {Nd4j.linspace(1, 12, 12).reshape(3, 4), Nd4j.scalar(2.0),
+                Nd4j.create(new int[] {1, 2, 3}, new long[] {3}, DataType.INT)};
+
+        ByteBuffer buffer = BinarySerde.toByteBuffer(arrays);
+        INDArray[] back = BinarySerde.toArrays(buffer);
+        assertArrayEquals(arrays, back);
+
+        // channel round trip, as used for tensor serving
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int length = BinarySerde.writeArraysToChannel(arrays, Channels.newChannel(bos));
+        assertEquals(length, bos.size());
+
+        back = BinarySerde.readArraysFromChannel(Channels.newChannel(new ByteArrayInputStream(bos.toByteArray())), length);
+        assertArrayEquals(arrays, back);
+    }
+
+    @Test
+    public void testToAndFromMultipleWithOffset() {
+        INDArray[] arrays = new INDArray[] {Nd4j.linspace(1, 12, 12).reshape(3, 4), Nd4j.scalar(2.0),
+                Nd4j.create(new int[] {1, 2, 3}, new long[] {3}, DataType.INT)};
+
+        ByteBuffer buffer = BinarySerde.toByteBuffer(arrays);
+        int length = buffer.remaining();
+        int offset = 7;
+
+        // heap buffer with junk in front: read starts at the position
+        ByteBuffer heap = ByteBuffer.allocate(length + offset);
+        heap.position(offset);
+        heap.put(buffer.duplicate());
+        heap.position(offset);
+        assertArrayEquals(arrays, BinarySerde.toArrays(heap));
+        assertEquals(offset, heap.position());
+
+        // sliced heap buffer: non-zero arrayOffset
+        ByteBuffer sliced = heap.slice();
+        assertEquals(offset, sliced.arrayOffset());
+        assertArrayEquals(arrays, BinarySerde.toArrays(sliced));
+        assertEquals(0, sliced.position());
+
+        // direct buffer with junk in front
+        ByteBuffer direct = ByteBuffer.allocateDirect(length + offset);
+        direct.position(offset);
+        direct.put(buffer.duplicate());
+        direct.position(offset);
+        assertArrayEquals(arrays, BinarySerde.toArrays(direct));
+        assertEquals(offset, direct.position());
+    }
+
     @Test
     public void testToAndFromCompressed() {
         OpValidationSuite.ignoreFailing();  //Failing 2019/01/24
@@ -23,6 +23,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import org.nd4j.linalg.api.memory.enums.DebugMode;
 
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -220,4 +221,32 @@ public interface MemoryWorkspaceManager {
      * @return True if any workspaces are open for this thread, false otherwise
      */
     boolean anyWorkspaceActiveForCurrentThread();
+
+    /**
+     * This method returns telemetry (size, spills, reallocations etc) for all workspaces of current thread,
+     * keyed by workspace id (with bucket suffix, for bucketed workspaces)
+     *
+     * @return
+     */
+    Map<String, WorkspaceStatistics> getWorkspaceStatisticsForCurrentThread();
+
+    /**
+     * This method sets shape bucket for current thread. While bucket is set, every workspace id used in this thread
+     * resolves to separate workspace for this bucket, so workspaces are sized for each bucket independently.
+     * Typical use is variable input shapes: i.e. bucket by sequence length, to avoid spills and reallocations when
+     * short and long sequences alternate.
+     *
+     * PLEASE NOTE: bucket can't be changed while any workspace is open in current thread.
+     * PLEASE NOTE: each bucket has its own set of workspaces, so memory use grows with number of buckets.
+     *
+     * @param bucket bucket key, or null to use default (non-bucketed) workspaces
+     */
+    void setWorkspaceBucket(String bucket);
+
+    /**
+     * This method returns shape bucket for current thread, or null if not set
+     *
+     * @return
+     */
+    String getWorkspaceBucket();
 }
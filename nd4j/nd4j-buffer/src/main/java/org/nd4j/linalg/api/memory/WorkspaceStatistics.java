@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.api.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * This class holds telemetry snapshot for single workspace: size, demand, spills, reallocations and resets.
+ * All counters are cumulative since workspace creation.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WorkspaceStatistics implements Serializable {
+    /**
+     * Workspace id
+     */
+    private String id;
+
+    /**
+     * Shape bucket this workspace belongs to, or null
+     */
+    private String bucket;
+
+    /**
+     * Current size of workspace memory, in bytes
+     */
+    private long currentSize;
+
+    /**
+     * Number of cycles (open/close) of this workspace
+     */
+    private long cycles;
+
+    /**
+     * Memory demand of last cycle, in bytes
+     */
+    private long lastCycleAllocations;
+
+    /**
+     * Max memory demand of any cycle, in bytes
+     */
+    private long maxCycleAllocations;
+
+    /**
+     * Number of allocations that didn't fit into workspace, and were allocated separately
+     */
+    private long spilledCount;
+
+    /**
+     * Total size of spilled allocations, in bytes
+     */
+    private long spilledBytes;
+
+    /**
+     * Number of pinned allocations (circular workspaces only)
+     */
+    private long pinnedCount;
+
+    /**
+     * Total size of pinned allocations, in bytes
+     */
+    private long pinnedBytes;
+
+    /**
+     * Number of times workspace memory was (re)allocated, including initial allocation
+     */
+    private long reallocations;
+
+    /**
+     * Number of times circular workspace reached end of buffer and was reset to the beginning
+     */
+    private long cyclicResets;
+}
@@ -77,4 +77,14 @@ public class WorkspaceConfiguration implements Serializable {
      * This value is used only for circular workspaces
      */
     @Builder.Default protected int stepsNumber = 2;
+
+    /**
+     * For PERCENTILE learning policy: number of cycles between workspace resizes
+     */
+    @Builder.Default protected int percentileWindow = 50;
+
+    /**
+     * For PERCENTILE learning policy: percentile (0.0 to 1.0) of per-cycle memory demand used as workspace size
+     */
+    @Builder.Default protected double percentile = 0.95;
 }
@@ -37,4 +37,13 @@ public enum LearningPolicy {
      * This policy means - no learning is assumed, WorkspaceConfiguration.initialSize value will be primary determinant for workspace size
      */
     NONE,
+
+    /**
+     * This policy means - workspace is allocated after first cycle (as FIRST_LOOP), and then resized every
+     * WorkspaceConfiguration.percentileWindow cycles to WorkspaceConfiguration.percentile of memory demand observed during
+     * that window. Cycles with higher demand than workspace size are spilled instead of causing reallocation.
+     *
+     * This policy is suited for variable input shapes, where reallocating on every new maximum is expensive.
+     */
+    PERCENTILE,
 }
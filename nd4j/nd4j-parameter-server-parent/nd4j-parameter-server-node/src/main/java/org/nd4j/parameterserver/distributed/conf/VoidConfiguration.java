@@ -23,6 +23,7 @@ import org.nd4j.parameterserver.distributed.enums.ExecutionMode;
 import org.nd4j.parameterserver.distributed.enums.FaultToleranceStrategy;
 import org.nd4j.parameterserver.distributed.enums.NodeRole;
 import org.nd4j.parameterserver.distributed.enums.TransportType;
+import org.nd4j.parameterserver.distributed.v2.enums.GradientExchangeMode;
 import org.nd4j.parameterserver.distributed.v2.enums.MeshBuildMode;
 import org.nd4j.parameterserver.distributed.v2.transport.PortSupplier;
 import org.nd4j.parameterserver.distributed.v2.transport.impl.StaticPortSupplier;
@@ -110,6 +111,12 @@ public class VoidConfiguration implements Serializable {
     @Builder.Default
     private MeshBuildMode meshBuildMode = MeshBuildMode.PLAIN;
 
+    /**
+     * This variable defines how gradient updates are exchanged between nodes: broadcast through the mesh, or ring all-reduce
+     */
+    @Builder.Default
+    private GradientExchangeMode gradientExchangeMode = GradientExchangeMode.BROADCAST;
+
     /**
      * This variable acts as hint for ParameterServer about IP address to be used for comms.
      * Used only if SPARK_PUBLIC_DNS is undefined (i.e. as in YARN environment)
@@ -202,6 +209,12 @@ public class VoidConfiguration implements Serializable {
      */
     @Builder.Default private PortSupplier portSupplier = new StaticPortSupplier(49876);
 
+    /**
+     * This optional variable defines directory of the Aeron media driver shared by all nodes running on the same host.
+     * Has effect only for {@link TransportType#ROUTED_UDP_IPC} transport. Leave it null to use default directory.
+     */
+    private String ipcDirectory;
+
     public void setStreamId(int streamId) {
         if (streamId < 1)
             throw new ND4JIllegalStateException("You can't use streamId 0, please specify other one");
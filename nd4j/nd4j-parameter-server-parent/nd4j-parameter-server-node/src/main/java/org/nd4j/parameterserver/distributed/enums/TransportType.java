@@ -27,6 +27,12 @@ public enum TransportType {
      */
     ROUTED_UDP,
 
+    /**
+     * Same as ROUTED_UDP for remote nodes, but nodes running on the same host exchange messages via Aeron IPC
+     * (shared memory) instead of UDP
+     */
+    ROUTED_UDP_IPC,
+
     /**
      * This option means you'll provide own Transport interface implementation via VoidParameterServer.init() method
      */
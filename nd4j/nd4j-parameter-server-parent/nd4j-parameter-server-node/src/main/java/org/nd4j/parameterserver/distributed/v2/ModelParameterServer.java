@@ -23,13 +23,19 @@ import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.ThresholdCompression;
+import org.nd4j.linalg.compression.UpdateCodecs;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.Atomic;
 import org.nd4j.linalg.primitives.AtomicBoolean;
 import org.nd4j.linalg.primitives.Pair;
 import org.nd4j.parameterserver.distributed.conf.VoidConfiguration;
+import org.nd4j.parameterserver.distributed.v2.enums.GradientExchangeMode;
 import org.nd4j.parameterserver.distributed.v2.enums.PropagationMode;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.AllReduceChunkMessage;
 import org.nd4j.parameterserver.distributed.v2.messages.impl.GradientsUpdateMessage;
 import org.nd4j.parameterserver.distributed.v2.messages.pairs.handshake.HandshakeResponse;
 import org.nd4j.parameterserver.distributed.v2.messages.pairs.params.ModelParametersMessage;
@@ -43,6 +49,7 @@ import org.nd4j.parameterserver.distributed.v2.transport.UpdatesHandler;
 import org.nd4j.parameterserver.distributed.v2.transport.impl.StaticPortSupplier;
 import org.nd4j.parameterserver.distributed.v2.util.AbstractSubscriber;
 import org.nd4j.parameterserver.distributed.v2.util.MeshOrganizer;
+import org.nd4j.parameterserver.distributed.v2.util.RingAllReduce;
 import org.nd4j.parameterserver.distributed.v2.util.UpdaterParametersHolder;
 import org.reactivestreams.Subscriber;
 
@@ -100,6 +107,13 @@ public final class ModelParameterServer {
 
     private Disposable disposable;
 
+    // used only in RING_ALLREDUCE gradient exchange mode
+    @Getter
+    private RingAllReduce ringAllReduce;
+    // position of the latest all-reduce round, and number of rounds started at this position. guarded by this
+    private long lastRoundPosition = -1;
+    private int roundSequence = 0;
+
 
     private AtomicInteger iterationNumber = new AtomicInteger(0);
     private AtomicInteger epochNumber = new AtomicInteger(0);
@@ -347,6 +361,16 @@ public final class ModelParameterServer {
             });
         }
 
+        if (getGradientExchangeMode() == GradientExchangeMode.RING_ALLREDUCE) {
+            ringAllReduce = new RingAllReduce(transport, configuration.getMaxChunkSize(), configuration.getResponseTimeout());
+            transport.addMessageConsumer(AllReduceChunkMessage.class, new Consumer<AllReduceChunkMessage>() {
+                @Override
+                public void accept(AllReduceChunkMessage message) throws Exception {
+                    ringAllReduce.processMessage(message);
+                }
+            });
+        }
+
         // this flow will be providing INDArray messages
         disposable = Flowable.fromPublisher(transport.incomingPublisher()).subscribe(message -> {
             /**
@@ -412,6 +436,21 @@ public final class ModelParameterServer {
     }
 
     public void sendUpdate(@NonNull INDArray array, int iteration, int epoch) {
+        sendUpdate(array, Nd4j.defaultFloatingPointType(), iteration, epoch);
+    }
+
+    /**
+     * This method sends gradient updates to the cluster
+     *
+     * @param array       dense array, or threshold/bitmap encoded update
+     * @param updatesType data type of the updates, encoded updates are decoded into this type when needed
+     */
+    public void sendUpdate(@NonNull INDArray array, @NonNull DataType updatesType, int iteration, int epoch) {
+        if (getGradientExchangeMode() == GradientExchangeMode.RING_ALLREDUCE) {
+            exchangeUpdate(array, updatesType, iteration, epoch);
+            return;
+        }
+
         try {
             //transport.outgoingConsumer().accept(new GradientsUpdateMessage(java.util.UUID.randomUUID().toString(), array));
             val msg = new GradientsUpdateMessage(java.util.UUID.randomUUID().toString(), array);
@@ -424,6 +463,122 @@ public final class ModelParameterServer {
         }
     }
 
+    /**
+     * This method returns gradient exchange mode used by this ModelParameterServer
+     * @return
+     */
+    public GradientExchangeMode getGradientExchangeMode() {
+        return configuration == null ? GradientExchangeMode.BROADCAST : configuration.getGradientExchangeMode();
+    }
+
+    /**
+     * This method sums given array over all workers with ring all-reduce, and blocks until the sum is available.
+     * Workers are all online nodes of the mesh, except for the root node
+     *
+     * PLEASE NOTE: this is a collective operation, all workers have to call this method the same number of times
+     *
+     * @param array dense array, or threshold/bitmap encoded update
+     * @return flat dense array with the sum
+     */
+    public INDArray allReduce(@NonNull INDArray array) {
+        return allReduce(array, Nd4j.defaultFloatingPointType());
+    }
+
+    /**
+     * This method sums given array over all workers with ring all-reduce, and blocks until the sum is available.
+     *
+     * @param array       dense array, or threshold/bitmap encoded update
+     * @param updatesType data type to decode encoded update into. All workers have to use the same data type
+     * @return flat dense array with the sum
+     */
+    public INDArray allReduce(@NonNull INDArray array, @NonNull DataType updatesType) {
+        if (ringAllReduce == null)
+            throw new ND4JIllegalStateException("All-reduce is available only in RING_ALLREDUCE gradient exchange mode");
+
+        try {
+            return ringAllReduce.allReduce(decodeIfEncoded(array, updatesType), RingAllReduce.ringFromMesh(transport.getMesh()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * This method tells that this worker has no more updates to share: until its next update, it takes part in all-reduce
+     * rounds of other workers with zeros, so they don't time out waiting for it
+     *
+     * @param length      length of the updates
+     * @param updatesType data type of the updates
+     */
+    public synchronized void finishUpdates(long length, @NonNull DataType updatesType) {
+        if (ringAllReduce == null)
+            return;
+
+        ringAllReduce.finish(length, updatesType, RingAllReduce.ringFromMesh(transport.getMesh()));
+    }
+
+    /**
+     * This method exchanges update with all other workers via ring all-reduce, and propagates sum of updates of all
+     * other workers to subscribers, just like updates received in BROADCAST mode.
+     * Rounds are identified by epoch and iteration, so workers agree on them regardless of how many rounds each of them
+     * has done before. Updates of local workers for the same iteration are numbered in the order they arrive here
+     */
+    protected synchronized void exchangeUpdate(INDArray array, DataType updatesType, int iteration, int epoch) {
+        if (ringAllReduce == null)
+            throw new ND4JIllegalStateException("All-reduce is available only in RING_ALLREDUCE gradient exchange mode");
+
+        val own = decodeIfEncoded(array, updatesType);
+
+        val position = RingAllReduce.roundId(epoch, iteration, 0);
+        if (position != lastRoundPosition) {
+            lastRoundPosition = position;
+            roundSequence = 0;
+        }
+
+        INDArray sum;
+        try {
+            sum = ringAllReduce.allReduce(own, RingAllReduce.ringFromMesh(transport.getMesh()), RingAllReduce.roundId(epoch, iteration, roundSequence++));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        if (iterationNumber.get() < iteration)
+            iterationNumber.set(iteration);
+
+        if (epochNumber.get() < epoch)
+            epochNumber.set(epoch);
+
+        // own update is applied locally, so subscribers get updates of other workers only
+        val others = sum.subi(own.reshape(sum.shape()));
+        if (updatesSubscribers.isEmpty())
+            updatesQueue.add(others);
+        else
+            updatesSubscribers.forEach(s -> s.onNext(others));
+    }
+
+    /**
+     * This method decodes encoded update (threshold, bitmap or any of UpdateCodecs encodings) into dense array of the given data type.
+     * Dense arrays are returned as is
+     */
+    protected static INDArray decodeIfEncoded(@NonNull INDArray array, @NonNull DataType updatesType) {
+        if (!array.isCompressed() && array.data().dataType() != DataType.INT)
+            return array;
+
+        val encoding = array.data().getInt(3);
+        val result = Nd4j.create(updatesType, array.data().getInt(1));
+        if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
+            Nd4j.getExecutioner().thresholdDecode(array, result);
+        else if (encoding == ThresholdCompression.BITMAP_ENCODING)
+            Nd4j.getExecutioner().bitmapDecode(array, result);
+        else if (UpdateCodecs.isSupported(encoding))
+            UpdateCodecs.decode(array, result);
+        else
+            throw new ND4JIllegalStateException("Unknown encoding mode: [" + encoding + "]");
+
+        return result;
+    }
+
     /**
      * This method sends gradient updates to the cluster
      */
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.parameterserver.distributed.v2.enums;
+
+/**
+ * This enum describes how gradient updates are exchanged between cluster nodes
+ */
+public enum GradientExchangeMode {
+    /**
+     * Each node propagates its own updates through the mesh, so every node receives (and decodes) updates of every other node
+     */
+    BROADCAST,
+
+    /**
+     * Nodes are organized into ring, and updates are summed with chunked ring all-reduce: reduce-scatter followed by all-gather.
+     * Each node sends and receives 2 * (N - 1) / N of the update size per iteration, regardless of cluster size.
+     *
+     * PLEASE NOTE: this is a collective operation, so every worker has to take part in every round
+     */
+    RING_ALLREDUCE,
+}
@@ -30,4 +30,10 @@ public enum MeshBuildMode {
      * In this mode all nodes are organized into mesh, and each node is responsible for messages propagation
      */
     MESH,
+
+    /**
+     * In this mode nodes are grouped by host: first node on each host becomes host leader, and only host leaders are organized into mesh.
+     * All other nodes are connected to the leader of their host, so messages cross network once per host, instead of once per node
+     */
+    HIERARCHICAL,
 }
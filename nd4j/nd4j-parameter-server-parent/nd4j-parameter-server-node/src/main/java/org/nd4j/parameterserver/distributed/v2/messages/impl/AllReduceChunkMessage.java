@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.parameterserver.distributed.v2.messages.impl;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.base.BaseVoidMessage;
+
+/**
+ * This message holds one chunk of one segment of the ring all-reduce, sent from a node to the next node in the ring.
+ * Payload is either dense (indices are null), or sparse: indices are relative to the chunk start, and values are
+ * stored for these indices only
+ */
+@NoArgsConstructor
+@Getter
+public class AllReduceChunkMessage extends BaseVoidMessage {
+    private static final long serialVersionUID = 1L;
+
+    public static final int REDUCE_SCATTER = 0;
+    public static final int ALL_GATHER = 1;
+
+    /**
+     * Sequential number of the all-reduce round
+     */
+    private long round;
+
+    /**
+     * Number of nodes in the ring, as seen by the sender
+     */
+    private int ringSize;
+
+    /**
+     * Either {@link #REDUCE_SCATTER} or {@link #ALL_GATHER}
+     */
+    private int phase;
+
+    /**
+     * Step within phase, 0 to ringSize - 2
+     */
+    private int step;
+
+    private int segment;
+    private int chunk;
+
+    private int[] indices;
+    private INDArray values;
+
+    public AllReduceChunkMessage(long round, int ringSize, int phase, int step, int segment, int chunk, int[] indices, @NonNull INDArray values) {
+        this.messageId = java.util.UUID.randomUUID().toString();
+        this.round = round;
+        this.ringSize = ringSize;
+        this.phase = phase;
+        this.step = step;
+        this.segment = segment;
+        this.chunk = chunk;
+        this.indices = indices;
+        this.values = values;
+    }
+
+    /**
+     * @return true if payload is sparse
+     */
+    public boolean isSparse() {
+        return indices != null;
+    }
+}
@@ -141,6 +141,22 @@ public interface Transport {
      */
     <T extends RequestMessage> void  addRequestConsumer(Class<T> cls, Consumer<T> consumer);
 
+    /**
+     * This method allows to set consumer for messages of the given class, that aren't handled by Transport itself.
+     * I.e. this is used for ring all-reduce chunks
+     *
+     * @param cls
+     * @param consumer consumer instance, or null to remove existing one
+     * @param <T>
+     */
+    <T extends VoidMessage> void addMessageConsumer(Class<T> cls, Consumer<T> consumer);
+
+    /**
+     * This method returns current mesh known to this Transport
+     * @return
+     */
+    MeshOrganizer getMesh();
+
     /**
      * This method will be called if mesh update was received
      *
@@ -0,0 +1,494 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.parameterserver.distributed.v2.transport.impl;
+
+import io.aeron.Aeron;
+import io.aeron.FragmentAssembler;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import io.aeron.driver.MediaDriver;
+import io.aeron.exceptions.DriverTimeoutException;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.agrona.concurrent.SleepingIdleStrategy;
+import org.nd4j.aeron.ipc.AeronUtil;
+import org.nd4j.linalg.util.HashUtil;
+import org.nd4j.parameterserver.distributed.conf.VoidConfiguration;
+import org.nd4j.parameterserver.distributed.v2.messages.VoidMessage;
+import org.nd4j.parameterserver.distributed.v2.util.MeshOrganizer;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class is a hybrid implementation of Transport interface, based on Aeron:
+ * nodes running on the same host exchange messages via Aeron IPC (i.e. shared memory ring buffers), and UDP is used for remote nodes only.
+ *
+ * Topology is detected automatically: node IDs in MeshOrganizer carry node IP, and node is considered local if its IP belongs
+ * to one of network interfaces of this host. If IPC connection to local node can't be established (i.e. node uses plain UDP transport,
+ * or isn't subscribed yet), UDP is used for this node for now, and IPC connection is retried periodically.
+ *
+ * PLEASE NOTE: IPC requires single Aeron media driver shared by all nodes on the host. Unless there's a driver running already,
+ * it's launched within the JVM of the first node on the host, and it goes away together with that JVM. To avoid that, launch
+ * standalone media driver on the host before training (i.e. {@code java -Daeron.dir=<ipcDirectory> io.aeron.driver.MediaDriver}),
+ * and all nodes will connect to it. If the driver is lost anyway, remaining nodes detect this via driver timeout and switch
+ * all their IPC connections to UDP. IPC isn't used by them after that.
+ */
+@Slf4j
+public class AeronIpcTransport extends AeronUdpTransport {
+    protected static final String IPC_CHANNEL = "aeron:ipc";
+
+    // max time we'll wait for IPC connection to local node, before falling back to UDP
+    protected static final long IPC_CONNECT_TIMEOUT = 5000L;
+
+    // time between IPC connection attempts to local node that's connected via UDP
+    protected static final long IPC_RETRY_INTERVAL = 30000L;
+
+    // media drivers launched within this JVM, with number of transports using each of them
+    private static final Map<String, MediaDriver> sharedDrivers = new HashMap<>();
+    private static final Map<String, Integer> sharedDriversUsage = new HashMap<>();
+
+    protected final String ipcDirectory;
+    protected final String ownHost;
+
+    protected Aeron ipcAeron;
+    protected Aeron.Context ipcContext;
+
+    protected Subscription ipcSubscription;
+    protected FragmentAssembler ipcMessageHandler;
+    protected Thread ipcSubscriptionThread;
+
+    // locality cache for node IDs
+    protected final Map<String, Boolean> localPeers = new ConcurrentHashMap<>();
+
+    // IDs of nodes connected via IPC
+    protected final Set<String> ipcConnections = ConcurrentHashMap.newKeySet();
+
+    // local nodes connected via UDP for now, with time of the next IPC connection attempt (or deadline of the pending one)
+    protected final Map<String, Long> ipcRetryTimes = new ConcurrentHashMap<>();
+
+    // IPC publications of pending connection attempts
+    protected final Map<String, Publication> pendingIpcPublications = new ConcurrentHashMap<>();
+
+    // connections replaced by IPC or UDP ones. Senders might still use them, so they're closed on shutdown only
+    protected final List<RemoteConnection> replacedConnections = new CopyOnWriteArrayList<>();
+
+    // this flag is set once shared media driver is lost
+    protected final AtomicBoolean ipcLost = new AtomicBoolean(false);
+
+    public AeronIpcTransport(@NonNull String ownIp, @NonNull String rootIp, @NonNull VoidConfiguration configuration) {
+        this(ownIp, configuration.getPortSupplier().getPort(), rootIp, configuration.getUnicastControllerPort(), configuration);
+    }
+
+    /**
+     * This constructor creates root transport instance
+     * @param rootIp
+     * @param rootPort
+     * @param configuration
+     */
+    public AeronIpcTransport(@NonNull String rootIp, int rootPort, @NonNull VoidConfiguration configuration) {
+        this(rootIp, rootPort, rootIp, rootPort, configuration);
+    }
+
+    public AeronIpcTransport(@NonNull String ownIp, int ownPort, @NonNull String rootIp, int rootPort, @NonNull VoidConfiguration configuration) {
+        super(ownIp, ownPort, rootIp, rootPort, configuration);
+
+        ownHost = ownIp;
+        ipcDirectory = configuration.getIpcDirectory() != null ? configuration.getIpcDirectory() : new Aeron.Context().aeronDirectoryName() + "-nd4j-ipc";
+
+        acquireSharedDriver(ipcDirectory);
+
+        // default error handler terminates JVM on driver timeout, but we can go on with UDP
+        ipcContext = new Aeron.Context().driverTimeoutMs(30000)
+                .keepAliveInterval(100000000)
+                .aeronDirectoryName(ipcDirectory)
+                .errorHandler(e -> onIpcError(e));
+        AeronUtil.setDaemonizedThreadFactories(ipcContext);
+
+        ipcAeron = Aeron.connect(ipcContext);
+    }
+
+    /**
+     * This method launches shared media driver, unless it's already running within this JVM or in another process on this host
+     */
+    protected static synchronized void acquireSharedDriver(@NonNull String directory) {
+        val usage = sharedDriversUsage.get(directory);
+        if (usage != null) {
+            sharedDriversUsage.put(directory, usage + 1);
+            return;
+        }
+
+        MediaDriver driver = null;
+        try {
+            val ctx = new MediaDriver.Context().aeronDirectoryName(directory);
+            AeronUtil.setDaemonizedThreadFactories(ctx);
+            driver = MediaDriver.launch(ctx);
+            log.info("Launched shared media driver at [{}]", directory);
+        } catch (Exception e) {
+            // driver is active in another process, we'll just connect to it
+            log.info("Using existing shared media driver at [{}]", directory);
+        }
+
+        sharedDrivers.put(directory, driver);
+        sharedDriversUsage.put(directory, 1);
+    }
+
+    /**
+     * This method handles errors of IPC Aeron client. Driver timeout means that shared media driver is gone,
+     * so IPC connections are switched to UDP on their next use
+     *
+     * @param e
+     */
+    protected void onIpcError(Throwable e) {
+        if (e instanceof DriverTimeoutException) {
+            if (ipcLost.compareAndSet(false, true))
+                log.error("Shared media driver at [{}] is lost, switching IPC connections to UDP", ipcDirectory);
+        } else {
+            log.error("IPC error", e);
+        }
+    }
+
+    protected static synchronized void releaseSharedDriver(@NonNull String directory) {
+        val usage = sharedDriversUsage.get(directory);
+        if (usage == null)
+            return;
+
+        if (usage > 1) {
+            sharedDriversUsage.put(directory, usage - 1);
+            return;
+        }
+
+        sharedDriversUsage.remove(directory);
+        val driver = sharedDrivers.remove(directory);
+        if (driver != null)
+            driver.close();
+    }
+
+    /**
+     * This method returns IPC stream ID for the given node. Each node has own stream within shared media driver
+     *
+     * @param id
+     * @return
+     */
+    protected static int ipcStreamId(@NonNull String id) {
+        val hash = HashUtil.getLongHash(id);
+        val streamId = (int) (hash ^ (hash >>> 32)) & Integer.MAX_VALUE;
+        return streamId == 0 ? 1 : streamId;
+    }
+
+    /**
+     * This method checks, if node with given ID runs on this host
+     *
+     * @param id
+     * @return
+     */
+    public boolean isLocalPeer(@NonNull String id) {
+        val cached = localPeers.get(id);
+        if (cached != null)
+            return cached;
+
+        val host = MeshOrganizer.hostOf(id);
+        boolean local;
+        if (host.equals(ownHost)) {
+            local = true;
+        } else {
+            try {
+                val address = InetAddress.getByName(host);
+                local = address.isLoopbackAddress() || address.isAnyLocalAddress() || NetworkInterface.getByInetAddress(address) != null;
+            } catch (Exception e) {
+                local = false;
+            }
+        }
+
+        localPeers.put(id, local);
+        return local;
+    }
+
+    /**
+     * This method checks, if messages for given node are sent via IPC
+     *
+     * @param id
+     * @return
+     */
+    public boolean isIpcConnection(@NonNull String id) {
+        return ipcConnections.contains(id);
+    }
+
+    @Override
+    protected void createSubscription() {
+        super.createSubscription();
+
+        ipcSubscription = ipcAeron.addSubscription(IPC_CHANNEL, ipcStreamId(this.id()));
+        ipcMessageHandler = new FragmentAssembler((buffer, offset, length, header) -> jointMessageHandler(buffer, offset, length, header));
+
+        ipcSubscriptionThread = new Thread(() -> {
+            val idler = new SleepingIdleStrategy(1000);
+            while (!shutdownFlag.get() && !ipcLost.get()) {
+                try {
+                    idler.idle(ipcSubscription.poll(ipcMessageHandler, 1024));
+                } catch (RuntimeException e) {
+                    // IPC client is closed after driver loss, peers will send their messages via UDP
+                    if (!ipcLost.get())
+                        throw e;
+                }
+            }
+        });
+
+        ipcSubscriptionThread.setDaemon(true);
+        ipcSubscriptionThread.setName("IPC subscription thread");
+        ipcSubscriptionThread.start();
+    }
+
+    protected static RemoteConnection connection(@NonNull String id, @NonNull Publication publication) {
+        return RemoteConnection.builder()
+                .ip(id)
+                .port(0)
+                .longHash(HashUtil.getLongHash(id))
+                .publication(publication)
+                .build();
+    }
+
+    @Override
+    protected void addConnection(@NonNull String ipAndPort) {
+        if (!isLocalPeer(ipAndPort) || ipcLost.get()) {
+            super.addConnection(ipAndPort);
+            return;
+        }
+
+        Publication v;
+        try {
+            aeronLock.lock();
+
+            if (remoteConnections.containsKey(ipAndPort))
+                return;
+
+            val streamId = ipcStreamId(ipAndPort);
+            log.info("Adding IPC connection: [{}], stream [{}]", ipAndPort, streamId);
+
+            v = ipcAeron.addPublication(IPC_CHANNEL, streamId);
+        } finally {
+            aeronLock.unlock();
+        }
+
+        // waiting for subscriber out of lock, so other connections aren't blocked meanwhile
+        boolean interrupted = false;
+        val deadline = System.currentTimeMillis() + IPC_CONNECT_TIMEOUT;
+        while (!v.isConnected() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                break;
+            }
+        }
+
+        try {
+            if (!v.isConnected()) {
+                // there's no IPC subscription for this node yet, or it's using plain UDP transport
+                log.warn("Can't establish IPC connection to [{}], using UDP for now", ipAndPort);
+                v.close();
+                super.addConnection(ipAndPort);
+                ipcRetryTimes.put(ipAndPort, System.currentTimeMillis() + IPC_RETRY_INTERVAL);
+                return;
+            }
+
+            try {
+                aeronLock.lock();
+
+                // connection might be added by another thread meanwhile
+                if (remoteConnections.containsKey(ipAndPort)) {
+                    v.close();
+                    return;
+                }
+
+                remoteConnections.put(ipAndPort, connection(ipAndPort, v));
+                ipcConnections.add(ipAndPort);
+            } finally {
+                aeronLock.unlock();
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method retries IPC connection to the local node, that's connected via UDP at the moment.
+     * It never waits: new attempt is started if it's time to, and pending attempt is either completed or abandoned
+     *
+     * @param id
+     */
+    protected void retryIpcConnection(@NonNull String id) {
+        val time = ipcRetryTimes.get(id);
+        if (time == null)
+            return;
+
+        val pending = pendingIpcPublications.get(id);
+        val now = System.currentTimeMillis();
+        val due = pending == null ? now >= time : pending.isConnected() || now >= time;
+        if (!due)
+            return;
+
+        try {
+            aeronLock.lock();
+
+            // another thread got here first
+            if (pendingIpcPublications.get(id) != pending || !ipcRetryTimes.containsKey(id) || ipcLost.get())
+                return;
+
+            if (pending == null) {
+                pendingIpcPublications.put(id, ipcAeron.addPublication(IPC_CHANNEL, ipcStreamId(id)));
+                ipcRetryTimes.put(id, now + IPC_CONNECT_TIMEOUT);
+            } else if (pending.isConnected()) {
+                // senders might still use UDP publication, so it's closed on shutdown
+                pendingIpcPublications.remove(id);
+                ipcRetryTimes.remove(id);
+                val udp = remoteConnections.put(id, connection(id, pending));
+                if (udp != null)
+                    replacedConnections.add(udp);
+
+                ipcConnections.add(id);
+                log.info("Switched connection to [{}] from UDP to IPC", id);
+            } else {
+                pendingIpcPublications.remove(id);
+                pending.close();
+                ipcRetryTimes.put(id, now + IPC_RETRY_INTERVAL);
+            }
+        } finally {
+            aeronLock.unlock();
+        }
+    }
+
+    /**
+     * This method replaces IPC connection to the given node with UDP one, after shared media driver is lost
+     *
+     * @param id
+     */
+    protected void switchToUdp(@NonNull String id) {
+        try {
+            aeronLock.lock();
+
+            if (!ipcConnections.remove(id))
+                return;
+
+            // connection is replaced without gap, and sendMessage() takes care of waiting till it's connected
+            val udp = aeron.addPublication(id, voidConfiguration.getStreamId());
+            val ipc = remoteConnections.put(id, connection(id, udp));
+            if (ipc != null)
+                replacedConnections.add(ipc);
+
+            log.info("Switched connection to [{}] from IPC to UDP", id);
+        } finally {
+            aeronLock.unlock();
+        }
+    }
+
+    @Override
+    public void sendMessage(@NonNull VoidMessage message, @NonNull String id) {
+        if (ipcLost.get()) {
+            if (ipcConnections.contains(id))
+                switchToUdp(id);
+        } else if (ipcRetryTimes.containsKey(id)) {
+            retryIpcConnection(id);
+        }
+
+        super.sendMessage(message, id);
+    }
+
+    @Override
+    public void onRemap(String id) {
+        try {
+            aeronLock.lock();
+
+            log.info("Trying to disconnect failed node: [{}]", id);
+
+            ipcConnections.remove(id);
+            ipcRetryTimes.remove(id);
+            val pending = pendingIpcPublications.remove(id);
+            if (pending != null)
+                closeSilently(pending);
+
+            val v = remoteConnections.remove(id);
+            if (v != null)
+                closeSilently(v.getPublication());
+        } finally {
+            aeronLock.unlock();
+        }
+
+        // new connection is established out of lock, since IPC connection waits for subscriber
+        log.info("Trying to add failed node back again: [{}]", id);
+        addConnection(id);
+    }
+
+    protected static void closeSilently(Publication publication) {
+        try {
+            publication.close();
+        } catch (Exception e) {
+            // no-op
+        }
+    }
+
+    @Override
+    protected void shutdownSilent() {
+        // IPC publications can't be closed normally once IPC client is gone with media driver
+        if (ipcLost.get()) {
+            for (val id : ipcConnections) {
+                val rc = remoteConnections.remove(id);
+                if (rc != null)
+                    closeSilently(rc.getPublication());
+            }
+        }
+
+        // publications are closed by UDP transport, since they're all stored within remoteConnections
+        super.shutdownSilent();
+
+        if (ipcSubscriptionThread != null) {
+            try {
+                ipcSubscriptionThread.join(1000);
+            } catch (InterruptedException e) {
+                //
+            }
+        }
+
+        for (val rc : replacedConnections)
+            closeSilently(rc.getPublication());
+
+        for (val v : pendingIpcPublications.values())
+            closeSilently(v);
+
+        // IPC client might be closed already, if media driver is lost
+        try {
+            if (ipcSubscription != null)
+                ipcSubscription.close();
+
+            ipcAeron.close();
+            ipcContext.close();
+        } catch (Exception e) {
+            log.warn("Failed to close IPC client: {}", e.getMessage());
+        }
+
+        releaseSharedDriver(ipcDirectory);
+    }
+}
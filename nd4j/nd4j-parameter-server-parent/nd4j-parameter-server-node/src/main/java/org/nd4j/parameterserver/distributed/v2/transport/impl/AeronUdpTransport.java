@@ -571,17 +571,6 @@ public class AeronUdpTransport extends BaseTransport implements AutoCloseable {
         }
     }
 
-    /**
-     * This method returns Mesh stored in this Transport instance
-     * PLEASE NOTE: This method is suited for tests
-     * @return
-     */
-    protected MeshOrganizer getMesh() {
-        synchronized (mesh) {
-            return mesh.get();
-        }
-    }
-
     @Data
     @Builder
     public static class RemoteConnection {
@@ -485,6 +485,13 @@ public abstract  class BaseTransport  implements Transport {
 
             // should be out of locked block
             onMeshUpdate(newMesh);
+        } else if (!(message instanceof RequestMessage) && consumers.containsKey(message.getClass().getCanonicalName())) {
+            // messages handled outside of Transport, i.e. all-reduce chunks
+            try {
+                consumers.get(message.getClass().getCanonicalName()).accept(message);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
         } else {
             if (message instanceof RequestMessage) {
                 val name = message.getClass().getCanonicalName();
@@ -628,6 +635,21 @@ public abstract  class BaseTransport  implements Transport {
             consumers.put(cls.getCanonicalName(), consumer);
     }
 
+    @Override
+    public <T extends VoidMessage> void addMessageConsumer(@NonNull Class<T> cls, Consumer<T> consumer) {
+        if (consumer == null)
+            consumers.remove(cls.getCanonicalName());
+        else
+            consumers.put(cls.getCanonicalName(), consumer);
+    }
+
+    @Override
+    public MeshOrganizer getMesh() {
+        synchronized (mesh) {
+            return mesh.get();
+        }
+    }
+
     @Override
     public void onMeshUpdate(MeshOrganizer mesh) {
         // FIXME: (int) is bad here
@@ -190,17 +190,6 @@ public class DummyTransport extends BaseTransport {
         }
     }
 
-    /**
-     * This method returns Mesh stored in this Transport instance
-     * PLEASE NOTE: This method is suited for tests
-     * @return
-     */
-    public MeshOrganizer getMesh() {
-        synchronized (mesh) {
-            return mesh.get();
-        }
-    }
-
     public void setMesh(MeshOrganizer mesh) {
         synchronized (this.mesh) {
             this.mesh.set(mesh);
@@ -135,6 +135,15 @@ public class MeshOrganizer implements Serializable {
 
             sortedNodes.add(node);
             Collections.sort(sortedNodes);
+        } else if (buildMode == MeshBuildMode.HIERARCHICAL) {
+            val leader = getHostLeader(hostOf(node.getId()));
+            if (leader != null) {
+                // there's leader on this host already, so we just connect to it
+                leader.addDownstreamNode(node);
+            } else {
+                // this node becomes leader of its host, and only leaders are organized into mesh
+                attachLeader(node, null);
+            }
         } else {
             rootNode.addDownstreamNode(node);
         }
@@ -163,6 +172,10 @@ public class MeshOrganizer implements Serializable {
         synchronized (node) {
             node.status(NodeStatus.OFFLINE);
 
+            // in hierarchical mode failed host leader gets replaced with other node from the same host
+            if (buildMode == MeshBuildMode.HIERARCHICAL && replaceHostLeader(node))
+                return;
+
             for (val n : node.getDownstreamNodes())
                 remapNode(n);
         }
@@ -241,11 +254,154 @@ public class MeshOrganizer implements Serializable {
             synchronized (this) {
                 Collections.sort(sortedNodes);
             }
+        } else if (buildMode == MeshBuildMode.HIERARCHICAL) {
+            val upstream = node.getUpstreamNode();
+            if (upstream != null && upstream.getDownstreamNodes().contains(node))
+                upstream.removeFromDownstreams(node);
+
+            val leader = getHostLeader(hostOf(node.getId()));
+            if (leader != null && !Objects.equals(leader, node) && !node.getDescendantNodes().contains(leader))
+                leader.addDownstreamNode(node);
+            else
+                attachLeader(node, node);
         } else if (buildMode == MeshBuildMode.PLAIN) {
             // nothing to do here
         }
     }
 
+    /**
+     * This method connects host leader to the mesh: to the first online leader with free downstream slots, or to the root node
+     *
+     * @param node leader to be connected
+     * @param exclude node which (and its descendants) can't be used as upstream, or null
+     */
+    protected void attachLeader(@NonNull Node node, Node exclude) {
+        Collection<Node> excluded = exclude == null ? Collections.<Node>emptyList() : exclude.getDescendantNodes();
+
+        Node candidate = null;
+        while (candidate == null && !fillQueue.isEmpty()) {
+            val c = fillQueue.poll();
+            if (c != node && c != exclude && c.status() == NodeStatus.ONLINE && !excluded.contains(c))
+                candidate = c;
+        }
+
+        if (candidate == null)
+            candidate = rootNode;
+
+        candidate.addDownstreamNode(node);
+
+        // adding this node for future connections
+        for (int e = 0; e < MAX_DOWNSTREAMS; e++)
+            fillQueue.add(node);
+    }
+
+    /**
+     * This method replaces failed host leader with another online node from the same host, if there's one.
+     * New leader takes place of failed one in the mesh, and all other downstreams of failed leader get connected to the new leader.
+     *
+     * @param failed failed leader
+     * @return true if leader was replaced, false otherwise
+     */
+    protected synchronized boolean replaceHostLeader(@NonNull Node failed) {
+        if (!isHostLeader(failed))
+            return false;
+
+        val host = hostOf(failed.getId());
+        Node leader = null;
+        for (val n : failed.getDownstreamNodes()) {
+            if (n.status() == NodeStatus.ONLINE && host.equals(hostOf(n.getId()))) {
+                leader = n;
+                break;
+            }
+        }
+
+        if (leader == null)
+            return false;
+
+        version++;
+
+        log.info("Replacing leader of host [{}]: [{}] -> [{}]", host, failed.getId(), leader.getId());
+
+        failed.removeFromDownstreams(leader);
+        val upstream = failed.getUpstreamNode();
+        if (upstream != null) {
+            upstream.removeFromDownstreams(failed);
+            upstream.addDownstreamNode(leader);
+        } else
+            rootNode.addDownstreamNode(leader);
+
+        for (val n : failed.getDownstreamNodes()) {
+            failed.removeFromDownstreams(n);
+            leader.addDownstreamNode(n);
+        }
+
+        // failed node stays in the mesh as offline leaf, connected to the new leader
+        leader.addDownstreamNode(failed);
+
+        for (int e = 0; e < MAX_DOWNSTREAMS; e++)
+            fillQueue.add(leader);
+
+        return true;
+    }
+
+    /**
+     * This method extracts host from node ID, i.e. aeron:udp?endpoint=192.168.1.1:40123 -> 192.168.1.1
+     *
+     * @param id
+     * @return
+     */
+    public static String hostOf(@NonNull String id) {
+        val s = id.indexOf("endpoint=");
+        val endpoint = s >= 0 ? id.substring(s + "endpoint=".length()) : id;
+        val p = endpoint.lastIndexOf(':');
+        return p > 0 ? endpoint.substring(0, p) : endpoint;
+    }
+
+    /**
+     * This method returns true if given node is the leader of its host, i.e. its upstream is located on another host
+     *
+     * @param node
+     * @return
+     */
+    public boolean isHostLeader(@NonNull Node node) {
+        if (node.isRootNode())
+            return true;
+
+        val upstream = node.getUpstreamNode();
+        if (upstream == null || upstream.getId() == null || node.getId() == null)
+            return true;
+
+        return !hostOf(node.getId()).equals(hostOf(upstream.getId()));
+    }
+
+    /**
+     * This method returns true if node with given ID is the leader of its host
+     *
+     * @param id
+     * @return
+     */
+    public boolean isHostLeader(@NonNull String id) {
+        return isHostLeader(getNodeById(id));
+    }
+
+    /**
+     * This method returns online leader node for the given host, or null if there's no nodes on this host yet
+     *
+     * @param host
+     * @return
+     */
+    public Node getHostLeader(@NonNull String host) {
+        if (rootNode.getId() != null && host.equals(hostOf(rootNode.getId())))
+            return rootNode;
+
+        for (val n : nodeMap.values()) {
+            if (n.getId() != null && n.status() == NodeStatus.ONLINE && host.equals(hostOf(n.getId())) && isHostLeader(n))
+                return n;
+        }
+
+        return null;
+    }
+
     /**
      * This method removes  node from tree
      */
@@ -0,0 +1,526 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.parameterserver.distributed.v2.util;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.parameterserver.distributed.enums.NodeStatus;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.AllReduceChunkMessage;
+import org.nd4j.parameterserver.distributed.v2.transport.Transport;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements bandwidth-optimal ring all-reduce on top of Transport.
+ *
+ * Flat array is split into N segments (N = number of nodes in the ring), and each segment is split into chunks of at most
+ * maxChunkBytes. During reduce-scatter phase each chunk travels N-1 hops along the ring, and every node adds its own values
+ * to it. Node that receives fully reduced chunk starts all-gather phase for it, and chunk travels N-1 more hops, replacing
+ * values at every node. Chunks are forwarded as soon as they arrive, so transfers of different chunks are pipelined.
+ *
+ * Chunks are sent either dense, or as sparse indices + values, whatever is smaller. So threshold-encoded updates, which are
+ * mostly zeros, stay sparse for the most part of the reduce-scatter phase.
+ *
+ * Rounds are identified by ids agreed on by all nodes, usually built from epoch and iteration numbers with
+ * {@link #roundId(int, int, int)}. Round ids have to increase at every node: chunks of rounds older than the latest round
+ * started at this node are dropped, as well as chunks buffered for rounds that were skipped here.
+ *
+ * Node that has no more data calls {@link #finish(long, DataType, List)}: from then on it takes part in rounds started
+ * by other nodes with zeros, instead of leaving them to time out. Calling {@link #allReduce(INDArray, List, long)} again
+ * ends this mode.
+ *
+ * PLEASE NOTE: all-reduce is a collective operation: all nodes in the ring have to take part in every round, with arrays
+ * of the same length, and the same ring.
+ */
+@Slf4j
+public class RingAllReduce {
+    protected final Transport transport;
+    protected final int maxChunkBytes;
+    protected final long timeoutMs;
+
+    protected final Map<Long, Round> rounds = new ConcurrentHashMap<>();
+    // guards round start vs. lookup of rounds for incoming chunks, and fields below
+    protected final Object roundsLock = new Object();
+    // id of the latest round started at this node
+    protected long lastStarted = -1;
+    // zeros and ring to take part in rounds of other nodes with, once this node has no more data
+    protected INDArray idleArray;
+    protected List<String> idleRing;
+
+    protected final AtomicLong denseChunks = new AtomicLong(0);
+    protected final AtomicLong sparseChunks = new AtomicLong(0);
+    protected final AtomicLong expiredChunks = new AtomicLong(0);
+
+    /**
+     * @param transport     Transport instance to be used for communications
+     * @param maxChunkBytes max size of the chunk payload, in bytes
+     * @param timeoutMs     max time to wait for the round to finish, in milliseconds
+     */
+    public RingAllReduce(@NonNull Transport transport, int maxChunkBytes, long timeoutMs) {
+        if (maxChunkBytes <= 0)
+            throw new ND4JIllegalStateException("MaxChunkBytes must be > 0");
+
+        this.transport = transport;
+        this.maxChunkBytes = maxChunkBytes;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * This method returns ring built from the given mesh: all online nodes except root node, ordered by id.
+     * Root node is used only if there's no other nodes in the mesh
+     *
+     * @param mesh
+     * @return
+     */
+    public static List<String> ringFromMesh(@NonNull MeshOrganizer mesh) {
+        val ids = new ArrayList<String>();
+        for (val n : mesh.flatNodes()) {
+            if (!n.isRootNode() && n.status() == NodeStatus.ONLINE)
+                ids.add(n.getId());
+        }
+
+        if (ids.isEmpty())
+            ids.add(mesh.getRootNode().getId());
+
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * This method builds round id from the position in training, which is the same at all nodes
+     *
+     * @param epoch     epoch number
+     * @param iteration iteration number
+     * @param sequence  number of the round within the same iteration at this node, i.e. local worker number
+     * @return
+     */
+    public static long roundId(int epoch, int iteration, int sequence) {
+        if (epoch < 0 || epoch >= (1 << 19) || iteration < 0 || sequence < 0 || sequence >= (1 << 12))
+            throw new ND4JIllegalStateException("Can't build all-reduce round id from epoch [" + epoch + "], iteration ["
+                            + iteration + "], sequence [" + sequence + "]");
+
+        return ((long) epoch << 44) | ((long) iteration << 12) | sequence;
+    }
+
+    /**
+     * This method sums given array over all nodes in the ring, and blocks until the sum is available.
+     * Round id is the next one after the latest round started at this node, so all nodes have to start rounds in the same order
+     *
+     * @param array array to be summed. It's not modified
+     * @param ring  ids of the nodes in the ring, in the same order for all nodes
+     * @return flat array with the sum
+     */
+    public INDArray allReduce(@NonNull INDArray array, @NonNull List<String> ring) throws InterruptedException {
+        long id;
+        synchronized (roundsLock) {
+            id = lastStarted + 1;
+        }
+        return allReduce(array, ring, id);
+    }
+
+    /**
+     * This method sums given array over all nodes in the ring, and blocks until the sum is available
+     *
+     * @param array array to be summed. It's not modified
+     * @param ring  ids of the nodes in the ring, in the same order for all nodes
+     * @param id    id of the round, the same at all nodes, and greater than ids of rounds started at this node before
+     * @return flat array with the sum
+     */
+    public INDArray allReduce(@NonNull INDArray array, @NonNull List<String> ring, long id) throws InterruptedException {
+        val ownId = transport.id();
+        val rank = ring.indexOf(ownId);
+        if (rank < 0)
+            throw new ND4JIllegalStateException("Node [" + ownId + "] isn't part of the ring " + ring);
+
+        Round round;
+        synchronized (roundsLock) {
+            if (id <= lastStarted)
+                throw new ND4JIllegalStateException("All-reduce round [" + id + "] is older than the latest round [" + lastStarted + "] started at node [" + ownId + "]");
+
+            idleArray = null;
+            idleRing = null;
+            round = startRound(id);
+        }
+
+        List<AllReduceChunkMessage> messages;
+        synchronized (round) {
+            messages = round.start(array, ring, rank);
+        }
+        send(round, messages);
+
+        try {
+            if (!round.latch.await(timeoutMs, TimeUnit.MILLISECONDS))
+                throw new ND4JIllegalStateException("All-reduce round [" + id + "] timed out at node [" + ownId + "], chunks left: " + round.remaining);
+
+            if (round.error != null)
+                throw new ND4JIllegalStateException("All-reduce round [" + id + "] failed at node [" + ownId + "]", round.error);
+
+            return round.buffer;
+        } finally {
+            rounds.remove(id);
+        }
+    }
+
+    /**
+     * This method tells that this node has no more data: until the next {@link #allReduce(INDArray, List, long)} call,
+     * rounds started by other nodes are joined with zeros, so they aren't blocked by this node
+     *
+     * @param length   length of the arrays used in all-reduce
+     * @param dataType data type of the arrays used in all-reduce
+     * @param ring     ids of the nodes in the ring, in the same order for all nodes
+     */
+    public void finish(long length, @NonNull DataType dataType, @NonNull List<String> ring) {
+        val ownId = transport.id();
+        val rank = ring.indexOf(ownId);
+        if (rank < 0)
+            throw new ND4JIllegalStateException("Node [" + ownId + "] isn't part of the ring " + ring);
+
+        val zeros = Nd4j.create(dataType, length);
+        val idle = new ArrayList<String>(ring);
+        List<Round> buffered = new ArrayList<>();
+        synchronized (roundsLock) {
+            idleArray = zeros;
+            idleRing = idle;
+
+            // other nodes might be waiting for us already
+            for (val r : rounds.values()) {
+                if (!r.started) {
+                    r.started = true;
+                    r.detached = true;
+                    lastStarted = Math.max(lastStarted, r.id);
+                    buffered.add(r);
+                }
+            }
+        }
+
+        for (val round : buffered) {
+            List<AllReduceChunkMessage> messages;
+            synchronized (round) {
+                messages = round.start(zeros, idle, rank);
+            }
+            send(round, messages);
+            releaseDetached(round);
+        }
+    }
+
+    /**
+     * This method processes chunk received from the previous node in the ring
+     *
+     * @param message
+     */
+    public void processMessage(@NonNull AllReduceChunkMessage message) {
+        val id = message.getRound();
+        Round round;
+        INDArray zeros = null;
+        List<String> idle = null;
+        synchronized (roundsLock) {
+            round = rounds.get(id);
+            // chunks of rounds that are gone (finished or timed out), or never started here while newer rounds were, are late
+            if (round == null && id <= lastStarted) {
+                expiredChunks.incrementAndGet();
+                log.debug("Dropping chunk of expired all-reduce round [{}] from node [{}]", id, message.getOriginatorId());
+                return;
+            }
+
+            if (round == null) {
+                if (idleArray != null) {
+                    // this node has no more data, so it joins the round with zeros
+                    round = startRound(id);
+                    round.detached = true;
+                    zeros = idleArray;
+                    idle = idleRing;
+                } else {
+                    round = getRound(id);
+                }
+            }
+        }
+
+        List<AllReduceChunkMessage> messages = new ArrayList<>();
+        synchronized (round) {
+            if (zeros != null)
+                messages.addAll(round.start(zeros, idle, idle.indexOf(transport.id())));
+
+            messages.addAll(round.receive(message));
+        }
+        send(round, messages);
+        releaseDetached(round);
+    }
+
+    /**
+     * This method returns number of chunks sent as dense arrays
+     * @return
+     */
+    public long getDenseChunks() {
+        return denseChunks.get();
+    }
+
+    /**
+     * This method returns number of chunks sent as sparse indices + values
+     * @return
+     */
+    public long getSparseChunks() {
+        return sparseChunks.get();
+    }
+
+    /**
+     * This method returns number of chunks dropped because they arrived after their round was finished or timed out
+     * @return
+     */
+    public long getExpiredChunks() {
+        return expiredChunks.get();
+    }
+
+    protected Round getRound(long id) {
+        return rounds.computeIfAbsent(id, k -> new Round(k));
+    }
+
+    /**
+     * This method marks round as started here, and drops rounds with lower ids that nobody waits for here: rounds never
+     * started here can't ever finish, and chunks buffered for them would be kept forever otherwise. Must hold roundsLock
+     */
+    protected Round startRound(long id) {
+        val iterator = rounds.values().iterator();
+        while (iterator.hasNext()) {
+            val r = iterator.next();
+            if (r.id < id && (!r.started || r.detached)) {
+                iterator.remove();
+                synchronized (r) {
+                    expiredChunks.addAndGet(r.pending.size());
+                    r.pending.clear();
+                }
+                log.debug("Dropping all-reduce round [{}] that nobody waits for at node [{}]", r.id, transport.id());
+            }
+        }
+
+        val round = getRound(id);
+        if (round.started)
+            throw new ND4JIllegalStateException("All-reduce round [" + id + "] was already started at node [" + transport.id() + "]");
+
+        round.started = true;
+        lastStarted = id;
+        return round;
+    }
+
+    /**
+     * Rounds joined with zeros have no caller waiting for them, so they are removed as soon as they are done here
+     */
+    protected void releaseDetached(Round round) {
+        if (round.detached && round.latch.getCount() == 0)
+            rounds.remove(round.id);
+    }
+
+    protected void send(Round round, List<AllReduceChunkMessage> messages) {
+        // we never send while holding round lock: with local transports message might be processed in the same thread
+        if (messages.isEmpty())
+            return;
+
+        transport.ensureConnection(round.nextId);
+        for (val m : messages)
+            transport.sendMessage(m, round.nextId);
+    }
+
+    /**
+     * State of a single all-reduce round at this node
+     */
+    protected class Round {
+        protected final long id;
+        protected final CountDownLatch latch = new CountDownLatch(1);
+
+        // chunks that arrived before this node started the round
+        protected final List<AllReduceChunkMessage> pending = new ArrayList<>();
+
+        // guarded by roundsLock
+        protected boolean started;
+        // joined with zeros by node that has no more data, nobody waits for the result
+        protected boolean detached;
+
+        protected INDArray buffer;
+        protected int ringSize;
+        protected int rank;
+        protected String nextId;
+        protected long[] offsets;
+        protected int chunkLength;
+        protected int remaining;
+        protected volatile Throwable error;
+
+        protected Round(long id) {
+            this.id = id;
+        }
+
+        protected List<AllReduceChunkMessage> start(INDArray array, List<String> ring, int rank) {
+            this.ringSize = ring.size();
+            this.rank = rank;
+            this.nextId = ring.get((rank + 1) % ringSize);
+            this.buffer = array.dup('c').reshape(array.length());
+            this.chunkLength = Math.max(1, maxChunkBytes / buffer.dataType().width());
+
+            val length = buffer.length();
+            offsets = new long[ringSize + 1];
+            for (int e = 0; e <= ringSize; e++)
+                offsets[e] = length * e / ringSize;
+
+            val result = new ArrayList<AllReduceChunkMessage>();
+            if (ringSize == 1) {
+                latch.countDown();
+                return result;
+            }
+
+            // we receive every segment except own one during reduce-scatter, and every segment except fully reduced one during all-gather
+            remaining = 0;
+            for (int s = 0; s < ringSize; s++) {
+                if (s != rank)
+                    remaining += numChunks(s);
+
+                if (s != (rank + 1) % ringSize)
+                    remaining += numChunks(s);
+            }
+
+            for (int c = 0; c < numChunks(rank); c++)
+                result.add(message(AllReduceChunkMessage.REDUCE_SCATTER, 0, rank, c));
+
+            for (val m : pending)
+                result.addAll(receive(m));
+            pending.clear();
+
+            if (remaining == 0)
+                latch.countDown();
+
+            return result;
+        }
+
+        protected List<AllReduceChunkMessage> receive(AllReduceChunkMessage message) {
+            if (buffer == null) {
+                pending.add(message);
+                return Collections.emptyList();
+            }
+
+            if (message.getRingSize() != ringSize) {
+                fail(new ND4JIllegalStateException("Ring size mismatch: node [" + transport.id() + "] has " + ringSize
+                                + " nodes in the ring, sender [" + message.getOriginatorId() + "] has " + message.getRingSize()));
+                return Collections.emptyList();
+            }
+
+            val segment = message.getSegment();
+            val chunk = message.getChunk();
+            val target = chunk(segment, chunk);
+            val result = new ArrayList<AllReduceChunkMessage>(1);
+
+            if (message.getPhase() == AllReduceChunkMessage.REDUCE_SCATTER) {
+                accumulate(message, target);
+
+                // after N-1 hops chunk is fully reduced, so it goes around the ring once again
+                if (message.getStep() < ringSize - 2)
+                    result.add(message(AllReduceChunkMessage.REDUCE_SCATTER, message.getStep() + 1, segment, chunk));
+                else
+                    result.add(message(AllReduceChunkMessage.ALL_GATHER, 0, segment, chunk));
+            } else {
+                assign(message, target);
+
+                if (message.getStep() < ringSize - 2)
+                    result.add(message(AllReduceChunkMessage.ALL_GATHER, message.getStep() + 1, segment, chunk));
+            }
+
+            if (--remaining == 0)
+                latch.countDown();
+
+            return result;
+        }
+
+        protected void fail(Throwable t) {
+            error = t;
+            latch.countDown();
+        }
+
+        protected int numChunks(int segment) {
+            val length = offsets[segment + 1] - offsets[segment];
+            return (int) ((length + chunkLength - 1) / chunkLength);
+        }
+
+        protected INDArray chunk(int segment, int chunk) {
+            val start = offsets[segment] + (long) chunk * chunkLength;
+            val end = Math.min(offsets[segment + 1], start + chunkLength);
+            return buffer.get(NDArrayIndex.interval(start, end));
+        }
+
+        protected AllReduceChunkMessage message(int phase, int step, int segment, int chunk) {
+            val source = chunk(segment, chunk);
+            val values = source.toDoubleVector();
+
+            int nnz = 0;
+            for (double v : values) {
+                if (v != 0.0)
+                    nnz++;
+            }
+
+            // sparse chunk holds both indices and values, so it only makes sense if less than half of values are non-zero
+            if (2 * nnz < values.length) {
+                val indices = new int[nnz];
+                val sparse = new double[nnz];
+                int cnt = 0;
+                for (int e = 0; e < values.length; e++) {
+                    if (values[e] != 0.0) {
+                        indices[cnt] = e;
+                        sparse[cnt++] = values[e];
+                    }
+                }
+
+                sparseChunks.incrementAndGet();
+                // empty chunks still carry single value, just to avoid empty arrays on the wire
+                val array = Nd4j.createFromArray(nnz > 0 ? sparse : new double[]{0.0}).castTo(buffer.dataType());
+                return new AllReduceChunkMessage(id, ringSize, phase, step, segment, chunk, indices, array);
+            }
+
+            denseChunks.incrementAndGet();
+            return new AllReduceChunkMessage(id, ringSize, phase, step, segment, chunk, null, source.dup());
+        }
+
+        protected void accumulate(AllReduceChunkMessage message, INDArray target) {
+            if (!message.isSparse()) {
+                target.addi(message.getValues());
+                return;
+            }
+
+            val indices = message.getIndices();
+            val values = message.getValues();
+            for (int e = 0; e < indices.length; e++)
+                target.putScalar(indices[e], target.getDouble(indices[e]) + values.getDouble(e));
+        }
+
+        protected void assign(AllReduceChunkMessage message, INDArray target) {
+            if (!message.isSparse()) {
+                target.assign(message.getValues());
+                return;
+            }
+
+            target.assign(0.0);
+            val indices = message.getIndices();
+            val values = message.getValues();
+            for (int e = 0; e < indices.length; e++)
+                target.putScalar(indices[e], values.getDouble(e));
+        }
+    }
+}
@@ -20,6 +20,7 @@ import io.reactivex.functions.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.AtomicBoolean;
@@ -557,4 +558,22 @@ public class ModelParameterServerTest {
         // now we're checking if root server got update
         assertEquals(1, rootUpdatesCounter.get());
     }
+
+    @Test
+    public void testDecodeIntoUpdatesType_1() {
+        val updates = Nd4j.create(DataType.DOUBLE, 20);
+        updates.putScalar(3, 1e-2);
+        updates.putScalar(11, -1e-2);
+
+        val encoded = Nd4j.getExecutioner().thresholdEncode(updates.dup(), 1e-3);
+        assertNotNull(encoded);
+
+        val decoded = ModelParameterServer.decodeIfEncoded(encoded, DataType.DOUBLE);
+        assertEquals(DataType.DOUBLE, decoded.dataType());
+        assertEquals(1e-3, decoded.getDouble(3), 1e-8);
+        assertEquals(-1e-3, decoded.getDouble(11), 1e-8);
+
+        // dense updates are passed as is
+        assertSame(updates, ModelParameterServer.decodeIfEncoded(updates, DataType.FLOAT));
+    }
 }
\ No newline at end of file
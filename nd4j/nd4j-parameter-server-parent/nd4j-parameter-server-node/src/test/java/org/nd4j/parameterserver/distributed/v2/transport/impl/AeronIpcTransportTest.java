@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.parameterserver.distributed.v2.transport.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.parameterserver.distributed.conf.VoidConfiguration;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class AeronIpcTransportTest {
+    private static final String IP = "127.0.0.1";
+    private static final int ROOT_PORT = 40791;
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test
+    public void testStreamIds_1() {
+        assertEquals(AeronIpcTransport.ipcStreamId("aeron:udp?endpoint=127.0.0.1:40123"), AeronIpcTransport.ipcStreamId("aeron:udp?endpoint=127.0.0.1:40123"));
+        assertNotEquals(AeronIpcTransport.ipcStreamId("aeron:udp?endpoint=127.0.0.1:40123"), AeronIpcTransport.ipcStreamId("aeron:udp?endpoint=127.0.0.1:40124"));
+        assertTrue(AeronIpcTransport.ipcStreamId("aeron:udp?endpoint=127.0.0.1:40123") > 0);
+    }
+
+    @Test
+    public void testBasic_Connection_1() throws Exception {
+        val config = VoidConfiguration.builder()
+                .ipcDirectory(testDir.newFolder().getAbsolutePath() + "/aeron")
+                .build();
+
+        // we definitely want to shutdown all transports after test, to avoid issues with shmem
+        try(val transportA = new AeronIpcTransport(IP, ROOT_PORT, IP, ROOT_PORT, config);  val transportB = new AeronIpcTransport(IP, 40792, IP, ROOT_PORT, config)) {
+            transportA.launchAsMaster();
+
+            Thread.sleep(50);
+
+            transportB.launch();
+
+            Thread.sleep(50);
+
+            assertEquals(2, transportA.getMesh().totalNodes());
+            assertEquals(transportA.getMesh(), transportB.getMesh());
+
+            // both nodes are on the same host, so they should be connected via IPC
+            assertTrue(transportB.isLocalPeer(transportA.id()));
+            assertTrue(transportB.isIpcConnection(transportA.id()));
+            assertTrue(transportA.isIpcConnection(transportB.id()));
+        }
+    }
+
+    @Test
+    public void testUdpFallback_1() throws Exception {
+        val config = VoidConfiguration.builder()
+                .ipcDirectory(testDir.newFolder().getAbsolutePath() + "/aeron")
+                .build();
+
+        try(val transportA = new AeronIpcTransport(IP, ROOT_PORT, IP, ROOT_PORT, config);  val transportB = new AeronUdpTransport(IP, 40793, IP, ROOT_PORT, config)) {
+            transportA.launchAsMaster();
+
+            Thread.sleep(50);
+
+            transportB.launch();
+
+            // IPC connection attempt takes a while before falling back to UDP
+            val deadline = System.currentTimeMillis() + 2 * AeronIpcTransport.IPC_CONNECT_TIMEOUT;
+            while (!transportA.ipcRetryTimes.containsKey(transportB.id()) && System.currentTimeMillis() < deadline)
+                Thread.sleep(50);
+
+            assertEquals(2, transportA.getMesh().totalNodes());
+
+            // node B doesn't use IPC, so it's connected via UDP, but it's still local, and IPC will be retried later
+            assertTrue(transportA.isLocalPeer(transportB.id()));
+            assertFalse(transportA.isIpcConnection(transportB.id()));
+            assertTrue(transportA.ipcRetryTimes.containsKey(transportB.id()));
+        }
+    }
+}
@@ -20,6 +20,7 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.junit.Test;
 import org.nd4j.linalg.util.SerializationUtils;
+import org.nd4j.parameterserver.distributed.enums.NodeStatus;
 import org.nd4j.parameterserver.distributed.v2.enums.MeshBuildMode;
 
 import java.io.ByteArrayInputStream;
@@ -337,4 +338,91 @@ public class MeshOrganizerTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testHostOf_1() {
+        assertEquals("192.168.1.1", MeshOrganizer.hostOf("aeron:udp?endpoint=192.168.1.1:40123"));
+        assertEquals("192.168.1.1", MeshOrganizer.hostOf("192.168.1.1:40123"));
+        assertEquals("192.168.1.1", MeshOrganizer.hostOf("192.168.1.1"));
+    }
+
+    @Test
+    public void testHierarchicalMesh_1() {
+        val mesh = new MeshOrganizer(MeshBuildMode.HIERARCHICAL);
+        mesh.getRootNode().setId("aeron:udp?endpoint=10.0.0.1:40123");
+
+        val a1 = mesh.addNode("aeron:udp?endpoint=192.168.1.1:40001");
+        val b1 = mesh.addNode("aeron:udp?endpoint=192.168.1.2:40001");
+        val a2 = mesh.addNode("aeron:udp?endpoint=192.168.1.1:40002");
+        val b2 = mesh.addNode("aeron:udp?endpoint=192.168.1.2:40002");
+        val a3 = mesh.addNode("aeron:udp?endpoint=192.168.1.1:40003");
+
+        assertEquals(6, mesh.totalNodes());
+
+        // only host leaders are connected to the root node
+        assertEquals(2, mesh.getRootNode().numberOfDownstreams());
+        assertEquals(2, a1.numberOfDownstreams());
+        assertEquals(1, b1.numberOfDownstreams());
+
+        assertTrue(mesh.isHostLeader(a1));
+        assertTrue(mesh.isHostLeader(b1));
+        assertFalse(mesh.isHostLeader(a2));
+        assertFalse(mesh.isHostLeader(a3));
+        assertFalse(mesh.isHostLeader(b2));
+
+        assertEquals(a1, mesh.getHostLeader("192.168.1.1"));
+        assertEquals(b1, mesh.getHostLeader("192.168.1.2"));
+        assertEquals(mesh.getRootNode(), mesh.getHostLeader("10.0.0.1"));
+        assertNull(mesh.getHostLeader("192.168.1.3"));
+    }
+
+    @Test
+    public void testHierarchicalMesh_2() {
+        val mesh = new MeshOrganizer(MeshBuildMode.HIERARCHICAL);
+        mesh.getRootNode().setId("aeron:udp?endpoint=10.0.0.1:40123");
+
+        // number of leaders exceeds number of root downstreams, so leaders form mesh
+        for (int e = 0; e < MeshOrganizer.MAX_DOWNSTREAMS * 2; e++) {
+            mesh.addNode("aeron:udp?endpoint=192.168.1." + e + ":40001");
+            mesh.addNode("aeron:udp?endpoint=192.168.1." + e + ":40002");
+        }
+
+        assertEquals(MeshOrganizer.MAX_DOWNSTREAMS * 4 + 1, mesh.totalNodes());
+        assertEquals(MeshOrganizer.MAX_DOWNSTREAMS, mesh.getRootNode().numberOfDownstreams());
+
+        for (val n : mesh.flatNodes()) {
+            assertTrue(n.numberOfDownstreams() <= MeshOrganizer.MAX_DOWNSTREAMS + 1);
+
+            // each follower is connected directly to the leader of its host
+            if (!mesh.isHostLeader(n))
+                assertEquals(mesh.getHostLeader(MeshOrganizer.hostOf(n.getId())), n.getUpstreamNode());
+        }
+    }
+
+    @Test
+    public void testHierarchicalFailover_1() {
+        val mesh = new MeshOrganizer(MeshBuildMode.HIERARCHICAL);
+        mesh.getRootNode().setId("aeron:udp?endpoint=10.0.0.1:40123");
+
+        val a1 = mesh.addNode("aeron:udp?endpoint=192.168.1.1:40001");
+        val b1 = mesh.addNode("aeron:udp?endpoint=192.168.1.2:40001");
+        val a2 = mesh.addNode("aeron:udp?endpoint=192.168.1.1:40002");
+        val a3 = mesh.addNode("aeron:udp?endpoint=192.168.1.1:40003");
+
+        mesh.markNodeOffline(a1);
+
+        assertEquals(NodeStatus.OFFLINE, a1.status());
+        assertEquals(a2, mesh.getHostLeader("192.168.1.1"));
+        assertTrue(mesh.isHostLeader(a2));
+        assertEquals(mesh.getRootNode(), a2.getUpstreamNode());
+        assertEquals(a2, a3.getUpstreamNode());
+        assertEquals(b1, mesh.getHostLeader("192.168.1.2"));
+
+        // failed leader is still known, but isn't used for anything anymore
+        assertEquals(5, mesh.totalNodes());
+        assertEquals(0, a1.numberOfDownstreams());
+
+        // new node on the same host gets connected to the new leader
+        val a4 = mesh.addNode("aeron:udp?endpoint=192.168.1.1:40004");
+        assertEquals(a2, a4.getUpstreamNode());
+    }
+}
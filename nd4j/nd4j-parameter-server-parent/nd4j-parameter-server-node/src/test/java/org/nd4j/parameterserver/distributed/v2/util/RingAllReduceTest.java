@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.parameterserver.distributed.v2.util;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.AllReduceChunkMessage;
+import org.nd4j.parameterserver.distributed.v2.transport.impl.DummyTransport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class RingAllReduceTest {
+
+    protected List<RingAllReduce> buildRing(List<String> ids, int maxChunkBytes) {
+        return buildRing(ids, maxChunkBytes, 10000L);
+    }
+
+    protected List<RingAllReduce> buildRing(List<String> ids, int maxChunkBytes, long timeoutMs) {
+        val connector = new DummyTransport.Connector();
+        val result = new ArrayList<RingAllReduce>();
+        for (val id : ids) {
+            val transport = new DummyTransport(id, connector);
+            val allReduce = new RingAllReduce(transport, maxChunkBytes, timeoutMs);
+            transport.addMessageConsumer(AllReduceChunkMessage.class, allReduce::processMessage);
+
+            connector.register(transport);
+            result.add(allReduce);
+        }
+        return result;
+    }
+
+    protected INDArray[] runRound(List<RingAllReduce> nodes, List<String> ring, INDArray[] arrays) throws Exception {
+        return runRound(nodes, ring, arrays, -1);
+    }
+
+    protected INDArray[] runRound(List<RingAllReduce> nodes, List<String> ring, INDArray[] arrays, long id) throws Exception {
+        val results = new INDArray[nodes.size()];
+        val error = new AtomicReference<Throwable>();
+        val threads = new Thread[nodes.size()];
+        for (int e = 0; e < nodes.size(); e++) {
+            final int i = e;
+            threads[e] = new Thread(() -> {
+                try {
+                    results[i] = id < 0 ? nodes.get(i).allReduce(arrays[i], ring) : nodes.get(i).allReduce(arrays[i], ring, id);
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            });
+            threads[e].start();
+        }
+
+        for (val t : threads)
+            t.join();
+
+        if (error.get() != null)
+            throw new RuntimeException(error.get());
+
+        return results;
+    }
+
+    @Test(timeout = 30000L)
+    public void testDenseAllReduce_1() throws Exception {
+        val ids = Arrays.asList("alpha", "beta", "delta", "gamma");
+        // 16 bytes per chunk, so every segment is split into multiple chunks
+        val nodes = buildRing(ids, 16);
+
+        val arrays = new INDArray[ids.size()];
+        val exp = Nd4j.create(DataType.FLOAT, 37);
+        for (int e = 0; e < arrays.length; e++) {
+            arrays[e] = Nd4j.rand(DataType.FLOAT, 37);
+            exp.addi(arrays[e]);
+        }
+
+        for (int r = 0; r < 3; r++) {
+            val results = runRound(nodes, ids, arrays);
+            for (val result : results)
+                assertEquals(exp, result);
+        }
+
+        for (val n : nodes) {
+            assertTrue(n.getDenseChunks() > 0);
+            assertEquals(0, n.getSparseChunks());
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void testSparseAllReduce_1() throws Exception {
+        val ids = Arrays.asList("alpha", "beta", "gamma");
+        val nodes = buildRing(ids, 64);
+
+        // every node has a few non-zero values, at different positions
+        val arrays = new INDArray[ids.size()];
+        val exp = Nd4j.create(DataType.FLOAT, 100);
+        for (int e = 0; e < arrays.length; e++) {
+            arrays[e] = Nd4j.create(DataType.FLOAT, 100);
+            arrays[e].putScalar(e * 7, 1.0);
+            arrays[e].putScalar(50 + e, -0.5);
+            arrays[e].putScalar(99, 0.25);
+            exp.addi(arrays[e]);
+        }
+
+        val results = runRound(nodes, ids, arrays);
+        for (val result : results)
+            assertEquals(exp, result);
+
+        long sparse = 0;
+        for (val n : nodes)
+            sparse += n.getSparseChunks();
+
+        assertTrue(sparse > 0);
+
+        // source arrays aren't modified
+        assertEquals(1.0, arrays[1].getDouble(7), 1e-5);
+    }
+
+    @Test(timeout = 10000L)
+    public void testSingleNodeRing_1() throws Exception {
+        val ids = Arrays.asList("alpha");
+        val nodes = buildRing(ids, 16);
+
+        val array = Nd4j.linspace(DataType.FLOAT, 1, 12, 1).reshape(3, 4);
+        val result = nodes.get(0).allReduce(array, ids);
+
+        assertArrayEquals(new long[]{12}, result.shape());
+        assertEquals(array.reshape(12), result);
+        assertEquals(0, nodes.get(0).getDenseChunks() + nodes.get(0).getSparseChunks());
+    }
+
+    @Test(timeout = 30000L)
+    public void testExpiredRoundChunks_1() throws Exception {
+        val ids = Arrays.asList("alpha", "beta");
+        val nodes = buildRing(ids, 16, 300L);
+        val array = Nd4j.linspace(DataType.FLOAT, 1, 12, 1);
+
+        // beta doesn't take part in the round, so alpha times out
+        try {
+            nodes.get(0).allReduce(array, ids);
+            fail("Timeout expected");
+        } catch (ND4JIllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("timed out"));
+        }
+        assertTrue(nodes.get(0).rounds.isEmpty());
+
+        // now beta starts the same round, and its chunks arrive at alpha after the round has expired there
+        try {
+            nodes.get(1).allReduce(array, ids);
+            fail("Timeout expected");
+        } catch (ND4JIllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("timed out"));
+        }
+
+        assertTrue(nodes.get(0).getExpiredChunks() > 0);
+        assertTrue(nodes.get(0).rounds.isEmpty());
+        assertTrue(nodes.get(1).rounds.isEmpty());
+    }
+
+    @Test(timeout = 30000L)
+    public void testExplicitRoundIds_1() throws Exception {
+        val ids = Arrays.asList("alpha", "beta");
+        val nodes = buildRing(ids, 16);
+        val arrays = new INDArray[]{Nd4j.linspace(DataType.FLOAT, 1, 12, 1), Nd4j.linspace(DataType.FLOAT, 1, 12, 1)};
+
+        // alpha has done more rounds than beta, but both agree on the position in training
+        nodes.get(0).allReduce(arrays[0], Arrays.asList("alpha"), RingAllReduce.roundId(0, 0, 0));
+
+        val results = runRound(nodes, ids, arrays, RingAllReduce.roundId(0, 1, 0));
+        for (val result : results)
+            assertEquals(arrays[0].mul(2), result);
+
+        assertTrue(RingAllReduce.roundId(0, 1, 1) > RingAllReduce.roundId(0, 1, 0));
+        assertTrue(RingAllReduce.roundId(1, 0, 0) > RingAllReduce.roundId(0, 100, 5));
+    }
+
+    @Test(timeout = 30000L)
+    public void testFinishedNodeContributesZeros_1() throws Exception {
+        val ids = Arrays.asList("alpha", "beta", "gamma");
+        val nodes = buildRing(ids, 16, 5000L);
+
+        // alpha has no more data, but beta and gamma keep going
+        nodes.get(0).finish(37, DataType.FLOAT, ids);
+
+        val active = Arrays.asList(nodes.get(1), nodes.get(2));
+        for (int r = 0; r < 3; r++) {
+            val arrays = new INDArray[]{Nd4j.rand(DataType.FLOAT, 37), Nd4j.rand(DataType.FLOAT, 37)};
+            val results = runRound(active, ids, arrays, RingAllReduce.roundId(0, r, 0));
+            for (val result : results)
+                assertEquals(arrays[0].add(arrays[1]), result);
+        }
+
+        // rounds joined with zeros aren't kept around
+        assertTrue(nodes.get(0).rounds.isEmpty());
+
+        // and alpha is back to normal once it has data again
+        val arrays = new INDArray[]{Nd4j.ones(DataType.FLOAT, 37), Nd4j.ones(DataType.FLOAT, 37), Nd4j.ones(DataType.FLOAT, 37)};
+        val results = runRound(nodes, ids, arrays, RingAllReduce.roundId(1, 0, 0));
+        for (val result : results)
+            assertEquals(Nd4j.valueArrayOf(new long[]{37}, 3.0f), result);
+    }
+
+    @Test(timeout = 30000L)
+    public void testSkippedRoundChunksDropped_1() throws Exception {
+        val ids = Arrays.asList("alpha", "beta");
+        val nodes = buildRing(ids, 16, 300L);
+        val array = Nd4j.linspace(DataType.FLOAT, 1, 12, 1);
+
+        // alpha never takes part in round 5, so its chunks are buffered at alpha
+        try {
+            nodes.get(1).allReduce(array, ids, 5);
+            fail("Timeout expected");
+        } catch (ND4JIllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("timed out"));
+        }
+        assertTrue(nodes.get(0).rounds.containsKey(5L));
+
+        // once alpha starts a newer round, buffered chunks of the skipped one are dropped
+        val results = runRound(nodes, ids, new INDArray[]{array, array}, 6);
+        for (val result : results)
+            assertEquals(array.mul(2), result);
+
+        assertTrue(nodes.get(0).rounds.isEmpty());
+        assertTrue(nodes.get(0).getExpiredChunks() > 0);
+    }
+
+    @Test
+    public void testRingFromMesh_1() {
+        val mesh = new MeshOrganizer();
+        mesh.getRootNode().setId("ROOT_NODE");
+
+        assertEquals(Arrays.asList("ROOT_NODE"), RingAllReduce.ringFromMesh(mesh));
+
+        mesh.addNode("gamma");
+        mesh.addNode("alpha");
+        mesh.addNode("beta");
+        mesh.markNodeOffline("beta");
+
+        assertEquals(Arrays.asList("alpha", "gamma"), RingAllReduce.ringFromMesh(mesh));
+    }
+}
@@ -28,6 +28,9 @@ import org.nd4j.remote.clients.serde.*;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -56,20 +59,28 @@ public class JsonRemoteInference<I, O> {
     private JsonDeserializer<O> deserializer;
     private BinarySerializer<I> binarySerializer;
     private BinaryDeserializer<O> binaryDeserializer;
+    private boolean tensorMode;
 
     private final static String APPLICATION_JSON = "application/json";
     private final static String APPLICATION_OCTET_STREAM = "application/octet-stream";
+    private final static String APPLICATION_TENSORS = "application/x-nd4j-tensors";
 
     @Builder
     public JsonRemoteInference(@NonNull String endpointAddress,
                                JsonSerializer<I> inputSerializer, JsonDeserializer<O> outputDeserializer,
-                               BinarySerializer<I> inputBinarySerializer, BinaryDeserializer<O> outputBinaryDeserializer) {
+                               BinarySerializer<I> inputBinarySerializer, BinaryDeserializer<O> outputBinaryDeserializer,
+                               boolean tensorMode) {
 
         this.endpointAddress = endpointAddress;
         this.serializer = inputSerializer;
         this.deserializer = outputDeserializer;
         this.binarySerializer = inputBinarySerializer;
         this.binaryDeserializer = outputBinaryDeserializer;
+        this.tensorMode = tensorMode;
+
+        // in tensor mode serializers are optional, since arrays are sent as is
+        if (tensorMode && serializer == null && binarySerializer == null)
+            return;
 
         if (serializer != null && binarySerializer != null || serializer == null && binarySerializer == null)
             throw new IllegalStateException("Binary and JSON serializers/deserializers are mutually exclusive and mandatory.");
@@ -146,6 +157,59 @@ public class JsonRemoteInference<I, O> {
         }
     }
 
+    /**
+     * This method does remote inference for raw arrays in a blocking way.
+     * Arrays are sent in BinarySerde layout, bypassing adapters and serializers on the server side, and output
+     * is read straight into off-heap memory.
+     * Client itself doesn't depend on ND4J: use BinarySerde.toByteBuffer(INDArray[]) to create input buffer,
+     * and BinarySerde.toArrays(ByteBuffer) to get output arrays.
+     *
+     * PLEASE NOTE: client must be built with tensorMode enabled
+     *
+     * @param input buffer with input arrays, read from its position to its limit. Position of the buffer isn't changed
+     * @return direct buffer with output arrays
+     * @throws IOException
+     */
+    public ByteBuffer predictTensors(@NonNull ByteBuffer input) throws IOException {
+        if (!tensorMode)
+            throw new IllegalStateException("Tensor mode wasn't enabled for this client");
+
+        // Unirest accepts byte arrays only, so that's the single copy on client side
+        val bytes = new byte[input.remaining()];
+        input.duplicate().get(bytes);
+
+        try {
+            HttpResponse<InputStream> response =
+                    Unirest.post(endpointAddress)
+                            .header("Content-Type", APPLICATION_TENSORS)
+                            .header("Accept", APPLICATION_TENSORS)
+                            .body(bytes).asBinary();
+
+            if (response.getStatus() != 200)
+                throw new IOException("Inference request returned bad error code: " + response.getStatus());
+
+            List<String> values = response.getHeaders().get("Content-Length");
+            if (values == null || values.size() < 1) {
+                throw new IOException("Content-Length is required for binary data");
+            }
+
+            return readFully(Channels.newChannel(response.getBody()), Integer.parseInt(values.get(0)));
+        } catch (UnirestException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel channel, int length) throws IOException {
+        val buffer = ByteBuffer.allocateDirect(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new IOException("Expected " + length + " bytes, but got only " + buffer.position());
+        }
+
+        buffer.rewind();
+        return buffer;
+    }
+
     /**
      * This method does remote inference in asynchronous way, returning Future instead
      * @param input
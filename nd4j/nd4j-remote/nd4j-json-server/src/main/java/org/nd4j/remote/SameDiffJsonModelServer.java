@@ -115,6 +115,9 @@ public class SameDiffJsonModelServer<I, O> {
         jerseyServlet.setInitOrder(0);
         jerseyServlet.setServlet(servlet);
 
+        // servlets may process requests asynchronously
+        jerseyServlet.setAsyncSupported(true);
+
         server.start();
     }
 
@@ -26,6 +26,7 @@ import org.nd4j.remote.clients.serde.BinarySerializer;
 import org.nd4j.remote.clients.serde.JsonDeserializer;
 import org.nd4j.remote.clients.serde.JsonSerializer;
 import org.nd4j.adapters.InferenceAdapter;
+import org.nd4j.serde.binary.BinarySerde;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
@@ -34,6 +35,7 @@ import javax.ws.rs.HttpMethod;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.channels.Channels;
 import java.util.LinkedHashMap;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
@@ -53,8 +55,14 @@ import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
 @Builder
 public class SameDiffServlet<I, O> implements ModelServingServlet<I, O> {
 
+    /**
+     * Content type for raw tensor requests: INDArrays in {@link BinarySerde} layout, no adapters or serializers involved
+     */
+    public static final String TENSOR_MEDIA_TYPE = "application/x-nd4j-tensors";
+
     protected static final String typeJson = APPLICATION_JSON;
     protected static final String typeBinary = APPLICATION_OCTET_STREAM;
+    protected static final String typeTensor = TENSOR_MEDIA_TYPE;
 
     protected SameDiff sdModel;
     protected JsonSerializer<O> serializer;
@@ -179,6 +187,14 @@ public class SameDiffServlet<I, O> implements ModelServingServlet<I, O> {
             val contentType = request.getContentType();
             /*Preconditions.checkArgument(StringUtils.equals(contentType, typeJson),
                     "Content type is " + contentType);*/
+            if (StringUtils.equals(contentType, typeTensor)) {
+                val input = readTensors(request, response);
+                if (input != null)
+                    writeTensors(output(input), response);
+
+                return;
+            }
+
             if (validateRequest(request,response)) {
                 val stream = request.getInputStream();
                 val bufferedReader = new BufferedReader(new InputStreamReader(stream));
@@ -191,22 +207,7 @@ public class SameDiffServlet<I, O> implements ModelServingServlet<I, O> {
                 val requestString = buffer.toString();
 
                 val mds = inferenceAdapter.apply(deserializer.deserialize(requestString));
-                val map = new LinkedHashMap<String, INDArray>();
-
-                // optionally define placeholders with names provided in server constructor
-                if (orderedInputNodes != null && orderedInputNodes.length > 0) {
-                    int cnt = 0;
-                    for (val n : orderedInputNodes)
-                        map.put(n, mds.getFeatures(cnt++));
-                }
-
-                val output = sdModel.output(map, orderedOutputNodes);
-                val arrays = new INDArray[output.size()];
-
-                // now we need to get ordered output arrays, as specified in server constructor
-                int cnt = 0;
-                for (val n : orderedOutputNodes)
-                    arrays[cnt++] = output.get(n);
+                val arrays = output(mds.getFeatures());
 
                 // process result
                 val result = inferenceAdapter.apply(arrays);
@@ -224,6 +225,69 @@ public class SameDiffServlet<I, O> implements ModelServingServlet<I, O> {
         }
     }
 
+    /**
+     * This method does actual inference for the given features
+     *
+     * @param features input arrays, ordered as orderedInputNodes
+     * @return output arrays, ordered as orderedOutputNodes
+     */
+    protected INDArray[] output(INDArray[] features) {
+        val map = new LinkedHashMap<String, INDArray>();
+
+        // optionally define placeholders with names provided in server constructor
+        if (orderedInputNodes != null && orderedInputNodes.length > 0) {
+            int cnt = 0;
+            for (val n : orderedInputNodes)
+                map.put(n, features[cnt++]);
+        }
+
+        val output = sdModel.output(map, orderedOutputNodes);
+        val arrays = new INDArray[output.size()];
+
+        // now we need to get ordered output arrays, as specified in server constructor
+        int cnt = 0;
+        for (val n : orderedOutputNodes)
+            arrays[cnt++] = output.get(n);
+
+        return arrays;
+    }
+
+    /**
+     * This method reads raw tensors from request body into off-heap memory.
+     * PLEASE NOTE: servlet streams have no ByteBuffer API, so data still goes through the small transfer buffer
+     * of the channel wrapper (8 KB at most). Payload is never copied to a full-size byte array though.
+     *
+     * @return input arrays, or null if request was rejected
+     */
+    protected INDArray[] readTensors(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        int contentLength = request.getContentLength();
+        if (contentLength <= 0) {
+            response.sendError(411, "Content length is unavailable");
+            return null;
+        }
+
+        if (contentLength > PAYLOAD_SIZE_LIMIT) {
+            response.sendError(500, "Payload size limit violated!");
+            return null;
+        }
+
+        return BinarySerde.readArraysFromChannel(Channels.newChannel(request.getInputStream()), contentLength);
+    }
+
+    /**
+     * This method writes raw tensors to response, using the same layout as request.
+     * Same as for request, response stream is fed through the channel wrapper's small transfer buffer.
+     */
+    protected void writeTensors(INDArray[] output, HttpServletResponse response) throws IOException {
+        val buffer = BinarySerde.toByteBuffer(output);
+        response.setContentType(typeTensor);
+        response.setContentLength(buffer.remaining());
+
+        val channel = Channels.newChannel(response.getOutputStream());
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
     @Override
     public String getServletInfo() {
         return null;